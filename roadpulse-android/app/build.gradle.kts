@@ -18,6 +18,10 @@ android {
         versionName = "1.0"
 
         testInstrumentationRunner = "androidx.test.runner.AndroidJUnitRunner"
+        
+        // Event upload endpoint: ./gradlew assembleRelease -Proadpulse.syncEndpoint=https://...
+        // Left empty, events are kept on the device only
+        buildConfigField("String", "SYNC_ENDPOINT", "\"${project.findProperty("roadpulse.syncEndpoint") ?: ""}\"")
         vectorDrawables {
             useSupportLibrary = true
         }
@@ -41,6 +45,7 @@ android {
     }
     buildFeatures {
         compose = true
+        buildConfig = true
     }
     composeOptions {
         kotlinCompilerExtensionVersion = "1.5.5"
@@ -62,6 +67,9 @@ android {
 }
 
 dependencies {
+    // Detection pipeline and models
+    implementation(project(":core"))
+    
     // Core Android dependencies
     implementation("androidx.core:core-ktx:1.12.0")
     implementation("androidx.lifecycle:lifecycle-runtime-ktx:2.7.0")
@@ -79,6 +87,9 @@ dependencies {
     implementation("androidx.room:room-ktx:2.6.1")
     ksp("androidx.room:room-compiler:2.6.1")
     
+    // Paging
+    implementation("androidx.paging:paging-runtime-ktx:3.2.1")
+    
     // Coroutines
     implementation("org.jetbrains.kotlinx:kotlinx-coroutines-android:1.7.3")
     implementation("org.jetbrains.kotlinx:kotlinx-coroutines-play-services:1.7.3")
@@ -108,6 +119,7 @@ dependencies {
     testImplementation("androidx.room:room-testing:2.6.1")
     
     androidTestImplementation("androidx.test.ext:junit:1.1.5")
+    androidTestImplementation("androidx.test:runner:1.5.2")
     androidTestImplementation("androidx.test.espresso:espresso-core:3.5.1")
     androidTestImplementation(platform("androidx.compose:compose-bom:2023.10.01"))
     androidTestImplementation("androidx.compose.ui:ui-test-junit4")
@@ -0,0 +1,220 @@
+package com.roadpulse.android.data.database
+
+import android.content.Context
+import androidx.room.Room
+import androidx.sqlite.db.SupportSQLiteDatabase
+import androidx.test.core.app.ApplicationProvider
+import androidx.test.ext.junit.runners.AndroidJUnit4
+import com.roadpulse.android.data.model.AnomalyAggregate
+import com.roadpulse.android.data.model.RoadAnomalyEvent
+import kotlinx.coroutines.flow.first
+import kotlinx.coroutines.runBlocking
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+import java.util.concurrent.CopyOnWriteArrayList
+
+/**
+ * Checks with EXPLAIN QUERY PLAN that every statement RoadAnomalyDao issues, apart from the
+ * full-table ones listed in [FULL_TABLE_STATEMENTS], is served by an index.
+ * The statements are captured with Room's query callback while each DAO method runs, so the
+ * test follows the DAO as it changes.
+ */
+@RunWith(AndroidJUnit4::class)
+class RoadAnomalyDaoQueryPlanTest {
+
+    companion object {
+        // Dictionary tables hold a handful of rows; scanning them is fine
+        private val DICTIONARY_TABLES = setOf("devices", "sessions", "d", "s")
+
+        private const val ID = "00000000-0000-0000-0000-000000000001"
+        private const val OTHER_ID = "00000000-0000-0000-0000-000000000002"
+        private const val SESSION_ID = "00000000-0000-0000-0000-0000000000aa"
+
+        // Read or clear the whole table by design: the aggregate load and the reset methods
+        private val FULL_TABLE_STATEMENTS = setOf(
+            "SELECT * FROM anomaly_aggregates",
+            "DELETE FROM anomaly_aggregates",
+            "DELETE FROM event_records"
+        )
+
+        private val V1_CREATE_TABLE = "CREATE TABLE IF NOT EXISTS `road_anomaly_events` (" +
+            "`id` TEXT NOT NULL, `created_at` INTEGER NOT NULL, `latitude` REAL NOT NULL, " +
+            "`longitude` REAL NOT NULL, `gps_accuracy_m` REAL NOT NULL, `speed_kmh` REAL NOT NULL, " +
+            "`heading_deg` REAL, `peak_accel_ms2` REAL NOT NULL, `impulse_duration_ms` INTEGER NOT NULL, " +
+            "`severity` INTEGER NOT NULL, `confidence` REAL NOT NULL, `device_model` TEXT NOT NULL, " +
+            "`android_version` TEXT NOT NULL, `session_id` TEXT NOT NULL, `synced` INTEGER NOT NULL, " +
+            "PRIMARY KEY(`id`))"
+
+        private fun event(id: String) = RoadAnomalyEvent(
+            id = id, createdAt = 1_717_000_000_000L, latitude = 52.0, longitude = 4.0,
+            gpsAccuracyM = 5f, speedKmh = 50f, headingDeg = 90f, peakAccelMs2 = 3.5f,
+            impulseDurationMs = 150, severity = 2, confidence = 0.8f,
+            deviceModel = "Device", androidVersion = "13", sessionId = SESSION_ID
+        )
+    }
+
+    private lateinit var context: Context
+    private lateinit var database: RoadPulseDatabase
+
+    // Statements Room executed, with their bind arguments
+    private val statements = CopyOnWriteArrayList<Pair<String, List<Any?>>>()
+
+    @Before
+    fun setUp() {
+        context = ApplicationProvider.getApplicationContext()
+        database = Room.inMemoryDatabaseBuilder(context, RoadPulseDatabase::class.java)
+            .setQueryCallback({ sql, args -> statements.add(sql to args.toList()) }, { it.run() })
+            .build()
+    }
+
+    @After
+    fun tearDown() {
+        database.close()
+    }
+
+    @Test
+    fun everyDaoQueryUsesAnIndex() {
+        val dao = database.roadAnomalyDao()
+        database.openHelper.writableDatabase
+        statements.clear()
+
+        runBlocking {
+            dao.insertEvent(event(ID))
+            dao.insertEvents(listOf(event(OTHER_ID)))
+            dao.getUnsyncedEvents()
+            dao.getEventsBySession(SESSION_ID)
+            dao.getUnsyncedEventsAfter(0L, ID, 50)
+            dao.getEventsBySessionAfter(SESSION_ID, 0L, ID, 50)
+            dao.markEventSynced(ID)
+            dao.markEventsSynced(listOf(ID, OTHER_ID))
+            dao.getEventCount()
+            dao.getUnsyncedEventCount()
+            dao.observeUnsyncedEventCount().first()
+            dao.getEventsByTimeRange(0L, 1L)
+            dao.getEventsByTimeRangeAfter(0L, 1L, 0L, ID, 50)
+            dao.getEventsBySeverity(3)
+            dao.getEventsBySeverityBefore(3, 0L, ID, 50)
+            dao.getNearestEvents(52.0, 4.0, count = 1)
+            dao.deleteOldestSyncedEvents(10)
+            dao.deleteEventsOlderThan(0L)
+            dao.upsertAggregates(listOf(AnomalyAggregate(1L, 52.0, 4.0, 1, 2, 2, 0L, 0L, 0L)))
+            dao.insertEventsAndAggregates(listOf(event(ID)), listOf(AnomalyAggregate(1L, 52.0, 4.0, 2, 2, 4, 0L, 0L, 0L)))
+            dao.getAllAggregates()
+            dao.getUnsyncedAggregatesAfter(0L, 50)
+            dao.markAggregatesSynced(listOf(AnomalyAggregate(1L, 52.0, 4.0, 2, 2, 4, 0L, 0L, 0L)))
+            dao.deleteAggregatesOlderThan(0L)
+            dao.deleteAllAggregates()
+            dao.deleteAllEvents()
+        }
+
+        val checked = statements
+            .map { (sql, args) -> normalize(sql) to args }
+            .filter { (sql, _) -> isDaoStatement(sql) && sql !in FULL_TABLE_STATEMENTS }
+            .distinctBy { it.first }
+        assertTrue("No DAO statements captured", checked.isNotEmpty())
+
+        val db = database.openHelper.writableDatabase
+        for ((sql, args) in checked) {
+            val plan = queryPlan(db, sql, args.toTypedArray())
+            val tableScans = plan.filter { isTableScan(it) }
+            assertTrue("Table scan for \"$sql\": $plan", tableScans.isEmpty())
+        }
+    }
+
+    @Test
+    fun migrationFromVersion1AddsIndexesAndKeepsRows() {
+        val name = "query-plan-migration-test"
+        context.deleteDatabase(name)
+
+        // Recreate the version 1 schema by hand
+        context.openOrCreateDatabase(name, Context.MODE_PRIVATE, null).use { db ->
+            db.execSQL(V1_CREATE_TABLE)
+            db.execSQL(
+                "INSERT INTO road_anomaly_events VALUES " +
+                    "('e1', 1000, 52.0, 4.0, 5.0, 50.0, NULL, 3.5, 150, 2, 0.8, 'Device', '13', 's1', 0), " +
+                    "('e2', 2000, 52.00001, 4.0, 5.0, 50.0, 90.0, 4.5, 150, 3, 0.8, 'Device', '13', 's1', 0)"
+            )
+            db.version = 1
+        }
+
+        // Room validates the migrated schema against the entity on open
+        val migrated = Room.databaseBuilder(context, RoadPulseDatabase::class.java, name)
+            .addMigrations(*RoadPulseDatabase.ALL_MIGRATIONS)
+            .build()
+        try {
+            val db = migrated.openHelper.writableDatabase
+            assertEquals(5, db.version)
+            db.query("SELECT COUNT(*) FROM event_records").use { cursor ->
+                cursor.moveToFirst()
+                assertEquals(2, cursor.getInt(0))
+            }
+            // Both hits are a metre apart, so they are backfilled into one aggregate, waiting to be uploaded
+            db.query(
+                "SELECT hit_count, max_severity, severity_sum, first_seen_at, last_seen_at, heading_buckets, spatial_cell, " +
+                    "synced, uuid FROM anomaly_aggregates"
+            ).use { cursor ->
+                assertEquals(1, cursor.count)
+                cursor.moveToFirst()
+                assertEquals(2, cursor.getInt(0))
+                assertEquals(3, cursor.getInt(1))
+                assertEquals(5, cursor.getInt(2))
+                assertEquals(1000L, cursor.getLong(3))
+                assertEquals(2000L, cursor.getLong(4))
+                assertEquals(AnomalyAggregate.addHeading(0L, 90f), cursor.getLong(5))
+                assertEquals(SpatialIndex.cellOf(52.0, 4.0), cursor.getLong(6))
+                assertEquals(0, cursor.getInt(7))
+                assertEquals(CompactIds.SIZE_BYTES, cursor.getBlob(8).size)
+            }
+            // The view joins the dictionaries back into the original columns
+            db.query("SELECT spatial_cell, device_model, android_version, session_id, id FROM road_anomaly_events").use { cursor ->
+                cursor.moveToFirst()
+                assertEquals(SpatialIndex.cellOf(52.0, 4.0), cursor.getLong(0))
+                assertEquals("Device", cursor.getString(1))
+                assertEquals("13", cursor.getString(2))
+                assertTrue(CompactIds.encode("s1").contentEquals(cursor.getBlob(3)))
+                assertEquals(CompactIds.SIZE_BYTES, cursor.getBlob(4).size)
+            }
+            val plan = queryPlan(db, "SELECT * FROM road_anomaly_events WHERE synced = 0 ORDER BY created_at ASC", emptyArray())
+            assertTrue("Table scan after migration: $plan", plan.none { isTableScan(it) })
+        } finally {
+            migrated.close()
+            context.deleteDatabase(name)
+        }
+    }
+
+    private fun normalize(sql: String): String = sql.trim().replace(Regex("\\s+"), " ")
+
+    /**
+     * Reads and writes issued by the DAO. Inserts go straight to a b-tree, and transaction
+     * control and the invalidation tracker's own bookkeeping are Room's.
+     */
+    private fun isDaoStatement(sql: String): Boolean {
+        val verb = sql.substringBefore(' ').uppercase()
+        return verb in setOf("SELECT", "UPDATE", "DELETE") && !sql.contains("room_table_modification_log")
+    }
+
+    private fun queryPlan(db: SupportSQLiteDatabase, sql: String, args: Array<out Any?>): List<String> {
+        val details = mutableListOf<String>()
+        db.query("EXPLAIN QUERY PLAN $sql", args).use { cursor ->
+            val detailColumn = cursor.getColumnIndexOrThrow("detail")
+            while (cursor.moveToNext()) {
+                details.add(cursor.getString(detailColumn))
+            }
+        }
+        return details
+    }
+
+    /**
+     * "SCAN event_records" (or "SCAN TABLE ..." on older SQLite) without an index.
+     * A scan of a covering index, as used by COUNT(*), reads the smaller index b-tree and is allowed.
+     */
+    private fun isTableScan(detail: String): Boolean {
+        if (!detail.startsWith("SCAN") || detail.contains("INDEX")) return false
+        val table = detail.removePrefix("SCAN ").removePrefix("TABLE ").substringBefore(' ')
+        return table !in DICTIONARY_TABLES
+    }
+}
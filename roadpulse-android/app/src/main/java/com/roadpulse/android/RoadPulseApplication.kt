@@ -1,11 +1,34 @@
 package com.roadpulse.android
 
 import android.app.Application
+import android.os.Build
+import androidx.hilt.work.HiltWorkerFactory
+import androidx.work.Configuration
+import com.roadpulse.android.data.model.DeviceInfo
+import com.roadpulse.android.data.sync.EventSyncWorker
 import dagger.hilt.android.HiltAndroidApp
+import javax.inject.Inject
 
 /**
  * Application class for RoadPulse.
- * Initializes Hilt dependency injection.
+ * Initializes Hilt dependency injection and background event sync.
  */
 @HiltAndroidApp
-class RoadPulseApplication : Application()
\ No newline at end of file
+class RoadPulseApplication : Application(), Configuration.Provider {
+    
+    @Inject
+    lateinit var workerFactory: HiltWorkerFactory
+    
+    // WorkManager is initialized on demand with the Hilt factory so workers get injected
+    override val workManagerConfiguration: Configuration
+        get() = Configuration.Builder()
+            .setWorkerFactory(workerFactory)
+            .build()
+    
+    override fun onCreate() {
+        super.onCreate()
+        DeviceInfo.model = Build.MODEL
+        DeviceInfo.androidVersion = Build.VERSION.RELEASE
+        EventSyncWorker.schedulePeriodic(this)
+    }
+}
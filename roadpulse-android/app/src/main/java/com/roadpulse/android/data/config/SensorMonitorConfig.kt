@@ -18,12 +18,23 @@ class SensorMonitorConfig @Inject constructor() {
         private set
     
     // Sampling rates (in microseconds)
-    var normalSamplingRate: Int = 20_000 // 50Hz
+    var normalSamplingRate: Int = 40_000 // 25Hz - samples are resampled onto an aligned grid
         private set
     
     var reducedSamplingRate: Int = 100_000 // 10Hz
         private set
     
+    // Hardware FIFO batching (sensor hub buffers samples and delivers them in bursts)
+    var sensorBatchingEnabled: Boolean = true
+        private set
+    
+    var maxReportLatencyUs: Int = 3_000_000 // 3 seconds
+        private set
+    
+    // Raw sensor trace recording into rolling on-device segments (off unless tuning the detector)
+    var traceRecordingEnabled: Boolean = false
+        private set
+    
     // Battery management thresholds
     var batteryPauseThreshold: Int = 15 // %
         private set
@@ -66,6 +77,11 @@ class SensorMonitorConfig @Inject constructor() {
     var retentionDays: Int = 30
         private set
     
+    // Raw rows kept per anomaly before repeat hits only update its aggregate (0 keeps every row).
+    // Rolled up hits reach the backend through the aggregate totals uploaded with the events.
+    var aggregateRollupHits: Int = 3
+        private set
+    
     // Device handling detection
     var deviceHandlingSuppressionMs: Long = 3000L // 3 seconds
         private set
@@ -100,6 +116,32 @@ class SensorMonitorConfig @Inject constructor() {
         } else false
     }
     
+    /**
+     * Enable or disable hardware FIFO sensor batching
+     */
+    fun updateSensorBatchingEnabled(enabled: Boolean): Boolean {
+        sensorBatchingEnabled = enabled
+        return true
+    }
+    
+    /**
+     * Update maximum sensor report latency with validation
+     */
+    fun updateMaxReportLatency(latencyMs: Int): Boolean {
+        return if (latencyMs in 1000..5000) {
+            maxReportLatencyUs = latencyMs * 1000
+            true
+        } else false
+    }
+    
+    /**
+     * Enable or disable raw sensor trace recording
+     */
+    fun updateTraceRecordingEnabled(enabled: Boolean): Boolean {
+        traceRecordingEnabled = enabled
+        return true
+    }
+    
     /**
      * Update battery pause threshold with validation
      */
@@ -180,14 +222,27 @@ class SensorMonitorConfig @Inject constructor() {
         } else false
     }
     
+    /**
+     * Update the anomaly rollup threshold with validation
+     */
+    fun updateAggregateRollupHits(hits: Int): Boolean {
+        return if (hits in 0..20) {
+            aggregateRollupHits = hits
+            true
+        } else false
+    }
+    
     /**
      * Reset all settings to defaults
      */
     fun resetToDefaults() {
         accelerationThreshold = 2.5f
         maxAccelerationThreshold = 20.0f
-        normalSamplingRate = 20_000
+        normalSamplingRate = 40_000
         reducedSamplingRate = 100_000
+        sensorBatchingEnabled = true
+        maxReportLatencyUs = 3_000_000
+        traceRecordingEnabled = false
         batteryPauseThreshold = 15
         batteryResumeThreshold = 20
         stationaryTimeoutMs = 10 * 60 * 1000L
@@ -200,6 +255,7 @@ class SensorMonitorConfig @Inject constructor() {
         sessionTimeoutMs = 5 * 60 * 1000L
         maxStoredEvents = 10000
         retentionDays = 30
+        aggregateRollupHits = 3
         deviceHandlingSuppressionMs = 3000L
     }
     
@@ -211,6 +267,9 @@ class SensorMonitorConfig @Inject constructor() {
             accelerationThreshold = accelerationThreshold,
             normalSamplingRateHz = 1_000_000 / normalSamplingRate,
             reducedSamplingRateHz = 1_000_000 / reducedSamplingRate,
+            sensorBatchingEnabled = sensorBatchingEnabled,
+            maxReportLatencyMs = maxReportLatencyUs / 1000,
+            traceRecordingEnabled = traceRecordingEnabled,
             batteryPauseThreshold = batteryPauseThreshold,
             batteryResumeThreshold = batteryResumeThreshold,
             stationaryTimeoutMinutes = (stationaryTimeoutMs / (60 * 1000)).toInt(),
@@ -218,7 +277,8 @@ class SensorMonitorConfig @Inject constructor() {
             minSpeedKmh = minSpeedKmh,
             sessionTimeoutMinutes = (sessionTimeoutMs / (60 * 1000)).toInt(),
             maxStoredEvents = maxStoredEvents,
-            retentionDays = retentionDays
+            retentionDays = retentionDays,
+            aggregateRollupHits = aggregateRollupHits
         )
     }
     
@@ -230,6 +290,9 @@ class SensorMonitorConfig @Inject constructor() {
             updateAccelerationThreshold(config.accelerationThreshold) &&
             updateNormalSamplingRate(config.normalSamplingRateHz) &&
             updateReducedSamplingRate(config.reducedSamplingRateHz) &&
+            updateSensorBatchingEnabled(config.sensorBatchingEnabled) &&
+            updateMaxReportLatency(config.maxReportLatencyMs) &&
+            updateTraceRecordingEnabled(config.traceRecordingEnabled) &&
             updateBatteryPauseThreshold(config.batteryPauseThreshold) &&
             updateBatteryResumeThreshold(config.batteryResumeThreshold) &&
             updateStationaryTimeout(config.stationaryTimeoutMinutes) &&
@@ -237,7 +300,8 @@ class SensorMonitorConfig @Inject constructor() {
             updateMinSpeedThreshold(config.minSpeedKmh) &&
             updateSessionTimeout(config.sessionTimeoutMinutes) &&
             updateMaxStoredEvents(config.maxStoredEvents) &&
-            updateRetentionDays(config.retentionDays)
+            updateRetentionDays(config.retentionDays) &&
+            updateAggregateRollupHits(config.aggregateRollupHits)
         } catch (e: Exception) {
             false
         }
@@ -251,6 +315,9 @@ data class ConfigSnapshot(
     val accelerationThreshold: Float,
     val normalSamplingRateHz: Int,
     val reducedSamplingRateHz: Int,
+    val sensorBatchingEnabled: Boolean = true,
+    val maxReportLatencyMs: Int = 3000,
+    val traceRecordingEnabled: Boolean = false,
     val batteryPauseThreshold: Int,
     val batteryResumeThreshold: Int,
     val stationaryTimeoutMinutes: Int,
@@ -258,5 +325,6 @@ data class ConfigSnapshot(
     val minSpeedKmh: Float,
     val sessionTimeoutMinutes: Int,
     val maxStoredEvents: Int,
-    val retentionDays: Int
+    val retentionDays: Int,
+    val aggregateRollupHits: Int = 3
 )
\ No newline at end of file
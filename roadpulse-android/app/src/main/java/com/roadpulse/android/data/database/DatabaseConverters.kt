@@ -1,31 +0,0 @@
-package com.roadpulse.android.data.database
-
-import androidx.room.TypeConverter
-import java.time.Instant
-import java.util.UUID
-
-/**
- * Type converters for Room database to handle custom data types.
- */
-class DatabaseConverters {
-    
-    @TypeConverter
-    fun fromTimestamp(value: Long?): Instant? {
-        return value?.let { Instant.ofEpochMilli(it) }
-    }
-    
-    @TypeConverter
-    fun instantToTimestamp(instant: Instant?): Long? {
-        return instant?.toEpochMilli()
-    }
-    
-    @TypeConverter
-    fun fromUUID(uuid: UUID?): String? {
-        return uuid?.toString()
-    }
-    
-    @TypeConverter
-    fun toUUID(uuidString: String?): UUID? {
-        return uuidString?.let { UUID.fromString(it) }
-    }
-}
\ No newline at end of file
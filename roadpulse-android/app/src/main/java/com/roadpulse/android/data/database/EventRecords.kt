@@ -0,0 +1,133 @@
+package com.roadpulse.android.data.database
+
+import androidx.room.ColumnInfo
+import androidx.room.Entity
+import androidx.room.Index
+import androidx.room.PrimaryKey
+import androidx.room.TypeConverters
+import com.roadpulse.android.data.model.RoadAnomalyEvent
+
+/**
+ * Stored form of a road anomaly event.
+ * The id is a 16-byte BLOB, and device metadata and the session id are integer references into
+ * the [DeviceRecord] and [SessionRecord] dictionaries. Reads go through the road_anomaly_events
+ * view, which joins them back into [RoadAnomalyEvent].
+ */
+@Entity(
+    tableName = "event_records",
+    // Composite indexes shaped for the RoadAnomalyDao queries: equality column first, then created_at for ordering/ranges
+    indices = [
+        Index(value = ["synced", "created_at"]),
+        Index(value = ["session_ref", "created_at"]),
+        Index(value = ["severity", "created_at"]),
+        Index(value = ["created_at"]),
+        Index(value = ["spatial_cell"])
+    ]
+)
+data class RoadAnomalyEventRecord(
+    @PrimaryKey
+    @ColumnInfo(name = "id")
+    @TypeConverters(CompactIdConverters::class)
+    val id: String,
+    
+    @ColumnInfo(name = "created_at")
+    val createdAt: Long,
+    
+    @ColumnInfo(name = "latitude")
+    val latitude: Double,
+    
+    @ColumnInfo(name = "longitude")
+    val longitude: Double,
+    
+    @ColumnInfo(name = "gps_accuracy_m")
+    val gpsAccuracyM: Float,
+    
+    @ColumnInfo(name = "speed_kmh")
+    val speedKmh: Float,
+    
+    @ColumnInfo(name = "heading_deg")
+    val headingDeg: Float?,
+    
+    @ColumnInfo(name = "peak_accel_ms2")
+    val peakAccelMs2: Float,
+    
+    @ColumnInfo(name = "impulse_duration_ms")
+    val impulseDurationMs: Int,
+    
+    @ColumnInfo(name = "severity")
+    val severity: Int,
+    
+    @ColumnInfo(name = "confidence")
+    val confidence: Float,
+    
+    @ColumnInfo(name = "device_id")
+    val deviceId: Long,
+    
+    @ColumnInfo(name = "session_ref")
+    val sessionRef: Long,
+    
+    @ColumnInfo(name = "synced")
+    val synced: Boolean,
+    
+    @ColumnInfo(name = "spatial_cell")
+    val spatialCell: Long
+) {
+    companion object {
+        /**
+         * Stored form of [event]; the spatial cell is always derived from its coordinates
+         */
+        fun from(event: RoadAnomalyEvent, deviceId: Long, sessionRef: Long) = RoadAnomalyEventRecord(
+            id = event.id,
+            createdAt = event.createdAt,
+            latitude = event.latitude,
+            longitude = event.longitude,
+            gpsAccuracyM = event.gpsAccuracyM,
+            speedKmh = event.speedKmh,
+            headingDeg = event.headingDeg,
+            peakAccelMs2 = event.peakAccelMs2,
+            impulseDurationMs = event.impulseDurationMs,
+            severity = event.severity,
+            confidence = event.confidence,
+            deviceId = deviceId,
+            sessionRef = sessionRef,
+            synced = event.synced,
+            spatialCell = SpatialIndex.cellOf(event.latitude, event.longitude)
+        )
+    }
+}
+
+/**
+ * Dictionary of device model and Android version pairs
+ */
+@Entity(
+    tableName = "devices",
+    indices = [Index(value = ["model", "android_version"], unique = true)]
+)
+data class DeviceRecord(
+    @PrimaryKey(autoGenerate = true)
+    @ColumnInfo(name = "id")
+    val id: Long = 0,
+    
+    @ColumnInfo(name = "model")
+    val model: String,
+    
+    @ColumnInfo(name = "android_version")
+    val androidVersion: String
+)
+
+/**
+ * Dictionary of session UUIDs
+ */
+@Entity(
+    tableName = "sessions",
+    indices = [Index(value = ["uuid"], unique = true)]
+)
+data class SessionRecord(
+    @PrimaryKey(autoGenerate = true)
+    @ColumnInfo(name = "id")
+    val id: Long = 0,
+    
+    @ColumnInfo(name = "uuid")
+    @TypeConverters(CompactIdConverters::class)
+    val uuid: String
+)
@@ -1,12 +1,19 @@
 package com.roadpulse.android.data.database
 
 import androidx.room.*
+import androidx.sqlite.db.SimpleSQLiteQuery
+import androidx.sqlite.db.SupportSQLiteQuery
+import com.roadpulse.android.data.model.AnomalyAggregate
 import com.roadpulse.android.data.model.RoadAnomalyEvent
 import kotlinx.coroutines.flow.Flow
 
 /**
  * Data Access Object for road anomaly events.
  * Provides database operations for event storage and retrieval.
+ *
+ * Writes go to the compact event_records table and its device/session dictionaries, reads
+ * go through the road_anomaly_events view. Id parameters are bound as 16-byte BLOBs.
+ * Per-anomaly totals of repeated hits are kept in anomaly_aggregates.
  */
 @Dao
 interface RoadAnomalyDao {
@@ -14,14 +21,71 @@ interface RoadAnomalyDao {
     /**
      * Insert a new road anomaly event
      */
-    @Insert(onConflict = OnConflictStrategy.REPLACE)
-    suspend fun insertEvent(event: RoadAnomalyEvent): Long
+    @Transaction
+    suspend fun insertEvent(event: RoadAnomalyEvent): Long {
+        val deviceId = deviceIdFor(event.deviceModel, event.androidVersion)
+        return insertRecord(RoadAnomalyEventRecord.from(event, deviceId, sessionRefFor(event.sessionId)))
+    }
     
     /**
      * Insert multiple events in a single transaction
      */
+    @Transaction
+    suspend fun insertEvents(events: List<RoadAnomalyEvent>) {
+        // A batch almost always shares one device and session; resolve each only once
+        val deviceIds = HashMap<Pair<String, String>, Long>()
+        val sessionRefs = HashMap<String, Long>()
+        insertRecords(events.map { event ->
+            val deviceId = deviceIds.getOrPut(event.deviceModel to event.androidVersion) {
+                deviceIdFor(event.deviceModel, event.androidVersion)
+            }
+            val sessionRef = sessionRefs.getOrPut(event.sessionId) { sessionRefFor(event.sessionId) }
+            RoadAnomalyEventRecord.from(event, deviceId, sessionRef)
+        })
+    }
+    
+    /**
+     * Write a flush of the write-behind buffer: changed aggregates and new events together,
+     * so an aggregate never counts hits whose rows were not stored
+     */
+    @Transaction
+    suspend fun insertEventsAndAggregates(events: List<RoadAnomalyEvent>, aggregates: List<AnomalyAggregate>) {
+        if (aggregates.isNotEmpty()) upsertAggregates(aggregates)
+        if (events.isNotEmpty()) insertEvents(events)
+    }
+    
+    @Insert(onConflict = OnConflictStrategy.REPLACE)
+    suspend fun insertRecord(record: RoadAnomalyEventRecord): Long
+    
     @Insert(onConflict = OnConflictStrategy.REPLACE)
-    suspend fun insertEvents(events: List<RoadAnomalyEvent>)
+    suspend fun insertRecords(records: List<RoadAnomalyEventRecord>)
+    
+    @Insert(onConflict = OnConflictStrategy.IGNORE)
+    suspend fun insertDevice(device: DeviceRecord): Long
+    
+    @Query("SELECT id FROM devices WHERE model = :model AND android_version = :androidVersion")
+    suspend fun findDeviceId(model: String, androidVersion: String): Long?
+    
+    @Insert(onConflict = OnConflictStrategy.IGNORE)
+    suspend fun insertSession(session: SessionRecord): Long
+    
+    @Query("SELECT id FROM sessions WHERE uuid = :sessionId")
+    suspend fun findSessionRef(@TypeConverters(CompactIdConverters::class) sessionId: String): Long?
+    
+    /**
+     * Dictionary id for a device, adding it on first use
+     */
+    suspend fun deviceIdFor(model: String, androidVersion: String): Long {
+        return findDeviceId(model, androidVersion)
+            ?: insertDevice(DeviceRecord(model = model, androidVersion = androidVersion))
+    }
+    
+    /**
+     * Dictionary id for a session, adding it on first use
+     */
+    suspend fun sessionRefFor(sessionId: String): Long {
+        return findSessionRef(sessionId) ?: insertSession(SessionRecord(uuid = sessionId))
+    }
     
     /**
      * Get all unsynced events for synchronization
@@ -33,43 +97,74 @@ interface RoadAnomalyDao {
      * Get events by session ID
      */
     @Query("SELECT * FROM road_anomaly_events WHERE session_id = :sessionId ORDER BY created_at ASC")
-    suspend fun getEventsBySession(sessionId: String): List<RoadAnomalyEvent>
+    suspend fun getEventsBySession(@TypeConverters(CompactIdConverters::class) sessionId: String): List<RoadAnomalyEvent>
+    
+    /**
+     * Get the next page of unsynced events after the (created_at, id) key, oldest first
+     */
+    @Query("""
+        SELECT * FROM road_anomaly_events
+        WHERE synced = 0
+          AND created_at >= :afterCreatedAt AND (created_at > :afterCreatedAt OR id > :afterId)
+        ORDER BY created_at ASC, id ASC LIMIT :limit
+    """)
+    suspend fun getUnsyncedEventsAfter(
+        afterCreatedAt: Long,
+        @TypeConverters(CompactIdConverters::class) afterId: String,
+        limit: Int
+    ): List<RoadAnomalyEvent>
+    
+    /**
+     * Get the next page of a session's events after the (created_at, id) key, oldest first
+     */
+    @Query("""
+        SELECT * FROM road_anomaly_events
+        WHERE session_id = :sessionId
+          AND created_at >= :afterCreatedAt AND (created_at > :afterCreatedAt OR id > :afterId)
+        ORDER BY created_at ASC, id ASC LIMIT :limit
+    """)
+    suspend fun getEventsBySessionAfter(
+        @TypeConverters(CompactIdConverters::class) sessionId: String,
+        afterCreatedAt: Long,
+        @TypeConverters(CompactIdConverters::class) afterId: String,
+        limit: Int
+    ): List<RoadAnomalyEvent>
     
     /**
      * Mark an event as synced
      */
-    @Query("UPDATE road_anomaly_events SET synced = 1 WHERE id = :eventId")
-    suspend fun markEventSynced(eventId: String)
+    @Query("UPDATE event_records SET synced = 1 WHERE id = :eventId")
+    suspend fun markEventSynced(@TypeConverters(CompactIdConverters::class) eventId: String)
     
     /**
      * Mark multiple events as synced
      */
-    @Query("UPDATE road_anomaly_events SET synced = 1 WHERE id IN (:eventIds)")
-    suspend fun markEventsSynced(eventIds: List<String>)
+    @Query("UPDATE event_records SET synced = 1 WHERE id IN (:eventIds)")
+    suspend fun markEventsSynced(@TypeConverters(CompactIdConverters::class) eventIds: List<String>)
     
     /**
      * Get total count of events
      */
-    @Query("SELECT COUNT(*) FROM road_anomaly_events")
+    @Query("SELECT COUNT(*) FROM event_records")
     suspend fun getEventCount(): Int
     
     /**
      * Get count of unsynced events
      */
-    @Query("SELECT COUNT(*) FROM road_anomaly_events WHERE synced = 0")
+    @Query("SELECT COUNT(*) FROM event_records WHERE synced = 0")
     suspend fun getUnsyncedEventCount(): Int
     
     /**
      * Delete oldest synced events to free up space
      * @param limit Number of events to delete
      */
-    @Query("DELETE FROM road_anomaly_events WHERE id IN (SELECT id FROM road_anomaly_events WHERE synced = 1 ORDER BY created_at ASC LIMIT :limit)")
+    @Query("DELETE FROM event_records WHERE id IN (SELECT id FROM event_records WHERE synced = 1 ORDER BY created_at ASC LIMIT :limit)")
     suspend fun deleteOldestSyncedEvents(limit: Int)
     
     /**
      * Delete events older than specified timestamp
      */
-    @Query("DELETE FROM road_anomaly_events WHERE created_at < :timestamp AND synced = 1")
+    @Query("DELETE FROM event_records WHERE created_at < :timestamp AND synced = 1")
     suspend fun deleteEventsOlderThan(timestamp: Long)
     
     /**
@@ -78,21 +173,153 @@ interface RoadAnomalyDao {
     @Query("SELECT * FROM road_anomaly_events WHERE created_at BETWEEN :startTime AND :endTime ORDER BY created_at ASC")
     suspend fun getEventsByTimeRange(startTime: Long, endTime: Long): List<RoadAnomalyEvent>
     
+    /**
+     * Get the next page of events in a time range after the (created_at, id) key, oldest first
+     */
+    @Query("""
+        SELECT * FROM road_anomaly_events
+        WHERE created_at BETWEEN :startTime AND :endTime
+          AND created_at >= :afterCreatedAt AND (created_at > :afterCreatedAt OR id > :afterId)
+        ORDER BY created_at ASC, id ASC LIMIT :limit
+    """)
+    suspend fun getEventsByTimeRangeAfter(
+        startTime: Long,
+        endTime: Long,
+        afterCreatedAt: Long,
+        @TypeConverters(CompactIdConverters::class) afterId: String,
+        limit: Int
+    ): List<RoadAnomalyEvent>
+    
     /**
      * Get events with minimum severity level
      */
     @Query("SELECT * FROM road_anomaly_events WHERE severity >= :minSeverity ORDER BY created_at DESC")
     suspend fun getEventsBySeverity(minSeverity: Int): List<RoadAnomalyEvent>
     
+    /**
+     * Get the next page of events with minimum severity before the (created_at, id) key, newest first
+     */
+    @Query("""
+        SELECT * FROM road_anomaly_events
+        WHERE severity >= :minSeverity
+          AND created_at <= :beforeCreatedAt AND (created_at < :beforeCreatedAt OR id < :beforeId)
+        ORDER BY created_at DESC, id DESC LIMIT :limit
+    """)
+    suspend fun getEventsBySeverityBefore(
+        minSeverity: Int,
+        beforeCreatedAt: Long,
+        @TypeConverters(CompactIdConverters::class) beforeId: String,
+        limit: Int
+    ): List<RoadAnomalyEvent>
+    
     /**
      * Observe unsynced events count for UI updates
      */
-    @Query("SELECT COUNT(*) FROM road_anomaly_events WHERE synced = 0")
+    @Query("SELECT COUNT(*) FROM event_records WHERE synced = 0")
     fun observeUnsyncedEventCount(): Flow<Int>
     
     /**
      * Delete all events (for testing/reset purposes)
      */
-    @Query("DELETE FROM road_anomaly_events")
+    @Query("DELETE FROM event_records")
     suspend fun deleteAllEvents()
+    
+    /**
+     * Run a spatial lookup built by [SpatialIndex]
+     */
+    @RawQuery
+    suspend fun getEventsBySpatialQuery(query: SupportSQLiteQuery): List<RoadAnomalyEvent>
+    
+    /**
+     * Get events inside a bounding box; minLongitude > maxLongitude crosses the antimeridian
+     */
+    suspend fun getEventsInBoundingBox(
+        minLatitude: Double,
+        minLongitude: Double,
+        maxLatitude: Double,
+        maxLongitude: Double
+    ): List<RoadAnomalyEvent> {
+        val query = SpatialIndex.boundingBoxQuery(minLatitude, minLongitude, maxLatitude, maxLongitude)
+        return getEventsBySpatialQuery(SimpleSQLiteQuery(query.sql, query.args))
+    }
+    
+    /**
+     * Get events within [radiusM] meters of a point, nearest first
+     */
+    suspend fun getEventsWithinRadius(
+        latitude: Double,
+        longitude: Double,
+        radiusM: Double
+    ): List<RoadAnomalyEvent> {
+        val bounds = SpatialIndex.boundsAround(latitude, longitude, radiusM)
+        return getEventsInBoundingBox(bounds[0], bounds[1], bounds[2], bounds[3])
+            .map { it to SpatialIndex.distanceMeters(latitude, longitude, it.latitude, it.longitude) }
+            .filter { it.second <= radiusM }
+            .sortedBy { it.second }
+            .map { it.first }
+    }
+    
+    /**
+     * Get the [count] events nearest to a point, searching at most [maxRadiusM] meters out.
+     * The search radius doubles until enough events are found inside it.
+     */
+    suspend fun getNearestEvents(
+        latitude: Double,
+        longitude: Double,
+        count: Int,
+        maxRadiusM: Double = 5_000.0
+    ): List<RoadAnomalyEvent> {
+        var radiusM = minOf(50.0, maxRadiusM)
+        while (true) {
+            val events = getEventsWithinRadius(latitude, longitude, radiusM)
+            if (events.size >= count || radiusM >= maxRadiusM) {
+                return events.take(count)
+            }
+            radiusM = minOf(radiusM * 2, maxRadiusM)
+        }
+    }
+    
+    /**
+     * Insert or update anomaly aggregates
+     */
+    @Insert(onConflict = OnConflictStrategy.REPLACE)
+    suspend fun upsertAggregates(aggregates: List<AnomalyAggregate>)
+    
+    /**
+     * Get all anomaly aggregates, to restore the in-memory index
+     */
+    @Query("SELECT * FROM anomaly_aggregates")
+    suspend fun getAllAggregates(): List<AnomalyAggregate>
+    
+    /**
+     * Get the next page of unsynced anomaly aggregates after the given id
+     */
+    @Query("SELECT * FROM anomaly_aggregates WHERE synced = 0 AND id > :afterId ORDER BY id ASC LIMIT :limit")
+    suspend fun getUnsyncedAggregatesAfter(afterId: Long, limit: Int): List<AnomalyAggregate>
+    
+    /**
+     * Mark an anomaly aggregate as synced unless hits were added after it was read
+     */
+    @Query("UPDATE anomaly_aggregates SET synced = 1 WHERE id = :id AND hit_count = :hitCount")
+    suspend fun markAggregateSynced(id: Long, hitCount: Int)
+    
+    /**
+     * Mark uploaded anomaly aggregates as synced; hit counts that changed since the upload stay unsynced
+     */
+    @Transaction
+    suspend fun markAggregatesSynced(aggregates: List<AnomalyAggregate>) {
+        for (aggregate in aggregates) markAggregateSynced(aggregate.id, aggregate.hitCount)
+    }
+    
+    /**
+     * Delete synced anomaly aggregates last hit before the given timestamp
+     */
+    @Query("DELETE FROM anomaly_aggregates WHERE last_seen_at < :timestamp AND synced = 1")
+    suspend fun deleteAggregatesOlderThan(timestamp: Long)
+    
+    /**
+     * Delete all anomaly aggregates (for testing/reset purposes)
+     */
+    @Query("DELETE FROM anomaly_aggregates")
+    suspend fun deleteAllAggregates()
 }
\ No newline at end of file
@@ -4,16 +4,21 @@ import androidx.room.Database
 import androidx.room.Room
 import androidx.room.RoomDatabase
 import androidx.room.TypeConverters
+import androidx.room.migration.Migration
+import androidx.sqlite.db.SupportSQLiteDatabase
 import android.content.Context
+import com.roadpulse.android.data.model.AnomalyAggregate
 import com.roadpulse.android.data.model.RoadAnomalyEvent
+import java.util.UUID
 
 /**
  * Room database for RoadPulse application.
  * Stores road anomaly events and related data locally.
  */
 @Database(
-    entities = [RoadAnomalyEvent::class],
-    version = 1,
+    entities = [RoadAnomalyEventRecord::class, DeviceRecord::class, SessionRecord::class, AnomalyAggregate::class],
+    views = [RoadAnomalyEvent::class],
+    version = 5,
     exportSchema = false
 )
 @TypeConverters(DatabaseConverters::class)
@@ -22,7 +27,158 @@ abstract class RoadPulseDatabase : RoomDatabase() {
     abstract fun roadAnomalyDao(): RoadAnomalyDao
     
     companion object {
-        private const val DATABASE_NAME = "roadpulse_database"
+        const val DATABASE_NAME = "roadpulse_database"
+        
+        /**
+         * Version 2: composite indexes for the DAO query patterns
+         */
+        val MIGRATION_1_2 = object : Migration(1, 2) {
+            override fun migrate(db: SupportSQLiteDatabase) {
+                db.execSQL("CREATE INDEX IF NOT EXISTS `index_road_anomaly_events_synced_created_at` ON `road_anomaly_events` (`synced`, `created_at`)")
+                db.execSQL("CREATE INDEX IF NOT EXISTS `index_road_anomaly_events_session_id_created_at` ON `road_anomaly_events` (`session_id`, `created_at`)")
+                db.execSQL("CREATE INDEX IF NOT EXISTS `index_road_anomaly_events_severity_created_at` ON `road_anomaly_events` (`severity`, `created_at`)")
+                db.execSQL("CREATE INDEX IF NOT EXISTS `index_road_anomaly_events_created_at` ON `road_anomaly_events` (`created_at`)")
+            }
+        }
+        
+        /**
+         * Version 3: spatial_cell key for area and nearest-event queries, backfilled from the coordinates
+         */
+        val MIGRATION_2_3 = object : Migration(2, 3) {
+            override fun migrate(db: SupportSQLiteDatabase) {
+                db.execSQL("ALTER TABLE `road_anomaly_events` ADD COLUMN `spatial_cell` INTEGER NOT NULL DEFAULT 0")
+                db.compileStatement("UPDATE road_anomaly_events SET spatial_cell = ? WHERE id = ?").use { update ->
+                    db.query("SELECT id, latitude, longitude FROM road_anomaly_events").use { cursor ->
+                        while (cursor.moveToNext()) {
+                            update.bindLong(1, SpatialIndex.cellOf(cursor.getDouble(1), cursor.getDouble(2)))
+                            update.bindString(2, cursor.getString(0))
+                            update.executeUpdateDelete()
+                        }
+                    }
+                }
+                db.execSQL("CREATE INDEX IF NOT EXISTS `index_road_anomaly_events_spatial_cell` ON `road_anomaly_events` (`spatial_cell`)")
+            }
+        }
+        
+        /**
+         * Version 4: compact rows. Ids become 16-byte BLOBs, and device metadata and session ids
+         * move into dictionary tables. road_anomaly_events becomes a view over the new tables.
+         */
+        val MIGRATION_3_4 = object : Migration(3, 4) {
+            override fun migrate(db: SupportSQLiteDatabase) {
+                db.execSQL("CREATE TABLE IF NOT EXISTS `devices` (`id` INTEGER PRIMARY KEY AUTOINCREMENT NOT NULL, `model` TEXT NOT NULL, `android_version` TEXT NOT NULL)")
+                db.execSQL("CREATE UNIQUE INDEX IF NOT EXISTS `index_devices_model_android_version` ON `devices` (`model`, `android_version`)")
+                db.execSQL("CREATE TABLE IF NOT EXISTS `sessions` (`id` INTEGER PRIMARY KEY AUTOINCREMENT NOT NULL, `uuid` BLOB NOT NULL)")
+                db.execSQL("CREATE UNIQUE INDEX IF NOT EXISTS `index_sessions_uuid` ON `sessions` (`uuid`)")
+                db.execSQL(
+                    "CREATE TABLE IF NOT EXISTS `event_records` (`id` BLOB NOT NULL, `created_at` INTEGER NOT NULL, " +
+                        "`latitude` REAL NOT NULL, `longitude` REAL NOT NULL, `gps_accuracy_m` REAL NOT NULL, " +
+                        "`speed_kmh` REAL NOT NULL, `heading_deg` REAL, `peak_accel_ms2` REAL NOT NULL, " +
+                        "`impulse_duration_ms` INTEGER NOT NULL, `severity` INTEGER NOT NULL, `confidence` REAL NOT NULL, " +
+                        "`device_id` INTEGER NOT NULL, `session_ref` INTEGER NOT NULL, `synced` INTEGER NOT NULL, " +
+                        "`spatial_cell` INTEGER NOT NULL, PRIMARY KEY(`id`))"
+                )
+                
+                db.execSQL(
+                    "INSERT OR IGNORE INTO devices (model, android_version) " +
+                        "SELECT DISTINCT device_model, android_version FROM road_anomaly_events"
+                )
+                
+                // Session and event ids are re-encoded in Kotlin; SQLite on Android has no unhex()
+                val sessionRefs = HashMap<String, Long>()
+                val refsByUuid = HashMap<UUID, Long>()
+                db.compileStatement("INSERT INTO sessions (uuid) VALUES (?)").use { insert ->
+                    db.query("SELECT DISTINCT session_id FROM road_anomaly_events").use { cursor ->
+                        while (cursor.moveToNext()) {
+                            val sessionId = cursor.getString(0)
+                            val uuid = CompactIds.toUuid(CompactIds.encode(sessionId))
+                            sessionRefs[sessionId] = refsByUuid.getOrPut(uuid) {
+                                insert.bindBlob(1, CompactIds.toBytes(uuid))
+                                insert.executeInsert()
+                            }
+                        }
+                    }
+                }
+                
+                db.compileStatement(
+                    "INSERT OR REPLACE INTO event_records VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)"
+                ).use { insert ->
+                    db.query(
+                        "SELECT e.id, e.created_at, e.latitude, e.longitude, e.gps_accuracy_m, e.speed_kmh, " +
+                            "e.heading_deg, e.peak_accel_ms2, e.impulse_duration_ms, e.severity, e.confidence, " +
+                            "d.id, e.session_id, e.synced, e.spatial_cell FROM road_anomaly_events e " +
+                            "JOIN devices d ON d.model = e.device_model AND d.android_version = e.android_version"
+                    ).use { cursor ->
+                        while (cursor.moveToNext()) {
+                            insert.clearBindings()
+                            insert.bindBlob(1, CompactIds.encode(cursor.getString(0)))
+                            insert.bindLong(2, cursor.getLong(1))
+                            for (column in 2..5) {
+                                insert.bindDouble(column + 1, cursor.getDouble(column))
+                            }
+                            if (cursor.isNull(6)) insert.bindNull(7) else insert.bindDouble(7, cursor.getDouble(6))
+                            insert.bindDouble(8, cursor.getDouble(7))
+                            insert.bindLong(9, cursor.getLong(8))
+                            insert.bindLong(10, cursor.getLong(9))
+                            insert.bindDouble(11, cursor.getDouble(10))
+                            insert.bindLong(12, cursor.getLong(11))
+                            insert.bindLong(13, sessionRefs.getValue(cursor.getString(12)))
+                            insert.bindLong(14, cursor.getLong(13))
+                            insert.bindLong(15, cursor.getLong(14))
+                            insert.executeInsert()
+                        }
+                    }
+                }
+                
+                db.execSQL("DROP TABLE road_anomaly_events")
+                db.execSQL("CREATE INDEX IF NOT EXISTS `index_event_records_synced_created_at` ON `event_records` (`synced`, `created_at`)")
+                db.execSQL("CREATE INDEX IF NOT EXISTS `index_event_records_session_ref_created_at` ON `event_records` (`session_ref`, `created_at`)")
+                db.execSQL("CREATE INDEX IF NOT EXISTS `index_event_records_severity_created_at` ON `event_records` (`severity`, `created_at`)")
+                db.execSQL("CREATE INDEX IF NOT EXISTS `index_event_records_created_at` ON `event_records` (`created_at`)")
+                db.execSQL("CREATE INDEX IF NOT EXISTS `index_event_records_spatial_cell` ON `event_records` (`spatial_cell`)")
+                db.execSQL("CREATE VIEW `road_anomaly_events` AS ${RoadAnomalyEvent.VIEW_QUERY}")
+            }
+        }
+        
+        /**
+         * Version 5: per-anomaly aggregates of repeated hits, backfilled from the stored events.
+         * Hits are grouped on a fixed grid of about 10 m inside their spatial cell, so the SQL
+         * does not depend on the aggregator's matching rules. A pothole on a grid line may start
+         * out as two neighbouring aggregates; new hits go to the nearer one. Backfilled aggregates
+         * get random uuids and are uploaded on the next sync.
+         */
+        val MIGRATION_4_5 = object : Migration(4, 5) {
+            override fun migrate(db: SupportSQLiteDatabase) {
+                db.execSQL(
+                    "CREATE TABLE IF NOT EXISTS `anomaly_aggregates` (`id` INTEGER NOT NULL, `latitude` REAL NOT NULL, " +
+                        "`longitude` REAL NOT NULL, `hit_count` INTEGER NOT NULL, `max_severity` INTEGER NOT NULL, " +
+                        "`severity_sum` INTEGER NOT NULL, `first_seen_at` INTEGER NOT NULL, `last_seen_at` INTEGER NOT NULL, " +
+                        "`heading_buckets` INTEGER NOT NULL, `spatial_cell` INTEGER NOT NULL, `uuid` BLOB NOT NULL, " +
+                        "`synced` INTEGER NOT NULL, PRIMARY KEY(`id`))"
+                )
+                db.execSQL("CREATE INDEX IF NOT EXISTS `index_anomaly_aggregates_spatial_cell` ON `anomaly_aggregates` (`spatial_cell`)")
+                db.execSQL("CREATE INDEX IF NOT EXISTS `index_anomaly_aggregates_last_seen_at` ON `anomaly_aggregates` (`last_seen_at`)")
+                db.execSQL("CREATE INDEX IF NOT EXISTS `index_anomaly_aggregates_synced` ON `anomaly_aggregates` (`synced`)")
+                
+                // Saturating 8-bit hit count per 45° heading bucket, bucket 0 centred on north
+                val headingBuckets = (0 until 8).joinToString(" + ") { bucket ->
+                    "(MIN(255, SUM(CASE WHEN CAST((heading_deg + 382.5) / 45.0 AS INTEGER) % 8 = $bucket " +
+                        "THEN 1 ELSE 0 END)) << ${bucket * 8})"
+                }
+                // Ids are assigned by SQLite; the aggregator continues after the highest
+                db.execSQL(
+                    "INSERT INTO anomaly_aggregates (latitude, longitude, hit_count, max_severity, severity_sum, " +
+                        "first_seen_at, last_seen_at, heading_buckets, spatial_cell, uuid, synced) " +
+                        "SELECT AVG(latitude), AVG(longitude), COUNT(*), MAX(severity), SUM(severity), " +
+                        "MIN(created_at), MAX(created_at), $headingBuckets, spatial_cell, randomblob(16), 0 " +
+                        "FROM event_records " +
+                        "GROUP BY spatial_cell, CAST((latitude + 90.0) / 0.00009 AS INTEGER), " +
+                        "CAST((longitude + 180.0) / 0.00009 AS INTEGER)"
+                )
+            }
+        }
+        
+        val ALL_MIGRATIONS = arrayOf(MIGRATION_1_2, MIGRATION_2_3, MIGRATION_3_4, MIGRATION_4_5)
         
         @Volatile
         private var INSTANCE: RoadPulseDatabase? = null
@@ -34,11 +190,11 @@ abstract class RoadPulseDatabase : RoomDatabase() {
                     RoadPulseDatabase::class.java,
                     DATABASE_NAME
                 )
-                .fallbackToDestructiveMigration() // For development - remove in production
+                .addMigrations(*ALL_MIGRATIONS)
                 .build()
                 INSTANCE = instance
                 instance
             }
         }
     }
-}
\ No newline at end of file
+}
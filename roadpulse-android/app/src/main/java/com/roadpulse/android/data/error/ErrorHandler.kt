@@ -11,7 +11,7 @@ import kotlin.math.pow
  * Centralized error handling and recovery strategies for sensor data collection
  */
 @Singleton
-class ErrorHandler @Inject constructor() {
+class ErrorHandler @Inject constructor() : ErrorReporter {
     
     companion object {
         private const val TAG = "ErrorHandler"
@@ -188,7 +188,7 @@ class ErrorHandler @Inject constructor() {
     /**
      * Logs error for debugging and monitoring
      */
-    fun logError(error: Throwable, context: String = "") {
+    override fun logError(error: Throwable, context: String) {
         val contextInfo = if (context.isNotEmpty()) " [$context]" else ""
         Log.e(TAG, "Error$contextInfo: ${error.message}", error)
     }
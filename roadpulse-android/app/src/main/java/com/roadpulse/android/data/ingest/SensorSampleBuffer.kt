@@ -0,0 +1,143 @@
+package com.roadpulse.android.data.ingest
+
+import kotlinx.coroutines.channels.Channel
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * Preallocated ring buffer for raw sensor samples.
+ * The sensor callback thread writes into primitive arrays without allocating, and a single
+ * long-lived consumer drains the samples into the processing pipeline.
+ *
+ * Threading contract: exactly one producer thread calls [offer] and exactly one consumer
+ * calls [drain]/[awaitSamples]. When the buffer is full new samples are dropped and counted.
+ */
+class SensorSampleBuffer(capacity: Int = DEFAULT_CAPACITY) {
+
+    companion object {
+        const val DEFAULT_CAPACITY = 2048 // Fits a 5 second FIFO batch of accel + gyro at 100Hz
+    }
+
+    // Rounded up to a power of two so slots can be addressed with a mask
+    private val slots: Int = Integer.highestOneBit((capacity - 1).coerceAtLeast(1)) shl 1
+
+    @PublishedApi
+    internal val mask = (slots - 1).toLong()
+
+    // Sample columns
+    @PublishedApi internal val sensorTypes = IntArray(slots)
+    @PublishedApi internal val timestamps = LongArray(slots)
+    @PublishedApi internal val xs = FloatArray(slots)
+    @PublishedApi internal val ys = FloatArray(slots)
+    @PublishedApi internal val zs = FloatArray(slots)
+    @PublishedApi internal val accuracies = IntArray(slots)
+
+    // Monotonic write/read positions; publishing through volatile writes orders the array stores
+    @Volatile
+    @PublishedApi
+    internal var writeIndex = 0L
+
+    @Volatile
+    @PublishedApi
+    internal var readIndex = 0L
+
+    // Consumer parking: the producer only signals when the consumer is actually waiting
+    @Volatile
+    private var consumerWaiting = false
+    private val dataSignal = Channel<Unit>(Channel.CONFLATED)
+
+    private val dropped = AtomicLong(0L)
+
+    /**
+     * Writes a sample into the buffer. Called from the sensor callback thread.
+     *
+     * @return true if the sample was stored, false if the buffer was full and the sample dropped
+     */
+    fun offer(sensorType: Int, timestamp: Long, x: Float, y: Float, z: Float, accuracy: Int): Boolean {
+        val write = writeIndex
+        if (write - readIndex >= slots) {
+            dropped.incrementAndGet()
+            return false
+        }
+
+        val slot = (write and mask).toInt()
+        sensorTypes[slot] = sensorType
+        timestamps[slot] = timestamp
+        xs[slot] = x
+        ys[slot] = y
+        zs[slot] = z
+        accuracies[slot] = accuracy
+        writeIndex = write + 1
+
+        if (consumerWaiting) {
+            dataSignal.trySend(Unit)
+        }
+        return true
+    }
+
+    /**
+     * Passes buffered samples to [onSample] in arrival order. The function is inlined so the
+     * consumer can call suspending pipeline code per sample without a callback object.
+     * Each slot is released to the producer as soon as its sample has been handled.
+     *
+     * @param maxSamples Upper bound on samples drained in this call
+     * @return Number of samples drained
+     */
+    inline fun drain(
+        maxSamples: Int = Int.MAX_VALUE,
+        onSample: (sensorType: Int, timestamp: Long, x: Float, y: Float, z: Float, accuracy: Int) -> Unit
+    ): Int {
+        val available = (writeIndex - readIndex).coerceAtMost(maxSamples.toLong()).toInt()
+
+        for (i in 0 until available) {
+            val slot = (readIndex and mask).toInt()
+            val sensorType = sensorTypes[slot]
+            val timestamp = timestamps[slot]
+            val x = xs[slot]
+            val y = ys[slot]
+            val z = zs[slot]
+            val accuracy = accuracies[slot]
+            readIndex++
+            onSample(sensorType, timestamp, x, y, z, accuracy)
+        }
+
+        return available
+    }
+
+    /**
+     * Suspends the consumer until at least one sample is available.
+     */
+    suspend fun awaitSamples() {
+        if (!isEmpty()) return
+
+        consumerWaiting = true
+        try {
+            // Re-check after publishing the waiting flag so a concurrent offer is never missed
+            while (isEmpty()) {
+                dataSignal.receive()
+            }
+        } finally {
+            consumerWaiting = false
+        }
+    }
+
+    fun isEmpty(): Boolean = writeIndex == readIndex
+
+    /**
+     * Number of samples currently waiting to be drained
+     */
+    fun size(): Int = (writeIndex - readIndex).toInt()
+
+    fun capacity(): Int = slots
+
+    /**
+     * Total number of samples dropped because the consumer fell behind
+     */
+    fun droppedCount(): Long = dropped.get()
+
+    /**
+     * Discards all pending samples. Must only be called from the consumer side.
+     */
+    fun clear() {
+        readIndex = writeIndex
+    }
+}
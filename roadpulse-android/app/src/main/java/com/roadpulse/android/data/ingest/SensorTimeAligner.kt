@@ -0,0 +1,211 @@
+package com.roadpulse.android.data.ingest
+
+import android.hardware.Sensor
+
+/**
+ * Resamples the accelerometer and gyroscope streams onto a shared fixed-rate time grid.
+ * Samples keep their hardware timestamps (SensorEvent.timestamp, elapsed realtime nanoseconds)
+ * and each grid point is linearly interpolated between the two samples that surround it in
+ * each stream, so downstream filters see uniformly spaced, time-aligned accel/gyro pairs.
+ *
+ * Not thread safe: owned by the ingest stage. Only [setGridPeriod] may be called from
+ * another thread.
+ */
+class SensorTimeAligner(
+    gridPeriodNs: Long,
+    streamCapacity: Int = DEFAULT_STREAM_CAPACITY
+) {
+
+    companion object {
+        const val DEFAULT_STREAM_CAPACITY = 1024 // 5 seconds of one sensor at 200Hz
+        const val MIN_INTERPOLATION_GAP_NS = 100_000_000L // Never interpolate across a longer gap
+        private const val GRID_UNSET = Long.MIN_VALUE
+    }
+
+    /**
+     * Receives one time-aligned sample per grid point
+     */
+    fun interface AlignedSampleSink {
+        fun onAlignedSample(
+            timestampNs: Long,
+            accelX: Float, accelY: Float, accelZ: Float, accelAccuracy: Int,
+            gyroX: Float, gyroY: Float, gyroZ: Float, gyroAccuracy: Int
+        )
+    }
+
+    private val accel = SampleStream(streamCapacity)
+    private val gyro = SampleStream(streamCapacity)
+
+    @Volatile
+    var gridPeriodNs: Long = gridPeriodNs
+        private set
+
+    private var nextGridNs = GRID_UNSET
+    private var gapsSkipped = 0L
+
+    init {
+        require(gridPeriodNs > 0) { "Grid period must be positive" }
+    }
+
+    /**
+     * Queues a raw sample. Samples of each sensor must arrive in timestamp order, but the
+     * two streams may interleave arbitrarily (e.g. a whole FIFO batch of one sensor first).
+     */
+    fun addSample(sensorType: Int, timestampNs: Long, x: Float, y: Float, z: Float, accuracy: Int) {
+        when (sensorType) {
+            Sensor.TYPE_ACCELEROMETER -> accel.add(timestampNs, x, y, z, accuracy)
+            Sensor.TYPE_GYROSCOPE -> gyro.add(timestampNs, x, y, z, accuracy)
+        }
+    }
+
+    /**
+     * Emits every grid point that both streams now cover and discards samples no longer needed.
+     *
+     * @return Number of aligned samples emitted
+     */
+    fun emitAligned(sink: AlignedSampleSink): Int {
+        var emitted = 0
+
+        while (true) {
+            if (nextGridNs == GRID_UNSET) {
+                if (accel.isEmpty() || gyro.isEmpty()) return emitted
+                nextGridNs = ceilToGrid(maxOf(accel.time(0), gyro.time(0)))
+            }
+
+            val gridNs = nextGridNs
+            val periodNs = gridPeriodNs
+            accel.discardBefore(gridNs)
+            gyro.discardBefore(gridNs)
+            if (!accel.covers(gridNs) || !gyro.covers(gridNs)) return emitted
+
+            // Do not invent data across a sensor dropout; restart the grid after it
+            val maxGapNs = maxOf(MIN_INTERPOLATION_GAP_NS, periodNs * 3)
+            if (accel.gapAfter(gridNs) > maxGapNs || gyro.gapAfter(gridNs) > maxGapNs) {
+                nextGridNs = ceilToGrid(maxOf(accel.resumeTime(), gyro.resumeTime()))
+                gapsSkipped++
+                continue
+            }
+
+            val accelFraction = accel.fractionAt(gridNs)
+            val gyroFraction = gyro.fractionAt(gridNs)
+            sink.onAlignedSample(
+                gridNs,
+                accel.interpolateX(accelFraction), accel.interpolateY(accelFraction),
+                accel.interpolateZ(accelFraction), accel.accuracyAt(gridNs),
+                gyro.interpolateX(gyroFraction), gyro.interpolateY(gyroFraction),
+                gyro.interpolateZ(gyroFraction), gyro.accuracyAt(gridNs)
+            )
+            emitted++
+            nextGridNs = gridNs + periodNs
+        }
+    }
+
+    /**
+     * Changes the output rate; the grid continues from the next pending point
+     */
+    fun setGridPeriod(periodNs: Long) {
+        require(periodNs > 0) { "Grid period must be positive" }
+        gridPeriodNs = periodNs
+    }
+
+    /**
+     * Number of sensor dropouts the grid skipped instead of interpolating across
+     */
+    fun gapsSkipped(): Long = gapsSkipped
+
+    fun reset() {
+        accel.clear()
+        gyro.clear()
+        nextGridNs = GRID_UNSET
+    }
+
+    private fun ceilToGrid(timestampNs: Long): Long {
+        return Math.floorDiv(timestampNs + gridPeriodNs - 1, gridPeriodNs) * gridPeriodNs
+    }
+
+    /**
+     * Pending samples of one sensor in a preallocated ring. When full the oldest sample is
+     * overwritten, which only happens if the other stream has stopped delivering.
+     */
+    private class SampleStream(capacity: Int) {
+        private val times = LongArray(capacity)
+        private val xs = FloatArray(capacity)
+        private val ys = FloatArray(capacity)
+        private val zs = FloatArray(capacity)
+        private val accuracies = IntArray(capacity)
+        private var head = 0
+        var size = 0
+            private set
+
+        fun add(timestampNs: Long, x: Float, y: Float, z: Float, accuracy: Int) {
+            // Out-of-order or duplicate samples cannot be interpolated
+            if (size > 0 && timestampNs <= time(size - 1)) return
+            if (size == times.size) {
+                head = (head + 1) % times.size
+                size--
+            }
+            val slot = (head + size) % times.size
+            times[slot] = timestampNs
+            xs[slot] = x
+            ys[slot] = y
+            zs[slot] = z
+            accuracies[slot] = accuracy
+            size++
+        }
+
+        fun isEmpty(): Boolean = size == 0
+
+        fun time(index: Int): Long = times[slot(index)]
+
+        /**
+         * Drops samples until the first one is the last sample at or before [gridNs]
+         */
+        fun discardBefore(gridNs: Long) {
+            while (size >= 2 && time(1) <= gridNs) {
+                head = (head + 1) % times.size
+                size--
+            }
+        }
+
+        /**
+         * True when [gridNs] lies between the first two samples (or on the first one)
+         */
+        fun covers(gridNs: Long): Boolean {
+            if (size == 0 || time(0) > gridNs) return false
+            return time(0) == gridNs || size >= 2
+        }
+
+        fun gapAfter(gridNs: Long): Long = if (time(0) == gridNs) 0L else time(1) - time(0)
+
+        // First sample after the current grid point
+        fun resumeTime(): Long = time(minOf(1, size - 1))
+
+        fun fractionAt(gridNs: Long): Float {
+            if (time(0) == gridNs) return 0f
+            return ((gridNs - time(0)).toDouble() / (time(1) - time(0))).toFloat()
+        }
+
+        fun interpolateX(fraction: Float): Float = interpolate(xs, fraction)
+        fun interpolateY(fraction: Float): Float = interpolate(ys, fraction)
+        fun interpolateZ(fraction: Float): Float = interpolate(zs, fraction)
+
+        // Report the worse accuracy of the two samples contributing to the grid point
+        fun accuracyAt(gridNs: Long): Int {
+            if (time(0) == gridNs) return accuracies[slot(0)]
+            return minOf(accuracies[slot(0)], accuracies[slot(1)])
+        }
+
+        fun clear() {
+            head = 0
+            size = 0
+        }
+
+        private fun interpolate(values: FloatArray, fraction: Float): Float {
+            val v0 = values[slot(0)]
+            if (fraction == 0f) return v0
+            return v0 + (values[slot(1)] - v0) * fraction
+        }
+
+        private fun slot(index: Int): Int = (head + index) % times.size
+    }
+}
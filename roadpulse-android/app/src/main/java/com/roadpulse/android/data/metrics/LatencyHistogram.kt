@@ -0,0 +1,121 @@
+package com.roadpulse.android.data.metrics
+
+import java.util.concurrent.atomic.AtomicLong
+import java.util.concurrent.atomic.AtomicLongArray
+
+/**
+ * Lock-free latency histogram with fixed log-linear buckets.
+ *
+ * Values are kept in microseconds: exactly below [SUB_BUCKETS], above that every power of two
+ * is split into [SUB_BUCKETS] equal buckets, so a percentile is off by at most 25%.
+ * [record] only touches preallocated atomics and never allocates, so it can be called from
+ * the sensor callback and every pipeline stage. Any number of threads may record and read
+ * concurrently; a snapshot taken while recording is in flight may miss the newest values.
+ */
+class LatencyHistogram {
+
+    companion object {
+        private const val SUB_BUCKET_BITS = 2
+        private const val SUB_BUCKETS = 1 shl SUB_BUCKET_BITS
+        private const val MAX_EXPONENT = 32 // Values above about 2.4 hours land in the last bucket
+        const val BUCKETS = SUB_BUCKETS + (MAX_EXPONENT - SUB_BUCKET_BITS + 1) * SUB_BUCKETS
+
+        /**
+         * Bucket holding a value in microseconds
+         */
+        fun bucketOf(micros: Long): Int {
+            if (micros < SUB_BUCKETS) return micros.coerceAtLeast(0L).toInt()
+            val exponent = minOf(63 - java.lang.Long.numberOfLeadingZeros(micros), MAX_EXPONENT)
+            val shift = exponent - SUB_BUCKET_BITS
+            val subBucket = (minOf(micros ushr shift, (2L * SUB_BUCKETS) - 1) - SUB_BUCKETS).toInt()
+            return SUB_BUCKETS + shift * SUB_BUCKETS + subBucket
+        }
+
+        /**
+         * Largest value in microseconds that falls into [bucket]
+         */
+        fun upperBoundOf(bucket: Int): Long {
+            if (bucket < SUB_BUCKETS) return bucket.toLong()
+            val shift = (bucket - SUB_BUCKETS) / SUB_BUCKETS
+            val subBucket = (bucket - SUB_BUCKETS) % SUB_BUCKETS
+            return ((SUB_BUCKETS + subBucket + 1).toLong() shl shift) - 1
+        }
+    }
+
+    private val counts = AtomicLongArray(BUCKETS)
+    private val count = AtomicLong(0L)
+    private val totalMicros = AtomicLong(0L)
+    private val maxMicros = AtomicLong(0L)
+
+    /**
+     * Records one latency measured with System.nanoTime()
+     */
+    fun record(nanos: Long) {
+        val micros = (nanos / 1_000L).coerceAtLeast(0L)
+        counts.incrementAndGet(bucketOf(micros))
+        count.incrementAndGet()
+        totalMicros.addAndGet(micros)
+
+        var max = maxMicros.get()
+        while (micros > max && !maxMicros.compareAndSet(max, micros)) {
+            max = maxMicros.get()
+        }
+    }
+
+    /**
+     * Records the time elapsed since [startNanos], taken from System.nanoTime()
+     */
+    fun recordSince(startNanos: Long) {
+        record(System.nanoTime() - startNanos)
+    }
+
+    fun count(): Long = count.get()
+
+    /**
+     * Clears all recorded values. Values recorded concurrently may survive the reset.
+     */
+    fun reset() {
+        for (i in 0 until BUCKETS) counts.set(i, 0L)
+        count.set(0L)
+        totalMicros.set(0L)
+        maxMicros.set(0L)
+    }
+
+    /**
+     * Summarizes the recorded values. Allocates; meant for the dashboard and debug export.
+     */
+    fun snapshot(): LatencySnapshot {
+        val buckets = LongArray(BUCKETS) { counts.get(it) }
+        val total = buckets.sum()
+        val max = maxMicros.get()
+        return LatencySnapshot(
+            count = total,
+            meanMicros = if (total > 0) totalMicros.get() / total else 0L,
+            p50Micros = percentile(buckets, total, 0.50, max),
+            p99Micros = percentile(buckets, total, 0.99, max),
+            maxMicros = max
+        )
+    }
+
+    private fun percentile(buckets: LongArray, total: Long, quantile: Double, max: Long): Long {
+        if (total == 0L) return 0L
+        val rank = kotlin.math.ceil(total * quantile).toLong().coerceAtLeast(1L)
+        var seen = 0L
+        for (bucket in buckets.indices) {
+            seen += buckets[bucket]
+            if (seen >= rank) return minOf(upperBoundOf(bucket), max)
+        }
+        return max
+    }
+}
+
+/**
+ * Latency summary in microseconds
+ */
+data class LatencySnapshot(
+    val count: Long,
+    val meanMicros: Long,
+    val p50Micros: Long,
+    val p99Micros: Long,
+    val maxMicros: Long
+)
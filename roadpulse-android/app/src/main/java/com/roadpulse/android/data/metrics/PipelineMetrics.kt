@@ -0,0 +1,216 @@
+package com.roadpulse.android.data.metrics
+
+import com.roadpulse.android.data.pipeline.PipelineStats
+import java.util.concurrent.atomic.AtomicLong
+import javax.inject.Inject
+import javax.inject.Singleton
+
+/**
+ * Counters and per-stage latency histograms for the sensor processing pipeline.
+ *
+ * Shared between the monitoring service and repository, which record, and the controller,
+ * which exposes snapshots to the dashboard and debug export. All recording methods are
+ * lock-free and allocation-free; only [snapshot] allocates.
+ */
+@Singleton
+class PipelineMetrics @Inject constructor() {
+
+    companion object {
+        private const val RATE_WINDOW_NS = 5_000_000_000L
+    }
+
+    /**
+     * Pipeline stages in processing order
+     */
+    enum class Stage {
+        CALLBACK, // Sensor callback copying a reading into the sample buffer
+        PROCESS,  // Filter stage, per sample batch
+        DETECT,   // Detect stage, per candidate batch
+        CLASSIFY, // Classify stage, per detected event
+        PERSIST   // Handing a classified event to the write-behind buffer
+    }
+
+    private val stages = Stage.values()
+    private val stageLatency = Array(stages.size) { LatencyHistogram() }
+    private val dbWriteLatency = LatencyHistogram()
+
+    private val samplesAligned = AtomicLong(0L)
+    private val eventsDetected = AtomicLong(0L)
+    private val eventsClassified = AtomicLong(0L)
+    private val eventsStored = AtomicLong(0L)
+    private val eventsWritten = AtomicLong(0L)
+    private val eventsRolledUp = AtomicLong(0L)
+    private val dbWriteFailures = AtomicLong(0L)
+
+    // Effective sampling rate over a sliding window of the sensor clock, updated by the ingest stage
+    private var rateWindowStartNs = Long.MIN_VALUE
+    private var rateWindowSamples = 0L
+
+    @Volatile
+    private var effectiveSamplingRateHz = 0.0
+
+    // Queue counters are owned by the service; it registers a source while monitoring
+    @Volatile
+    private var queueStatsSource: (() -> List<PipelineStats>)? = null
+
+    fun recordStage(stage: Stage, nanos: Long) {
+        stageLatency[stage.ordinal].record(nanos)
+    }
+
+    /**
+     * Records the time a stage took since [startNanos], taken from System.nanoTime()
+     */
+    fun recordStageSince(stage: Stage, startNanos: Long) {
+        stageLatency[stage.ordinal].recordSince(startNanos)
+    }
+
+    /**
+     * Counts samples leaving the ingest stage. Must only be called from the ingest stage.
+     *
+     * @param lastTimestampNs Sensor timestamp of the newest of the [count] samples
+     */
+    fun recordSamplesAligned(count: Int, lastTimestampNs: Long) {
+        if (count <= 0) return
+        samplesAligned.addAndGet(count.toLong())
+
+        if (rateWindowStartNs == Long.MIN_VALUE || lastTimestampNs < rateWindowStartNs) {
+            // First batch, or the sensor clock restarted: measure from here
+            rateWindowStartNs = lastTimestampNs
+            rateWindowSamples = 0L
+            return
+        }
+        rateWindowSamples += count
+        val elapsedNs = lastTimestampNs - rateWindowStartNs
+        if (elapsedNs >= RATE_WINDOW_NS) {
+            effectiveSamplingRateHz = rateWindowSamples * 1e9 / elapsedNs
+            rateWindowStartNs = lastTimestampNs
+            rateWindowSamples = 0L
+        }
+    }
+
+    fun recordEventDetected() {
+        eventsDetected.incrementAndGet()
+    }
+
+    fun recordEventClassified() {
+        eventsClassified.incrementAndGet()
+    }
+
+    fun recordEventStored() {
+        eventsStored.incrementAndGet()
+    }
+
+    /**
+     * Records one database transaction writing [events] events
+     */
+    fun recordDbWrite(nanos: Long, events: Int) {
+        dbWriteLatency.record(nanos)
+        eventsWritten.addAndGet(events.toLong())
+    }
+
+    fun recordEventRolledUp() {
+        eventsRolledUp.incrementAndGet()
+    }
+
+    fun recordDbWriteFailure() {
+        dbWriteFailures.incrementAndGet()
+    }
+
+    fun eventsDetected(): Long = eventsDetected.get()
+
+    fun eventsClassified(): Long = eventsClassified.get()
+
+    fun eventsStored(): Long = eventsStored.get()
+
+    fun attachQueueStats(source: () -> List<PipelineStats>) {
+        queueStatsSource = source
+    }
+
+    fun detachQueueStats() {
+        queueStatsSource = null
+    }
+
+    /**
+     * Clears all counters and histograms, at the start of a monitoring session
+     */
+    fun reset() {
+        stageLatency.forEach { it.reset() }
+        dbWriteLatency.reset()
+        samplesAligned.set(0L)
+        eventsDetected.set(0L)
+        eventsClassified.set(0L)
+        eventsStored.set(0L)
+        eventsWritten.set(0L)
+        eventsRolledUp.set(0L)
+        dbWriteFailures.set(0L)
+        rateWindowStartNs = Long.MIN_VALUE
+        rateWindowSamples = 0L
+        effectiveSamplingRateHz = 0.0
+    }
+
+    fun snapshot(): PipelineMetricsSnapshot {
+        val queues = queueStatsSource?.invoke() ?: emptyList()
+        return PipelineMetricsSnapshot(
+            stageLatency = stages.associateWith { stageLatency[it.ordinal].snapshot() },
+            dbWriteLatency = dbWriteLatency.snapshot(),
+            queues = queues,
+            samplesAligned = samplesAligned.get(),
+            droppedSamples = queues.firstOrNull { it.stage == PipelineMetricsSnapshot.INGEST_STAGE }?.dropped ?: 0L,
+            eventsDetected = eventsDetected.get(),
+            eventsClassified = eventsClassified.get(),
+            eventsStored = eventsStored.get(),
+            eventsWritten = eventsWritten.get(),
+            eventsRolledUp = eventsRolledUp.get(),
+            dbWriteFailures = dbWriteFailures.get(),
+            effectiveSamplingRateHz = effectiveSamplingRateHz
+        )
+    }
+}
+
+/**
+ * Point-in-time copy of [PipelineMetrics]
+ */
+data class PipelineMetricsSnapshot(
+    val stageLatency: Map<PipelineMetrics.Stage, LatencySnapshot>,
+    val dbWriteLatency: LatencySnapshot,
+    val queues: List<PipelineStats>, // Queue depth, throughput and drops per stage, empty when stopped
+    val samplesAligned: Long,        // Samples handed from ingest to the filter stage
+    val droppedSamples: Long,        // Raw samples lost because the sample buffer was full
+    val eventsDetected: Long,
+    val eventsClassified: Long,
+    val eventsStored: Long,          // Accepted into the write-behind buffer or an anomaly aggregate
+    val eventsWritten: Long,         // Committed to the database
+    val eventsRolledUp: Long,        // Repeat hits kept only in their anomaly aggregate
+    val dbWriteFailures: Long,
+    val effectiveSamplingRateHz: Double
+) {
+    companion object {
+        const val INGEST_STAGE = "ingest"
+    }
+
+    /**
+     * Plain text report for the debug export
+     */
+    fun toReport(): String = buildString {
+        appendLine("stage,count,mean_us,p50_us,p99_us,max_us")
+        stageLatency.forEach { (stage, latency) -> appendLatency(stage.name.lowercase(), latency) }
+        appendLatency("db_write", dbWriteLatency)
+        appendLine()
+        appendLine("queue,depth,capacity,enqueued,processed,dropped")
+        queues.forEach { appendLine("${it.stage},${it.queueDepth},${it.capacity},${it.enqueued},${it.processed},${it.dropped}") }
+        appendLine()
+        appendLine("samples_aligned,$samplesAligned")
+        appendLine("dropped_samples,$droppedSamples")
+        appendLine("effective_sampling_rate_hz,${"%.1f".format(java.util.Locale.US, effectiveSamplingRateHz)}")
+        appendLine("events_detected,$eventsDetected")
+        appendLine("events_classified,$eventsClassified")
+        appendLine("events_stored,$eventsStored")
+        appendLine("events_written,$eventsWritten")
+        appendLine("events_rolled_up,$eventsRolledUp")
+        appendLine("db_write_failures,$dbWriteFailures")
+    }
+
+    private fun StringBuilder.appendLatency(name: String, latency: LatencySnapshot) {
+        appendLine("$name,${latency.count},${latency.meanMicros},${latency.p50Micros},${latency.p99Micros},${latency.maxMicros}")
+    }
+}
@@ -0,0 +1,140 @@
+package com.roadpulse.android.data.pipeline
+
+import kotlinx.coroutines.channels.BufferOverflow
+import kotlinx.coroutines.channels.Channel
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * Bounded hand-off queue between two processing pipeline stages.
+ * Producers never suspend: when the queue is full the overflow policy decides which
+ * element is discarded, and every discarded element is counted.
+ * A single consumer coroutine drains the queue through [consume]; [close] lets it finish
+ * the queued elements and return.
+ */
+class PipelineQueue<T>(
+    val name: String,
+    capacity: Int,
+    val overflowPolicy: OverflowPolicy
+) {
+
+    val capacity: Int = if (overflowPolicy == OverflowPolicy.CONFLATE) 1 else capacity
+
+    private val depth = AtomicInteger(0)
+    private val enqueued = AtomicLong(0L)
+    private val processed = AtomicLong(0L)
+    private val dropped = AtomicLong(0L)
+
+    @Volatile
+    private var channel = newChannel()
+
+    /**
+     * Enqueues an element without suspending, applying the overflow policy when full
+     *
+     * @return false only if the queue has been closed
+     */
+    fun offer(element: T): Boolean {
+        // Count before sending so a concurrent receive never drives the depth negative
+        depth.incrementAndGet()
+        val result = channel.trySend(element)
+        if (result.isSuccess) {
+            enqueued.incrementAndGet()
+            return true
+        }
+        depth.decrementAndGet()
+        if (result.isClosed) return false
+        // Full queue under DROP_LATEST: the offered element is discarded
+        dropped.incrementAndGet()
+        return true
+    }
+
+    /**
+     * Drains the queue in order until it is closed and empty, or the calling coroutine is
+     * cancelled. Must be called from exactly one coroutine.
+     */
+    suspend fun consume(handler: suspend (T) -> Unit) {
+        for (element in channel) {
+            depth.decrementAndGet()
+            handler(element)
+            processed.incrementAndGet()
+        }
+    }
+
+    /**
+     * Stops accepting elements; the consumer still receives everything already queued
+     */
+    fun close() {
+        channel.close()
+    }
+
+    /**
+     * Discards every queued element and restarts the counters, so nothing left over from one
+     * monitoring session reaches the next, and reopens a closed queue. Call only while no
+     * consumer is running.
+     */
+    fun clear() {
+        channel.cancel()
+        channel = newChannel()
+        depth.set(0)
+        enqueued.set(0L)
+        processed.set(0L)
+        dropped.set(0L)
+    }
+
+    fun depth(): Int = depth.get().coerceAtLeast(0)
+
+    fun isEmpty(): Boolean = depth() == 0
+
+    fun droppedCount(): Long = dropped.get()
+
+    private fun newChannel() = Channel<T>(
+        capacity = capacity,
+        // DROP_LATEST is applied in offer() since the channel does not report elements it rejects
+        onBufferOverflow = when (overflowPolicy) {
+            OverflowPolicy.DROP_LATEST -> BufferOverflow.SUSPEND
+            OverflowPolicy.DROP_OLDEST,
+            OverflowPolicy.CONFLATE -> BufferOverflow.DROP_OLDEST
+        },
+        onUndeliveredElement = {
+            depth.decrementAndGet()
+            dropped.incrementAndGet()
+        }
+    )
+
+    /**
+     * Gets a snapshot of this queue's counters
+     */
+    fun stats(): PipelineStats {
+        return PipelineStats(
+            stage = name,
+            queueDepth = depth(),
+            capacity = capacity,
+            overflowPolicy = overflowPolicy,
+            enqueued = enqueued.get(),
+            processed = processed.get(),
+            dropped = dropped.get()
+        )
+    }
+}
+
+/**
+ * What a full pipeline queue does with new elements
+ */
+enum class OverflowPolicy {
+    DROP_OLDEST,  // Discard the oldest queued element to make room
+    DROP_LATEST,  // Discard the element being offered
+    CONFLATE      // Keep only the most recent element
+}
+
+/**
+ * Counters for one pipeline stage
+ */
+data class PipelineStats(
+    val stage: String,
+    val queueDepth: Int,
+    val capacity: Int,
+    val overflowPolicy: OverflowPolicy,
+    val enqueued: Long,
+    val processed: Long,
+    val dropped: Long
+)
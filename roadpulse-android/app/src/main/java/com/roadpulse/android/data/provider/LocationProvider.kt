@@ -4,7 +4,7 @@ import android.Manifest
 import android.content.Context
 import android.content.pm.PackageManager
 import android.location.Location
-import android.os.Looper
+import android.os.HandlerThread
 import androidx.core.app.ActivityCompat
 import com.google.android.gms.location.*
 import com.roadpulse.android.data.error.ErrorHandler
@@ -12,6 +12,7 @@ import com.roadpulse.android.data.error.LocationException
 import com.roadpulse.android.data.error.LocationPermissionDeniedException
 import com.roadpulse.android.data.error.LocationUnavailableException
 import com.roadpulse.android.data.model.LocationData
+import com.roadpulse.android.data.sampling.LocationUpdatePolicy
 import dagger.hilt.android.qualifiers.ApplicationContext
 import kotlinx.coroutines.channels.awaitClose
 import kotlinx.coroutines.flow.Flow
@@ -25,11 +26,16 @@ import javax.inject.Singleton
 /**
  * Manages GPS location services with accuracy monitoring and permission handling.
  * Implements Requirements 3.1, 3.2, 3.3, 3.4, 3.5 for GPS data capture and availability.
+ *
+ * Fixes are delivered on a background thread; the request follows the
+ * [LocationUpdatePolicy.Mode] set through [setUpdateMode]. Every fix is also added to
+ * [LocationHistory] so events can be geotagged at their own timestamp.
  */
 @Singleton
 class LocationProvider @Inject constructor(
     @ApplicationContext private val context: Context,
-    private val errorHandler: ErrorHandler
+    private val errorHandler: ErrorHandler,
+    private val locationHistory: LocationHistory
 ) {
     
     private val fusedLocationClient: FusedLocationProviderClient = 
@@ -42,14 +48,44 @@ class LocationProvider @Inject constructor(
     val isLocationAvailable: StateFlow<Boolean> = _isLocationAvailable.asStateFlow()
     
     private var locationCallback: LocationCallback? = null
+    private var locationThread: HandlerThread? = null
     private var isUpdatesStarted = false
     
-    // Location request configuration
-    private val locationRequest = LocationRequest.Builder(Priority.PRIORITY_HIGH_ACCURACY, 5000L) // 5 second intervals
-        .setWaitForAccurateLocation(false)
-        .setMinUpdateIntervalMillis(1000L) // Minimum 1 second between updates
-        .setMaxUpdateDelayMillis(10000L) // Maximum 10 second delay
-        .build()
+    @Volatile
+    private var updateMode = LocationUpdatePolicy.Mode.URBAN
+    
+    /**
+     * The location request currently in use
+     */
+    fun getUpdateMode(): LocationUpdatePolicy.Mode = updateMode
+    
+    /**
+     * Switches the location request to [mode], replacing the running request if updates are started
+     */
+    @Synchronized
+    fun setUpdateMode(mode: LocationUpdatePolicy.Mode) {
+        if (mode == updateMode) {
+            return
+        }
+        updateMode = mode
+        
+        val callback = locationCallback ?: return
+        val thread = locationThread ?: return
+        try {
+            // Requesting again with the same callback replaces the previous request
+            fusedLocationClient.requestLocationUpdates(buildLocationRequest(mode), callback, thread.looper)
+        } catch (securityException: SecurityException) {
+            errorHandler.logError(
+                LocationPermissionDeniedException(securityException),
+                "Location update mode change"
+            )
+        } catch (e: Exception) {
+            errorHandler.logError(
+                LocationException("Failed to change location update mode", e),
+                "Location update mode change"
+            )
+        }
+    }
     
     /**
      * Gets the current location if available
@@ -79,6 +115,7 @@ class LocationProvider @Inject constructor(
      * Starts location updates with maximum 5-second intervals and comprehensive error handling
      * Requirements 3.1, 3.2, 3.3, 3.4: GPS data capture
      */
+    @Synchronized
     fun startLocationUpdates() {
         if (isUpdatesStarted) {
             return
@@ -105,7 +142,8 @@ class LocationProvider @Inject constructor(
         locationCallback = object : LocationCallback() {
             override fun onLocationResult(locationResult: LocationResult) {
                 try {
-                    locationResult.lastLocation?.let { location ->
+                    // Batched fixes arrive together, oldest first
+                    for (location in locationResult.locations) {
                         updateLocationData(location)
                     }
                 } catch (e: Exception) {
@@ -130,12 +168,14 @@ class LocationProvider @Inject constructor(
             }
         }
         
+        val thread = HandlerThread("LocationUpdates").apply { start() }
         try {
             fusedLocationClient.requestLocationUpdates(
-                locationRequest,
+                buildLocationRequest(updateMode),
                 locationCallback!!,
-                Looper.getMainLooper()
+                thread.looper
             )
+            locationThread = thread
             isUpdatesStarted = true
             _isLocationAvailable.value = true
         } catch (securityException: SecurityException) {
@@ -143,12 +183,16 @@ class LocationProvider @Inject constructor(
                 LocationPermissionDeniedException(securityException),
                 "Location updates request"
             )
+            thread.quitSafely()
+            locationCallback = null
             _isLocationAvailable.value = false
         } catch (e: Exception) {
             errorHandler.logError(
                 LocationException("Failed to start location updates", e),
                 "Location updates start"
             )
+            thread.quitSafely()
+            locationCallback = null
             _isLocationAvailable.value = false
         }
     }
@@ -156,6 +200,7 @@ class LocationProvider @Inject constructor(
     /**
      * Stops location updates to conserve battery with error handling
      */
+    @Synchronized
     fun stopLocationUpdates() {
         try {
             locationCallback?.let { callback ->
@@ -164,6 +209,8 @@ class LocationProvider @Inject constructor(
                 isUpdatesStarted = false
                 _isLocationAvailable.value = false
             }
+            locationThread?.quitSafely()
+            locationThread = null
         } catch (e: Exception) {
             errorHandler.logError(e, "Stop location updates")
         }
@@ -181,9 +228,8 @@ class LocationProvider @Inject constructor(
         
         val callback = object : LocationCallback() {
             override fun onLocationResult(locationResult: LocationResult) {
-                locationResult.lastLocation?.let { location ->
-                    val locationData = convertToLocationData(location)
-                    trySend(locationData)
+                for (location in locationResult.locations) {
+                    trySend(convertToLocationData(location))
                     updateLocationData(location)
                 }
             }
@@ -193,19 +239,22 @@ class LocationProvider @Inject constructor(
             }
         }
         
+        val thread = HandlerThread("LocationUpdatesFlow").apply { start() }
         try {
             fusedLocationClient.requestLocationUpdates(
-                locationRequest,
+                buildLocationRequest(updateMode),
                 callback,
-                Looper.getMainLooper()
+                thread.looper
             )
         } catch (securityException: SecurityException) {
+            thread.quitSafely()
             close()
             return@callbackFlow
         }
         
         awaitClose {
             fusedLocationClient.removeLocationUpdates(callback)
+            thread.quitSafely()
         }
     }
     
@@ -286,8 +335,23 @@ class LocationProvider @Inject constructor(
                locationManager.isProviderEnabled(android.location.LocationManager.NETWORK_PROVIDER)
     }
     
+    private fun buildLocationRequest(mode: LocationUpdatePolicy.Mode): LocationRequest {
+        val priority = when (mode.accuracy) {
+            LocationUpdatePolicy.Accuracy.HIGH -> Priority.PRIORITY_HIGH_ACCURACY
+            LocationUpdatePolicy.Accuracy.BALANCED -> Priority.PRIORITY_BALANCED_POWER_ACCURACY
+            LocationUpdatePolicy.Accuracy.LOW_POWER -> Priority.PRIORITY_LOW_POWER
+        }
+        return LocationRequest.Builder(priority, mode.intervalMs)
+            .setWaitForAccurateLocation(false)
+            .setMinUpdateIntervalMillis(mode.minUpdateIntervalMs)
+            .setMaxUpdateDelayMillis(mode.maxUpdateDelayMs)
+            .build()
+    }
+    
     private fun updateLocationData(location: Location) {
-        _currentLocation.value = convertToLocationData(location)
+        val locationData = convertToLocationData(location)
+        locationHistory.add(location.elapsedRealtimeNanos, locationData)
+        _currentLocation.value = locationData
     }
     
     private fun convertToLocationData(location: Location): LocationData {
@@ -297,7 +361,8 @@ class LocationProvider @Inject constructor(
             accuracy = location.accuracy,
             speed = if (location.hasSpeed()) location.speed else 0.0f,
             bearing = if (location.hasBearing()) location.bearing else 0.0f,
-            timestamp = location.time
+            timestamp = location.time,
+            elapsedRealtimeNanos = location.elapsedRealtimeNanos
         )
     }
 }
@@ -0,0 +1,54 @@
+package com.roadpulse.android.data.repository
+
+import androidx.paging.PagingSource
+import androidx.paging.PagingState
+import com.roadpulse.android.data.model.RoadAnomalyEvent
+
+/**
+ * Keyset position in an event listing: the (created_at, id) of the last event already read.
+ * The id breaks ties between events with the same timestamp.
+ */
+data class EventPageKey(val createdAt: Long, val id: String) {
+    companion object {
+        /**
+         * Start of an oldest-first listing
+         */
+        val OLDEST_FIRST = EventPageKey(Long.MIN_VALUE, "")
+
+        /**
+         * Start of a newest-first listing
+         */
+        val NEWEST_FIRST = EventPageKey(Long.MAX_VALUE, "")
+
+        fun of(event: RoadAnomalyEvent) = EventPageKey(event.createdAt, event.id)
+    }
+}
+
+/**
+ * Paging 3 source over one keyset-paged DAO query.
+ * Each page seeks from the previous page's last key, so the cost of a page does not grow
+ * with how far the listing has been scrolled and only loaded pages are held in memory.
+ */
+class EventPagingSource(
+    private val firstKey: EventPageKey,
+    private val loadPage: suspend (key: EventPageKey, limit: Int) -> List<RoadAnomalyEvent>
+) : PagingSource<EventPageKey, RoadAnomalyEvent>() {
+
+    override suspend fun load(params: LoadParams<EventPageKey>): LoadResult<EventPageKey, RoadAnomalyEvent> {
+        return try {
+            val events = loadPage(params.key ?: firstKey, params.loadSize)
+            LoadResult.Page(
+                data = events,
+                prevKey = null, // Listings are append-only from their first key
+                nextKey = if (events.size < params.loadSize) null else EventPageKey.of(events.last())
+            )
+        } catch (e: Exception) {
+            LoadResult.Error(e)
+        }
+    }
+
+    /**
+     * Refresh from the start; keyset pages cannot be addressed by position
+     */
+    override fun getRefreshKey(state: PagingState<EventPageKey, RoadAnomalyEvent>): EventPageKey? = null
+}
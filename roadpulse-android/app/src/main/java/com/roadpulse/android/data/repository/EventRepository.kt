@@ -1,38 +1,98 @@
 package com.roadpulse.android.data.repository
 
+import androidx.paging.Pager
+import androidx.paging.PagingConfig
+import androidx.paging.PagingData
+import com.roadpulse.android.data.aggregation.AnomalyAggregator
+import com.roadpulse.android.data.config.SensorMonitorConfig
 import com.roadpulse.android.data.database.RoadAnomalyDao
 import com.roadpulse.android.data.error.ErrorHandler
 import com.roadpulse.android.data.error.DatabaseCorruptionException
 import com.roadpulse.android.data.error.StorageException
 import com.roadpulse.android.data.error.StorageFullException
+import com.roadpulse.android.data.metrics.PipelineMetrics
+import com.roadpulse.android.data.model.AnomalyAggregate
 import com.roadpulse.android.data.model.RoadAnomalyEvent
 import com.roadpulse.android.data.session.SessionManager
 import com.roadpulse.android.di.IoDispatcher
 import kotlinx.coroutines.CoroutineDispatcher
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.Job
+import kotlinx.coroutines.SupervisorJob
+import kotlinx.coroutines.delay
 import kotlinx.coroutines.flow.Flow
+import kotlinx.coroutines.flow.flow
+import kotlinx.coroutines.flow.flowOn
+import kotlinx.coroutines.launch
+import kotlinx.coroutines.sync.Mutex
+import kotlinx.coroutines.sync.withLock
 import kotlinx.coroutines.withContext
 import java.time.Instant
 import java.time.temporal.ChronoUnit
+import java.util.concurrent.atomic.AtomicInteger
 import javax.inject.Inject
 import javax.inject.Singleton
 
 /**
  * Repository for managing road anomaly events.
  * Provides a clean API for data access and handles business logic.
+ *
+ * Detected events are written behind: [bufferEventIfSessionActive] collects them in memory
+ * and [flushPendingEvents] writes each batch with a single insertEventsAndAggregates transaction once
+ * the batch reaches [FLUSH_BATCH_SIZE] events or [FLUSH_MAX_AGE_MS] age.
+ *
+ * Buffered events also update [aggregator], which folds repeated hits on the same spot into
+ * one aggregate per anomaly. Once an anomaly is confirmed, repeat hits are kept only in its
+ * aggregate, so regular routes stop adding raw rows. Changed aggregates go out with the
+ * next flush and are uploaded with the events by the sync engine. The rollup threshold is
+ * read from [config] for every hit, so settings changes apply from the next event.
  */
 @Singleton
 class EventRepository @Inject constructor(
     private val roadAnomalyDao: RoadAnomalyDao,
     private val sessionManager: SessionManager,
     private val errorHandler: ErrorHandler,
-    @IoDispatcher private val ioDispatcher: CoroutineDispatcher
+    @IoDispatcher private val ioDispatcher: CoroutineDispatcher,
+    private val metrics: PipelineMetrics = PipelineMetrics(),
+    private val aggregator: AnomalyAggregator = AnomalyAggregator(AnomalyAggregator.NEVER_ROLL_UP),
+    private val config: SensorMonitorConfig = SensorMonitorConfig()
 ) {
     
     companion object {
         private const val MAX_EVENTS = 10000
         private const val RETENTION_DAYS = 30
+        
+        // Write-behind group commit limits
+        private const val FLUSH_BATCH_SIZE = 20
+        private const val FLUSH_MAX_AGE_MS = 10_000L
+        private const val MAX_PENDING_EVENTS = 500 // Bound on events kept while the database is failing
+        
+        private const val EVENT_COUNT_UNKNOWN = -1
+        
+        // Keyset-paged reads
+        const val DEFAULT_PAGE_SIZE = 50
+        const val DEFAULT_BATCH_SIZE = 200
+        
+        // SQLITE_MAX_VARIABLE_NUMBER is 999 before SQLite 3.32, which older Android versions ship
+        private const val MAX_BOUND_IDS = 500
     }
     
+    private val writeScope = CoroutineScope(SupervisorJob() + ioDispatcher)
+    private val pendingMutex = Mutex()
+    private var pendingEvents = ArrayList<RoadAnomalyEvent>(FLUSH_BATCH_SIZE)
+    private var flushTimerJob: Job? = null
+    
+    // Serializes flushes so batches reach the database in order
+    private val flushMutex = Mutex()
+    
+    // Cached row count so capacity checks do not run COUNT(*) for every write
+    private val cachedEventCount = AtomicInteger(EVENT_COUNT_UNKNOWN)
+    
+    // The aggregator is filled from the database before the first event is recorded
+    private val aggregateLoadMutex = Mutex()
+    @Volatile
+    private var aggregatesLoaded = false
+    
     /**
      * Save a new road anomaly event to the database with comprehensive error handling
      */
@@ -40,12 +100,13 @@ class EventRepository @Inject constructor(
         errorHandler.executeWithRetry(
             operation = {
                 // Check if we need to cleanup old events first
-                val currentCount = roadAnomalyDao.getEventCount()
-                if (currentCount >= MAX_EVENTS) {
-                    cleanupOldEventsInternal()
-                }
+                ensureCapacity(1)
                 
-                roadAnomalyDao.insertEvent(event)
+                val startNs = System.nanoTime()
+                val rowId = roadAnomalyDao.insertEvent(event)
+                metrics.recordDbWrite(System.nanoTime() - startNs, 1)
+                cachedEventCount.incrementAndGet()
+                rowId
             },
             onError = { exception, attempt ->
                 when (exception) {
@@ -64,7 +125,8 @@ class EventRepository @Inject constructor(
     }
     
     /**
-     * Get all unsynced events for synchronization with error handling
+     * Get all unsynced events for synchronization with error handling.
+     * Loads every unsynced row at once; prefer [unsyncedEventBatches] for bulk work.
      */
     suspend fun getUnsyncedEvents(): List<RoadAnomalyEvent> = withContext(ioDispatcher) {
         errorHandler.executeWithRetry(
@@ -79,7 +141,7 @@ class EventRepository @Inject constructor(
     }
     
     /**
-     * Get events by session ID
+     * Get events by session ID; prefer [pagedEventsBySession] for large sessions
      */
     suspend fun getEventsBySession(sessionId: String): List<RoadAnomalyEvent> = withContext(ioDispatcher) {
         roadAnomalyDao.getEventsBySession(sessionId)
@@ -93,10 +155,12 @@ class EventRepository @Inject constructor(
     }
     
     /**
-     * Mark multiple events as synced
+     * Mark multiple events as synced, in chunks that stay under SQLite's bound-variable limit
      */
     suspend fun markEventsSynced(eventIds: List<String>) = withContext(ioDispatcher) {
-        roadAnomalyDao.markEventsSynced(eventIds)
+        for (chunk in eventIds.chunked(MAX_BOUND_IDS)) {
+            roadAnomalyDao.markEventsSynced(chunk)
+        }
     }
     
     /**
@@ -134,33 +198,170 @@ class EventRepository @Inject constructor(
         val cutoffTime = Instant.now().minus(retentionDays.toLong(), ChronoUnit.DAYS).toEpochMilli()
         roadAnomalyDao.deleteEventsOlderThan(cutoffTime)
         
+        // Anomalies not hit within the retention window are dropped too, so the aggregator has room for new ones;
+        // their rows stay until the final totals are uploaded
+        aggregator.evictOlderThan(cutoffTime)
+        roadAnomalyDao.deleteAggregatesOlderThan(cutoffTime)
+        
         // If still over limit, delete oldest synced events
         val currentCount = roadAnomalyDao.getEventCount()
         if (currentCount >= MAX_EVENTS) {
             val eventsToDelete = currentCount - (MAX_EVENTS * 0.8).toInt() // Keep 80% of max
             roadAnomalyDao.deleteOldestSyncedEvents(eventsToDelete)
         }
+        
+        // Deletions change the row count; re-read it once rather than tracking each delete
+        cachedEventCount.set(roadAnomalyDao.getEventCount())
     }
     
     /**
-     * Get events within a time range
+     * Runs cleanup if inserting [incoming] rows would exceed the storage limit.
+     * Uses the cached row count, reading it from the database only the first time.
+     */
+    private suspend fun ensureCapacity(incoming: Int) {
+        var count = cachedEventCount.get()
+        if (count == EVENT_COUNT_UNKNOWN) {
+            count = roadAnomalyDao.getEventCount()
+            cachedEventCount.set(count)
+        }
+        if (count + incoming > MAX_EVENTS) {
+            cleanupOldEventsInternal()
+        }
+    }
+    
+    /**
+     * Get events within a time range; prefer [pagedEventsByTimeRange] or [eventBatchesByTimeRange]
      */
     suspend fun getEventsByTimeRange(startTime: Long, endTime: Long): List<RoadAnomalyEvent> = withContext(ioDispatcher) {
         roadAnomalyDao.getEventsByTimeRange(startTime, endTime)
     }
     
     /**
-     * Get events with minimum severity level
+     * Get events with minimum severity level; prefer [pagedEventsBySeverity]
      */
     suspend fun getEventsBySeverity(minSeverity: Int): List<RoadAnomalyEvent> = withContext(ioDispatcher) {
         roadAnomalyDao.getEventsBySeverity(minSeverity)
     }
     
     /**
-     * Delete all events (for testing/reset purposes)
+     * Unsynced events, oldest first, in batches of at most [batchSize].
+     * Only one batch is held at a time, so memory stays flat however many events are stored.
+     * Events marked synced while collecting are not revisited, as the key only moves forward.
+     */
+    fun unsyncedEventBatches(batchSize: Int = DEFAULT_BATCH_SIZE): Flow<List<RoadAnomalyEvent>> =
+        keysetBatches(EventPageKey.OLDEST_FIRST, batchSize) { key, limit ->
+            roadAnomalyDao.getUnsyncedEventsAfter(key.createdAt, key.id, limit)
+        }
+    
+    /**
+     * Events in a time range, oldest first, in batches of at most [batchSize]
+     */
+    fun eventBatchesByTimeRange(
+        startTime: Long,
+        endTime: Long,
+        batchSize: Int = DEFAULT_BATCH_SIZE
+    ): Flow<List<RoadAnomalyEvent>> =
+        keysetBatches(EventPageKey.OLDEST_FIRST, batchSize) { key, limit ->
+            roadAnomalyDao.getEventsByTimeRangeAfter(startTime, endTime, key.createdAt, key.id, limit)
+        }
+    
+    /**
+     * Paged events for a session, oldest first
+     */
+    fun pagedEventsBySession(sessionId: String, pageSize: Int = DEFAULT_PAGE_SIZE): Flow<PagingData<RoadAnomalyEvent>> =
+        pager(EventPageKey.OLDEST_FIRST, pageSize) { key, limit ->
+            roadAnomalyDao.getEventsBySessionAfter(sessionId, key.createdAt, key.id, limit)
+        }
+    
+    /**
+     * Paged events in a time range, oldest first
+     */
+    fun pagedEventsByTimeRange(
+        startTime: Long,
+        endTime: Long,
+        pageSize: Int = DEFAULT_PAGE_SIZE
+    ): Flow<PagingData<RoadAnomalyEvent>> =
+        pager(EventPageKey.OLDEST_FIRST, pageSize) { key, limit ->
+            roadAnomalyDao.getEventsByTimeRangeAfter(startTime, endTime, key.createdAt, key.id, limit)
+        }
+    
+    /**
+     * Paged events with minimum severity level, newest first
+     */
+    fun pagedEventsBySeverity(minSeverity: Int, pageSize: Int = DEFAULT_PAGE_SIZE): Flow<PagingData<RoadAnomalyEvent>> =
+        pager(EventPageKey.NEWEST_FIRST, pageSize) { key, limit ->
+            roadAnomalyDao.getEventsBySeverityBefore(minSeverity, key.createdAt, key.id, limit)
+        }
+    
+    private fun pager(
+        firstKey: EventPageKey,
+        pageSize: Int,
+        loadPage: suspend (EventPageKey, Int) -> List<RoadAnomalyEvent>
+    ): Flow<PagingData<RoadAnomalyEvent>> {
+        return Pager(
+            config = PagingConfig(pageSize = pageSize, enablePlaceholders = false),
+            pagingSourceFactory = {
+                EventPagingSource(firstKey) { key, limit -> withContext(ioDispatcher) { loadPage(key, limit) } }
+            }
+        ).flow
+    }
+    
+    private fun keysetBatches(
+        firstKey: EventPageKey,
+        batchSize: Int,
+        loadPage: suspend (EventPageKey, Int) -> List<RoadAnomalyEvent>
+    ): Flow<List<RoadAnomalyEvent>> = flow {
+        var key = firstKey
+        while (true) {
+            val batch = loadPage(key, batchSize)
+            if (batch.isEmpty()) break
+            emit(batch)
+            if (batch.size < batchSize) break
+            key = EventPageKey.of(batch.last())
+        }
+    }.flowOn(ioDispatcher)
+    
+    /**
+     * Per-anomaly totals of repeated hits, including ones not yet flushed
+     */
+    suspend fun getAnomalyAggregates(): List<AnomalyAggregate> = withContext(ioDispatcher) {
+        flushPendingEvents()
+        roadAnomalyDao.getAllAggregates()
+    }
+    
+    /**
+     * Anomaly aggregates changed since their last upload, in batches of at most [batchSize]
+     */
+    fun unsyncedAggregateBatches(batchSize: Int = DEFAULT_BATCH_SIZE): Flow<List<AnomalyAggregate>> = flow {
+        var afterId = 0L
+        while (true) {
+            val batch = roadAnomalyDao.getUnsyncedAggregatesAfter(afterId, batchSize)
+            if (batch.isEmpty()) break
+            emit(batch)
+            if (batch.size < batchSize) break
+            afterId = batch.last().id
+        }
+    }.flowOn(ioDispatcher)
+    
+    /**
+     * Mark uploaded anomaly aggregates as synced; ones hit again since they were read stay unsynced
+     */
+    suspend fun markAggregatesSynced(aggregates: List<AnomalyAggregate>) = withContext(ioDispatcher) {
+        roadAnomalyDao.markAggregatesSynced(aggregates)
+    }
+    
+    /**
+     * Delete all events and anomaly aggregates (for testing/reset purposes)
      */
     suspend fun deleteAllEvents() = withContext(ioDispatcher) {
+        pendingMutex.withLock { pendingEvents.clear() }
+        aggregateLoadMutex.withLock {
+            aggregator.clear()
+            roadAnomalyDao.deleteAllAggregates()
+            aggregatesLoaded = true
+        }
         roadAnomalyDao.deleteAllEvents()
+        cachedEventCount.set(0)
     }
     
     /**
@@ -244,4 +445,182 @@ class EventRepository @Inject constructor(
             null
         }
     }
-}
\ No newline at end of file
+    
+    /**
+     * Queue an event for the next group commit, only if there is an active session.
+     * The batch is flushed by the caller once it is full, otherwise by a timer once the
+     * oldest pending event reaches the age limit. A repeat hit on a confirmed anomaly only
+     * updates its aggregate.
+     * 
+     * @return true if the event was accepted for storage
+     */
+    suspend fun bufferEventIfSessionActive(event: RoadAnomalyEvent): Boolean {
+        val sessionId = sessionManager.getCurrentSessionId() ?: return false
+        
+        // Update session activity since we're processing an event
+        sessionManager.updateActivity()
+        
+        if (ensureAggregatesLoaded()) {
+            aggregator.rollupAfterHits = config.aggregateRollupHits
+            if (!aggregator.record(event)) {
+                metrics.recordEventRolledUp()
+                pendingMutex.withLock { scheduleFlush() }
+                return true
+            }
+        }
+        
+        val eventWithSession = event.copy(sessionId = sessionId)
+        val batchFull = pendingMutex.withLock {
+            if (pendingEvents.size >= MAX_PENDING_EVENTS) {
+                // Database writes are failing; keep the newest events
+                pendingEvents.removeAt(0)
+            }
+            pendingEvents.add(eventWithSession)
+            
+            if (pendingEvents.size == 1) {
+                scheduleFlush()
+            }
+            pendingEvents.size >= FLUSH_BATCH_SIZE
+        }
+        
+        if (batchFull) {
+            flushPendingEvents()
+        }
+        return true
+    }
+    
+    /**
+     * Write all pending events in one transaction.
+     * Called when a batch fills up or ages out, and on service stop and memory pressure so
+     * buffered events are durable before the process can be killed.
+     * 
+     * @return Number of events written
+     */
+    suspend fun flushPendingEvents(): Int = withContext(ioDispatcher) {
+        flushMutex.withLock {
+            val batch = pendingMutex.withLock {
+                flushTimerJob?.cancel()
+                flushTimerJob = null
+                if (pendingEvents.isEmpty()) return@withLock emptyList<RoadAnomalyEvent>()
+                val events = pendingEvents
+                pendingEvents = ArrayList(FLUSH_BATCH_SIZE)
+                events
+            }
+            val aggregates = aggregator.takeDirty()
+            if (batch.isEmpty() && aggregates.isEmpty()) return@withLock 0
+            
+            try {
+                insertBatch(batch, aggregates)
+                batch.size
+            } catch (e: StorageFullException) {
+                // Try cleanup and retry once
+                cleanupOldEvents()
+                try {
+                    insertBatch(batch, aggregates)
+                    batch.size
+                } catch (retryError: Exception) {
+                    retainFailedBatch(batch, aggregates, retryError)
+                }
+            } catch (e: Exception) {
+                retainFailedBatch(batch, aggregates, e)
+            }
+        }
+    }
+    
+    /**
+     * Number of events waiting for the next group commit
+     */
+    suspend fun getPendingEventCount(): Int = pendingMutex.withLock { pendingEvents.size }
+    
+    private suspend fun insertBatch(batch: List<RoadAnomalyEvent>, aggregates: List<AnomalyAggregate>) {
+        errorHandler.executeWithRetry(
+            operation = {
+                if (batch.isNotEmpty()) {
+                    ensureCapacity(batch.size)
+                }
+                val startNs = System.nanoTime()
+                roadAnomalyDao.insertEventsAndAggregates(batch, aggregates)
+                if (batch.isNotEmpty()) {
+                    metrics.recordDbWrite(System.nanoTime() - startNs, batch.size)
+                    cachedEventCount.addAndGet(batch.size)
+                }
+            },
+            onError = { exception, attempt ->
+                when (exception) {
+                    is android.database.sqlite.SQLiteFullException -> {
+                        throw StorageFullException(exception)
+                    }
+                    is android.database.sqlite.SQLiteDatabaseCorruptException -> {
+                        throw DatabaseCorruptionException(exception)
+                    }
+                    else -> {
+                        errorHandler.logError(exception, "Flush events attempt $attempt")
+                    }
+                }
+            }
+        ).getOrThrow()
+    }
+    
+    /**
+     * Put a batch that could not be written back in front of the pending events, and its
+     * aggregates back in the aggregator, so the next flush retries them
+     */
+    private suspend fun retainFailedBatch(
+        batch: List<RoadAnomalyEvent>,
+        aggregates: List<AnomalyAggregate>,
+        error: Exception
+    ): Int {
+        errorHandler.logError(error, "Flush pending events")
+        metrics.recordDbWriteFailure()
+        if (error is DatabaseCorruptionException) return 0
+        
+        aggregator.restoreDirty(aggregates)
+        pendingMutex.withLock {
+            val retained = ArrayList<RoadAnomalyEvent>(batch.size + pendingEvents.size)
+            retained.addAll(batch)
+            retained.addAll(pendingEvents)
+            pendingEvents = if (retained.size > MAX_PENDING_EVENTS) {
+                ArrayList(retained.subList(retained.size - MAX_PENDING_EVENTS, retained.size))
+            } else {
+                retained
+            }
+            scheduleFlush()
+        }
+        return 0
+    }
+    
+    /**
+     * Fills the aggregator from the database once; the upgrade that added aggregates backfills
+     * them from the stored events. While the aggregates cannot be read, events are stored
+     * without aggregation rather than restarting the anomaly ids.
+     * 
+     * @return Whether the aggregator is ready
+     */
+    private suspend fun ensureAggregatesLoaded(): Boolean {
+        if (aggregatesLoaded) return true
+        return aggregateLoadMutex.withLock {
+            if (!aggregatesLoaded) {
+                try {
+                    aggregator.load(withContext(ioDispatcher) { roadAnomalyDao.getAllAggregates() })
+                    aggregatesLoaded = true
+                } catch (e: Exception) {
+                    errorHandler.logError(e, "Load anomaly aggregates")
+                }
+            }
+            aggregatesLoaded
+        }
+    }
+    
+    /**
+     * Flush once the oldest pending event reaches the age limit. Caller holds pendingMutex.
+     */
+    private fun scheduleFlush() {
+        if (flushTimerJob?.isActive == true) return
+        flushTimerJob = writeScope.launch {
+            delay(FLUSH_MAX_AGE_MS)
+            // Detach first so the flush does not cancel the timer running it
+            pendingMutex.withLock { flushTimerJob = null }
+            flushPendingEvents()
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package com.roadpulse.android.data.sync
+
+import com.roadpulse.android.data.model.AnomalyAggregate
+import com.roadpulse.android.data.model.RoadAnomalyEvent
+import java.io.ByteArrayOutputStream
+import java.util.zip.GZIPOutputStream
+
+/**
+ * Packs events and anomaly aggregates into size-bounded upload batches in [EventWireFormat],
+ * gzip-compressed. A batch closes once adding the next item could exceed [maxEvents] items
+ * or [maxBytes] of encoded data, so request sizes stay bounded however many are pending.
+ */
+class EventBatchBuilder(
+    private val maxEvents: Int = DEFAULT_MAX_EVENTS,
+    private val maxBytes: Int = DEFAULT_MAX_BYTES
+) {
+    
+    companion object {
+        const val DEFAULT_MAX_EVENTS = 500
+        const val DEFAULT_MAX_BYTES = 256 * 1024
+        const val CONTENT_TYPE = EventWireFormat.CONTENT_TYPE
+        const val CONTENT_ENCODING = "gzip"
+    }
+    
+    /**
+     * A closed batch ready for upload
+     */
+    class Batch(
+        val events: List<RoadAnomalyEvent>,
+        val aggregates: List<AnomalyAggregate>,
+        val payload: ByteArray,
+        val uncompressedBytes: Int
+    ) {
+        val eventIds: List<String> get() = events.map { it.id }
+        
+        val size: Int get() = events.size + aggregates.size
+    }
+    
+    private val events = ArrayList<RoadAnomalyEvent>(maxEvents)
+    private val aggregates = ArrayList<AnomalyAggregate>()
+    private var estimatedBytes = 0
+    
+    val size: Int get() = events.size + aggregates.size
+    
+    fun isEmpty(): Boolean = size == 0
+    
+    /**
+     * Adds [event] unless it would overflow the batch; an empty batch always accepts one event
+     * @return false if the batch is full and must be built first
+     */
+    fun tryAdd(event: RoadAnomalyEvent): Boolean {
+        // Upper bound, so the encoded batch never exceeds maxBytes
+        val eventBytes = EventWireFormat.maxEncodedSize(event)
+        if (!fits(eventBytes)) return false
+        events.add(event)
+        estimatedBytes += eventBytes
+        return true
+    }
+    
+    /**
+     * Adds [aggregate] unless it would overflow the batch; an empty batch always accepts one
+     * @return false if the batch is full and must be built first
+     */
+    fun tryAdd(aggregate: AnomalyAggregate): Boolean {
+        if (!fits(EventWireFormat.MAX_AGGREGATE_BYTES)) return false
+        aggregates.add(aggregate)
+        estimatedBytes += EventWireFormat.MAX_AGGREGATE_BYTES
+        return true
+    }
+    
+    private fun fits(itemBytes: Int): Boolean =
+        isEmpty() || (size < maxEvents && estimatedBytes + itemBytes <= maxBytes)
+    
+    /**
+     * Closes and compresses the current batch, then starts a new one
+     */
+    fun build(): Batch {
+        val batch = pack(ArrayList(events), ArrayList(aggregates))
+        
+        events.clear()
+        aggregates.clear()
+        estimatedBytes = 0
+        return batch
+    }
+    
+    /**
+     * Encodes and compresses [events] and [aggregates] as one batch, e.g. to resend part of a rejected one
+     */
+    fun pack(events: List<RoadAnomalyEvent>, aggregates: List<AnomalyAggregate> = emptyList()): Batch {
+        val encoded = EventWireFormat.encode(events, aggregates)
+        
+        val compressed = ByteArrayOutputStream(encoded.size / 2 + 32)
+        GZIPOutputStream(compressed).use { it.write(encoded) }
+        return Batch(events, aggregates, compressed.toByteArray(), encoded.size)
+    }
+}
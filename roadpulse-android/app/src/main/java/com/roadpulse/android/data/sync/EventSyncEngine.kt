@@ -0,0 +1,149 @@
+package com.roadpulse.android.data.sync
+
+import com.roadpulse.android.data.error.ErrorHandler
+import com.roadpulse.android.data.repository.EventRepository
+import kotlinx.coroutines.flow.collect
+import kotlinx.coroutines.flow.takeWhile
+import javax.inject.Inject
+import javax.inject.Singleton
+
+/**
+ * Uploads unsynced events and anomaly aggregates in bounded batches.
+ * Unsynced rows are read by keyset in pages and packed into compressed batches, events first
+ * and then the aggregates whose totals changed, which carry the hits rolled up without a raw
+ * row. Each batch is marked synced as soon as the backend accepts it, so an interrupted run
+ * resumes with the first batch that was not acknowledged.
+ *
+ * A batch refused for its content is split in halves and resent until the refused rows are
+ * isolated. Those are marked synced without being stored by the backend and counted as
+ * skipped, so one malformed row cannot hold back every later upload.
+ */
+@Singleton
+class EventSyncEngine @Inject constructor(
+    private val eventRepository: EventRepository,
+    private val uploader: EventUploader,
+    private val errorHandler: ErrorHandler
+) {
+    
+    companion object {
+        private const val PAGE_SIZE = 200
+        
+        // Statuses that blame the payload; others, such as 401 or 404, are not cured by resending less
+        private val PAYLOAD_REJECTED_STATUSES = setOf(400, 413, 422)
+    }
+    
+    /**
+     * Result of one sync pass
+     */
+    sealed class SyncResult {
+        abstract val uploadedEvents: Int
+        
+        data class Completed(
+            override val uploadedEvents: Int,
+            val skippedEvents: Int = 0,
+            val uploadedAggregates: Int = 0,
+            val skippedAggregates: Int = 0
+        ) : SyncResult()
+        data class Retry(override val uploadedEvents: Int, val cause: Exception) : SyncResult()
+        data class Failed(override val uploadedEvents: Int, val statusCode: Int) : SyncResult()
+        data class Disabled(override val uploadedEvents: Int = 0) : SyncResult()
+    }
+    
+    /**
+     * Upload every unsynced event, then every changed anomaly aggregate
+     * @param onProgress Called with the running total after each accepted batch
+     */
+    suspend fun syncPending(
+        batchBuilder: EventBatchBuilder = EventBatchBuilder(),
+        onProgress: suspend (uploadedEvents: Int) -> Unit = {}
+    ): SyncResult {
+        // Buffered events are written first so they are part of this pass
+        eventRepository.flushPendingEvents()
+        
+        var uploaded = 0
+        var skipped = 0
+        var uploadedAggregates = 0
+        var skippedAggregates = 0
+        var outcome: SyncResult? = null
+        
+        suspend fun send(batch: EventBatchBuilder.Batch): Boolean {
+            when (val result = uploader.upload(batch.payload, batch.events.size)) {
+                is UploadResult.Accepted -> {
+                    if (batch.events.isNotEmpty()) eventRepository.markEventsSynced(batch.eventIds)
+                    if (batch.aggregates.isNotEmpty()) eventRepository.markAggregatesSynced(batch.aggregates)
+                    uploaded += batch.events.size
+                    uploadedAggregates += batch.aggregates.size
+                    onProgress(uploaded)
+                    return true
+                }
+                is UploadResult.Retryable -> {
+                    errorHandler.logError(result.cause, "Event upload")
+                    outcome = SyncResult.Retry(uploaded, result.cause)
+                }
+                is UploadResult.Rejected -> {
+                    if (result.statusCode in PAYLOAD_REJECTED_STATUSES) {
+                        if (batch.size > 1) {
+                            val eventSplit = minOf(batch.size / 2, batch.events.size)
+                            val aggregateSplit = batch.size / 2 - eventSplit
+                            return send(batchBuilder.pack(
+                                batch.events.subList(0, eventSplit),
+                                batch.aggregates.subList(0, aggregateSplit)
+                            )) && send(batchBuilder.pack(
+                                batch.events.subList(eventSplit, batch.events.size),
+                                batch.aggregates.subList(aggregateSplit, batch.aggregates.size)
+                            ))
+                        }
+                        if (batch.events.isNotEmpty()) {
+                            errorHandler.logError(
+                                Exception("Event ${batch.events[0].id} rejected with HTTP ${result.statusCode}; skipped"),
+                                "Event upload"
+                            )
+                            eventRepository.markEventsSynced(batch.eventIds)
+                            skipped++
+                        } else {
+                            errorHandler.logError(
+                                Exception("Aggregate ${batch.aggregates[0].uuid} rejected with HTTP ${result.statusCode}; skipped"),
+                                "Event upload"
+                            )
+                            eventRepository.markAggregatesSynced(batch.aggregates)
+                            skippedAggregates++
+                        }
+                        return true
+                    }
+                    errorHandler.logError(Exception("Upload rejected with HTTP ${result.statusCode}"), "Event upload")
+                    outcome = SyncResult.Failed(uploaded, result.statusCode)
+                }
+                is UploadResult.Disabled -> outcome = SyncResult.Disabled(uploaded)
+            }
+            return false
+        }
+        
+        eventRepository.unsyncedEventBatches(PAGE_SIZE).takeWhile { page ->
+            for (event in page) {
+                if (!batchBuilder.tryAdd(event)) {
+                    if (!send(batchBuilder.build())) return@takeWhile false
+                    batchBuilder.tryAdd(event)
+                }
+            }
+            true
+        }.collect()
+        
+        // Aggregates fill up the last event batch and follow in batches of their own
+        if (outcome == null) {
+            eventRepository.unsyncedAggregateBatches(PAGE_SIZE).takeWhile { page ->
+                for (aggregate in page) {
+                    if (!batchBuilder.tryAdd(aggregate)) {
+                        if (!send(batchBuilder.build())) return@takeWhile false
+                        batchBuilder.tryAdd(aggregate)
+                    }
+                }
+                true
+            }.collect()
+        }
+        
+        if (outcome == null && !batchBuilder.isEmpty()) {
+            send(batchBuilder.build())
+        }
+        return outcome ?: SyncResult.Completed(uploaded, skipped, uploadedAggregates, skippedAggregates)
+    }
+}
@@ -0,0 +1,87 @@
+package com.roadpulse.android.data.sync
+
+import android.content.Context
+import androidx.hilt.work.HiltWorker
+import androidx.work.BackoffPolicy
+import androidx.work.Constraints
+import androidx.work.CoroutineWorker
+import androidx.work.ExistingPeriodicWorkPolicy
+import androidx.work.ExistingWorkPolicy
+import androidx.work.NetworkType
+import androidx.work.OneTimeWorkRequestBuilder
+import androidx.work.PeriodicWorkRequestBuilder
+import androidx.work.WorkManager
+import androidx.work.WorkerParameters
+import androidx.work.workDataOf
+import dagger.assisted.Assisted
+import dagger.assisted.AssistedInject
+import java.util.concurrent.TimeUnit
+
+/**
+ * Background upload of unsynced events.
+ * Runs only with a network connection and battery not low. Transient failures are retried
+ * by WorkManager with exponential backoff; progress is kept in the synced flags, so each
+ * attempt continues where the last one stopped.
+ */
+@HiltWorker
+class EventSyncWorker @AssistedInject constructor(
+    @Assisted context: Context,
+    @Assisted params: WorkerParameters,
+    private val syncEngine: EventSyncEngine
+) : CoroutineWorker(context, params) {
+    
+    companion object {
+        const val KEY_UPLOADED_EVENTS = "uploaded_events"
+        
+        private const val PERIODIC_WORK_NAME = "event_sync_periodic"
+        private const val ONE_TIME_WORK_NAME = "event_sync_now"
+        private const val SYNC_INTERVAL_HOURS = 6L
+        private const val BACKOFF_DELAY_SECONDS = 30L
+        private const val MAX_ATTEMPTS = 10
+        
+        private val constraints = Constraints.Builder()
+            .setRequiredNetworkType(NetworkType.CONNECTED)
+            .setRequiresBatteryNotLow(true)
+            .build()
+        
+        /**
+         * Schedule the periodic sync; keeps an existing schedule
+         */
+        fun schedulePeriodic(context: Context) {
+            val request = PeriodicWorkRequestBuilder<EventSyncWorker>(SYNC_INTERVAL_HOURS, TimeUnit.HOURS)
+                .setConstraints(constraints)
+                .setBackoffCriteria(BackoffPolicy.EXPONENTIAL, BACKOFF_DELAY_SECONDS, TimeUnit.SECONDS)
+                .build()
+            WorkManager.getInstance(context)
+                .enqueueUniquePeriodicWork(PERIODIC_WORK_NAME, ExistingPeriodicWorkPolicy.KEEP, request)
+        }
+        
+        /**
+         * Request a sync as soon as constraints allow, e.g. when a session ends
+         */
+        fun requestSync(context: Context) {
+            val request = OneTimeWorkRequestBuilder<EventSyncWorker>()
+                .setConstraints(constraints)
+                .setBackoffCriteria(BackoffPolicy.EXPONENTIAL, BACKOFF_DELAY_SECONDS, TimeUnit.SECONDS)
+                .build()
+            WorkManager.getInstance(context)
+                .enqueueUniqueWork(ONE_TIME_WORK_NAME, ExistingWorkPolicy.KEEP, request)
+        }
+    }
+    
+    override suspend fun doWork(): Result {
+        val result = syncEngine.syncPending { uploaded ->
+            setProgress(workDataOf(KEY_UPLOADED_EVENTS to uploaded))
+        }
+        val output = workDataOf(KEY_UPLOADED_EVENTS to result.uploadedEvents)
+        
+        return when (result) {
+            is EventSyncEngine.SyncResult.Completed,
+            is EventSyncEngine.SyncResult.Disabled -> Result.success(output)
+            is EventSyncEngine.SyncResult.Retry -> {
+                if (runAttemptCount + 1 < MAX_ATTEMPTS) Result.retry() else Result.failure(output)
+            }
+            is EventSyncEngine.SyncResult.Failed -> Result.failure(output)
+        }
+    }
+}
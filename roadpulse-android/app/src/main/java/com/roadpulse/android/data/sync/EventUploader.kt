@@ -0,0 +1,30 @@
+package com.roadpulse.android.data.sync
+
+/**
+ * Sends one encoded batch of events to the backend
+ */
+interface EventUploader {
+    
+    /**
+     * @param payload Encoded, compressed batch
+     * @param eventCount Number of events in the batch
+     */
+    suspend fun upload(payload: ByteArray, eventCount: Int): UploadResult
+}
+
+/**
+ * Outcome of a batch upload
+ */
+sealed class UploadResult {
+    /** The backend stored the batch */
+    object Accepted : UploadResult()
+    
+    /** Transient failure (network, timeout, 5xx, 429); retry later */
+    data class Retryable(val cause: Exception) : UploadResult()
+    
+    /** The backend refused the batch; retrying it unchanged will not help */
+    data class Rejected(val statusCode: Int) : UploadResult()
+    
+    /** No backend configured for this build */
+    object Disabled : UploadResult()
+}
@@ -0,0 +1,52 @@
+package com.roadpulse.android.data.sync
+
+import kotlinx.coroutines.CoroutineDispatcher
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.withContext
+import java.io.IOException
+import java.net.HttpURLConnection
+import java.net.URL
+
+/**
+ * Uploads batches with an HTTP POST to [endpoint]. An empty endpoint disables uploads.
+ */
+class HttpEventUploader(
+    private val endpoint: String,
+    private val ioDispatcher: CoroutineDispatcher = Dispatchers.IO
+) : EventUploader {
+    
+    companion object {
+        private const val CONNECT_TIMEOUT_MS = 15_000
+        private const val READ_TIMEOUT_MS = 30_000
+        const val HEADER_EVENT_COUNT = "X-Event-Count"
+    }
+    
+    override suspend fun upload(payload: ByteArray, eventCount: Int): UploadResult = withContext(ioDispatcher) {
+        if (endpoint.isBlank()) return@withContext UploadResult.Disabled
+        
+        var connection: HttpURLConnection? = null
+        try {
+            connection = (URL(endpoint).openConnection() as HttpURLConnection).apply {
+                requestMethod = "POST"
+                connectTimeout = CONNECT_TIMEOUT_MS
+                readTimeout = READ_TIMEOUT_MS
+                doOutput = true
+                setFixedLengthStreamingMode(payload.size)
+                setRequestProperty("Content-Type", EventBatchBuilder.CONTENT_TYPE)
+                setRequestProperty("Content-Encoding", EventBatchBuilder.CONTENT_ENCODING)
+                setRequestProperty(HEADER_EVENT_COUNT, eventCount.toString())
+            }
+            connection.outputStream.use { it.write(payload) }
+            
+            when (val status = connection.responseCode) {
+                in 200..299 -> UploadResult.Accepted
+                408, 429, in 500..599 -> UploadResult.Retryable(IOException("HTTP $status"))
+                else -> UploadResult.Rejected(status)
+            }
+        } catch (e: IOException) {
+            UploadResult.Retryable(e)
+        } finally {
+            connection?.disconnect()
+        }
+    }
+}
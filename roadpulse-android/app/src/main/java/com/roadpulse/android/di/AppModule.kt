@@ -1,7 +1,17 @@
 package com.roadpulse.android.di
 
 import android.content.Context
+import com.roadpulse.android.BuildConfig
+import com.roadpulse.android.data.aggregation.AnomalyAggregator
 import com.roadpulse.android.data.config.SensorMonitorConfig
+import com.roadpulse.android.data.error.ErrorHandler
+import com.roadpulse.android.data.error.ErrorReporter
+import com.roadpulse.android.data.provider.InertialNavigator
+import com.roadpulse.android.data.provider.LocationSource
+import com.roadpulse.android.data.session.SessionManager
+import com.roadpulse.android.data.sync.EventUploader
+import com.roadpulse.android.data.sync.HttpEventUploader
+import com.roadpulse.android.data.time.Clock
 import dagger.Module
 import dagger.Provides
 import dagger.hilt.InstallIn
@@ -31,9 +41,34 @@ object AppModule {
     @DefaultDispatcher
     fun provideDefaultDispatcher(): CoroutineDispatcher = Dispatchers.Default
     
+    @Provides
+    @Singleton
+    fun provideClock(): Clock = Clock.SYSTEM
+    
+    @Provides
+    @Singleton
+    fun provideSessionManager(@IoDispatcher ioDispatcher: CoroutineDispatcher, clock: Clock): SessionManager =
+        SessionManager(ioDispatcher, clock)
+    
+    @Provides
+    fun provideErrorReporter(errorHandler: ErrorHandler): ErrorReporter = errorHandler
+    
+    @Provides
+    fun provideLocationSource(inertialNavigator: InertialNavigator): LocationSource = inertialNavigator
+    
     @Provides
     @Singleton
     fun provideSensorMonitorConfig(): SensorMonitorConfig = SensorMonitorConfig()
+    
+    @Provides
+    @Singleton
+    fun provideAnomalyAggregator(): AnomalyAggregator =
+        AnomalyAggregator(AnomalyAggregator.NEVER_ROLL_UP) // EventRepository applies the configured threshold
+    
+    @Provides
+    @Singleton
+    fun provideEventUploader(@IoDispatcher ioDispatcher: CoroutineDispatcher): EventUploader =
+        HttpEventUploader(BuildConfig.SYNC_ENDPOINT, ioDispatcher)
 }
 
 /**
@@ -26,9 +26,9 @@ object DatabaseModule {
         return Room.databaseBuilder(
             context.applicationContext,
             RoadPulseDatabase::class.java,
-            "roadpulse_database"
+            RoadPulseDatabase.DATABASE_NAME
         )
-        .fallbackToDestructiveMigration() // For development - remove in production
+        .addMigrations(*RoadPulseDatabase.ALL_MIGRATIONS)
         .build()
     }
     
@@ -2,9 +2,14 @@ package com.roadpulse.android.service
 
 import android.content.Context
 import android.content.Intent
+import androidx.paging.PagingData
 import com.roadpulse.android.data.config.ConfigSnapshot
 import com.roadpulse.android.data.config.SensorMonitorConfig
+import com.roadpulse.android.data.metrics.PipelineMetrics
+import com.roadpulse.android.data.metrics.PipelineMetricsSnapshot
+import com.roadpulse.android.data.model.RoadAnomalyEvent
 import com.roadpulse.android.data.repository.EventRepository
+import com.roadpulse.android.data.trace.SensorTraceRecorder
 import com.roadpulse.android.di.IoDispatcher
 import dagger.hilt.android.qualifiers.ApplicationContext
 import kotlinx.coroutines.CoroutineDispatcher
@@ -15,6 +20,7 @@ import kotlinx.coroutines.flow.StateFlow
 import kotlinx.coroutines.flow.asStateFlow
 import kotlinx.coroutines.launch
 import kotlinx.coroutines.withContext
+import java.io.File
 import javax.inject.Inject
 import javax.inject.Singleton
 
@@ -27,6 +33,7 @@ class SensorMonitorController @Inject constructor(
     @ApplicationContext private val context: Context,
     private val config: SensorMonitorConfig,
     private val eventRepository: EventRepository,
+    private val pipelineMetrics: PipelineMetrics,
     @IoDispatcher private val ioDispatcher: CoroutineDispatcher
 ) {
     
@@ -152,10 +159,22 @@ class SensorMonitorController @Inject constructor(
             unsyncedEventCount = unsyncedCount,
             currentSessionId = currentSessionId,
             hasActiveSession = hasActiveSession,
-            serviceState = _serviceState.value
+            serviceState = _serviceState.value,
+            eventsDetected = pipelineMetrics.eventsDetected().toInt(),
+            eventsClassified = pipelineMetrics.eventsClassified().toInt(),
+            eventsStored = pipelineMetrics.eventsStored().toInt()
         )
     }
     
+    /**
+     * Get per-stage latencies, queue depths, drops and the effective sampling rate.
+     * Cheap enough to poll from the dashboard; [PipelineMetricsSnapshot.toReport] gives
+     * the text form for a debug export.
+     */
+    fun getPipelineMetrics(): PipelineMetricsSnapshot {
+        return pipelineMetrics.snapshot()
+    }
+    
     /**
      * Observe unsynced event count
      */
@@ -202,25 +221,29 @@ class SensorMonitorController @Inject constructor(
     }
     
     /**
-     * Get events by session
+     * Raw sensor trace segments kept around detected events, oldest first, for export
      */
-    suspend fun getEventsBySession(sessionId: String) = withContext(ioDispatcher) {
-        eventRepository.getEventsBySession(sessionId)
+    suspend fun getPinnedTraceSegments(): List<File> = withContext(ioDispatcher) {
+        SensorTraceRecorder.pinnedSegments(File(context.filesDir, SensorTraceRecorder.TRACE_DIRECTORY))
     }
     
     /**
-     * Get events by severity level
+     * Get events by session, one page at a time
      */
-    suspend fun getEventsBySeverity(minSeverity: Int) = withContext(ioDispatcher) {
-        eventRepository.getEventsBySeverity(minSeverity)
-    }
+    fun getEventsBySession(sessionId: String): Flow<PagingData<RoadAnomalyEvent>> =
+        eventRepository.pagedEventsBySession(sessionId)
     
     /**
-     * Get events within time range
+     * Get events by severity level, newest first, one page at a time
      */
-    suspend fun getEventsByTimeRange(startTime: Long, endTime: Long) = withContext(ioDispatcher) {
-        eventRepository.getEventsByTimeRange(startTime, endTime)
-    }
+    fun getEventsBySeverity(minSeverity: Int): Flow<PagingData<RoadAnomalyEvent>> =
+        eventRepository.pagedEventsBySeverity(minSeverity)
+    
+    /**
+     * Get events within time range, one page at a time
+     */
+    fun getEventsByTimeRange(startTime: Long, endTime: Long): Flow<PagingData<RoadAnomalyEvent>> =
+        eventRepository.pagedEventsByTimeRange(startTime, endTime)
     
     /**
      * Check if the service is currently running
@@ -15,6 +15,7 @@ import android.os.BatteryManager
 import android.os.Build
 import android.os.IBinder
 import android.os.PowerManager
+import android.os.SystemClock
 import androidx.core.app.NotificationCompat
 import com.roadpulse.android.MainActivity
 import com.roadpulse.android.R
@@ -22,20 +23,32 @@ import com.roadpulse.android.data.detector.EventDetector
 import com.roadpulse.android.data.classifier.EventClassifier
 import com.roadpulse.android.data.repository.EventRepository
 import com.roadpulse.android.data.model.AccelerometerData
+import com.roadpulse.android.data.model.DetectedEvent
 import com.roadpulse.android.data.model.GyroscopeData
 import com.roadpulse.android.data.model.SensorData
 import com.roadpulse.android.data.model.RoadAnomalyEvent
-import com.roadpulse.android.data.processor.MotionState
 import com.roadpulse.android.data.processor.SensorDataProcessor
+import com.roadpulse.android.data.provider.InertialNavigator
 import com.roadpulse.android.data.provider.LocationProvider
 import com.roadpulse.android.data.session.SessionManager
+import com.roadpulse.android.data.sync.EventSyncWorker
 import com.roadpulse.android.data.error.ErrorHandler
 import com.roadpulse.android.data.error.ErrorRecoveryResult
 import com.roadpulse.android.data.error.SensorDataException
 import com.roadpulse.android.data.error.SensorUnavailableException
 import com.roadpulse.android.data.error.SensorPermissionDeniedException
 import com.roadpulse.android.data.error.SensorCalibrationException
+import com.roadpulse.android.data.ingest.SensorSampleBuffer
+import com.roadpulse.android.data.ingest.SensorTimeAligner
+import com.roadpulse.android.data.metrics.PipelineMetrics
+import com.roadpulse.android.data.metrics.PipelineMetricsSnapshot
 import com.roadpulse.android.data.monitor.SystemResourceMonitor
+import com.roadpulse.android.data.sampling.AdaptiveSamplingController
+import com.roadpulse.android.data.sampling.LocationUpdatePolicy
+import com.roadpulse.android.data.trace.SensorTraceRecorder
+import com.roadpulse.android.data.pipeline.OverflowPolicy
+import com.roadpulse.android.data.pipeline.PipelineQueue
+import com.roadpulse.android.data.pipeline.PipelineStats
 import com.roadpulse.android.data.config.SensorMonitorConfig
 import com.roadpulse.android.service.ServiceState
 import com.roadpulse.android.di.DefaultDispatcher
@@ -43,13 +56,23 @@ import com.roadpulse.android.di.IoDispatcher
 import dagger.hilt.android.AndroidEntryPoint
 import kotlinx.coroutines.CoroutineDispatcher
 import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.ExperimentalCoroutinesApi
 import kotlinx.coroutines.Job
+import kotlinx.coroutines.NonCancellable
+import kotlinx.coroutines.cancelAndJoin
+import kotlinx.coroutines.currentCoroutineContext
 import kotlinx.coroutines.delay
 import kotlinx.coroutines.flow.combine
+import kotlinx.coroutines.isActive
 import kotlinx.coroutines.launch
 import kotlinx.coroutines.sync.Mutex
 import kotlinx.coroutines.sync.withLock
+import kotlinx.coroutines.withContext
+import kotlinx.coroutines.withTimeoutOrNull
+import java.io.File
+import java.io.IOException
 import javax.inject.Inject
+import kotlin.math.roundToInt
 
 /**
  * Foreground service for continuous sensor monitoring.
@@ -69,7 +92,7 @@ class SensorMonitorService : Service(), SensorEventListener {
         private const val CHANNEL_NAME = "Sensor Monitoring"
         
         // Sampling rates in microseconds - now using config
-        private const val DEFAULT_NORMAL_SAMPLING_RATE = 20_000 // 50Hz (1/50 * 1,000,000)
+        private const val DEFAULT_NORMAL_SAMPLING_RATE = 40_000 // 25Hz (1/25 * 1,000,000)
         private const val DEFAULT_REDUCED_SAMPLING_RATE = 100_000 // 10Hz (1/10 * 1,000,000)
         
         // Battery thresholds - now using config
@@ -79,6 +102,21 @@ class SensorMonitorService : Service(), SensorEventListener {
         // Motion detection timing - now using config
         private const val DEFAULT_STATIONARY_TIMEOUT_MS = 10 * 60 * 1000L // 10 minutes
         private const val DEFAULT_SAMPLING_RATE_TRANSITION_DELAY_MS = 2000L // 2 seconds
+        
+        // How often the adaptive sampling controller re-evaluates the rate
+        private const val ADAPTIVE_SAMPLING_INTERVAL_MS = 5_000L
+        private const val SPEED_MAX_AGE_MS = 10_000L
+        
+        // Batching - let a FIFO flush finish arriving before processing it as one batch
+        private const val BATCH_SETTLE_DELAY_MS = 20L
+        private const val BATCH_PROCESSING_WAKE_LOCK_TIMEOUT_MS = 10_000L
+        
+        // Pipeline queue capacities
+        private const val SAMPLE_BATCH_QUEUE_CAPACITY = 16
+        private const val EVENT_QUEUE_CAPACITY = 64
+        
+        // Longest a stop waits for the stages to finish their queued work
+        private const val PIPELINE_DRAIN_TIMEOUT_MS = 5_000L
     }
     
     @Inject
@@ -96,6 +134,9 @@ class SensorMonitorService : Service(), SensorEventListener {
     @Inject
     lateinit var locationProvider: LocationProvider
     
+    @Inject
+    lateinit var inertialNavigator: InertialNavigator
+    
     @Inject
     lateinit var sessionManager: SessionManager
     
@@ -111,6 +152,9 @@ class SensorMonitorService : Service(), SensorEventListener {
     @Inject
     lateinit var controller: SensorMonitorController
     
+    @Inject
+    lateinit var pipelineMetrics: PipelineMetrics
+    
     @Inject
     @IoDispatcher
     lateinit var ioDispatcher: CoroutineDispatcher
@@ -129,35 +173,76 @@ class SensorMonitorService : Service(), SensorEventListener {
     private var accelerometer: Sensor? = null
     private var gyroscope: Sensor? = null
     
+    // Wake-up variants used for FIFO batching, so the hub can wake the CPU when a batch is due
+    private var wakeUpAccelerometer: Sensor? = null
+    private var wakeUpGyroscope: Sensor? = null
+    private var isBatchingActive = false
+    
     // Service state
     private val stateMutex = Mutex()
     private var isMonitoring = false
     private var isPaused = false
-    private var currentSamplingRate = DEFAULT_NORMAL_SAMPLING_RATE
+    private var currentSamplingRate = DEFAULT_NORMAL_SAMPLING_RATE // Pipeline grid period in microseconds
+    private var sensorSamplingRate = DEFAULT_NORMAL_SAMPLING_RATE  // Period the sensors are registered at
     private var isDegradedMode = false
     private var lastErrorTime = 0L
     private var consecutiveErrors = 0
     
-    // Coroutine management
-    private val serviceScope = CoroutineScope(ioDispatcher)
+    // Coroutine management (lazy because the dispatchers are injected after construction)
+    private val serviceScope by lazy { CoroutineScope(ioDispatcher) }
     private var monitoringJob: Job? = null
     private var batteryMonitoringJob: Job? = null
     private var adaptiveSamplingJob: Job? = null
     private var resourceMonitoringJob: Job? = null
     private var errorRecoveryJob: Job? = null
     
+    // Staged processing pipeline: ingest -> filter -> detect -> classify -> persist.
+    // Each stage runs on its own serial dispatcher so stage state is never touched concurrently,
+    // and stages hand work on through bounded queues that never block the producer.
+    private val filterQueue = PipelineQueue<List<SensorData>>("filter", SAMPLE_BATCH_QUEUE_CAPACITY, OverflowPolicy.DROP_OLDEST)
+    private val detectQueue = PipelineQueue<List<SensorData>>("detect", SAMPLE_BATCH_QUEUE_CAPACITY, OverflowPolicy.DROP_OLDEST)
+    private val classifyQueue = PipelineQueue<DetectedEvent>("classify", EVENT_QUEUE_CAPACITY, OverflowPolicy.DROP_OLDEST)
+    private val persistQueue = PipelineQueue<RoadAnomalyEvent>("persist", EVENT_QUEUE_CAPACITY, OverflowPolicy.DROP_OLDEST)
+    private val pipelineJobs = mutableListOf<Job>()
+    
+    @OptIn(ExperimentalCoroutinesApi::class)
+    private val ingestDispatcher by lazy { defaultDispatcher.limitedParallelism(1) }
+    @OptIn(ExperimentalCoroutinesApi::class)
+    private val filterDispatcher by lazy { defaultDispatcher.limitedParallelism(1) }
+    @OptIn(ExperimentalCoroutinesApi::class)
+    private val detectDispatcher by lazy { defaultDispatcher.limitedParallelism(1) }
+    @OptIn(ExperimentalCoroutinesApi::class)
+    private val classifyDispatcher by lazy { defaultDispatcher.limitedParallelism(1) }
+    @OptIn(ExperimentalCoroutinesApi::class)
+    private val persistDispatcher by lazy { ioDispatcher.limitedParallelism(1) }
+    
     // Wake lock for background operation
     private var wakeLock: PowerManager.WakeLock? = null
     
-    // Latest sensor data
-    private var latestAccelerometerData: AccelerometerData? = null
-    private var latestGyroscopeData: GyroscopeData? = null
-    private var lastSensorDataTimestamp = 0L
+    // Short wake lock held only while a delivered batch is processed
+    private var batchWakeLock: PowerManager.WakeLock? = null
+    
+    // Raw samples written by the sensor callback and drained by the consumer job
+    private val sampleBuffer = SensorSampleBuffer()
+    
+    // Resamples accel/gyro onto a common grid at the current sampling rate
+    private val timeAligner = SensorTimeAligner(gridPeriodNs = DEFAULT_NORMAL_SAMPLING_RATE * 1_000L)
     
-    // Event processing statistics
-    private var eventsDetected = 0
-    private var eventsClassified = 0
-    private var eventsStored = 0
+    // Optional raw trace of the aligned stream, written by the ingest stage and pinned by the detect stage
+    @Volatile
+    private var traceRecorder: SensorTraceRecorder? = null
+    
+    // Batch being assembled by the ingest stage; ownership passes to the filter stage
+    private var pendingBatch = ArrayList<SensorData>()
+    
+    // Picks the sampling rate while monitoring; detector hits feed its roughness estimate
+    @Volatile
+    private var samplingController: AdaptiveSamplingController? = null
+    
+    // Picks the location request from the same signals
+    private val locationPolicy = LocationUpdatePolicy()
+    
+    // Event counts and stage latencies live in pipelineMetrics
     private var lastStatsUpdateTime = 0L
     
     override fun onCreate() {
@@ -181,6 +266,10 @@ class SensorMonitorService : Service(), SensorEventListener {
                 PowerManager.PARTIAL_WAKE_LOCK,
                 "RoadPulse::SensorMonitoring"
             )
+            batchWakeLock = powerManager.newWakeLock(
+                PowerManager.PARTIAL_WAKE_LOCK,
+                "RoadPulse::BatchProcessing"
+            ).apply { setReferenceCounted(false) }
         } catch (e: Exception) {
             errorHandler.logError(e, "Service onCreate")
             // Continue with degraded functionality
@@ -206,7 +295,15 @@ class SensorMonitorService : Service(), SensorEventListener {
     override fun onDestroy() {
         super.onDestroy()
         stopMonitoring()
-        wakeLock?.release()
+        releaseWakeLock()
+    }
+    
+    override fun onTrimMemory(level: Int) {
+        super.onTrimMemory(level)
+        // Buffered events only live in memory; persist them before the process can be killed
+        serviceScope.launch {
+            eventRepository.flushPendingEvents()
+        }
     }
     
     /**
@@ -236,6 +333,14 @@ class SensorMonitorService : Service(), SensorEventListener {
         } catch (e: Exception) {
             errorHandler.logError(e, "Gyroscope initialization")
         }
+        
+        // Wake-up variants are optional; without them batching falls back to the wake lock
+        try {
+            wakeUpAccelerometer = sensorManager.getDefaultSensor(Sensor.TYPE_ACCELEROMETER, true)
+            wakeUpGyroscope = sensorManager.getDefaultSensor(Sensor.TYPE_GYROSCOPE, true)
+        } catch (e: Exception) {
+            errorHandler.logError(e, "Wake-up sensor initialization")
+        }
     }
     
     /**
@@ -253,18 +358,19 @@ class SensorMonitorService : Service(), SensorEventListener {
                     // Start foreground service with notification
                     startForeground(NOTIFICATION_ID, createNotification("Starting sensor monitoring..."))
                     
-                    // Acquire wake lock
-                    wakeLock?.acquire()
-                    
                     // Start session
                     val sessionId = sessionManager.startSession()
                     
                     // Reset event processing statistics for new session
                     resetEventProcessingStats()
+                    resetSamplingRate()
                     
                     // Register sensor listeners with error handling
                     registerSensorListenersWithErrorHandling()
                     
+                    // Acquire wake lock unless the sensor hub can wake us for each batch
+                    updateWakeLock()
+                    
                     // Start location provider with error handling
                     startLocationProviderWithErrorHandling()
                     
@@ -299,20 +405,27 @@ class SensorMonitorService : Service(), SensorEventListener {
             stateMutex.withLock {
                 if (!isMonitoring) return@withLock
                 
+                // Stop new samples and fixes coming in
+                unregisterSensorListeners()
+                locationProvider.stopLocationUpdates()
+                
                 // Stop monitoring jobs
                 stopMonitoringJobs()
                 
-                // Unregister sensor listeners
-                unregisterSensorListeners()
+                // Let every stage finish the samples and events it already holds
+                drainPipeline()
                 
-                // Stop location provider
-                locationProvider.stopLocationUpdates()
+                // Write buffered events while their session is still known
+                eventRepository.flushPendingEvents()
                 
                 // End session
                 sessionManager.endSession()
                 
+                // Upload the finished session once network and battery allow
+                EventSyncWorker.requestSync(applicationContext)
+                
                 // Release wake lock
-                wakeLock?.release()
+                releaseWakeLock()
                 
                 isMonitoring = false
                 isPaused = false
@@ -360,6 +473,7 @@ class SensorMonitorService : Service(), SensorEventListener {
                 
                 // Re-register sensor listeners
                 registerSensorListeners()
+                updateWakeLock()
                 locationProvider.startLocationUpdates()
                 
                 // Start new session
@@ -377,18 +491,64 @@ class SensorMonitorService : Service(), SensorEventListener {
     }
     
     /**
-     * Register sensor listeners with current sampling rate
+     * Register sensor listeners with current sampling rate.
+     * When batching is enabled and the sensor has a hardware FIFO, samples are queued in the
+     * sensor hub for up to the configured report latency and delivered in bursts.
      */
     private fun registerSensorListeners() {
-        accelerometer?.let { sensor ->
-            sensorManager.registerListener(this, sensor, currentSamplingRate)
+        isBatchingActive = shouldUseBatching()
+        
+        batchingSensor(accelerometer, wakeUpAccelerometer)?.let { sensor ->
+            sensorManager.registerListener(this, sensor, sensorSamplingRate, reportLatencyFor(sensor))
         }
         
-        gyroscope?.let { sensor ->
-            sensorManager.registerListener(this, sensor, currentSamplingRate)
+        batchingSensor(gyroscope, wakeUpGyroscope)?.let { sensor ->
+            sensorManager.registerListener(this, sensor, sensorSamplingRate, reportLatencyFor(sensor))
         }
     }
     
+    /**
+     * Batching is used only when every registered sensor can wake the CPU for its batch;
+     * otherwise the FIFO could overflow while the CPU sleeps
+     */
+    private fun shouldUseBatching(): Boolean {
+        if (!config.sensorBatchingEnabled) return false
+        
+        val accelOk = accelerometer == null || supportsBatching(wakeUpAccelerometer)
+        val gyroOk = gyroscope == null || supportsBatching(wakeUpGyroscope)
+        return accelOk && gyroOk && (accelerometer != null || gyroscope != null)
+    }
+    
+    private fun supportsBatching(sensor: Sensor?): Boolean {
+        return sensor != null && sensor.fifoMaxEventCount > 0
+    }
+    
+    private fun batchingSensor(sensor: Sensor?, wakeUpSensor: Sensor?): Sensor? {
+        if (sensor == null) return null
+        return if (isBatchingActive && wakeUpSensor != null) wakeUpSensor else sensor
+    }
+    
+    private fun reportLatencyFor(sensor: Sensor): Int {
+        return if (isBatchingActive && supportsBatching(sensor)) config.maxReportLatencyUs else 0
+    }
+    
+    /**
+     * Hold the service wake lock only when the sensor hub cannot wake the CPU itself
+     */
+    private fun updateWakeLock() {
+        val lock = wakeLock ?: return
+        if (isBatchingActive) {
+            if (lock.isHeld) lock.release()
+        } else if (!lock.isHeld) {
+            lock.acquire()
+        }
+    }
+    
+    private fun releaseWakeLock() {
+        wakeLock?.let { if (it.isHeld) it.release() }
+        batchWakeLock?.let { if (it.isHeld) it.release() }
+    }
+    
     /**
      * Unregister all sensor listeners
      */
@@ -400,6 +560,25 @@ class SensorMonitorService : Service(), SensorEventListener {
      * Start background monitoring jobs with error handling
      */
     private fun startMonitoringJobs() {
+        // Opened before any stage starts so the detect stage never misses it; closed by
+        // drainPipeline once the later stages can no longer pin it
+        traceRecorder = startTraceRecorder()
+        
+        // Ingest stage - the only consumer of the sample buffer
+        monitoringJob = serviceScope.launch(ingestDispatcher) {
+            sampleBuffer.clear()
+            timeAligner.reset()
+            consumeSensorSamples()
+        }
+        
+        // Downstream pipeline stages, starting from empty queues so nothing from an earlier
+        // run is stored under this session
+        filterQueue.clear()
+        detectQueue.clear()
+        classifyQueue.clear()
+        persistQueue.clear()
+        startPipelineStages()
+        
         // Battery monitoring job
         batteryMonitoringJob = serviceScope.launch {
             while (isMonitoring) {
@@ -415,12 +594,13 @@ class SensorMonitorService : Service(), SensorEventListener {
         
         // Adaptive sampling job
         adaptiveSamplingJob = serviceScope.launch {
-            try {
-                sensorDataProcessor.motionState.collect { motionState ->
-                    handleMotionStateChange(motionState)
+            while (isActive) {
+                try {
+                    updateSamplingRate()
+                } catch (e: Exception) {
+                    errorHandler.logError(e, "Adaptive sampling")
                 }
-            } catch (e: Exception) {
-                errorHandler.logError(e, "Adaptive sampling")
+                delay(ADAPTIVE_SAMPLING_INTERVAL_MS)
             }
         }
         
@@ -480,18 +660,19 @@ class SensorMonitorService : Service(), SensorEventListener {
             // Start foreground service
             startForeground(NOTIFICATION_ID, createNotification("Starting in degraded mode..."))
             
-            // Acquire wake lock
-            wakeLock?.acquire()
-            
             // Start session
             val sessionId = sessionManager.startSession()
             
             // Reset event processing statistics for new session
             resetEventProcessingStats()
+            resetSamplingRate()
             
             // Register only available sensors
             registerAvailableSensors()
             
+            // Acquire wake lock unless the sensor hub can wake us for each batch
+            updateWakeLock()
+            
             // Try to start location provider (may fail gracefully)
             try {
                 locationProvider.startLocationUpdates()
@@ -540,17 +721,19 @@ class SensorMonitorService : Service(), SensorEventListener {
      * Register only available sensors for degraded mode
      */
     private fun registerAvailableSensors() {
-        accelerometer?.let { sensor ->
+        isBatchingActive = shouldUseBatching()
+        
+        batchingSensor(accelerometer, wakeUpAccelerometer)?.let { sensor ->
             try {
-                sensorManager.registerListener(this, sensor, currentSamplingRate)
+                sensorManager.registerListener(this, sensor, sensorSamplingRate, reportLatencyFor(sensor))
             } catch (e: Exception) {
                 errorHandler.logError(e, "Accelerometer registration")
             }
         }
         
-        gyroscope?.let { sensor ->
+        batchingSensor(gyroscope, wakeUpGyroscope)?.let { sensor ->
             try {
-                sensorManager.registerListener(this, sensor, currentSamplingRate)
+                sensorManager.registerListener(this, sensor, sensorSamplingRate, reportLatencyFor(sensor))
             } catch (e: Exception) {
                 errorHandler.logError(e, "Gyroscope registration")
             }
@@ -586,17 +769,16 @@ class SensorMonitorService : Service(), SensorEventListener {
     }
     
     /**
-     * Stop all background monitoring jobs with error handling
+     * Stop the background control jobs with error handling; the pipeline stages are stopped
+     * by [drainPipeline]
      */
     private fun stopMonitoringJobs() {
         try {
-            monitoringJob?.cancel()
             batteryMonitoringJob?.cancel()
             adaptiveSamplingJob?.cancel()
             resourceMonitoringJob?.cancel()
             errorRecoveryJob?.cancel()
             
-            monitoringJob = null
             batteryMonitoringJob = null
             adaptiveSamplingJob = null
             resourceMonitoringJob = null
@@ -606,6 +788,45 @@ class SensorMonitorService : Service(), SensorEventListener {
         }
     }
     
+    /**
+     * Stop the pipeline without losing work. The ingest stage aligns whatever is still in the
+     * sample buffer, then each queue is closed in stage order and its consumer finishes the
+     * elements it holds before the next one is closed. Call after the listeners are unregistered.
+     */
+    private suspend fun drainPipeline() {
+        try {
+            monitoringJob?.cancelAndJoin()
+            monitoringJob = null
+            withContext(ingestDispatcher) { ingestBufferedSamples() }
+            
+            val stages = listOf(filterQueue, detectQueue, classifyQueue, persistQueue)
+            val drained = withTimeoutOrNull(PIPELINE_DRAIN_TIMEOUT_MS) {
+                stages.forEachIndexed { i, queue ->
+                    queue.close()
+                    pipelineJobs.getOrNull(i)?.join()
+                }
+            }
+            if (drained == null) {
+                errorHandler.logError(
+                    IllegalStateException("Pipeline not drained within ${PIPELINE_DRAIN_TIMEOUT_MS}ms"),
+                    "Stop monitoring"
+                )
+            }
+        } catch (e: Exception) {
+            errorHandler.logError(e, "Drain pipeline")
+        } finally {
+            pipelineJobs.forEach { it.cancel() }
+            pipelineJobs.clear()
+            pipelineMetrics.detachQueueStats()
+            
+            // Closed on the ingest thread, which is the recorder's only writer
+            withContext(NonCancellable + ingestDispatcher) {
+                traceRecorder?.close()
+                traceRecorder = null
+            }
+        }
+    }
+    
     /**
      * Handle resource constraint errors
      */
@@ -618,8 +839,8 @@ class SensorMonitorService : Service(), SensorEventListener {
                 adjustForLowMemory()
             }
             ErrorRecoveryResult.REDUCE_CPU_USAGE -> {
-                // Reduce sampling rate temporarily
-                adjustSamplingRate(config.reducedSamplingRate)
+                // The sampling controller caps the rate by thermal status; apply it now
+                updateSamplingRate()
             }
             ErrorRecoveryResult.PAUSE_MONITORING -> {
                 pauseMonitoring()
@@ -646,62 +867,187 @@ class SensorMonitorService : Service(), SensorEventListener {
     }
     
     /**
-     * Handle sensor data changes with comprehensive error handling
+     * Handle sensor data changes with comprehensive error handling.
+     * Runs on the sensor thread, so it only copies the values into the preallocated
+     * sample buffer; processing happens in the sample consumer job.
+     * Samples keep SensorEvent.timestamp (monotonic elapsed realtime nanoseconds) so batched
+     * samples carry the time they were measured rather than the time they were delivered.
      */
     override fun onSensorChanged(event: SensorEvent?) {
         if (event == null) return
+        val startNs = System.nanoTime()
         
         try {
-            val timestamp = System.currentTimeMillis()
+            val sensorType = event.sensor.type
+            if (sensorType == Sensor.TYPE_ACCELEROMETER || sensorType == Sensor.TYPE_GYROSCOPE) {
+                sampleBuffer.offer(
+                    sensorType = sensorType,
+                    timestamp = event.timestamp,
+                    x = event.values[0],
+                    y = event.values[1],
+                    z = event.values[2],
+                    accuracy = event.accuracy
+                )
+                pipelineMetrics.recordStageSince(PipelineMetrics.Stage.CALLBACK, startNs)
+            }
+        } catch (e: Exception) {
+            errorHandler.logError(e, "Sensor data processing")
+            // Continue monitoring despite individual sensor errors
+        }
+    }
+    
+    /**
+     * Ingest stage: long-lived consumer that drains the sample buffer in arrival order and
+     * resamples accelerometer/gyroscope readings onto a common fixed-rate grid. Everything
+     * aligned in one drain is handed to the filter stage as a single batch.
+     */
+    private suspend fun consumeSensorSamples() {
+        while (currentCoroutineContext().isActive) {
+            sampleBuffer.awaitSamples()
             
-            when (event.sensor.type) {
-                Sensor.TYPE_ACCELEROMETER -> {
-                    latestAccelerometerData = AccelerometerData(
-                        x = event.values[0],
-                        y = event.values[1],
-                        z = event.values[2],
-                        accuracy = event.accuracy
-                    )
-                }
-                
-                Sensor.TYPE_GYROSCOPE -> {
-                    latestGyroscopeData = GyroscopeData(
-                        x = event.values[0],
-                        y = event.values[1],
-                        z = event.values[2],
-                        accuracy = event.accuracy
-                    )
-                }
+            if (isBatchingActive) {
+                // Keep the CPU up until the delivered burst is processed
+                batchWakeLock?.acquire(BATCH_PROCESSING_WAKE_LOCK_TIMEOUT_MS)
+                // A FIFO flush arrives as many callbacks; let it finish before draining
+                delay(BATCH_SETTLE_DELAY_MS)
             }
             
-            // Process sensor data when we have both accelerometer and gyroscope data
-            val accelData = latestAccelerometerData
-            val gyroData = latestGyroscopeData
+            ingestBufferedSamples()
+        }
+    }
+    
+    /**
+     * Aligns everything in the sample buffer and hands it to the filter stage as one batch.
+     * Runs on the ingest dispatcher.
+     */
+    private fun ingestBufferedSamples() {
+        try {
+            val location = locationProvider.getCurrentLocation()
+            sampleBuffer.drain { sensorType, timestamp, x, y, z, accuracy ->
+                timeAligner.addSample(sensorType, timestamp, x, y, z, accuracy)
+            }
             
-            if (accelData != null && gyroData != null && 
-                timestamp - lastSensorDataTimestamp > 10) { // Throttle to ~100Hz max
-                
-                lastSensorDataTimestamp = timestamp
-                
-                // Create sensor data object
-                val sensorData = SensorData(
-                    timestamp = timestamp,
-                    accelerometer = accelData,
-                    gyroscope = gyroData,
-                    location = locationProvider.getCurrentLocation()
-                )
-                
-                // Process data in background with error handling
-                serviceScope.launch(defaultDispatcher) {
-                    processSensorDataWithErrorHandling(sensorData)
+            // Wall clock time is derived from the sensor clock only for event records
+            val wallClockOffsetNs = System.currentTimeMillis() * 1_000_000 - SystemClock.elapsedRealtimeNanos()
+            val recorder = traceRecorder
+            recorder?.beginBatch(wallClockOffsetNs)
+            timeAligner.emitAligned { timestampNs, ax, ay, az, accelAccuracy, gx, gy, gz, gyroAccuracy ->
+                if (recorder != null) {
+                    recorder.recordLocation(timestampNs, location)
+                    recorder.recordSample(timestampNs, ax, ay, az, accelAccuracy, gx, gy, gz, gyroAccuracy)
                 }
+                pendingBatch.add(
+                    SensorData(
+                        timestamp = (timestampNs + wallClockOffsetNs) / 1_000_000,
+                        accelerometer = AccelerometerData(ax, ay, az, accelAccuracy),
+                        gyroscope = GyroscopeData(gx, gy, gz, gyroAccuracy),
+                        location = location,
+                        timestampNanos = timestampNs
+                    )
+                )
             }
+            
+            if (pendingBatch.isNotEmpty()) {
+                pipelineMetrics.recordSamplesAligned(pendingBatch.size, pendingBatch[pendingBatch.size - 1].timestampNanos)
+                filterQueue.offer(pendingBatch)
+                pendingBatch = ArrayList(pendingBatch.size)
+            }
+            
+            recorder?.takeFailure()?.let { errorHandler.logError(it, "Sensor trace recording") }
         } catch (e: Exception) {
-            errorHandler.logError(e, "Sensor data processing")
-            // Continue monitoring despite individual sensor errors
+            pendingBatch.clear()
+            errorHandler.logError(e, "Sensor sample ingest")
+        } finally {
+            releaseBatchWakeLockIfIdle()
+        }
+    }
+    
+    /**
+     * Opens the trace recorder if trace recording is enabled
+     */
+    private fun startTraceRecorder(): SensorTraceRecorder? {
+        if (!config.traceRecordingEnabled) return null
+        
+        val recorder = SensorTraceRecorder(File(filesDir, SensorTraceRecorder.TRACE_DIRECTORY))
+        return try {
+            recorder.start(System.currentTimeMillis() * 1_000_000 - SystemClock.elapsedRealtimeNanos())
+            recorder
+        } catch (e: IOException) {
+            errorHandler.logError(e, "Sensor trace recording")
+            null
+        }
+    }
+    
+    /**
+     * Start the filter, detect, classify and persist stages, each draining its own queue
+     */
+    private fun startPipelineStages() {
+        pipelineMetrics.attachQueueStats(::getPipelineStats)
+        pipelineJobs += serviceScope.launch(filterDispatcher) {
+            filterQueue.consume { batch ->
+                val startNs = System.nanoTime()
+                val candidates = filterSensorBatchWithErrorHandling(batch)
+                pipelineMetrics.recordStageSince(PipelineMetrics.Stage.PROCESS, startNs)
+                candidates?.let { detectQueue.offer(it) }
+            }
+        }
+        pipelineJobs += serviceScope.launch(detectDispatcher) {
+            detectQueue.consume { candidates ->
+                val startNs = System.nanoTime()
+                detectEvents(candidates)
+                pipelineMetrics.recordStageSince(PipelineMetrics.Stage.DETECT, startNs)
+                releaseBatchWakeLockIfIdle()
+            }
+        }
+        pipelineJobs += serviceScope.launch(classifyDispatcher) {
+            classifyQueue.consume { detectedEvent ->
+                val startNs = System.nanoTime()
+                classifyEvent(detectedEvent)
+                pipelineMetrics.recordStageSince(PipelineMetrics.Stage.CLASSIFY, startNs)
+            }
+        }
+        pipelineJobs += serviceScope.launch(persistDispatcher) {
+            persistQueue.consume { classifiedEvent ->
+                val startNs = System.nanoTime()
+                persistEvent(classifiedEvent)
+                pipelineMetrics.recordStageSince(PipelineMetrics.Stage.PERSIST, startNs)
+                releaseBatchWakeLockIfIdle()
+            }
+        }
+    }
+    
+    /**
+     * Release the batch wake lock once a delivered burst has worked its way through the pipeline
+     */
+    private fun releaseBatchWakeLockIfIdle() {
+        val lock = batchWakeLock ?: return
+        if (lock.isHeld && sampleBuffer.isEmpty() && filterQueue.isEmpty() &&
+            detectQueue.isEmpty() && classifyQueue.isEmpty() && persistQueue.isEmpty()) {
+            lock.release()
         }
     }
     
+    /**
+     * Get queue depth and drop counters for every pipeline stage
+     */
+    fun getPipelineStats(): List<PipelineStats> {
+        return listOf(
+            PipelineStats(
+                stage = PipelineMetricsSnapshot.INGEST_STAGE,
+                queueDepth = sampleBuffer.size(),
+                capacity = sampleBuffer.capacity(),
+                overflowPolicy = OverflowPolicy.DROP_LATEST,
+                enqueued = 0L,
+                processed = 0L,
+                dropped = sampleBuffer.droppedCount()
+            ),
+            filterQueue.stats(),
+            detectQueue.stats(),
+            classifyQueue.stats(),
+            persistQueue.stats()
+        )
+    }
+    
     override fun onAccuracyChanged(sensor: Sensor?, accuracy: Int) {
         try {
             // Handle sensor accuracy changes
@@ -729,86 +1075,109 @@ class SensorMonitorService : Service(), SensorEventListener {
     }
     
     /**
-     * Process sensor data through the processing pipeline with error handling
+     * Filter stage with error handling
      */
-    private suspend fun processSensorDataWithErrorHandling(sensorData: SensorData) {
-        try {
-            processSensorData(sensorData)
+    private suspend fun filterSensorBatchWithErrorHandling(batch: List<SensorData>): List<SensorData>? {
+        return try {
+            filterSensorBatch(batch)
         } catch (e: Exception) {
             errorHandler.logError(e, "Sensor data processing pipeline")
-            // Continue monitoring despite processing errors
+            handleEventProcessingError(e, "Sensor Processing")
+            null
         }
     }
     
     /**
-     * Process sensor data through the processing pipeline
+     * Filter stage: runs the batch through the sensor data processor and keeps the samples
+     * that are eligible for event detection. Each sample keeps its own timestamp for
+     * handling suppression and event timing.
+     * 
+     * @return Detection candidates, or null if no sample in the batch is eligible
      */
-    private suspend fun processSensorData(sensorData: SensorData) {
-        try {
-            // Update session activity
-            sessionManager.updateActivity()
-            
-            // Process sensor data (includes automatic calibration monitoring)
-            val processedData = sensorDataProcessor.processSensorData(sensorData)
-            
-            // Check if recalibration is needed and attempt it
-            attemptAutomaticRecalibrationIfNeeded()
-            
-            // Skip processing if device is being handled (Requirements 8.2)
-            if (sensorDataProcessor.isDeviceHandling(processedData.gyroscope)) {
-                return
-            }
+    private suspend fun filterSensorBatch(batch: List<SensorData>): List<SensorData>? {
+        // Update session activity
+        sessionManager.updateActivity()
+        
+        // Process sensor data (includes automatic calibration monitoring)
+        val processedBatch = sensorDataProcessor.processSensorBatch(batch)
+        
+        // Dead-reckon between GPS fixes so events are geotagged at their own timestamp
+        inertialNavigator.advance(batch, processedBatch)
+        
+        // Check if recalibration is needed and attempt it
+        attemptAutomaticRecalibrationIfNeeded()
+        
+        // Drop samples taken while the device is handled or not settled in the vehicle
+        return sensorDataProcessor.selectDetectionCandidates(batch, processedBatch)
+    }
+    
+    /**
+     * Detect stage: finds events in the candidate samples and forwards valid ones
+     */
+    private suspend fun detectEvents(candidates: List<SensorData>) {
+        // Detect events using original sensor data (EventDetector expects SensorData)
+        val detectedEvents = try {
+            eventDetector.detectEvents(candidates)
+        } catch (e: Exception) {
+            handleEventProcessingError(e, "Event Detection")
+            return
+        }
+        
+        // Written by other stages; read once so the whole batch uses the same instances
+        val controller = samplingController
+        val recorder = traceRecorder
+        for (detectedEvent in detectedEvents) {
+            pipelineMetrics.recordEventDetected()
+            controller?.recordHit(detectedEvent.timestamp)
             
-            // Skip processing if device is not in vehicle orientation (Requirements 8.3)
-            if (!sensorDataProcessor.isDeviceInVehicle()) {
-                return
+            // Validate the detected event
+            if (eventDetector.validateEvent(detectedEvent)) {
+                // Keep the raw signal around the event for re-tuning the detector
+                recorder?.pinAround(detectedEvent.timestamp)
+                classifyQueue.offer(detectedEvent)
             }
-            
-            // Detect events using original sensor data (EventDetector expects SensorData)
-            try {
-                eventDetector.detectEvent(sensorData)?.let { detectedEvent ->
-                    eventsDetected++
-                    
-                    // Validate the detected event
-                    if (eventDetector.validateEvent(detectedEvent)) {
-                        try {
-                            // Get current session ID
-                            val sessionId = sessionManager.getCurrentSessionId()
-                            if (sessionId != null) {
-                                // Classify the event
-                                val classifiedEvent = eventClassifier.classifyEvent(detectedEvent, sessionId)
-                                eventsClassified++
-                                
-                                // Validate the classified event
-                                if (eventClassifier.validateClassifiedEvent(classifiedEvent)) {
-                                    try {
-                                        // Store the event in the database
-                                        val eventId = eventRepository.saveEventIfSessionActive(classifiedEvent)
-                                        if (eventId != null) {
-                                            eventsStored++
-                                            // Successfully stored event
-                                            updateEventProcessingStats(classifiedEvent)
-                                            // Reset consecutive errors on successful processing
-                                            consecutiveErrors = 0
-                                        }
-                                    } catch (e: Exception) {
-                                        handleEventProcessingError(e, "Event Storage")
-                                    }
-                                }
-                            }
-                            // If no session is active, the event is discarded (Requirements 6.5)
-                        } catch (e: Exception) {
-                            handleEventProcessingError(e, "Event Classification")
-                        }
-                    }
+        }
+    }
+    
+    /**
+     * Classify stage: assigns severity and confidence within the current session
+     */
+    private suspend fun classifyEvent(detectedEvent: DetectedEvent) {
+        try {
+            // Get current session ID
+            val sessionId = sessionManager.getCurrentSessionId()
+            if (sessionId != null) {
+                // Classify the event
+                val classifiedEvent = eventClassifier.classifyEvent(detectedEvent, sessionId)
+                pipelineMetrics.recordEventClassified()
+                
+                // Validate the classified event
+                if (eventClassifier.validateClassifiedEvent(classifiedEvent)) {
+                    persistQueue.offer(classifiedEvent)
                 }
-            } catch (e: Exception) {
-                handleEventProcessingError(e, "Event Detection")
             }
-            
+            // If no session is active, the event is discarded (Requirements 6.5)
         } catch (e: Exception) {
-            errorHandler.logError(e, "Sensor data processing")
-            handleEventProcessingError(e, "Sensor Processing")
+            handleEventProcessingError(e, "Event Classification")
+        }
+    }
+    
+    /**
+     * Persist stage: hands a classified event to the repository's write-behind buffer
+     */
+    private suspend fun persistEvent(classifiedEvent: RoadAnomalyEvent) {
+        try {
+            // Buffered events are written to the database in batches
+            val accepted = eventRepository.bufferEventIfSessionActive(classifiedEvent)
+            if (accepted) {
+                pipelineMetrics.recordEventStored()
+                // Successfully stored event
+                updateEventProcessingStats(classifiedEvent)
+                // Reset consecutive errors on successful processing
+                consecutiveErrors = 0
+            }
+        } catch (e: Exception) {
+            handleEventProcessingError(e, "Event Storage")
         }
     }
     
@@ -868,39 +1237,76 @@ class SensorMonitorService : Service(), SensorEventListener {
     }
     
     /**
-     * Handle motion state changes for adaptive sampling
+     * Start a monitoring session at the configured normal rate with a fresh controller,
+     * location request and dead-reckoning track
+     */
+    private fun resetSamplingRate() {
+        samplingController = AdaptiveSamplingController(
+            minRateHz = 1_000_000f / config.reducedSamplingRate,
+            maxRateHz = 1_000_000f / config.normalSamplingRate,
+            upDwellMs = config.samplingRateTransitionDelayMs,
+            batteryFloorLevel = config.batteryPauseThreshold
+        )
+        currentSamplingRate = config.normalSamplingRate
+        sensorSamplingRate = config.normalSamplingRate
+        timeAligner.setGridPeriod(currentSamplingRate * 1_000L)
+        
+        locationPolicy.reset()
+        locationProvider.setUpdateMode(locationPolicy.currentMode)
+        inertialNavigator.reset()
+    }
+    
+    /**
+     * Feed speed, motion, road roughness, battery and thermal state to the sampling controller
+     * and apply the rate it settles on, then pick the location request for the same situation
      * Requirements 7.1, 7.2, 7.3: Adaptive sampling rate management
      */
-    private suspend fun handleMotionStateChange(motionState: MotionState) {
-        val isCharging = isDeviceCharging()
+    private suspend fun updateSamplingRate() {
+        val controller = samplingController ?: return
+        val now = System.currentTimeMillis()
+        val motionState = sensorDataProcessor.motionState.value
         
-        val newSamplingRate = when {
-            isCharging -> config.normalSamplingRate // Always full rate when charging
-            motionState == MotionState.STATIONARY -> config.reducedSamplingRate // Reduced rate when stationary
-            else -> config.normalSamplingRate // Normal rate when moving
-        }
+        // Batched or infrequent fixes are expected to be older than the interval alone
+        val mode = locationProvider.getUpdateMode()
+        val speedMaxAgeMs = maxOf(SPEED_MAX_AGE_MS, mode.intervalMs + mode.maxUpdateDelayMs)
+        val speedKmh = locationProvider.getCurrentLocation()
+            ?.takeIf { now - it.timestamp <= speedMaxAgeMs }
+            ?.let { it.speed * 3.6f }
         
-        if (newSamplingRate != currentSamplingRate) {
-            // Wait for transition delay
-            delay(config.samplingRateTransitionDelayMs)
-            
-            // Update sampling rate
-            adjustSamplingRate(newSamplingRate)
+        locationPolicy.update(motionState, speedKmh, controller.hitsPerMinute(now), now)?.let { newMode ->
+            locationProvider.setUpdateMode(newMode)
         }
+        
+        val signals = AdaptiveSamplingController.Signals(
+            motionState = motionState,
+            speedKmh = speedKmh,
+            batteryLevel = getBatteryLevel(),
+            isCharging = isDeviceCharging(),
+            thermalStatus = systemResourceMonitor.getThermalInfo().state
+        )
+        val rateHz = controller.update(signals, now) ?: return
+        adjustSamplingRate((1_000_000f / rateHz).roundToInt())
     }
     
     /**
-     * Adjust sensor sampling rate
+     * Adjust the sampling rate.
+     * The pipeline grid follows every change. The sensors only need re-registering when the
+     * grid would outrun them or they run more than twice as fast as needed; in between the
+     * time aligner resamples the faster stream onto the grid.
      */
     private suspend fun adjustSamplingRate(newRate: Int) {
         stateMutex.withLock {
             if (!isMonitoring || isPaused) return@withLock
             
             currentSamplingRate = newRate
+            timeAligner.setGridPeriod(newRate * 1_000L)
             
-            // Re-register sensors with new rate
-            unregisterSensorListeners()
-            registerSensorListeners()
+            if (newRate < sensorSamplingRate || newRate >= sensorSamplingRate * 2) {
+                sensorSamplingRate = newRate
+                unregisterSensorListeners()
+                registerSensorListeners()
+                updateWakeLock()
+            }
             
             // Update notification with current rate
             val rateHz = 1_000_000 / newRate
@@ -982,14 +1388,12 @@ class SensorMonitorService : Service(), SensorEventListener {
      * Update event processing statistics and notification
      */
     private fun updateEventProcessingStats(event: RoadAnomalyEvent) {
-        eventsDetected++
-        eventsClassified++
-        eventsStored++
-        
+        // Counted by the stages themselves; this only refreshes the notification
+        val eventsStored = pipelineMetrics.eventsStored()
         val currentTime = System.currentTimeMillis()
         
         // Update notification with stats every 30 seconds or every 10 events
-        if (currentTime - lastStatsUpdateTime > 30_000 || eventsStored % 10 == 0) {
+        if (currentTime - lastStatsUpdateTime > 30_000 || eventsStored % 10 == 0L) {
             lastStatsUpdateTime = currentTime
             val mode = if (isDegradedMode) " (Degraded)" else ""
             val statsText = "Monitoring$mode - ${eventsStored} events detected"
@@ -1001,9 +1405,7 @@ class SensorMonitorService : Service(), SensorEventListener {
      * Reset event processing statistics
      */
     private fun resetEventProcessingStats() {
-        eventsDetected = 0
-        eventsClassified = 0
-        eventsStored = 0
+        pipelineMetrics.reset()
         lastStatsUpdateTime = 0L
     }
     
@@ -1047,9 +1449,9 @@ class SensorMonitorService : Service(), SensorEventListener {
             isPaused = isPaused,
             isDegradedMode = isDegradedMode,
             currentSamplingRate = currentSamplingRate,
-            eventsDetected = eventsDetected,
-            eventsClassified = eventsClassified,
-            eventsStored = eventsStored,
+            eventsDetected = pipelineMetrics.eventsDetected().toInt(),
+            eventsClassified = pipelineMetrics.eventsClassified().toInt(),
+            eventsStored = pipelineMetrics.eventsStored().toInt(),
             consecutiveErrors = consecutiveErrors,
             hasAccelerometer = accelerometer != null,
             hasGyroscope = gyroscope != null,
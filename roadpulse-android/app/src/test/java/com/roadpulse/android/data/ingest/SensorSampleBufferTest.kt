@@ -0,0 +1,86 @@
+package com.roadpulse.android.data.ingest
+
+import io.kotest.core.spec.style.FunSpec
+import io.kotest.matchers.shouldBe
+import kotlinx.coroutines.async
+import kotlinx.coroutines.test.runTest
+import kotlinx.coroutines.yield
+
+class SensorSampleBufferTest : FunSpec({
+
+    test("should drain samples in arrival order") {
+        val buffer = SensorSampleBuffer(capacity = 8)
+
+        for (i in 0 until 5) {
+            buffer.offer(sensorType = i % 2, timestamp = i.toLong(), x = i.toFloat(), y = 0f, z = 0f, accuracy = 3)
+        }
+
+        val timestamps = mutableListOf<Long>()
+        val types = mutableListOf<Int>()
+        val drained = buffer.drain { sensorType, timestamp, _, _, _, _ ->
+            types.add(sensorType)
+            timestamps.add(timestamp)
+        }
+
+        drained shouldBe 5
+        timestamps shouldBe listOf(0L, 1L, 2L, 3L, 4L)
+        types shouldBe listOf(0, 1, 0, 1, 0)
+        buffer.isEmpty() shouldBe true
+    }
+
+    test("should drop new samples when full and count them") {
+        val buffer = SensorSampleBuffer(capacity = 4)
+
+        repeat(6) { i ->
+            buffer.offer(1, i.toLong(), 0f, 0f, 0f, 3)
+        }
+
+        buffer.size() shouldBe 4
+        buffer.droppedCount() shouldBe 2L
+
+        val timestamps = mutableListOf<Long>()
+        buffer.drain { _, timestamp, _, _, _, _ -> timestamps.add(timestamp) }
+        timestamps shouldBe listOf(0L, 1L, 2L, 3L)
+    }
+
+    test("should reuse slots after wrapping around") {
+        val buffer = SensorSampleBuffer(capacity = 4)
+        val values = mutableListOf<Float>()
+
+        repeat(10) { i ->
+            buffer.offer(1, i.toLong(), i.toFloat(), 0f, 0f, 3) shouldBe true
+            buffer.drain { _, _, x, _, _, _ -> values.add(x) }
+        }
+
+        values shouldBe (0 until 10).map { it.toFloat() }
+        buffer.droppedCount() shouldBe 0L
+    }
+
+    test("should respect maxSamples when draining") {
+        val buffer = SensorSampleBuffer(capacity = 8)
+        repeat(6) { i -> buffer.offer(1, i.toLong(), 0f, 0f, 0f, 3) }
+
+        buffer.drain(maxSamples = 4) { _, _, _, _, _, _ -> } shouldBe 4
+        buffer.size() shouldBe 2
+    }
+
+    test("should round capacity up to a power of two") {
+        SensorSampleBuffer(capacity = 100).capacity() shouldBe 128
+        SensorSampleBuffer(capacity = 64).capacity() shouldBe 64
+    }
+
+    test("should resume a waiting consumer when a sample arrives") {
+        runTest {
+            val buffer = SensorSampleBuffer(capacity = 8)
+
+            val waiter = async { buffer.awaitSamples() }
+            yield()
+            waiter.isCompleted shouldBe false
+
+            buffer.offer(1, 42L, 1f, 2f, 3f, 3)
+            waiter.await()
+
+            buffer.size() shouldBe 1
+        }
+    }
+})
@@ -0,0 +1,76 @@
+package com.roadpulse.android.data.ingest
+
+import android.hardware.Sensor
+import io.kotest.core.spec.style.FunSpec
+import io.kotest.matchers.floats.plusOrMinus
+import io.kotest.matchers.shouldBe
+
+class SensorTimeAlignerTest : FunSpec({
+
+    val periodNs = 10_000_000L // 100Hz grid
+
+    fun collect(aligner: SensorTimeAligner): List<Pair<Long, Pair<Float, Float>>> {
+        val out = mutableListOf<Pair<Long, Pair<Float, Float>>>()
+        aligner.emitAligned { t, ax, _, _, _, gx, _, _, _ -> out.add(t to (ax to gx)) }
+        return out
+    }
+
+    test("should interpolate both streams onto the common grid") {
+        val aligner = SensorTimeAligner(periodNs)
+
+        // Accel at 0, 20, 40ms with x = t in ms; gyro offset by 5ms with x = 2t
+        listOf(0L, 20L, 40L).forEach { ms ->
+            aligner.addSample(Sensor.TYPE_ACCELEROMETER, ms * 1_000_000, ms.toFloat(), 0f, 0f, 3)
+        }
+        listOf(5L, 25L, 45L).forEach { ms ->
+            aligner.addSample(Sensor.TYPE_GYROSCOPE, ms * 1_000_000, 2f * ms, 0f, 0f, 3)
+        }
+
+        val aligned = collect(aligner)
+
+        aligned.map { it.first } shouldBe listOf(10_000_000L, 20_000_000L, 30_000_000L, 40_000_000L)
+        aligned.forEach { (t, values) ->
+            val ms = t / 1_000_000f
+            values.first shouldBe (ms plusOrMinus 0.001f)
+            values.second shouldBe (2f * ms plusOrMinus 0.001f)
+        }
+    }
+
+    test("should wait for the lagging stream before emitting") {
+        val aligner = SensorTimeAligner(periodNs)
+
+        // A whole batch of accel arrives before any gyro
+        (0..10).forEach { i ->
+            aligner.addSample(Sensor.TYPE_ACCELEROMETER, i * periodNs, i.toFloat(), 0f, 0f, 3)
+        }
+        collect(aligner).size shouldBe 0
+
+        (0..10).forEach { i ->
+            aligner.addSample(Sensor.TYPE_GYROSCOPE, i * periodNs, 0f, 0f, 0f, 3)
+        }
+        collect(aligner).size shouldBe 11
+    }
+
+    test("should not interpolate across a sensor dropout") {
+        val aligner = SensorTimeAligner(periodNs)
+
+        listOf(0L, 10L, 500L, 510L).forEach { ms ->
+            aligner.addSample(Sensor.TYPE_ACCELEROMETER, ms * 1_000_000, 0f, 0f, 0f, 3)
+            aligner.addSample(Sensor.TYPE_GYROSCOPE, ms * 1_000_000, 0f, 0f, 0f, 3)
+        }
+
+        collect(aligner).map { it.first / 1_000_000 } shouldBe listOf(0L, 10L, 500L, 510L)
+        aligner.gapsSkipped() shouldBe 1L
+    }
+
+    test("should follow a grid period change") {
+        val aligner = SensorTimeAligner(periodNs)
+        (0..4).forEach { i ->
+            aligner.addSample(Sensor.TYPE_ACCELEROMETER, i * periodNs, 0f, 0f, 0f, 3)
+            aligner.addSample(Sensor.TYPE_GYROSCOPE, i * periodNs, 0f, 0f, 0f, 3)
+        }
+        aligner.setGridPeriod(2 * periodNs)
+
+        collect(aligner).map { it.first / 1_000_000 } shouldBe listOf(0L, 20L, 40L)
+    }
+})
@@ -0,0 +1,62 @@
+package com.roadpulse.android.data.metrics
+
+import io.kotest.core.spec.style.FunSpec
+import io.kotest.matchers.longs.shouldBeGreaterThanOrEqual
+import io.kotest.matchers.longs.shouldBeLessThanOrEqual
+import io.kotest.matchers.shouldBe
+import kotlin.concurrent.thread
+
+class LatencyHistogramTest : FunSpec({
+
+    test("every value should fall into a bucket that contains it") {
+        val values = (0L..5_000L) + listOf(65_535L, 65_536L, 1_000_000L, 3_600_000_000L)
+        for (micros in values) {
+            val bucket = LatencyHistogram.bucketOf(micros)
+            upperBoundOf(bucket) shouldBeGreaterThanOrEqual micros
+            if (bucket > 0) upperBoundOf(bucket - 1) shouldBeLessThanOrEqual micros - 1
+            // Log-linear buckets are at most 25% wide
+            (upperBoundOf(bucket) - micros) shouldBeLessThanOrEqual maxOf(micros / 4, 1L)
+        }
+    }
+
+    test("values beyond the last bucket should be clamped into it") {
+        LatencyHistogram.bucketOf(Long.MAX_VALUE) shouldBe LatencyHistogram.BUCKETS - 1
+    }
+
+    test("should report percentiles and the exact maximum") {
+        val histogram = LatencyHistogram()
+        // 98 fast stages at 100us, one at 2ms and one slow outlier
+        repeat(98) { histogram.record(100_000L) }
+        histogram.record(2_000_000L)
+        histogram.record(45_678_000L)
+
+        val snapshot = histogram.snapshot()
+        snapshot.count shouldBe 100L
+        snapshot.p50Micros shouldBe LatencyHistogram.upperBoundOf(LatencyHistogram.bucketOf(100L))
+        snapshot.p99Micros shouldBe LatencyHistogram.upperBoundOf(LatencyHistogram.bucketOf(2_000L))
+        snapshot.maxMicros shouldBe 45_678L
+        snapshot.meanMicros shouldBe (98 * 100L + 2_000L + 45_678L) / 100
+    }
+
+    test("an empty histogram should report zeros and reset should clear it") {
+        val histogram = LatencyHistogram()
+        histogram.snapshot() shouldBe LatencySnapshot(0L, 0L, 0L, 0L, 0L)
+
+        histogram.record(5_000L)
+        histogram.reset()
+        histogram.snapshot() shouldBe LatencySnapshot(0L, 0L, 0L, 0L, 0L)
+    }
+
+    test("should not lose values recorded from several threads") {
+        val histogram = LatencyHistogram()
+        val threads = (1..4).map { t ->
+            thread { repeat(10_000) { histogram.record(t * 1_000_000L) } }
+        }
+        threads.forEach { it.join() }
+
+        histogram.count() shouldBe 40_000L
+        histogram.snapshot().maxMicros shouldBe 4_000L
+    }
+})
+
+private fun upperBoundOf(bucket: Int) = LatencyHistogram.upperBoundOf(bucket)
@@ -0,0 +1,85 @@
+package com.roadpulse.android.data.metrics
+
+import com.roadpulse.android.data.pipeline.OverflowPolicy
+import com.roadpulse.android.data.pipeline.PipelineStats
+import io.kotest.core.spec.style.FunSpec
+import io.kotest.matchers.doubles.plusOrMinus
+import io.kotest.matchers.shouldBe
+import io.kotest.matchers.string.shouldContain
+
+class PipelineMetricsTest : FunSpec({
+
+    test("should count each event once per stage") {
+        val metrics = PipelineMetrics()
+        repeat(3) { metrics.recordEventDetected() }
+        repeat(2) { metrics.recordEventClassified() }
+        metrics.recordEventStored()
+
+        val snapshot = metrics.snapshot()
+        snapshot.eventsDetected shouldBe 3L
+        snapshot.eventsClassified shouldBe 2L
+        snapshot.eventsStored shouldBe 1L
+    }
+
+    test("should keep a latency histogram per stage") {
+        val metrics = PipelineMetrics()
+        metrics.recordStage(PipelineMetrics.Stage.DETECT, 300_000L)
+        metrics.recordStage(PipelineMetrics.Stage.DETECT, 500_000L)
+        metrics.recordDbWrite(4_000_000L, events = 20)
+
+        val snapshot = metrics.snapshot()
+        snapshot.stageLatency.getValue(PipelineMetrics.Stage.DETECT).count shouldBe 2L
+        snapshot.stageLatency.getValue(PipelineMetrics.Stage.DETECT).maxMicros shouldBe 500L
+        snapshot.stageLatency.getValue(PipelineMetrics.Stage.CLASSIFY).count shouldBe 0L
+        snapshot.dbWriteLatency.maxMicros shouldBe 4_000L
+        snapshot.eventsWritten shouldBe 20L
+    }
+
+    test("should measure the effective sampling rate on the sensor clock") {
+        val metrics = PipelineMetrics()
+        // 3 second batches at 25Hz with one batch short by 5 samples
+        var timestampNs = 0L
+        for (batch in 0 until 4) {
+            val samples = if (batch == 2) 70 else 75
+            timestampNs += 3_000_000_000L
+            metrics.recordSamplesAligned(samples, timestampNs)
+        }
+
+        // First batch starts the window; the next two close it after 6 seconds
+        metrics.snapshot().effectiveSamplingRateHz shouldBe (145 / 6.0 plusOrMinus 1e-9)
+        metrics.snapshot().samplesAligned shouldBe 295L
+    }
+
+    test("should report queue depth and dropped samples from the attached queues") {
+        val metrics = PipelineMetrics()
+        metrics.snapshot().queues shouldBe emptyList()
+
+        metrics.attachQueueStats {
+            listOf(
+                PipelineStats(PipelineMetricsSnapshot.INGEST_STAGE, 12, 2048, OverflowPolicy.DROP_LATEST, 0L, 0L, 7L),
+                PipelineStats("filter", 2, 16, OverflowPolicy.DROP_OLDEST, 40L, 38L, 1L)
+            )
+        }
+        val snapshot = metrics.snapshot()
+        snapshot.droppedSamples shouldBe 7L
+        snapshot.queues.map { it.queueDepth } shouldBe listOf(12, 2)
+        snapshot.toReport() shouldContain "filter,2,16,40,38,1"
+
+        metrics.detachQueueStats()
+        metrics.snapshot().queues shouldBe emptyList()
+    }
+
+    test("reset should start a new session from zero") {
+        val metrics = PipelineMetrics()
+        metrics.recordEventDetected()
+        metrics.recordStage(PipelineMetrics.Stage.PERSIST, 1_000L)
+        metrics.recordSamplesAligned(75, 3_000_000_000L)
+
+        metrics.reset()
+
+        val snapshot = metrics.snapshot()
+        snapshot.eventsDetected shouldBe 0L
+        snapshot.samplesAligned shouldBe 0L
+        snapshot.stageLatency.getValue(PipelineMetrics.Stage.PERSIST).count shouldBe 0L
+    }
+})
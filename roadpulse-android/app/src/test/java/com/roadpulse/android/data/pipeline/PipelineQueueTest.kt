@@ -0,0 +1,88 @@
+package com.roadpulse.android.data.pipeline
+
+import io.kotest.core.spec.style.FunSpec
+import io.kotest.matchers.shouldBe
+import kotlinx.coroutines.launch
+import kotlinx.coroutines.test.runTest
+import kotlinx.coroutines.yield
+
+class PipelineQueueTest : FunSpec({
+
+    test("drop oldest should keep the newest elements and count drops") {
+        runTest {
+            val queue = PipelineQueue<Int>("test", capacity = 2, overflowPolicy = OverflowPolicy.DROP_OLDEST)
+            (1..4).forEach { queue.offer(it) }
+
+            queue.depth() shouldBe 2
+            queue.droppedCount() shouldBe 2L
+
+            val received = mutableListOf<Int>()
+            val consumer = launch { queue.consume { received.add(it) } }
+            yield()
+            consumer.cancel()
+
+            received shouldBe listOf(3, 4)
+            queue.isEmpty() shouldBe true
+        }
+    }
+
+    test("drop latest should keep the oldest elements") {
+        runTest {
+            val queue = PipelineQueue<Int>("test", capacity = 2, overflowPolicy = OverflowPolicy.DROP_LATEST)
+            (1..4).forEach { queue.offer(it) }
+
+            val received = mutableListOf<Int>()
+            val consumer = launch { queue.consume { received.add(it) } }
+            yield()
+            consumer.cancel()
+
+            received shouldBe listOf(1, 2)
+            queue.stats().dropped shouldBe 2L
+            queue.stats().processed shouldBe 2L
+        }
+    }
+
+    test("conflate should keep only the latest element") {
+        val queue = PipelineQueue<Int>("test", capacity = 16, overflowPolicy = OverflowPolicy.CONFLATE)
+        (1..5).forEach { queue.offer(it) }
+
+        queue.capacity shouldBe 1
+        queue.depth() shouldBe 1
+        queue.droppedCount() shouldBe 4L
+    }
+
+    test("clear should discard queued elements and restart the counters") {
+        runTest {
+            val queue = PipelineQueue<Int>("test", capacity = 4, overflowPolicy = OverflowPolicy.DROP_OLDEST)
+            (1..6).forEach { queue.offer(it) }
+
+            queue.clear()
+
+            queue.isEmpty() shouldBe true
+            queue.stats().enqueued shouldBe 0L
+            queue.droppedCount() shouldBe 0L
+
+            queue.offer(7)
+            val received = mutableListOf<Int>()
+            val consumer = launch { queue.consume { received.add(it) } }
+            yield()
+            consumer.cancel()
+
+            received shouldBe listOf(7)
+        }
+    }
+
+    test("close should let the consumer finish the queued elements") {
+        runTest {
+            val queue = PipelineQueue<Int>("test", capacity = 4, overflowPolicy = OverflowPolicy.DROP_OLDEST)
+            (1..3).forEach { queue.offer(it) }
+            queue.close()
+
+            val received = mutableListOf<Int>()
+            launch { queue.consume { received.add(it) } }.join()
+
+            received shouldBe listOf(1, 2, 3)
+            queue.offer(4) shouldBe false
+        }
+    }
+})
@@ -0,0 +1,84 @@
+package com.roadpulse.android.data.repository
+
+import androidx.paging.PagingSource
+import com.roadpulse.android.data.database.RoadAnomalyDao
+import com.roadpulse.android.data.model.RoadAnomalyEvent
+import com.roadpulse.android.data.session.SessionManager
+import io.kotest.core.spec.style.FunSpec
+import io.kotest.matchers.collections.shouldHaveSize
+import io.kotest.matchers.shouldBe
+import io.mockk.coEvery
+import io.mockk.coVerify
+import io.mockk.mockk
+import kotlinx.coroutines.flow.toList
+import kotlinx.coroutines.test.StandardTestDispatcher
+import kotlinx.coroutines.test.runTest
+
+class EventPagingTest : FunSpec({
+
+    // Several events share a timestamp so the id has to break ties
+    val events = (0 until 25).map { i ->
+        RoadAnomalyEvent(
+            id = "event-%02d".format(i),
+            createdAt = 1_000L + (i / 3) * 100L,
+            latitude = 52.0,
+            longitude = 4.0,
+            gpsAccuracyM = 5f,
+            speedKmh = 40f,
+            headingDeg = null,
+            peakAccelMs2 = 3f,
+            impulseDurationMs = 100,
+            severity = 1 + i % 5,
+            confidence = 0.8f,
+            deviceModel = "Test Device",
+            androidVersion = "13",
+            sessionId = "session"
+        )
+    }
+
+    // In-memory equivalent of the keyset query
+    fun after(createdAt: Long, id: String, limit: Int): List<RoadAnomalyEvent> {
+        return events
+            .filter { it.createdAt > createdAt || (it.createdAt == createdAt && it.id > id) }
+            .sortedWith(compareBy({ it.createdAt }, { it.id }))
+            .take(limit)
+    }
+
+    test("paging source should seek from the last key of the previous page") {
+        val source = EventPagingSource(EventPageKey.OLDEST_FIRST) { key, limit -> after(key.createdAt, key.id, limit) }
+
+        val first = source.load(PagingSource.LoadParams.Refresh(null, 10, false)) as PagingSource.LoadResult.Page
+        first.data shouldBe events.take(10)
+        first.nextKey shouldBe EventPageKey(events[9].createdAt, events[9].id)
+
+        val second = source.load(PagingSource.LoadParams.Append(first.nextKey!!, 10, false)) as PagingSource.LoadResult.Page
+        second.data shouldBe events.subList(10, 20)
+
+        val last = source.load(PagingSource.LoadParams.Append(second.nextKey!!, 10, false)) as PagingSource.LoadResult.Page
+        last.data shouldHaveSize 5
+        last.nextKey shouldBe null
+    }
+
+    test("paging source should report loader failures as errors") {
+        val source = EventPagingSource(EventPageKey.OLDEST_FIRST) { _, _ -> throw IllegalStateException("closed") }
+
+        (source.load(PagingSource.LoadParams.Refresh(null, 10, false)) is PagingSource.LoadResult.Error) shouldBe true
+    }
+
+    test("unsynced batches should cover every event once in fixed-size batches") {
+        runTest {
+            val dispatcher = StandardTestDispatcher(testScheduler)
+            val dao = mockk<RoadAnomalyDao>(relaxed = true)
+            coEvery { dao.getUnsyncedEventsAfter(any(), any(), any()) } answers {
+                after(firstArg(), secondArg(), thirdArg())
+            }
+            val repository = EventRepository(dao, SessionManager(dispatcher), mockk(relaxed = true), dispatcher)
+
+            val batches = repository.unsyncedEventBatches(batchSize = 10).toList()
+
+            batches.map { it.size } shouldBe listOf(10, 10, 5)
+            batches.flatten() shouldBe events
+            coVerify(exactly = 0) { dao.getUnsyncedEvents() }
+        }
+    }
+})
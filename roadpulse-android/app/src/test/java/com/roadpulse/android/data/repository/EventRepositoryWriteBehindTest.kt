@@ -0,0 +1,244 @@
+package com.roadpulse.android.data.repository
+
+import com.roadpulse.android.data.aggregation.AnomalyAggregator
+import com.roadpulse.android.data.config.SensorMonitorConfig
+import com.roadpulse.android.data.database.RoadAnomalyDao
+import com.roadpulse.android.data.error.ErrorHandler
+import com.roadpulse.android.data.error.StorageFullException
+import com.roadpulse.android.data.metrics.PipelineMetrics
+import com.roadpulse.android.data.model.AnomalyAggregate
+import com.roadpulse.android.data.model.RoadAnomalyEvent
+import com.roadpulse.android.data.session.SessionManager
+import io.kotest.core.spec.style.FunSpec
+import io.kotest.matchers.collections.shouldBeEmpty
+import io.kotest.matchers.collections.shouldHaveSize
+import io.kotest.matchers.shouldBe
+import io.mockk.coEvery
+import io.mockk.coVerify
+import io.mockk.mockk
+import kotlinx.coroutines.test.StandardTestDispatcher
+import kotlinx.coroutines.test.advanceTimeBy
+import kotlinx.coroutines.test.runCurrent
+import kotlinx.coroutines.test.runTest
+
+class EventRepositoryWriteBehindTest : FunSpec({
+
+    fun event(createdAt: Long) = RoadAnomalyEvent(
+        createdAt = createdAt,
+        latitude = 37.7749,
+        longitude = -122.4194,
+        gpsAccuracyM = 5.0f,
+        speedKmh = 50.0f,
+        headingDeg = 90.0f,
+        peakAccelMs2 = 3.5f,
+        impulseDurationMs = 150,
+        severity = 2,
+        confidence = 0.8f,
+        deviceModel = "Test Device",
+        androidVersion = "13",
+        sessionId = ""
+    )
+
+    fun errorHandler(): ErrorHandler {
+        val handler = mockk<ErrorHandler>(relaxed = true)
+        coEvery { handler.executeWithRetry<Any?>(any(), any(), any()) } coAnswers {
+            Result.success(firstArg<suspend () -> Any?>().invoke())
+        }
+        return handler
+    }
+
+    fun rollupConfig(hits: Int) = SensorMonitorConfig().apply { updateAggregateRollupHits(hits) }
+
+    test("should write a full batch with a single insert") {
+        runTest {
+            val dispatcher = StandardTestDispatcher(testScheduler)
+            val dao = mockk<RoadAnomalyDao>(relaxed = true)
+            coEvery { dao.getEventCount() } returns 0
+            val batches = mutableListOf<List<RoadAnomalyEvent>>()
+            coEvery { dao.insertEventsAndAggregates(capture(batches), any()) } returns Unit
+            val sessionManager = SessionManager(dispatcher)
+            // Twenty hits on one spot; rollup is off so every one keeps its row
+            val repository = EventRepository(
+                dao, sessionManager, errorHandler(), dispatcher, PipelineMetrics(),
+                AnomalyAggregator(AnomalyAggregator.NEVER_ROLL_UP), rollupConfig(AnomalyAggregator.NEVER_ROLL_UP)
+            )
+            val sessionId = sessionManager.startSession()
+
+            repeat(20) { i -> repository.bufferEventIfSessionActive(event(i.toLong())) shouldBe true }
+
+            batches shouldHaveSize 1
+            batches.first() shouldHaveSize 20
+            batches.first().all { it.sessionId == sessionId } shouldBe true
+            repository.getPendingEventCount() shouldBe 0
+            coVerify(exactly = 0) { dao.insertEvent(any()) }
+            // Row count is read once and cached afterwards
+            coVerify(exactly = 1) { dao.getEventCount() }
+            sessionManager.endSession()
+        }
+    }
+
+    test("should flush a partial batch once it ages out") {
+        runTest {
+            val dispatcher = StandardTestDispatcher(testScheduler)
+            val dao = mockk<RoadAnomalyDao>(relaxed = true)
+            coEvery { dao.getEventCount() } returns 0
+            val sessionManager = SessionManager(dispatcher)
+            val repository = EventRepository(dao, sessionManager, errorHandler(), dispatcher)
+            sessionManager.startSession()
+
+            repository.bufferEventIfSessionActive(event(1L))
+            repository.bufferEventIfSessionActive(event(2L))
+            runCurrent()
+            coVerify(exactly = 0) { dao.insertEventsAndAggregates(any(), any()) }
+
+            advanceTimeBy(10_001L)
+            runCurrent()
+            coVerify(exactly = 1) { dao.insertEventsAndAggregates(match { it.size == 2 }, any()) }
+            sessionManager.endSession()
+        }
+    }
+
+    test("should keep events queued when the write fails and retry them") {
+        runTest {
+            val dispatcher = StandardTestDispatcher(testScheduler)
+            val dao = mockk<RoadAnomalyDao>(relaxed = true)
+            coEvery { dao.getEventCount() } returns 0
+            val handler = errorHandler()
+            coEvery { handler.executeWithRetry<Any?>(any(), any(), any()) } returns
+                Result.failure(IllegalStateException("disk busy")) andThenAnswer {
+                    Result.success(Unit)
+                }
+            val sessionManager = SessionManager(dispatcher)
+            val repository = EventRepository(dao, sessionManager, handler, dispatcher)
+            sessionManager.startSession()
+
+            repository.bufferEventIfSessionActive(event(1L))
+            repository.flushPendingEvents() shouldBe 0
+            repository.getPendingEventCount() shouldBe 1
+
+            // The retained batch is retried by the age timer
+            advanceTimeBy(10_001L)
+            runCurrent()
+            repository.getPendingEventCount() shouldBe 0
+            sessionManager.endSession()
+        }
+    }
+
+    test("should retry a batch once after cleaning up a full database") {
+        runTest {
+            val dispatcher = StandardTestDispatcher(testScheduler)
+            val dao = mockk<RoadAnomalyDao>(relaxed = true)
+            coEvery { dao.getEventCount() } returns 0
+            val handler = errorHandler()
+            // The first write fails; cleanup and the retried write go through
+            coEvery { handler.executeWithRetry<Any?>(any(), any(), any()) } returns
+                Result.failure(StorageFullException()) andThenAnswer {
+                    Result.success(firstArg<suspend () -> Any?>().invoke())
+                }
+            val sessionManager = SessionManager(dispatcher)
+            val repository = EventRepository(dao, sessionManager, handler, dispatcher)
+            sessionManager.startSession()
+
+            repository.bufferEventIfSessionActive(event(1L))
+            repository.flushPendingEvents() shouldBe 1
+
+            repository.getPendingEventCount() shouldBe 0
+            coVerify(exactly = 1) { dao.deleteEventsOlderThan(any()) }
+            coVerify(exactly = 1) { dao.insertEventsAndAggregates(match { it.size == 1 }, any()) }
+            sessionManager.endSession()
+        }
+    }
+
+    test("should keep repeat hits on a confirmed anomaly only in its aggregate") {
+        runTest {
+            val dispatcher = StandardTestDispatcher(testScheduler)
+            val dao = mockk<RoadAnomalyDao>(relaxed = true)
+            coEvery { dao.getEventCount() } returns 0
+            coEvery { dao.getAllAggregates() } returns emptyList()
+            val batches = mutableListOf<List<RoadAnomalyEvent>>()
+            val aggregates = mutableListOf<List<AnomalyAggregate>>()
+            coEvery { dao.insertEventsAndAggregates(capture(batches), capture(aggregates)) } returns Unit
+            val sessionManager = SessionManager(dispatcher)
+            val metrics = PipelineMetrics()
+            val repository = EventRepository(
+                dao, sessionManager, errorHandler(), dispatcher, metrics,
+                AnomalyAggregator(AnomalyAggregator.NEVER_ROLL_UP), rollupConfig(3)
+            )
+            sessionManager.startSession()
+
+            repeat(5) { i -> repository.bufferEventIfSessionActive(event(i.toLong())) shouldBe true }
+            repository.getPendingEventCount() shouldBe 3
+            repository.flushPendingEvents() shouldBe 3
+
+            batches.single() shouldHaveSize 3
+            aggregates.single().single().hitCount shouldBe 5
+            metrics.snapshot().eventsRolledUp shouldBe 2L
+
+            // A rolled up hit alone still reaches the database through the age timer
+            repository.bufferEventIfSessionActive(event(5L)) shouldBe true
+            advanceTimeBy(10_001L)
+            runCurrent()
+            batches shouldHaveSize 2
+            batches.last().shouldBeEmpty()
+            aggregates.last().single().hitCount shouldBe 6
+            coVerify(exactly = 1) { dao.getAllAggregates() }
+            sessionManager.endSession()
+        }
+    }
+
+    test("should continue the stored aggregates") {
+        runTest {
+            val dispatcher = StandardTestDispatcher(testScheduler)
+            val dao = mockk<RoadAnomalyDao>(relaxed = true)
+            coEvery { dao.getEventCount() } returns 2
+            coEvery { dao.getAllAggregates() } returns listOf(
+                AnomalyAggregate(7L, 37.7749, -122.4194, 2, 2, 4, 1L, 2L, 0L)
+            )
+            val aggregates = mutableListOf<List<AnomalyAggregate>>()
+            coEvery { dao.insertEventsAndAggregates(any(), capture(aggregates)) } returns Unit
+            val sessionManager = SessionManager(dispatcher)
+            val repository = EventRepository(
+                dao, sessionManager, errorHandler(), dispatcher, PipelineMetrics(),
+                AnomalyAggregator(AnomalyAggregator.NEVER_ROLL_UP), rollupConfig(3)
+            )
+            sessionManager.startSession()
+
+            // The third hit confirms the anomaly, so the fourth is rolled up
+            repository.bufferEventIfSessionActive(event(3L)) shouldBe true
+            repository.bufferEventIfSessionActive(event(4L)) shouldBe true
+            repository.flushPendingEvents() shouldBe 1
+
+            aggregates.single().single().id shouldBe 7L
+            aggregates.single().single().hitCount shouldBe 4
+            coVerify(exactly = 0) { dao.getEventsByTimeRangeAfter(any(), any(), any(), any(), any()) }
+            sessionManager.endSession()
+        }
+    }
+
+    test("should evict aggregates outside the retention window on cleanup") {
+        runTest {
+            val dispatcher = StandardTestDispatcher(testScheduler)
+            val dao = mockk<RoadAnomalyDao>(relaxed = true)
+            coEvery { dao.getEventCount() } returns 0
+            val aggregator = AnomalyAggregator(AnomalyAggregator.NEVER_ROLL_UP)
+            aggregator.record(event(1L))
+            val repository = EventRepository(dao, SessionManager(dispatcher), errorHandler(), dispatcher, PipelineMetrics(), aggregator)
+
+            repository.cleanupOldEvents(retentionDays = 30)
+
+            aggregator.size shouldBe 0
+            coVerify(exactly = 1) { dao.deleteAggregatesOlderThan(match { it > 1L }) }
+        }
+    }
+
+    test("should not buffer events without an active session") {
+        runTest {
+            val dispatcher = StandardTestDispatcher(testScheduler)
+            val dao = mockk<RoadAnomalyDao>(relaxed = true)
+            val repository = EventRepository(dao, SessionManager(dispatcher), errorHandler(), dispatcher)
+
+            repository.bufferEventIfSessionActive(event(1L)) shouldBe false
+            repository.getPendingEventCount() shouldBe 0
+        }
+    }
+})
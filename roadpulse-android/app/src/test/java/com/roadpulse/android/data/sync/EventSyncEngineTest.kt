@@ -0,0 +1,214 @@
+package com.roadpulse.android.data.sync
+
+import com.roadpulse.android.data.database.RoadAnomalyDao
+import com.roadpulse.android.data.model.AnomalyAggregate
+import com.roadpulse.android.data.model.RoadAnomalyEvent
+import com.roadpulse.android.data.repository.EventRepository
+import com.roadpulse.android.data.session.SessionManager
+import io.kotest.core.spec.style.FunSpec
+import io.kotest.matchers.collections.shouldHaveSize
+import io.kotest.matchers.shouldBe
+import io.kotest.matchers.types.shouldBeInstanceOf
+import io.mockk.coEvery
+import io.mockk.mockk
+import kotlinx.coroutines.test.StandardTestDispatcher
+import kotlinx.coroutines.test.TestDispatcher
+import kotlinx.coroutines.test.runTest
+import java.io.IOException
+import java.util.zip.GZIPInputStream
+
+class EventSyncEngineTest : FunSpec({
+
+    fun events(count: Int) = (0 until count).map { i ->
+        RoadAnomalyEvent(
+            id = "00000000-0000-0000-0000-%012d".format(i),
+            createdAt = 1_000L + i,
+            latitude = 52.0,
+            longitude = 4.0,
+            gpsAccuracyM = 5f,
+            speedKmh = 40f,
+            headingDeg = null,
+            peakAccelMs2 = 3f,
+            impulseDurationMs = 100,
+            severity = 2,
+            confidence = 0.8f,
+            deviceModel = "Test Device",
+            androidVersion = "13",
+            sessionId = "session"
+        )
+    }
+
+    fun aggregates(count: Int) = (1..count).map { i ->
+        AnomalyAggregate(
+            id = i.toLong(),
+            latitude = 52.0 + i * 0.001,
+            longitude = 4.0,
+            hitCount = 5,
+            maxSeverity = 3,
+            severitySum = 12,
+            firstSeenAt = 1_000L,
+            lastSeenAt = 2_000L + i,
+            headingBuckets = AnomalyAggregate.addHeading(0L, 90f),
+            uuid = "00000000-0000-0000-0001-%012d".format(i)
+        )
+    }
+
+    class FakeUploader(private val failOnCall: Int = -1) : EventUploader {
+        val payloads = mutableListOf<ByteArray>()
+        var calls = 0
+
+        override suspend fun upload(payload: ByteArray, eventCount: Int): UploadResult {
+            calls++
+            if (calls == failOnCall) return UploadResult.Retryable(IOException("offline"))
+            payloads.add(payload)
+            return UploadResult.Accepted
+        }
+    }
+
+    // Refuses every batch holding one of the given events with [statusCode]
+    class RejectingUploader(private val rejectedIds: Set<String>, private val statusCode: Int = 400) : EventUploader {
+        val acceptedIds = mutableListOf<String>()
+
+        override suspend fun upload(payload: ByteArray, eventCount: Int): UploadResult {
+            val ids = EventWireFormat.decode(GZIPInputStream(payload.inputStream()).readBytes()).map { it.id }
+            if (ids.any { it in rejectedIds }) return UploadResult.Rejected(statusCode)
+            acceptedIds.addAll(ids)
+            return UploadResult.Accepted
+        }
+    }
+
+    // Repository over an in-memory DAO; records every markEventsSynced and markAggregatesSynced call
+    fun repository(
+        stored: List<RoadAnomalyEvent>,
+        markCalls: MutableList<List<String>>,
+        dispatcher: TestDispatcher,
+        storedAggregates: List<AnomalyAggregate> = emptyList(),
+        aggregateMarkCalls: MutableList<List<AnomalyAggregate>> = mutableListOf()
+    ): EventRepository {
+        val dao = mockk<RoadAnomalyDao>(relaxed = true)
+        coEvery { dao.getUnsyncedEventsAfter(any(), any(), any()) } answers {
+            val afterCreatedAt = firstArg<Long>()
+            stored.filter { it.createdAt > afterCreatedAt }.take(thirdArg())
+        }
+        coEvery { dao.markEventsSynced(any()) } answers { markCalls.add(firstArg()) }
+        coEvery { dao.getUnsyncedAggregatesAfter(any(), any()) } answers {
+            val afterId = firstArg<Long>()
+            storedAggregates.filter { it.id > afterId }.take(secondArg())
+        }
+        coEvery { dao.markAggregatesSynced(any()) } answers { aggregateMarkCalls.add(firstArg()) }
+        return EventRepository(dao, SessionManager(dispatcher), mockk(relaxed = true), dispatcher)
+    }
+
+    test("should upload all events in bounded batches and mark them synced in chunks") {
+        runTest {
+            val dispatcher = StandardTestDispatcher(testScheduler)
+            val stored = events(1_200)
+            val markCalls = mutableListOf<List<String>>()
+            val uploader = FakeUploader()
+            val engine = EventSyncEngine(repository(stored, markCalls, dispatcher), uploader, mockk(relaxed = true))
+
+            val result = engine.syncPending(EventBatchBuilder(maxEvents = 500))
+
+            result shouldBe EventSyncEngine.SyncResult.Completed(1_200)
+            uploader.payloads shouldHaveSize 3
+            markCalls.flatten() shouldBe stored.map { it.id }
+            markCalls.all { it.size <= 500 } shouldBe true
+
+            // Payloads are gzip-compressed wire format batches
+            val last = EventWireFormat.decode(GZIPInputStream(uploader.payloads.last().inputStream()).readBytes())
+            last.map { it.id } shouldBe stored.drop(1_000).map { it.id }
+        }
+    }
+
+    test("should stop on a transient failure and keep unacknowledged events unsynced") {
+        runTest {
+            val dispatcher = StandardTestDispatcher(testScheduler)
+            val stored = events(300)
+            val markCalls = mutableListOf<List<String>>()
+            val engine = EventSyncEngine(repository(stored, markCalls, dispatcher), FakeUploader(failOnCall = 2), mockk(relaxed = true))
+
+            val result = engine.syncPending(EventBatchBuilder(maxEvents = 100))
+
+            result.shouldBeInstanceOf<EventSyncEngine.SyncResult.Retry>()
+            result.uploadedEvents shouldBe 100
+            markCalls.flatten() shouldBe stored.take(100).map { it.id }
+        }
+    }
+
+    test("should skip a permanently rejected event and sync the events after it") {
+        runTest {
+            val dispatcher = StandardTestDispatcher(testScheduler)
+            val stored = events(10)
+            val markCalls = mutableListOf<List<String>>()
+            val uploader = RejectingUploader(setOf(stored[3].id))
+            val engine = EventSyncEngine(repository(stored, markCalls, dispatcher), uploader, mockk(relaxed = true))
+
+            val result = engine.syncPending(EventBatchBuilder(maxEvents = 4))
+
+            result shouldBe EventSyncEngine.SyncResult.Completed(9, skippedEvents = 1)
+            uploader.acceptedIds shouldBe stored.map { it.id } - stored[3].id
+            // The rejected event is marked too, so the next run does not start from it again
+            markCalls.flatten().sorted() shouldBe stored.map { it.id }
+        }
+    }
+
+    test("should stop without skipping events when the rejection is not about the payload") {
+        runTest {
+            val dispatcher = StandardTestDispatcher(testScheduler)
+            val stored = events(10)
+            val markCalls = mutableListOf<List<String>>()
+            val uploader = RejectingUploader(stored.map { it.id }.toSet(), statusCode = 401)
+            val engine = EventSyncEngine(repository(stored, markCalls, dispatcher), uploader, mockk(relaxed = true))
+
+            val result = engine.syncPending(EventBatchBuilder(maxEvents = 4))
+
+            result shouldBe EventSyncEngine.SyncResult.Failed(0, 401)
+            markCalls.flatten() shouldBe emptyList()
+        }
+    }
+
+    test("should upload changed aggregates after the events and mark them synced") {
+        runTest {
+            val dispatcher = StandardTestDispatcher(testScheduler)
+            val stored = events(3)
+            val storedAggregates = aggregates(2)
+            val markCalls = mutableListOf<List<String>>()
+            val aggregateMarkCalls = mutableListOf<List<AnomalyAggregate>>()
+            val uploader = FakeUploader()
+            val engine = EventSyncEngine(
+                repository(stored, markCalls, dispatcher, storedAggregates, aggregateMarkCalls),
+                uploader,
+                mockk(relaxed = true)
+            )
+
+            val result = engine.syncPending(EventBatchBuilder(maxEvents = 4))
+
+            result shouldBe EventSyncEngine.SyncResult.Completed(3, uploadedAggregates = 2)
+            // The first aggregate fills up the event batch, the second goes on its own
+            uploader.payloads shouldHaveSize 2
+            val first = EventWireFormat.decodeBatch(GZIPInputStream(uploader.payloads.first().inputStream()).readBytes())
+            first.events.map { it.id } shouldBe stored.map { it.id }
+            first.aggregates.map { it.uuid } shouldBe listOf(storedAggregates[0].uuid)
+            val last = EventWireFormat.decodeBatch(GZIPInputStream(uploader.payloads.last().inputStream()).readBytes())
+            last.events shouldHaveSize 0
+            last.aggregates.single().hitCount shouldBe 5
+            aggregateMarkCalls.flatten() shouldBe storedAggregates
+        }
+    }
+
+    test("should close a batch before it exceeds the byte limit") {
+        val builder = EventBatchBuilder(maxEvents = 1_000, maxBytes = 2_000)
+        var added = 0
+        for (event in events(100)) {
+            if (!builder.tryAdd(event)) break
+            added++
+        }
+
+        val batch = builder.build()
+
+        batch.eventIds shouldHaveSize added
+        (batch.uncompressedBytes <= 2_000) shouldBe true
+        (added in 1 until 100) shouldBe true
+        builder.isEmpty() shouldBe true
+    }
+})
@@ -0,0 +1,64 @@
+package com.roadpulse.android.data.sync
+
+import com.sun.net.httpserver.HttpServer
+import io.kotest.core.spec.style.FunSpec
+import io.kotest.matchers.shouldBe
+import io.kotest.matchers.types.shouldBeInstanceOf
+import kotlinx.coroutines.runBlocking
+import java.net.InetSocketAddress
+import java.util.zip.GZIPInputStream
+
+class HttpEventUploaderTest : FunSpec({
+
+    // Local stand-in for the backend: records the last request and answers with a fixed status
+    class StandInServer(private val status: Int) {
+        var body: ByteArray? = null
+        var headers: Map<String, String> = emptyMap()
+        private val server = HttpServer.create(InetSocketAddress("127.0.0.1", 0), 0).apply {
+            createContext("/events") { exchange ->
+                body = exchange.requestBody.readBytes()
+                headers = exchange.requestHeaders.mapValues { it.value.first() }
+                exchange.sendResponseHeaders(status, -1)
+                exchange.close()
+            }
+            start()
+        }
+        val url = "http://127.0.0.1:${server.address.port}/events"
+
+        fun stop() = server.stop(0)
+    }
+
+    val payload = EventBatchBuilder().build().payload
+
+    test("should post the compressed batch and accept a 2xx response") {
+        val server = StandInServer(204)
+        try {
+            val result = runBlocking { HttpEventUploader(server.url).upload(payload, 0) }
+
+            result shouldBe UploadResult.Accepted
+            EventWireFormat.decode(GZIPInputStream(server.body!!.inputStream()).readBytes()) shouldBe emptyList()
+            server.headers["Content-type"] shouldBe EventWireFormat.CONTENT_TYPE
+            server.headers["Content-encoding"] shouldBe "gzip"
+            server.headers["X-event-count"] shouldBe "0"
+        } finally {
+            server.stop()
+        }
+    }
+
+    test("should classify server errors as retryable and client errors as rejected") {
+        val unavailable = StandInServer(503)
+        val badRequest = StandInServer(400)
+        try {
+            runBlocking { HttpEventUploader(unavailable.url).upload(payload, 0) }
+                .shouldBeInstanceOf<UploadResult.Retryable>()
+            runBlocking { HttpEventUploader(badRequest.url).upload(payload, 0) } shouldBe UploadResult.Rejected(400)
+        } finally {
+            unavailable.stop()
+            badRequest.stop()
+        }
+    }
+
+    test("should not upload without an endpoint") {
+        runBlocking { HttpEventUploader("").upload(payload, 0) } shouldBe UploadResult.Disabled
+    }
+})
@@ -0,0 +1,36 @@
+plugins {
+    id("org.jetbrains.kotlin.jvm")
+    id("me.champeau.jmh")
+}
+
+// JMH harnesses for the detection pipeline stages in :core.
+// Run all:        ./gradlew :benchmarks:jmh
+// Run some:       ./gradlew :benchmarks:jmh -Proadpulse.benchmark=DetectEvent
+// Recorded input: ./gradlew :benchmarks:jmh -Proadpulse.trace=/path/to/pinned (segment file or directory)
+java {
+    sourceCompatibility = JavaVersion.VERSION_11
+    targetCompatibility = JavaVersion.VERSION_11
+}
+
+tasks.withType<org.jetbrains.kotlin.gradle.tasks.KotlinCompile>().configureEach {
+    kotlinOptions {
+        jvmTarget = "11"
+    }
+}
+
+jmh {
+    jmhVersion.set("1.37")
+    
+    // Allocation rate and bytes per operation next to the timings
+    profilers.add("gc")
+    resultFormat.set("JSON")
+    
+    project.findProperty("roadpulse.benchmark")?.let { includes.add(it.toString()) }
+    project.findProperty("roadpulse.trace")?.let { trace ->
+        benchmarkParameters.put("signal", project.objects.listProperty(String::class.java).value(listOf(trace.toString())))
+    }
+}
+
+dependencies {
+    jmhImplementation(project(":core"))
+}
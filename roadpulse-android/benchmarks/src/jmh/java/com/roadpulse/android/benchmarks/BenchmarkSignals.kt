@@ -0,0 +1,165 @@
+package com.roadpulse.android.benchmarks
+
+import com.roadpulse.android.data.detector.EventDetector
+import com.roadpulse.android.data.error.ErrorReporter
+import com.roadpulse.android.data.model.AccelerometerData
+import com.roadpulse.android.data.model.DetectedEvent
+import com.roadpulse.android.data.model.GyroscopeData
+import com.roadpulse.android.data.model.LocationData
+import com.roadpulse.android.data.model.SensorData
+import com.roadpulse.android.data.processor.SensorDataProcessor
+import com.roadpulse.android.data.replay.TraceSource
+import com.roadpulse.android.data.time.ReplayClock
+import com.roadpulse.android.data.trace.SensorTraceFormat
+import com.roadpulse.android.data.trace.SensorTraceReader
+import java.io.File
+import java.io.IOException
+import kotlin.math.PI
+import kotlin.math.sin
+
+/**
+ * Input signals for the stage benchmarks, loaded once per trial.
+ *
+ * `synthetic` is a phone lying flat in a car at 54 km/h on a slightly rough road with a
+ * 160ms bump every 30 seconds. Any other value is a path to a recorded trace segment or a
+ * directory of segments, such as the pinned segments pulled from a device.
+ */
+object BenchmarkSignals {
+    const val SYNTHETIC = "synthetic"
+
+    private const val SAMPLE_PERIOD_MS = 40L // 25Hz
+    private const val SYNTHETIC_SAMPLES = 45_000 // 30 minutes
+    private const val BUMP_EVERY_SAMPLES = 750
+    private const val BUMP_SAMPLES = 4
+    private const val START_MS = 1_717_000_000_000L
+
+    /**
+     * Reports nothing; calibration errors on recorded signals are expected
+     */
+    val NO_ERRORS = ErrorReporter { _, _ -> }
+
+    fun load(signal: String): Array<SensorData> {
+        return if (signal == SYNTHETIC) synthetic() else recorded(File(signal))
+    }
+
+    /**
+     * Samples as the detector receives them: processed, filtered to detection candidates and
+     * carrying their vertical acceleration
+     */
+    fun detectionCandidates(samples: Array<SensorData>): Array<SensorData> {
+        val clock = ReplayClock()
+        val processor = SensorDataProcessor(NO_ERRORS, clock)
+        val candidates = ArrayList<SensorData>(samples.size)
+        for (batch in samples.asList().chunked(75)) {
+            clock.advanceTo(batch.last().timestamp)
+            val processed = processor.processSensorBatch(batch)
+            processor.selectDetectionCandidates(batch, processed)?.let { candidates.addAll(it) }
+        }
+        return candidates.toTypedArray()
+    }
+
+    /**
+     * Events the detector finds in [samples], for the classify and merge benchmarks
+     */
+    fun detectedEvents(samples: Array<SensorData>): Array<DetectedEvent> {
+        val detector = EventDetector()
+        val events = detectionCandidates(samples).mapNotNull { detector.detectEvent(it) }
+        check(events.isNotEmpty()) { "The signal contains no detectable events" }
+        return events.toTypedArray()
+    }
+
+    /**
+     * [samples] as a trace for the replay engine, with a location record whenever the fix changes
+     */
+    fun traceSource(samples: Array<SensorData>): TraceSource = TraceSource { visitor ->
+        val first = samples.first()
+        val wallClockOffsetNs = first.timestamp * 1_000_000L - first.timestampNanos
+        visitor.onSegmentStart(wallClockOffsetNs)
+        var location: LocationData? = null
+        for (sample in samples) {
+            val fix = sample.location
+            if (fix != null && fix !== location) {
+                val fixNs = if (fix.elapsedRealtimeNanos > 0) fix.elapsedRealtimeNanos else sample.timestampNanos
+                visitor.onLocation(fixNs, fix.latitude, fix.longitude, fix.accuracy, fix.speed, fix.bearing)
+                location = fix
+            }
+            val accel = sample.accelerometer
+            val gyro = sample.gyroscope
+            visitor.onSample(
+                sample.timestampNanos,
+                accel.x, accel.y, accel.z, accel.accuracy,
+                gyro.x, gyro.y, gyro.z, gyro.accuracy
+            )
+        }
+    }
+
+    private fun synthetic(): Array<SensorData> {
+        val location = LocationData(52.3702157, 4.8951679, 5f, 15f, 90f, START_MS)
+        return Array(SYNTHETIC_SAMPLES) { i ->
+            val t = i * SAMPLE_PERIOD_MS / 1000.0
+            val bump = i >= BUMP_EVERY_SAMPLES && i % BUMP_EVERY_SAMPLES < BUMP_SAMPLES
+            // Road texture well below the detection threshold
+            val roughness = (0.04 * sin(2 * PI * 7.0 * t) + 0.03 * sin(2 * PI * 11.3 * t)).toFloat()
+            val sway = (0.004 * sin(2 * PI * 0.5 * t)).toFloat()
+            SensorData(
+                timestamp = START_MS + i * SAMPLE_PERIOD_MS,
+                accelerometer = AccelerometerData(roughness * 0.5f, roughness * 0.3f, (if (bump) 15.81f else 9.81f) + roughness, 3),
+                gyroscope = GyroscopeData(sway, -sway, sway * 0.5f, 3),
+                location = location,
+                timestampNanos = i * SAMPLE_PERIOD_MS * 1_000_000L
+            )
+        }
+    }
+
+    @Throws(IOException::class)
+    private fun recorded(path: File): Array<SensorData> {
+        val segments = if (path.isDirectory) {
+            (path.listFiles() ?: emptyArray())
+                .mapNotNull { file -> SensorTraceFormat.sequenceOf(file.name)?.let { it to file } }
+                .sortedBy { it.first }
+                .map { it.second }
+        } else {
+            listOf(path)
+        }
+        if (segments.isEmpty()) throw IOException("No trace segments in $path")
+
+        val samples = ArrayList<SensorData>()
+        val visitor = object : SensorTraceReader.TraceVisitor {
+            var wallClockOffsetNs = 0L
+            var location: LocationData? = null
+
+            override fun onSegmentStart(wallClockOffsetNs: Long) {
+                this.wallClockOffsetNs = wallClockOffsetNs
+            }
+
+            override fun onSample(
+                timestampNs: Long,
+                accelX: Float, accelY: Float, accelZ: Float, accelAccuracy: Int,
+                gyroX: Float, gyroY: Float, gyroZ: Float, gyroAccuracy: Int
+            ) {
+                samples.add(
+                    SensorData(
+                        timestamp = wallClockMs(timestampNs),
+                        accelerometer = AccelerometerData(accelX, accelY, accelZ, accelAccuracy),
+                        gyroscope = GyroscopeData(gyroX, gyroY, gyroZ, gyroAccuracy),
+                        location = location,
+                        timestampNanos = timestampNs
+                    )
+                )
+            }
+
+            override fun onLocation(
+                timestampNs: Long,
+                latitude: Double, longitude: Double,
+                accuracyM: Float, speedMs: Float, bearingDeg: Float
+            ) {
+                location = LocationData(latitude, longitude, accuracyM, speedMs, bearingDeg, wallClockMs(timestampNs), timestampNs)
+            }
+
+            private fun wallClockMs(timestampNs: Long) = Math.floorDiv(timestampNs + wallClockOffsetNs, 1_000_000L)
+        }
+        segments.forEach { SensorTraceReader.read(it, visitor) }
+        if (samples.isEmpty()) throw IOException("No samples in $path")
+        return samples.toTypedArray()
+    }
+}
@@ -0,0 +1,51 @@
+package com.roadpulse.android.benchmarks
+
+import com.roadpulse.android.data.classifier.EventClassifier
+import com.roadpulse.android.data.model.DetectedEvent
+import com.roadpulse.android.data.model.RoadAnomalyEvent
+import org.openjdk.jmh.annotations.Benchmark
+import org.openjdk.jmh.annotations.BenchmarkMode
+import org.openjdk.jmh.annotations.Fork
+import org.openjdk.jmh.annotations.Measurement
+import org.openjdk.jmh.annotations.Mode
+import org.openjdk.jmh.annotations.OutputTimeUnit
+import org.openjdk.jmh.annotations.Param
+import org.openjdk.jmh.annotations.Scope
+import org.openjdk.jmh.annotations.Setup
+import org.openjdk.jmh.annotations.State
+import org.openjdk.jmh.annotations.Warmup
+import java.util.concurrent.TimeUnit
+
+/**
+ * Classify stage: severity, confidence and the stored event for one detected event
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+open class ClassifyEventBenchmark {
+
+    companion object {
+        private const val SESSION_ID = "3f2b8c1e-6a4d-4e8b-9c7f-1d2e3f4a5b6c"
+    }
+
+    @Param(BenchmarkSignals.SYNTHETIC)
+    lateinit var signal: String
+
+    private lateinit var events: Array<DetectedEvent>
+    private val classifier = EventClassifier()
+    private var index = 0
+
+    @Setup
+    fun setUp() {
+        events = BenchmarkSignals.detectedEvents(BenchmarkSignals.load(signal))
+    }
+
+    @Benchmark
+    fun classifyEvent(): RoadAnomalyEvent {
+        if (index == events.size) index = 0
+        return classifier.classifyEvent(events[index++], SESSION_ID)
+    }
+}
@@ -0,0 +1,52 @@
+package com.roadpulse.android.benchmarks
+
+import com.roadpulse.android.data.detector.EventDetector
+import com.roadpulse.android.data.model.DetectedEvent
+import com.roadpulse.android.data.model.SensorData
+import org.openjdk.jmh.annotations.Benchmark
+import org.openjdk.jmh.annotations.BenchmarkMode
+import org.openjdk.jmh.annotations.Fork
+import org.openjdk.jmh.annotations.Measurement
+import org.openjdk.jmh.annotations.Mode
+import org.openjdk.jmh.annotations.OutputTimeUnit
+import org.openjdk.jmh.annotations.Param
+import org.openjdk.jmh.annotations.Scope
+import org.openjdk.jmh.annotations.Setup
+import org.openjdk.jmh.annotations.State
+import org.openjdk.jmh.annotations.Warmup
+import java.util.concurrent.TimeUnit
+
+/**
+ * Detect stage: one processed detection candidate through the impulse state machine.
+ * Most samples produce nothing; the few that close an impulse pay for feature extraction.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+open class DetectEventBenchmark {
+
+    @Param(BenchmarkSignals.SYNTHETIC)
+    lateinit var signal: String
+
+    private lateinit var candidates: Array<SensorData>
+    private val detector = EventDetector()
+    private var index = 0
+
+    @Setup
+    fun setUp() {
+        candidates = BenchmarkSignals.detectionCandidates(BenchmarkSignals.load(signal))
+    }
+
+    @Benchmark
+    fun detectEvent(): DetectedEvent? {
+        if (index == candidates.size) {
+            // Start the signal over rather than feed the tracker a jump back in time
+            index = 0
+            detector.clearState()
+        }
+        return detector.detectEvent(candidates[index++])
+    }
+}
@@ -0,0 +1,59 @@
+package com.roadpulse.android.benchmarks
+
+import com.roadpulse.android.data.processor.BiquadLowPass
+import com.roadpulse.android.data.processor.ExponentialMovingAverage
+import com.roadpulse.android.data.processor.MovingAverage
+import org.openjdk.jmh.annotations.Benchmark
+import org.openjdk.jmh.annotations.BenchmarkMode
+import org.openjdk.jmh.annotations.Fork
+import org.openjdk.jmh.annotations.Measurement
+import org.openjdk.jmh.annotations.Mode
+import org.openjdk.jmh.annotations.OutputTimeUnit
+import org.openjdk.jmh.annotations.Param
+import org.openjdk.jmh.annotations.Scope
+import org.openjdk.jmh.annotations.Setup
+import org.openjdk.jmh.annotations.State
+import org.openjdk.jmh.annotations.Warmup
+import java.util.concurrent.TimeUnit
+
+/**
+ * Noise filters: one accelerometer z value through each streaming low-pass filter.
+ * SensorDataProcessor runs the moving average on all six axes of every sample.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+open class LowPassFilterBenchmark {
+
+    @Param(BenchmarkSignals.SYNTHETIC)
+    lateinit var signal: String
+
+    private lateinit var values: FloatArray
+    private val movingAverage = MovingAverage(5)
+    private val exponential = ExponentialMovingAverage.forCutoff(cutoffHz = 2f, sampleRateHz = 25f)
+    private val biquad = BiquadLowPass(cutoffHz = 2f, sampleRateHz = 25f)
+    private var index = 0
+
+    @Setup
+    fun setUp() {
+        val samples = BenchmarkSignals.load(signal)
+        values = FloatArray(samples.size) { samples[it].accelerometer.z }
+    }
+
+    @Benchmark
+    fun movingAverage(): Float = movingAverage.filter(next())
+
+    @Benchmark
+    fun exponentialMovingAverage(): Float = exponential.filter(next())
+
+    @Benchmark
+    fun biquadLowPass(): Float = biquad.filter(next())
+
+    private fun next(): Float {
+        if (index == values.size) index = 0
+        return values[index++]
+    }
+}
@@ -0,0 +1,45 @@
+package com.roadpulse.android.benchmarks
+
+import com.roadpulse.android.data.model.DetectedEvent
+import org.openjdk.jmh.annotations.Benchmark
+import org.openjdk.jmh.annotations.BenchmarkMode
+import org.openjdk.jmh.annotations.Fork
+import org.openjdk.jmh.annotations.Measurement
+import org.openjdk.jmh.annotations.Mode
+import org.openjdk.jmh.annotations.OutputTimeUnit
+import org.openjdk.jmh.annotations.Param
+import org.openjdk.jmh.annotations.Scope
+import org.openjdk.jmh.annotations.Setup
+import org.openjdk.jmh.annotations.State
+import org.openjdk.jmh.annotations.Warmup
+import java.util.concurrent.TimeUnit
+
+/**
+ * Merging two consecutive detected events, the step EventDetector.mergeConsecutiveEvents repeats
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+open class MergeEventsBenchmark {
+
+    @Param(BenchmarkSignals.SYNTHETIC)
+    lateinit var signal: String
+
+    private lateinit var events: Array<DetectedEvent>
+    private var index = 0
+
+    @Setup
+    fun setUp() {
+        events = BenchmarkSignals.detectedEvents(BenchmarkSignals.load(signal))
+    }
+
+    @Benchmark
+    fun mergeWith(): DetectedEvent {
+        if (index == events.size) index = 0
+        val event = events[index++]
+        return event.mergeWith(events[index % events.size])
+    }
+}
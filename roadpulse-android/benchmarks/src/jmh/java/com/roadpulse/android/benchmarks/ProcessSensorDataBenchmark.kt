@@ -0,0 +1,54 @@
+package com.roadpulse.android.benchmarks
+
+import com.roadpulse.android.data.model.SensorData
+import com.roadpulse.android.data.processor.ProcessedSensorData
+import com.roadpulse.android.data.processor.SensorDataProcessor
+import com.roadpulse.android.data.time.ReplayClock
+import org.openjdk.jmh.annotations.Benchmark
+import org.openjdk.jmh.annotations.BenchmarkMode
+import org.openjdk.jmh.annotations.Fork
+import org.openjdk.jmh.annotations.Measurement
+import org.openjdk.jmh.annotations.Mode
+import org.openjdk.jmh.annotations.OutputTimeUnit
+import org.openjdk.jmh.annotations.Param
+import org.openjdk.jmh.annotations.Scope
+import org.openjdk.jmh.annotations.Setup
+import org.openjdk.jmh.annotations.State
+import org.openjdk.jmh.annotations.Warmup
+import java.util.concurrent.TimeUnit
+
+/**
+ * Filter stage: one raw sample through calibration, gravity tracking and smoothing.
+ * The signal loops; the processor sees the jump back in time as a sensor gap.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+open class ProcessSensorDataBenchmark {
+
+    @Param(BenchmarkSignals.SYNTHETIC)
+    lateinit var signal: String
+
+    private lateinit var samples: Array<SensorData>
+    private lateinit var clock: ReplayClock
+    private lateinit var processor: SensorDataProcessor
+    private var index = 0
+
+    @Setup
+    fun setUp() {
+        samples = BenchmarkSignals.load(signal)
+        clock = ReplayClock()
+        processor = SensorDataProcessor(BenchmarkSignals.NO_ERRORS, clock)
+    }
+
+    @Benchmark
+    fun processSensorData(): ProcessedSensorData {
+        if (index == samples.size) index = 0
+        val sample = samples[index++]
+        clock.advanceTo(sample.timestamp)
+        return processor.processSensorData(sample)
+    }
+}
@@ -0,0 +1,45 @@
+package com.roadpulse.android.benchmarks
+
+import com.roadpulse.android.data.replay.TraceReplayEngine
+import com.roadpulse.android.data.replay.TraceSource
+import org.openjdk.jmh.annotations.Benchmark
+import org.openjdk.jmh.annotations.BenchmarkMode
+import org.openjdk.jmh.annotations.Fork
+import org.openjdk.jmh.annotations.Measurement
+import org.openjdk.jmh.annotations.Mode
+import org.openjdk.jmh.annotations.OutputTimeUnit
+import org.openjdk.jmh.annotations.Param
+import org.openjdk.jmh.annotations.Scope
+import org.openjdk.jmh.annotations.Setup
+import org.openjdk.jmh.annotations.State
+import org.openjdk.jmh.annotations.Warmup
+import java.util.concurrent.TimeUnit
+
+/**
+ * Whole pipeline: the signal replayed through processor, detector and classifier in batches,
+ * as TraceReplayEngine runs recorded drives. Each operation is one full replay on a fresh
+ * engine, so divide by the sample count for the per-sample cost.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+open class ReplayTraceBenchmark {
+
+    @Param(BenchmarkSignals.SYNTHETIC)
+    lateinit var signal: String
+
+    private lateinit var trace: TraceSource
+
+    @Setup
+    fun setUp() {
+        trace = BenchmarkSignals.traceSource(BenchmarkSignals.load(signal))
+    }
+
+    @Benchmark
+    fun replay(): TraceReplayEngine.ReplayResult {
+        return TraceReplayEngine.create(BenchmarkSignals.NO_ERRORS).replay(trace)
+    }
+}
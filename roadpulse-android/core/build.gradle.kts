@@ -0,0 +1,42 @@
+plugins {
+    id("org.jetbrains.kotlin.jvm")
+    kotlin("kapt")
+}
+
+// Android-free detection pipeline, models and wire format, shared by the app and the JMH benchmarks
+java {
+    sourceCompatibility = JavaVersion.VERSION_11
+    targetCompatibility = JavaVersion.VERSION_11
+}
+
+tasks.withType<org.jetbrains.kotlin.gradle.tasks.KotlinCompile>().configureEach {
+    kotlinOptions {
+        jvmTarget = "11"
+    }
+}
+
+tasks.withType<Test> {
+    useJUnitPlatform()
+}
+
+dependencies {
+    // Room annotations on the event view, processed by the app's Room compiler
+    api("androidx.room:room-common:2.6.1")
+    
+    // Coroutines
+    api("org.jetbrains.kotlinx:kotlinx-coroutines-core:1.7.3")
+    
+    // Injection annotations; factories are generated here so Hilt in the app can use them
+    api("javax.inject:javax.inject:1")
+    implementation("com.google.dagger:dagger:2.48")
+    kapt("com.google.dagger:dagger-compiler:2.48")
+    
+    // Testing dependencies
+    testImplementation("junit:junit:4.13.2")
+    testImplementation("io.kotest:kotest-runner-junit5:5.8.0")
+    testImplementation("io.kotest:kotest-assertions-core:5.8.0")
+    testImplementation("io.kotest:kotest-property:5.8.0")
+    testImplementation("io.mockk:mockk:1.13.8")
+    testImplementation("org.jetbrains.kotlinx:kotlinx-coroutines-test:1.7.3")
+    testImplementation("org.jetbrains.kotlinx:kotlinx-serialization-json:1.6.2") // JSON baseline for wire format sizes
+}
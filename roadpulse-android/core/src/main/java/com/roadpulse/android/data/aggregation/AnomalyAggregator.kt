@@ -0,0 +1,268 @@
+package com.roadpulse.android.data.aggregation
+
+import com.roadpulse.android.data.database.SpatialIndex
+import com.roadpulse.android.data.model.AnomalyAggregate
+import com.roadpulse.android.data.model.RoadAnomalyEvent
+import java.util.UUID
+import kotlin.math.PI
+import kotlin.math.cos
+import kotlin.math.floor
+import kotlin.math.max
+import kotlin.math.min
+
+/**
+ * Deduplicates repeated hits on the same anomaly as events are classified.
+ *
+ * Known anomalies sit in a spatial hash of grid cells about [matchRadiusM] across, so the
+ * anomaly an event belongs to is found by checking the event's cell and its eight neighbours.
+ * An event updates the nearest anomaly within [matchRadiusM], or starts a new one, and the
+ * anomaly's position moves to the mean of its hits.
+ *
+ * After [rollupAfterHits] confirmations further hits only update the totals, and [record]
+ * tells the caller to drop the raw row unless the hit is the most severe yet. Changed
+ * anomalies are handed out once by [takeDirty] for the next database write.
+ */
+class AnomalyAggregator(
+    rollupAfterHits: Int,
+    private val matchRadiusM: Double = DEFAULT_MATCH_RADIUS_M,
+    private val capacity: Int = DEFAULT_CAPACITY
+) {
+
+    companion object {
+        const val NEVER_ROLL_UP = 0
+        const val DEFAULT_MATCH_RADIUS_M = 10.0
+        const val DEFAULT_CAPACITY = 16_384 // Distinct anomalies; when full, new spots keep raw rows until stale ones are evicted
+
+        private const val METRES_PER_DEGREE = SpatialIndex.EARTH_RADIUS_M * PI / 180.0
+        private const val MIN_COS_LATITUDE = 0.01
+    }
+
+    /**
+     * Confirmations before repeat hits are rolled up, or [NEVER_ROLL_UP]; applies from the next hit
+     */
+    @Volatile
+    var rollupAfterHits: Int = rollupAfterHits
+        set(value) {
+            require(value >= 0) { "Rollup threshold must not be negative" }
+            field = value
+        }
+
+    init {
+        require(rollupAfterHits >= 0) { "Rollup threshold must not be negative" }
+        require(matchRadiusM > 0.0) { "Match radius must be positive" }
+    }
+
+    private class Anomaly(
+        val id: Long,
+        val uuid: String,
+        var latitude: Double,
+        var longitude: Double,
+        var hitCount: Int,
+        var maxSeverity: Int,
+        var severitySum: Int,
+        var firstSeenAt: Long,
+        var lastSeenAt: Long,
+        var headingBuckets: Long
+    ) {
+        var dirty = false
+
+        fun toAggregate() = AnomalyAggregate(
+            id = id,
+            latitude = latitude,
+            longitude = longitude,
+            hitCount = hitCount,
+            maxSeverity = maxSeverity,
+            severitySum = severitySum,
+            firstSeenAt = firstSeenAt,
+            lastSeenAt = lastSeenAt,
+            headingBuckets = headingBuckets,
+            uuid = uuid
+        )
+    }
+
+    private val cellSizeDeg = matchRadiusM / METRES_PER_DEGREE
+    private val cells = HashMap<Long, ArrayList<Anomaly>>()
+    private val byId = HashMap<Long, Anomaly>()
+    private val dirty = ArrayList<Anomaly>()
+    private var nextId = 1L
+
+    /**
+     * Adds a classified event to its anomaly
+     *
+     * @return Whether the raw event should still be stored
+     */
+    fun record(event: RoadAnomalyEvent): Boolean =
+        record(event.latitude, event.longitude, event.headingDeg, event.severity, event.createdAt)
+
+    /**
+     * Adds a hit at a position to its anomaly
+     *
+     * @param headingDeg Direction of travel, or null when unknown
+     * @param timestampMs Unix timestamp of the hit in milliseconds
+     * @return Whether the raw event should still be stored
+     */
+    @Synchronized
+    fun record(latitude: Double, longitude: Double, headingDeg: Float?, severity: Int, timestampMs: Long): Boolean {
+        val buckets = if (headingDeg != null) AnomalyAggregate.addHeading(0L, headingDeg) else 0L
+        val anomaly = nearest(latitude, longitude)
+        if (anomaly == null) {
+            if (byId.size >= capacity) return true
+            val created = Anomaly(nextId++, UUID.randomUUID().toString(), latitude, longitude, 1, severity, severity, timestampMs, timestampMs, buckets)
+            insert(created)
+            markDirty(created)
+            return true
+        }
+
+        val mostSevere = severity > anomaly.maxSeverity
+        val oldKey = keyOf(anomaly.latitude, anomaly.longitude)
+        anomaly.hitCount++
+        anomaly.latitude += (latitude - anomaly.latitude) / anomaly.hitCount
+        anomaly.longitude += (longitude - anomaly.longitude) / anomaly.hitCount
+        val newKey = keyOf(anomaly.latitude, anomaly.longitude)
+        if (newKey != oldKey) {
+            // The mean drifted into the next cell
+            cells[oldKey]?.let { anomalies ->
+                anomalies.remove(anomaly)
+                if (anomalies.isEmpty()) cells.remove(oldKey)
+            }
+            cells.getOrPut(newKey) { ArrayList(2) }.add(anomaly)
+        }
+        anomaly.maxSeverity = max(anomaly.maxSeverity, severity)
+        anomaly.severitySum += severity
+        anomaly.firstSeenAt = min(anomaly.firstSeenAt, timestampMs)
+        anomaly.lastSeenAt = max(anomaly.lastSeenAt, timestampMs)
+        if (headingDeg != null) {
+            anomaly.headingBuckets = AnomalyAggregate.addHeading(anomaly.headingBuckets, headingDeg)
+        }
+        markDirty(anomaly)
+
+        return rollupAfterHits == NEVER_ROLL_UP || anomaly.hitCount <= rollupAfterHits || mostSevere
+    }
+
+    /**
+     * Replaces the known anomalies with stored ones, continuing ids after the highest
+     */
+    @Synchronized
+    fun load(aggregates: List<AnomalyAggregate>) {
+        clear()
+        for (aggregate in aggregates) {
+            if (byId.size >= capacity) break
+            insert(Anomaly(
+                aggregate.id, aggregate.uuid, aggregate.latitude, aggregate.longitude,
+                aggregate.hitCount, aggregate.maxSeverity, aggregate.severitySum,
+                aggregate.firstSeenAt, aggregate.lastSeenAt, aggregate.headingBuckets
+            ))
+            nextId = max(nextId, aggregate.id + 1)
+        }
+    }
+
+    /**
+     * Anomalies changed since the last call
+     */
+    @Synchronized
+    fun takeDirty(): List<AnomalyAggregate> {
+        if (dirty.isEmpty()) return emptyList()
+        val aggregates = ArrayList<AnomalyAggregate>(dirty.size)
+        for (anomaly in dirty) {
+            anomaly.dirty = false
+            aggregates.add(anomaly.toAggregate())
+        }
+        dirty.clear()
+        return aggregates
+    }
+
+    /**
+     * Hands back aggregates from [takeDirty] that could not be written, so the next
+     * [takeDirty] returns them again with any hits recorded since
+     */
+    @Synchronized
+    fun restoreDirty(aggregates: List<AnomalyAggregate>) {
+        for (aggregate in aggregates) {
+            byId[aggregate.id]?.let { markDirty(it) }
+        }
+    }
+
+    @Synchronized
+    fun hasDirty(): Boolean = dirty.isNotEmpty()
+
+    /**
+     * Forgets anomalies last hit before [cutoffMs], freeing room for new spots
+     *
+     * @return Number of anomalies removed
+     */
+    @Synchronized
+    fun evictOlderThan(cutoffMs: Long): Int {
+        val stale = byId.values.filter { it.lastSeenAt < cutoffMs }
+        for (anomaly in stale) {
+            val key = keyOf(anomaly.latitude, anomaly.longitude)
+            cells[key]?.let { anomalies ->
+                anomalies.remove(anomaly)
+                if (anomalies.isEmpty()) cells.remove(key)
+            }
+            byId.remove(anomaly.id)
+            if (anomaly.dirty) {
+                anomaly.dirty = false
+                dirty.remove(anomaly)
+            }
+        }
+        return stale.size
+    }
+
+    @Synchronized
+    fun clear() {
+        cells.clear()
+        byId.clear()
+        dirty.clear()
+        nextId = 1L
+    }
+
+    val size: Int
+        @Synchronized get() = byId.size
+
+    private fun insert(anomaly: Anomaly) {
+        cells.getOrPut(keyOf(anomaly.latitude, anomaly.longitude)) { ArrayList(2) }.add(anomaly)
+        byId[anomaly.id] = anomaly
+    }
+
+    private fun markDirty(anomaly: Anomaly) {
+        if (anomaly.dirty) return
+        anomaly.dirty = true
+        dirty.add(anomaly)
+    }
+
+    private fun nearest(latitude: Double, longitude: Double): Anomaly? {
+        var nearest: Anomaly? = null
+        var nearestM = matchRadiusM
+        val row = rowOf(latitude)
+        for (r in row - 1..row + 1) {
+            // Cells narrow towards the poles, so each row has its own columns
+            val column = columnOf(r, longitude)
+            for (c in column - 1..column + 1) {
+                val anomalies = cells[key(r, c)] ?: continue
+                for (anomaly in anomalies) {
+                    val distanceM = SpatialIndex.distanceMeters(latitude, longitude, anomaly.latitude, anomaly.longitude)
+                    if (distanceM <= nearestM) {
+                        nearest = anomaly
+                        nearestM = distanceM
+                    }
+                }
+            }
+        }
+        return nearest
+    }
+
+    private fun keyOf(latitude: Double, longitude: Double): Long {
+        val row = rowOf(latitude)
+        return key(row, columnOf(row, longitude))
+    }
+
+    private fun rowOf(latitude: Double): Int = floor((latitude + 90.0) / cellSizeDeg).toInt()
+
+    private fun columnOf(row: Int, longitude: Double): Int {
+        val rowLatitude = (row + 0.5) * cellSizeDeg - 90.0
+        val cosLatitude = max(cos(Math.toRadians(rowLatitude)), MIN_COS_LATITUDE)
+        return floor((longitude + 180.0) * cosLatitude / cellSizeDeg).toInt()
+    }
+
+    private fun key(row: Int, column: Int): Long = (row.toLong() shl 32) or (column.toLong() and 0xFFFFFFFFL)
+}
@@ -50,7 +50,8 @@ class EventClassifier @Inject constructor() {
             impulseDurationMs = event.duration,
             severity = severity,
             confidence = confidence,
-            sessionId = sessionId
+            sessionId = sessionId,
+            createdAt = event.timestamp
         )
     }
     
@@ -0,0 +1,82 @@
+package com.roadpulse.android.data.database
+
+import androidx.room.TypeConverter
+import java.nio.ByteBuffer
+import java.time.Instant
+import java.util.UUID
+
+/**
+ * Type converters for Room database to handle custom data types.
+ */
+class DatabaseConverters {
+    
+    @TypeConverter
+    fun fromTimestamp(value: Long?): Instant? {
+        return value?.let { Instant.ofEpochMilli(it) }
+    }
+    
+    @TypeConverter
+    fun instantToTimestamp(instant: Instant?): Long? {
+        return instant?.toEpochMilli()
+    }
+    
+    @TypeConverter
+    fun fromUUID(uuid: UUID?): ByteArray? {
+        return uuid?.let { CompactIds.toBytes(it) }
+    }
+    
+    @TypeConverter
+    fun toUUID(bytes: ByteArray?): UUID? {
+        return bytes?.let { CompactIds.toUuid(it) }
+    }
+}
+
+/**
+ * Stores UUID strings as 16-byte BLOBs.
+ * Applied per field and per DAO parameter rather than database-wide, since most String
+ * columns are plain text.
+ */
+class CompactIdConverters {
+    
+    @TypeConverter
+    fun idToBytes(id: String): ByteArray = CompactIds.encode(id)
+    
+    @TypeConverter
+    fun bytesToId(bytes: ByteArray): String = CompactIds.decode(bytes)
+}
+
+/**
+ * 16-byte binary form of the UUID identifiers used for events and sessions
+ */
+object CompactIds {
+    
+    const val SIZE_BYTES = 16
+    
+    /**
+     * Encodes a UUID string. Ids that are not UUIDs are mapped to a name-based UUID so
+     * that lookups stay consistent, but then do not decode back to the original text.
+     */
+    fun encode(id: String): ByteArray {
+        val uuid = try {
+            UUID.fromString(id)
+        } catch (e: IllegalArgumentException) {
+            UUID.nameUUIDFromBytes(id.toByteArray(Charsets.UTF_8))
+        }
+        return toBytes(uuid)
+    }
+    
+    fun decode(bytes: ByteArray): String = toUuid(bytes).toString()
+    
+    fun toBytes(uuid: UUID): ByteArray {
+        return ByteBuffer.allocate(SIZE_BYTES)
+            .putLong(uuid.mostSignificantBits)
+            .putLong(uuid.leastSignificantBits)
+            .array()
+    }
+    
+    fun toUuid(bytes: ByteArray): UUID {
+        require(bytes.size == SIZE_BYTES) { "Expected $SIZE_BYTES id bytes, got ${bytes.size}" }
+        val buffer = ByteBuffer.wrap(bytes)
+        return UUID(buffer.long, buffer.long)
+    }
+}
@@ -0,0 +1,173 @@
+package com.roadpulse.android.data.database
+
+import kotlin.math.abs
+import kotlin.math.asin
+import kotlin.math.cos
+import kotlin.math.sin
+import kotlin.math.sqrt
+
+/**
+ * Spatial key for road anomaly events: the Z-order (Morton) code of the event's grid cell.
+ * The grid splits latitude and longitude into 2^16 steps each (about 300 m north-south).
+ * All cells inside a coarser cell share a key prefix, so any area maps to a few contiguous
+ * key ranges that the spatial_cell index can search.
+ */
+object SpatialIndex {
+
+    const val LEVEL = 16
+    const val EARTH_RADIUS_M = 6_371_000.0
+    private const val CELLS = 1 shl LEVEL
+    private const val MAX_COVERING_CELLS = 16 // Cells per box before coarsening the covering
+
+    /**
+     * SQL text and bind arguments for a spatial lookup
+     */
+    class SpatialQuery(val sql: String, val args: Array<Any>)
+
+    fun cellOf(latitude: Double, longitude: Double): Long {
+        return interleave(cellX(longitude), cellY(latitude))
+    }
+
+    /**
+     * Contiguous spatial_cell key ranges covering the box, sorted and merged.
+     * A box with minLongitude > maxLongitude crosses the antimeridian.
+     */
+    fun coveringRanges(
+        minLatitude: Double,
+        minLongitude: Double,
+        maxLatitude: Double,
+        maxLongitude: Double
+    ): List<LongRange> {
+        if (minLongitude > maxLongitude) {
+            return merge(
+                cover(minLatitude, minLongitude, maxLatitude, 180.0) +
+                    cover(minLatitude, -180.0, maxLatitude, maxLongitude)
+            )
+        }
+        return merge(cover(minLatitude, minLongitude, maxLatitude, maxLongitude))
+    }
+
+    /**
+     * Query for events inside the box. The key ranges narrow the search through the index,
+     * the coordinate filter trims events in the partially covered edge cells.
+     */
+    fun boundingBoxQuery(
+        minLatitude: Double,
+        minLongitude: Double,
+        maxLatitude: Double,
+        maxLongitude: Double
+    ): SpatialQuery {
+        val ranges = coveringRanges(minLatitude, minLongitude, maxLatitude, maxLongitude)
+        val args = ArrayList<Any>(ranges.size * 2 + 4)
+        val sql = StringBuilder("SELECT * FROM road_anomaly_events WHERE (")
+        ranges.forEachIndexed { i, range ->
+            if (i > 0) sql.append(" OR ")
+            sql.append("spatial_cell BETWEEN ? AND ?")
+            args.add(range.first)
+            args.add(range.last)
+        }
+        sql.append(") AND latitude BETWEEN ? AND ?")
+        args.add(minLatitude)
+        args.add(maxLatitude)
+        sql.append(if (minLongitude > maxLongitude) " AND (longitude >= ? OR longitude <= ?)" else " AND longitude BETWEEN ? AND ?")
+        args.add(minLongitude)
+        args.add(maxLongitude)
+        return SpatialQuery(sql.toString(), args.toTypedArray())
+    }
+
+    /**
+     * Bounding box around a circle as (minLat, minLon, maxLat, maxLon), wrapped at the antimeridian
+     */
+    fun boundsAround(latitude: Double, longitude: Double, radiusM: Double): DoubleArray {
+        val deltaLatitude = Math.toDegrees(radiusM / EARTH_RADIUS_M)
+        val minLatitude = (latitude - deltaLatitude).coerceAtLeast(-90.0)
+        val maxLatitude = (latitude + deltaLatitude).coerceAtMost(90.0)
+
+        val cosLatitude = cos(Math.toRadians(maxOf(abs(minLatitude), abs(maxLatitude))))
+        val deltaLongitude = if (cosLatitude > 1e-9) deltaLatitude / cosLatitude else 180.0
+        if (deltaLongitude >= 180.0) {
+            return doubleArrayOf(minLatitude, -180.0, maxLatitude, 180.0)
+        }
+        var minLongitude = longitude - deltaLongitude
+        var maxLongitude = longitude + deltaLongitude
+        if (minLongitude < -180.0) minLongitude += 360.0
+        if (maxLongitude > 180.0) maxLongitude -= 360.0
+        return doubleArrayOf(minLatitude, minLongitude, maxLatitude, maxLongitude)
+    }
+
+    /**
+     * Great-circle distance in meters (haversine)
+     */
+    fun distanceMeters(latitude1: Double, longitude1: Double, latitude2: Double, longitude2: Double): Double {
+        val dLatitude = Math.toRadians(latitude2 - latitude1)
+        val dLongitude = Math.toRadians(longitude2 - longitude1)
+        val a = sin(dLatitude / 2) * sin(dLatitude / 2) +
+            cos(Math.toRadians(latitude1)) * cos(Math.toRadians(latitude2)) *
+            sin(dLongitude / 2) * sin(dLongitude / 2)
+        return 2 * EARTH_RADIUS_M * asin(sqrt(a.coerceIn(0.0, 1.0)))
+    }
+
+    private fun cellX(longitude: Double): Int {
+        return ((longitude + 180.0) / 360.0 * CELLS).toInt().coerceIn(0, CELLS - 1)
+    }
+
+    private fun cellY(latitude: Double): Int {
+        return ((latitude + 90.0) / 180.0 * CELLS).toInt().coerceIn(0, CELLS - 1)
+    }
+
+    /**
+     * Cells covering the box, at the finest level that needs at most MAX_COVERING_CELLS of them
+     */
+    private fun cover(minLatitude: Double, minLongitude: Double, maxLatitude: Double, maxLongitude: Double): List<LongRange> {
+        var x0 = cellX(minLongitude)
+        var x1 = cellX(maxLongitude)
+        var y0 = cellY(minLatitude)
+        var y1 = cellY(maxLatitude)
+        var shift = 0
+        while ((x1 - x0 + 1).toLong() * (y1 - y0 + 1) > MAX_COVERING_CELLS) {
+            x0 = x0 shr 1
+            x1 = x1 shr 1
+            y0 = y0 shr 1
+            y1 = y1 shr 1
+            shift++
+        }
+
+        // A cell at the coarser level owns every key sharing its prefix
+        val ranges = ArrayList<LongRange>((x1 - x0 + 1) * (y1 - y0 + 1))
+        for (y in y0..y1) {
+            for (x in x0..x1) {
+                val prefix = interleave(x, y)
+                ranges.add((prefix shl 2 * shift)..((prefix + 1) shl 2 * shift) - 1)
+            }
+        }
+        return ranges
+    }
+
+    private fun merge(ranges: List<LongRange>): List<LongRange> {
+        val sorted = ranges.sortedBy { it.first }
+        val merged = ArrayList<LongRange>(sorted.size)
+        for (range in sorted) {
+            val last = merged.lastOrNull()
+            if (last != null && range.first <= last.last + 1) {
+                merged[merged.size - 1] = last.first..maxOf(last.last, range.last)
+            } else {
+                merged.add(range)
+            }
+        }
+        return merged
+    }
+
+    private fun interleave(x: Int, y: Int): Long = spread(x) or (spread(y) shl 1)
+
+    /**
+     * Spreads the low 16 bits of [value] to the even bit positions
+     */
+    private fun spread(value: Int): Long {
+        var bits = value.toLong() and 0xFFFF
+        bits = (bits or (bits shl 8)) and 0x00FF00FF
+        bits = (bits or (bits shl 4)) and 0x0F0F0F0F
+        bits = (bits or (bits shl 2)) and 0x33333333
+        bits = (bits or (bits shl 1)) and 0x55555555
+        return bits
+    }
+}
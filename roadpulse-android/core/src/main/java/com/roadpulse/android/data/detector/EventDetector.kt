@@ -3,78 +3,96 @@ package com.roadpulse.android.data.detector
 import com.roadpulse.android.data.model.DetectedEvent
 import com.roadpulse.android.data.model.SensorData
 import com.roadpulse.android.data.model.SensorQuality
+import com.roadpulse.android.data.provider.LocationHistory
+import com.roadpulse.android.data.provider.LocationSource
 import javax.inject.Inject
 import javax.inject.Singleton
 
 /**
  * EventDetector implements threshold-based detection of road anomaly events.
  * It processes sensor data streams to identify potential road surface anomalies
- * based on vertical acceleration thresholds and applies various filters to
+ * based on vertical acceleration impulses and applies various filters to
  * reduce false positives.
+ *
+ * Events are geotagged from [locationSource] at the peak's sensor timestamp, falling back to
+ * the fix attached to the peak sample while it has no position.
  */
 @Singleton
-class EventDetector @Inject constructor() {
+class EventDetector @Inject constructor(
+    private val locationSource: LocationSource
+) {
+    
+    constructor() : this(LocationHistory())
     
     companion object {
         private const val ACCELERATION_THRESHOLD = 2.5f // m/s²
         private const val MIN_DURATION_MS = 50
         private const val MAX_DURATION_MS = 500
-        private const val MERGE_THRESHOLD_MS = 500
+        private const val RELEASE_RATIO = 0.6f // Impulse closes below 60% of the open threshold
         private const val MIN_SPEED_KMH = 5.0f
     }
     
-    private val recentEvents = mutableListOf<DetectedEvent>()
-    private var lastEventTime = 0L
+    private val impulseTracker = ImpulseTracker(
+        openThreshold = ACCELERATION_THRESHOLD,
+        closeThreshold = ACCELERATION_THRESHOLD * RELEASE_RATIO,
+        maxDurationMs = MAX_DURATION_MS.toLong()
+    )
     
     /**
      * Processes sensor data to detect potential road anomaly events.
-     * Applies threshold-based detection and various quality filters.
+     * Each sample advances the impulse state machine; an event is produced once per impulse,
+     * on the sample that closes it, and only if the impulse passes the quality filters.
      * 
      * @param sensorData The current sensor data reading
-     * @return DetectedEvent if an anomaly is detected, null otherwise
+     * @return DetectedEvent when this sample completes a valid impulse, null otherwise
      */
     fun detectEvent(sensorData: SensorData): DetectedEvent? {
-        // Check if we have valid location data
-        val location = sensorData.location ?: return null
-        
-        // Apply speed-based filtering - ignore events at low speeds
-        if (!location.isMovingFast()) {
+        // Gravity-projected value from the processor; flat-mount fallback for unprocessed data
+        val verticalAccel = if (sensorData.verticalAcceleration.isNaN()) {
+            sensorData.accelerometer.verticalAcceleration()
+        } else {
+            sensorData.verticalAcceleration
+        }
+        if (!impulseTracker.update(sensorData, verticalAccel)) {
             return null
         }
         
-        // Apply GPS accuracy filtering (Requirements 8.1: 20-meter threshold)
-        if (!location.hasGoodAccuracy()) {
+        // Discard impulses caused by device handling (Requirements 8.2)
+        if (impulseTracker.lastHandlingDetected) {
             return null
         }
         
-        // Check for device handling (rapid orientation changes) (Requirements 8.2)
-        if (sensorData.gyroscope.isRapidOrientationChange()) {
+        // Location and quality are taken at the peak of the impulse
+        val peakSample = impulseTracker.lastPeakSample ?: return null
+        val location = locationSource.locationAt(peakSample.timestampNanos) ?: peakSample.location ?: return null
+        
+        // Apply speed-based filtering - ignore events at low speeds
+        if (!location.isMovingFast()) {
             return null
         }
         
-        // Calculate vertical acceleration
-        val verticalAccel = sensorData.accelerometer.verticalAcceleration()
-        
-        // Check if acceleration exceeds threshold
-        if (verticalAccel < ACCELERATION_THRESHOLD) {
+        // Apply GPS accuracy filtering (Requirements 8.1: 20-meter threshold)
+        if (!location.hasGoodAccuracy()) {
             return null
         }
         
         // Create sensor quality assessment
         val sensorQuality = SensorQuality(
-            accelerometerAccuracy = sensorData.accelerometer.accuracy,
-            gyroscopeAccuracy = sensorData.gyroscope.accuracy,
+            accelerometerAccuracy = peakSample.accelerometer.accuracy,
+            gyroscopeAccuracy = peakSample.gyroscope.accuracy,
             gpsAccuracy = location.accuracy,
-            deviceStability = calculateDeviceStability(sensorData)
+            deviceStability = calculateDeviceStability(peakSample)
         )
         
-        // Create detected event
+        // Create detected event from the measured impulse
         val detectedEvent = DetectedEvent(
-            timestamp = sensorData.timestamp,
-            peakAcceleration = verticalAccel,
-            duration = estimateEventDuration(sensorData),
+            timestamp = impulseTracker.lastPeakTimestamp,
+            peakAcceleration = impulseTracker.lastPeak,
+            duration = impulseTracker.lastDurationMs,
             location = location,
-            sensorQuality = sensorQuality
+            sensorQuality = sensorQuality,
+            impulseArea = impulseTracker.lastArea,
+            features = impulseTracker.lastFeatures
         )
         
         // Validate the event meets basic criteria
@@ -82,13 +100,29 @@ class EventDetector @Inject constructor() {
             return null
         }
         
-        // Check for consecutive event merging
-        val mergedEvent = checkForConsecutiveEventMerging(detectedEvent)
+        return detectedEvent
+    }
+    
+    /**
+     * Processes a burst of sensor samples delivered together by the sensor hub FIFO.
+     * Samples are evaluated in timestamp order and impulse state carries over between
+     * batches, so an impulse split across two batches still yields a single event.
+     * 
+     * @param batch Sensor samples in arrival order
+     * @return One detected event per completed impulse
+     */
+    fun detectEvents(batch: List<SensorData>): List<DetectedEvent> {
+        var events: MutableList<DetectedEvent>? = null
         
-        // Update tracking
-        lastEventTime = sensorData.timestamp
+        for (sensorData in batch) {
+            val event = detectEvent(sensorData) ?: continue
+            if (events == null) {
+                events = mutableListOf()
+            }
+            events.add(event)
+        }
         
-        return mergedEvent
+        return events ?: emptyList()
     }
     
     /**
@@ -141,49 +175,6 @@ class EventDetector @Inject constructor() {
         return mergedEvent
     }
     
-    /**
-     * Checks if the current event should be merged with recent events.
-     * Maintains a sliding window of recent events for merging consideration.
-     */
-    private fun checkForConsecutiveEventMerging(newEvent: DetectedEvent): DetectedEvent {
-        // Clean up old events outside merge window
-        val cutoffTime = newEvent.timestamp - MERGE_THRESHOLD_MS
-        recentEvents.removeAll { it.timestamp < cutoffTime }
-        
-        // Find events that can be merged with the new event
-        val eventsToMerge = recentEvents.filter { it.shouldMergeWith(newEvent) }.toMutableList()
-        eventsToMerge.add(newEvent)
-        
-        // If we have events to merge, merge them
-        val finalEvent = if (eventsToMerge.size > 1) {
-            mergeConsecutiveEvents(eventsToMerge)
-        } else {
-            newEvent
-        }
-        
-        // Remove merged events from recent events and add the final event
-        recentEvents.removeAll(eventsToMerge.dropLast(1)) // Remove all except the new event
-        recentEvents.add(finalEvent)
-        
-        return finalEvent
-    }
-    
-    /**
-     * Estimates the duration of an event based on sensor data characteristics.
-     * This is a simplified estimation - in a real implementation, this would
-     * track the full duration of the acceleration spike.
-     */
-    private fun estimateEventDuration(sensorData: SensorData): Int {
-        // Simplified duration estimation based on acceleration magnitude
-        val accelMagnitude = sensorData.accelerometer.magnitude()
-        return when {
-            accelMagnitude > 15.0f -> 100 // High impact, short duration
-            accelMagnitude > 10.0f -> 150 // Medium impact
-            accelMagnitude > 5.0f -> 200  // Lower impact, longer duration
-            else -> 250 // Very low impact
-        }.coerceIn(MIN_DURATION_MS, MAX_DURATION_MS)
-    }
-    
     /**
      * Calculates device stability score based on gyroscope data.
      * Higher values indicate more stable device positioning.
@@ -200,11 +191,10 @@ class EventDetector @Inject constructor() {
     }
     
     /**
-     * Clears the internal state of recent events.
+     * Clears the impulse tracking state.
      * Useful for testing or when starting a new session.
      */
     fun clearState() {
-        recentEvents.clear()
-        lastEventTime = 0L
+        impulseTracker.reset()
     }
 }
\ No newline at end of file
@@ -0,0 +1,119 @@
+package com.roadpulse.android.data.detector
+
+import com.roadpulse.android.data.model.ImpulseFeatures
+import kotlin.math.PI
+import kotlin.math.abs
+import kotlin.math.cos
+import kotlin.math.sin
+
+/**
+ * Rolling window of the most recent samples kept in primitive columns so the detector
+ * can look back at an impulse (and the samples leading up to it) once it closes.
+ */
+class ImpulseWindow(val capacity: Int) {
+
+    val timestamps = LongArray(capacity)
+    val values = FloatArray(capacity) // Vertical deviation from the resting baseline
+    val pitchRates = FloatArray(capacity)
+    val rollRates = FloatArray(capacity)
+
+    /**
+     * Number of samples ever written; sample n lives in slot n % capacity
+     */
+    var sequence = 0L
+        private set
+
+    fun add(timestamp: Long, value: Float, pitchRate: Float, rollRate: Float) {
+        val slot = (sequence % capacity).toInt()
+        timestamps[slot] = timestamp
+        values[slot] = value
+        pitchRates[slot] = pitchRate
+        rollRates[slot] = rollRate
+        sequence++
+    }
+
+    /**
+     * Oldest sample sequence number still held in the window
+     */
+    fun oldestSequence(): Long = maxOf(0L, sequence - capacity)
+
+    fun slot(sequence: Long): Int = (sequence % capacity).toInt()
+
+    fun clear() {
+        sequence = 0L
+    }
+}
+
+/**
+ * Second detection stage: richer features for a candidate impulse
+ */
+object ImpulseFeatureExtractor {
+
+    const val HIGH_FREQUENCY_BAND_HZ = 8f
+
+    /**
+     * Extracts features from window samples [fromSequence, toSequence]
+     */
+    fun extract(window: ImpulseWindow, fromSequence: Long, toSequence: Long): ImpulseFeatures {
+        val first = maxOf(fromSequence, window.oldestSequence())
+        val count = (toSequence - first + 1).toInt()
+        if (count < 2) {
+            return ImpulseFeatures(0f, 0f, 0f, 0f, 0f)
+        }
+
+        var jerkPeak = 0f
+        var pitchPeak = 0f
+        var rollPeak = 0f
+        var mean = 0.0
+        for (seq in first..toSequence) {
+            val slot = window.slot(seq)
+            mean += window.values[slot]
+            pitchPeak = maxOf(pitchPeak, abs(window.pitchRates[slot]))
+            rollPeak = maxOf(rollPeak, abs(window.rollRates[slot]))
+            if (seq > first) {
+                val previous = window.slot(seq - 1)
+                val dtSeconds = (window.timestamps[slot] - window.timestamps[previous]) / 1000f
+                if (dtSeconds > 0f) {
+                    jerkPeak = maxOf(jerkPeak, abs(window.values[slot] - window.values[previous]) / dtSeconds)
+                }
+            }
+        }
+        mean /= count
+
+        // Sample rate from the window itself; the stream is resampled onto a fixed grid upstream
+        val spanMs = window.timestamps[window.slot(toSequence)] - window.timestamps[window.slot(first)]
+        val sampleRateHz = if (spanMs > 0) (count - 1) * 1000f / spanMs else 0f
+
+        // Direct DFT of the mean-removed window; n is small and this only runs per candidate
+        var totalEnergy = 0.0
+        var highEnergy = 0.0
+        var peakEnergy = 0.0
+        var dominantFrequency = 0f
+        for (k in 1..count / 2) {
+            var re = 0.0
+            var im = 0.0
+            for (i in 0 until count) {
+                val value = window.values[window.slot(first + i)] - mean
+                val angle = 2.0 * PI * k * i / count
+                re += value * cos(angle)
+                im -= value * sin(angle)
+            }
+            val energy = re * re + im * im
+            val frequency = k * sampleRateHz / count
+            totalEnergy += energy
+            if (frequency > HIGH_FREQUENCY_BAND_HZ) highEnergy += energy
+            if (energy > peakEnergy) {
+                peakEnergy = energy
+                dominantFrequency = frequency
+            }
+        }
+
+        return ImpulseFeatures(
+            jerkPeak = jerkPeak,
+            dominantFrequencyHz = dominantFrequency,
+            highFrequencyEnergyRatio = if (totalEnergy > 0.0) (highEnergy / totalEnergy).toFloat() else 0f,
+            pitchRatePeak = pitchPeak,
+            rollRatePeak = rollPeak
+        )
+    }
+}
@@ -0,0 +1,198 @@
+package com.roadpulse.android.data.detector
+
+import com.roadpulse.android.data.model.ImpulseFeatures
+import com.roadpulse.android.data.model.SensorData
+import kotlin.math.abs
+
+/**
+ * Streaming state machine that turns a stream of vertical acceleration samples into
+ * discrete impulses. An impulse opens when the deviation from the resting baseline crosses
+ * [openThreshold] and closes once it falls below [closeThreshold] (hysteresis). While open,
+ * the true peak, the area under the curve and the start/end times are tracked.
+ *
+ * Detection is a two-stage cascade. Outside an impulse each sample costs one squared
+ * compare against the threshold and a few primitive stores into the look-back window.
+ * Only a closed impulse pays for [ImpulseFeatureExtractor]. The completed impulse is exposed
+ * through the `last*` properties until the next one closes.
+ */
+class ImpulseTracker(
+    private val openThreshold: Float,
+    private val closeThreshold: Float,
+    private val maxDurationMs: Long,
+    private val maxSampleGapMs: Long = DEFAULT_MAX_SAMPLE_GAP_MS,
+    private val baselineAlpha: Float = DEFAULT_BASELINE_ALPHA
+) {
+
+    companion object {
+        const val DEFAULT_MAX_SAMPLE_GAP_MS = 100L
+        const val DEFAULT_BASELINE_ALPHA = 0.02f // Slow EMA that follows gravity and sensor bias
+        const val WINDOW_CAPACITY = 64 // Pre-roll plus a maximum length impulse at 100Hz
+        const val PRE_ROLL_SAMPLES = 8
+    }
+
+    private enum class State {
+        IDLE,       // Waiting for the signal to cross the open threshold
+        ACTIVE,     // Inside an impulse
+        REFRACTORY  // Overlong excursion discarded; waiting for the signal to settle
+    }
+
+    private var state = State.IDLE
+
+    private var baseline = 0f
+    private var baselinePrimed = false
+
+    private val openThresholdSquared = openThreshold * openThreshold
+    private val closeThresholdSquared = closeThreshold * closeThreshold
+
+    private val window = ImpulseWindow(WINDOW_CAPACITY)
+
+    private var previousTimestamp = 0L
+    private var previousDeviation = 0f // Signed while idle, absolute inside an impulse
+
+    // Impulse currently being tracked
+    private var startTimestamp = 0L
+    private var peak = 0f
+    private var peakTimestamp = 0L
+    private var peakSample: SensorData? = null
+    private var area = 0f
+    private var handlingDetected = false
+    private var startSequence = 0L
+
+    // Last completed impulse
+    var lastStartTimestamp = 0L
+        private set
+    var lastDurationMs = 0
+        private set
+    var lastPeak = 0f
+        private set
+    var lastPeakTimestamp = 0L
+        private set
+    var lastPeakSample: SensorData? = null
+        private set
+    var lastArea = 0f
+        private set
+    var lastHandlingDetected = false
+        private set
+    var lastFeatures: ImpulseFeatures? = null
+        private set
+
+    init {
+        require(closeThreshold in 0f..openThreshold) { "Close threshold must not exceed open threshold" }
+    }
+
+    /**
+     * Feeds one sample of the vertical acceleration signal.
+     *
+     * @param verticalAcceleration Vertical acceleration; any resting offset is absorbed by the baseline
+     * @return true when this sample closed an impulse; its properties are in the `last*` fields
+     */
+    fun update(sample: SensorData, verticalAcceleration: Float): Boolean {
+        val timestamp = sample.timestamp
+
+        if (!baselinePrimed) {
+            baseline = verticalAcceleration
+            baselinePrimed = true
+            previousTimestamp = timestamp
+            return false
+        }
+
+        // A long gap in the stream (dropped samples, paused sensors) invalidates an open impulse
+        if (timestamp - previousTimestamp > maxSampleGapMs) {
+            if (state == State.ACTIVE) {
+                peakSample = null
+                state = State.IDLE
+            }
+            previousTimestamp = timestamp
+            previousDeviation = 0f
+        }
+
+        val offset = verticalAcceleration - baseline
+        val offsetSquared = offset * offset
+        val gyro = sample.gyroscope
+        window.add(timestamp, offset, gyro.x, gyro.y)
+
+        // Stage one: the common case is a quiet sample, rejected without sqrt or abs
+        if (state == State.IDLE && offsetSquared < openThresholdSquared) {
+            baseline += baselineAlpha * offset
+            previousTimestamp = timestamp
+            previousDeviation = offset
+            return false
+        }
+
+        val deviation = abs(offset)
+        var closed = false
+
+        when (state) {
+            State.IDLE -> open(sample, timestamp, deviation)
+            State.ACTIVE -> {
+                // Trapezoidal area of the deviation between consecutive samples
+                area += (deviation + previousDeviation) * 0.5f * (timestamp - previousTimestamp) / 1000f
+
+                if (deviation > peak) {
+                    peak = deviation
+                    peakTimestamp = timestamp
+                    peakSample = sample
+                }
+                if (gyro.isRapidOrientationChange()) {
+                    handlingDetected = true
+                }
+
+                if (offsetSquared < closeThresholdSquared) {
+                    close(timestamp)
+                    closed = true
+                } else if (timestamp - startTimestamp > maxDurationMs) {
+                    // Sustained excursion (e.g. orientation change), not a road impulse
+                    peakSample = null
+                    state = State.REFRACTORY
+                }
+            }
+            State.REFRACTORY -> {
+                if (offsetSquared < closeThresholdSquared) {
+                    state = State.IDLE
+                }
+                // Let the baseline settle onto the new resting level
+                baseline += baselineAlpha * offset
+            }
+        }
+
+        previousTimestamp = timestamp
+        previousDeviation = deviation
+        return closed
+    }
+
+    fun reset() {
+        state = State.IDLE
+        baselinePrimed = false
+        peakSample = null
+        lastPeakSample = null
+        lastFeatures = null
+        previousDeviation = 0f
+        window.clear()
+    }
+
+    private fun open(sample: SensorData, timestamp: Long, deviation: Float) {
+        state = State.ACTIVE
+        // The impulse started somewhere between the previous sample and this one
+        startTimestamp = previousTimestamp
+        peak = deviation
+        peakTimestamp = timestamp
+        peakSample = sample
+        area = (deviation + abs(previousDeviation)) * 0.5f * (timestamp - previousTimestamp) / 1000f
+        handlingDetected = sample.gyroscope.isRapidOrientationChange()
+        startSequence = window.sequence - 1
+    }
+
+    private fun close(timestamp: Long) {
+        lastStartTimestamp = startTimestamp
+        lastDurationMs = (timestamp - startTimestamp).toInt()
+        lastPeak = peak
+        lastPeakTimestamp = peakTimestamp
+        lastPeakSample = peakSample
+        lastArea = area
+        lastHandlingDetected = handlingDetected
+        // Stage two: richer features over the impulse and the samples leading up to it
+        lastFeatures = ImpulseFeatureExtractor.extract(window, startSequence - PRE_ROLL_SAMPLES, window.sequence - 1)
+        peakSample = null
+        state = State.IDLE
+    }
+}
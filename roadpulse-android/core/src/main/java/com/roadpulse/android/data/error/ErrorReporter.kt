@@ -0,0 +1,10 @@
+package com.roadpulse.android.data.error
+
+/**
+ * Receives errors the processing pipeline recovers from by itself.
+ * Implemented by [ErrorHandler] in the app; keeps the pipeline free of Android logging.
+ */
+fun interface ErrorReporter {
+
+    fun logError(error: Throwable, context: String)
+}
@@ -0,0 +1,92 @@
+package com.roadpulse.android.data.model
+
+import androidx.room.ColumnInfo
+import androidx.room.Entity
+import androidx.room.Index
+import androidx.room.PrimaryKey
+import androidx.room.TypeConverters
+import com.roadpulse.android.data.database.CompactIdConverters
+import com.roadpulse.android.data.database.SpatialIndex
+import java.util.UUID
+
+/**
+ * Running totals for one road anomaly hit on repeated passes.
+ * Position is the mean of the hits; heading counts are kept per 45° bucket so a pothole hit
+ * in one direction only can be told from one spanning the road.
+ * Every change clears [synced], so the sync engine uploads the new totals under [uuid].
+ */
+@Entity(
+    tableName = "anomaly_aggregates",
+    indices = [
+        Index(value = ["spatial_cell"]),
+        Index(value = ["last_seen_at"]),
+        Index(value = ["synced"])
+    ]
+)
+data class AnomalyAggregate(
+    @PrimaryKey
+    @ColumnInfo(name = "id")
+    val id: Long,
+
+    @ColumnInfo(name = "latitude")
+    val latitude: Double,
+
+    @ColumnInfo(name = "longitude")
+    val longitude: Double,
+
+    @ColumnInfo(name = "hit_count")
+    val hitCount: Int,
+
+    @ColumnInfo(name = "max_severity")
+    val maxSeverity: Int, // 1-5 scale
+
+    @ColumnInfo(name = "severity_sum")
+    val severitySum: Int,
+
+    @ColumnInfo(name = "first_seen_at")
+    val firstSeenAt: Long, // Unix timestamp in milliseconds
+
+    @ColumnInfo(name = "last_seen_at")
+    val lastSeenAt: Long, // Unix timestamp in milliseconds
+
+    @ColumnInfo(name = "heading_buckets")
+    val headingBuckets: Long, // HEADING_BUCKETS saturating 8-bit counts, bucket 0 (north) in the low byte
+
+    @ColumnInfo(name = "spatial_cell")
+    val spatialCell: Long = SpatialIndex.cellOf(latitude, longitude),
+
+    @ColumnInfo(name = "uuid")
+    @TypeConverters(CompactIdConverters::class)
+    val uuid: String = UUID.randomUUID().toString(), // Identifies the anomaly to the backend; id is local
+
+    @ColumnInfo(name = "synced")
+    val synced: Boolean = false
+) {
+    val meanSeverity: Float
+        get() = if (hitCount > 0) severitySum.toFloat() / hitCount else 0f
+
+    /**
+     * Hits with a heading in [bucket], saturating at 255
+     */
+    fun headingCount(bucket: Int): Int = ((headingBuckets ushr (bucket * 8)) and 0xFF).toInt()
+
+    companion object {
+        const val HEADING_BUCKETS = 8
+
+        /**
+         * Bucket of a heading in degrees clockwise from north; bucket 0 is centred on north
+         */
+        fun headingBucket(headingDeg: Float): Int {
+            val heading = ((headingDeg % 360f) + 360f) % 360f
+            return ((heading + 22.5f) / 45f).toInt() % HEADING_BUCKETS
+        }
+
+        /**
+         * [buckets] with one more hit at [headingDeg]
+         */
+        fun addHeading(buckets: Long, headingDeg: Float): Long {
+            val shift = headingBucket(headingDeg) * 8
+            return if ((buckets ushr shift) and 0xFF < 0xFF) buckets + (1L shl shift) else buckets
+        }
+    }
+}
@@ -9,7 +9,9 @@ data class DetectedEvent(
     val peakAcceleration: Float,
     val duration: Int, // Duration in milliseconds
     val location: LocationData?,
-    val sensorQuality: SensorQuality
+    val sensorQuality: SensorQuality,
+    val impulseArea: Float = 0f, // Area under the acceleration curve in m/s
+    val features: ImpulseFeatures? = null
 ) {
     /**
      * Determines if this event should be merged with another consecutive event
@@ -28,7 +30,9 @@ data class DetectedEvent(
             peakAcceleration = maxOf(peakAcceleration, other.peakAcceleration),
             duration = duration + other.duration,
             location = location ?: other.location, // Use first available location
-            sensorQuality = sensorQuality.combineWith(other.sensorQuality)
+            sensorQuality = sensorQuality.combineWith(other.sensorQuality),
+            impulseArea = impulseArea + other.impulseArea,
+            features = features ?: other.features
         )
     }
     
@@ -83,4 +87,16 @@ data class SensorQuality(
                 gpsScore * 0.4f + 
                 deviceStability * 0.3f).coerceIn(0.0f, 1.0f)
     }
-}
\ No newline at end of file
+}
+
+/**
+ * Features extracted from the samples around a candidate impulse.
+ * Only computed for impulses that passed the cheap first detection stage.
+ */
+data class ImpulseFeatures(
+    val jerkPeak: Float,                 // Largest rate of change of vertical acceleration (m/s³)
+    val dominantFrequencyHz: Float,      // Frequency bin with the most energy
+    val highFrequencyEnergyRatio: Float, // Share of energy above 8Hz (0.0-1.0)
+    val pitchRatePeak: Float,            // Largest pitch rate during the impulse (rad/s)
+    val rollRatePeak: Float              // Largest roll rate during the impulse (rad/s)
+)
@@ -0,0 +1,16 @@
+package com.roadpulse.android.data.model
+
+/**
+ * The device events are recorded on.
+ * Filled in from android.os.Build when the app starts; stays [UNKNOWN] on a plain JVM
+ * (tests, benchmarks, trace replay).
+ */
+object DeviceInfo {
+    const val UNKNOWN = "unknown"
+
+    @Volatile
+    var model: String = UNKNOWN
+
+    @Volatile
+    var androidVersion: String = UNKNOWN
+}
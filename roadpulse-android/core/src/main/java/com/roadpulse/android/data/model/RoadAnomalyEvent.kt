@@ -1,19 +1,24 @@
 package com.roadpulse.android.data.model
 
 import androidx.room.ColumnInfo
-import androidx.room.Entity
-import androidx.room.PrimaryKey
+import androidx.room.DatabaseView
+import androidx.room.TypeConverters
+import com.roadpulse.android.data.database.CompactIdConverters
+import com.roadpulse.android.data.database.SpatialIndex
 import java.time.Instant
 import java.util.UUID
 
 /**
  * Represents a detected road anomaly event with complete metadata.
- * This entity is stored in the local Room database and contains all
- * information needed for analysis and synchronization.
+ * This contains all information needed for analysis and synchronization.
+ *
+ * Events are stored compactly as RoadAnomalyEventRecord rows; this class is read through
+ * the road_anomaly_events view, which joins the device and session dictionaries back in.
  */
-@Entity(tableName = "road_anomaly_events")
+@DatabaseView(viewName = "road_anomaly_events", value = RoadAnomalyEvent.VIEW_QUERY)
 data class RoadAnomalyEvent(
-    @PrimaryKey
+    @ColumnInfo(name = "id")
+    @TypeConverters(CompactIdConverters::class)
     val id: String = UUID.randomUUID().toString(),
     
     @ColumnInfo(name = "created_at")
@@ -53,14 +58,27 @@ data class RoadAnomalyEvent(
     val androidVersion: String,
     
     @ColumnInfo(name = "session_id")
+    @TypeConverters(CompactIdConverters::class)
     val sessionId: String,
     
     @ColumnInfo(name = "synced")
-    val synced: Boolean = false
+    val synced: Boolean = false,
+    
+    @ColumnInfo(name = "spatial_cell")
+    val spatialCell: Long = SpatialIndex.cellOf(latitude, longitude)
 ) {
     companion object {
+        const val VIEW_QUERY = "SELECT e.id AS id, e.created_at AS created_at, e.latitude AS latitude, " +
+            "e.longitude AS longitude, e.gps_accuracy_m AS gps_accuracy_m, e.speed_kmh AS speed_kmh, " +
+            "e.heading_deg AS heading_deg, e.peak_accel_ms2 AS peak_accel_ms2, " +
+            "e.impulse_duration_ms AS impulse_duration_ms, e.severity AS severity, e.confidence AS confidence, " +
+            "d.model AS device_model, d.android_version AS android_version, s.uuid AS session_id, " +
+            "e.synced AS synced, e.spatial_cell AS spatial_cell " +
+            "FROM event_records e JOIN devices d ON d.id = e.device_id JOIN sessions s ON s.id = e.session_ref"
+        
         /**
-         * Creates a new RoadAnomalyEvent with current timestamp and device info
+         * Creates a new RoadAnomalyEvent with device info.
+         * Pass [createdAt] to keep the time of the underlying sensor sample; defaults to now.
          */
         fun create(
             latitude: Double,
@@ -72,10 +90,11 @@ data class RoadAnomalyEvent(
             impulseDurationMs: Int,
             severity: Int,
             confidence: Float,
-            sessionId: String
+            sessionId: String,
+            createdAt: Long = Instant.now().toEpochMilli()
         ): RoadAnomalyEvent {
             return RoadAnomalyEvent(
-                createdAt = Instant.now().toEpochMilli(),
+                createdAt = createdAt,
                 latitude = latitude,
                 longitude = longitude,
                 gpsAccuracyM = gpsAccuracyM,
@@ -85,8 +104,8 @@ data class RoadAnomalyEvent(
                 impulseDurationMs = impulseDurationMs,
                 severity = severity,
                 confidence = confidence,
-                deviceModel = android.os.Build.MODEL,
-                androidVersion = android.os.Build.VERSION.RELEASE,
+                deviceModel = DeviceInfo.model,
+                androidVersion = DeviceInfo.androidVersion,
                 sessionId = sessionId
             )
         }
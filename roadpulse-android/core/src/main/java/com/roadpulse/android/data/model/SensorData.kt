@@ -5,10 +5,12 @@ package com.roadpulse.android.data.model
  * Used for processing and event detection.
  */
 data class SensorData(
-    val timestamp: Long,
+    val timestamp: Long, // Wall clock time in milliseconds
     val accelerometer: AccelerometerData,
     val gyroscope: GyroscopeData,
-    val location: LocationData?
+    val location: LocationData?,
+    val timestampNanos: Long = 0L, // Monotonic sensor clock (elapsed realtime) in nanoseconds
+    val verticalAcceleration: Float = Float.NaN // Gravity-removed vertical acceleration, NaN until processed
 )
 
 /**
@@ -26,7 +28,8 @@ data class AccelerometerData(
     fun magnitude(): Float = kotlin.math.sqrt(x * x + y * y + z * z)
     
     /**
-     * Calculates the vertical acceleration component (assuming device is in vehicle orientation)
+     * Calculates the vertical acceleration component assuming the device lies flat.
+     * Prefer SensorData.verticalAcceleration, which is projected onto the estimated gravity.
      */
     fun verticalAcceleration(): Float = kotlin.math.abs(z)
 }
@@ -64,7 +67,8 @@ data class LocationData(
     val accuracy: Float, // Accuracy in meters
     val speed: Float, // Speed in m/s
     val bearing: Float, // Bearing in degrees
-    val timestamp: Long
+    val timestamp: Long,
+    val elapsedRealtimeNanos: Long = 0L // Fix time on the sensor clock, 0 when unknown
 ) {
     /**
      * Converts speed from m/s to km/h
@@ -0,0 +1,107 @@
+package com.roadpulse.android.data.processor
+
+import kotlin.math.abs
+import kotlin.math.sqrt
+
+/**
+ * Incremental gravity estimate in the device frame using a complementary filter.
+ * The gyroscope rotates the previous estimate (accurate short term) and the accelerometer
+ * pulls it back towards the measured specific force (accurate long term). Accelerometer
+ * samples far from 1 g, such as road impacts, only get the gyroscope update.
+ *
+ * With the gravity direction known, vertical acceleration is the projection of the
+ * accelerometer onto it, which works for any mount rather than only a phone lying flat.
+ * All updates are allocation-free.
+ */
+class GravityEstimator(
+    private val timeConstantSeconds: Float = DEFAULT_TIME_CONSTANT_SECONDS
+) {
+
+    companion object {
+        const val DEFAULT_TIME_CONSTANT_SECONDS = 2.0f
+        const val STANDARD_GRAVITY = 9.81f
+        private const val ACCEL_TRUST_BAND = 2.0f // m/s² from 1 g within which the accelerometer is blended in
+        private const val MAX_STEP_SECONDS = 1.0f // Longer gaps restart the estimate
+        private const val SETTLE_SAMPLES = 25
+    }
+
+    // Estimated gravity ("up" specific force) in the device frame, m/s²
+    var gravityX = 0f
+        private set
+    var gravityY = 0f
+        private set
+    var gravityZ = 0f
+        private set
+
+    private var lastTimestampMs = 0L
+    private var samples = 0
+
+    /**
+     * Advances the estimate with one accelerometer (m/s²) and gyroscope (rad/s) sample
+     */
+    fun update(
+        accelX: Float, accelY: Float, accelZ: Float,
+        gyroX: Float, gyroY: Float, gyroZ: Float,
+        timestampMs: Long
+    ) {
+        val dt = (timestampMs - lastTimestampMs) / 1000f
+        lastTimestampMs = timestampMs
+
+        if (samples == 0 || dt <= 0f || dt > MAX_STEP_SECONDS) {
+            gravityX = accelX
+            gravityY = accelY
+            gravityZ = accelZ
+            samples = 1
+            return
+        }
+
+        // Gravity is fixed in the world, so in the device frame it rotates by -omega: dg/dt = g x omega
+        var x = gravityX + (gravityY * gyroZ - gravityZ * gyroY) * dt
+        var y = gravityY + (gravityZ * gyroX - gravityX * gyroZ) * dt
+        var z = gravityZ + (gravityX * gyroY - gravityY * gyroX) * dt
+
+        val accelMagnitude = sqrt(accelX * accelX + accelY * accelY + accelZ * accelZ)
+        if (abs(accelMagnitude - STANDARD_GRAVITY) < ACCEL_TRUST_BAND) {
+            val alpha = timeConstantSeconds / (timeConstantSeconds + dt)
+            x = alpha * x + (1f - alpha) * accelX
+            y = alpha * y + (1f - alpha) * accelY
+            z = alpha * z + (1f - alpha) * accelZ
+        }
+
+        gravityX = x
+        gravityY = y
+        gravityZ = z
+        if (samples < SETTLE_SAMPLES) samples++
+    }
+
+    /**
+     * Vertical component of the acceleration with gravity removed (positive is up)
+     */
+    fun verticalAcceleration(accelX: Float, accelY: Float, accelZ: Float): Float {
+        val norm = sqrt(gravityX * gravityX + gravityY * gravityY + gravityZ * gravityZ)
+        if (norm < 1e-3f) return 0f
+        return (accelX * gravityX + accelY * gravityY + accelZ * gravityZ) / norm - norm
+    }
+
+    /**
+     * Rotation rate about the vertical (rad/s, positive counterclockwise seen from above),
+     * which is the vehicle's yaw rate for any mount
+     */
+    fun verticalRotationRate(gyroX: Float, gyroY: Float, gyroZ: Float): Float {
+        val norm = sqrt(gravityX * gravityX + gravityY * gravityY + gravityZ * gravityZ)
+        if (norm < 1e-3f) return 0f
+        return (gyroX * gravityX + gyroY * gravityY + gyroZ * gravityZ) / norm
+    }
+
+    /**
+     * True once enough samples have been blended for the direction to be trusted
+     */
+    fun isSettled(): Boolean = samples >= SETTLE_SAMPLES
+
+    fun reset() {
+        samples = 0
+        gravityX = 0f
+        gravityY = 0f
+        gravityZ = 0f
+    }
+}
@@ -1,10 +1,11 @@
 package com.roadpulse.android.data.processor
 
-import com.roadpulse.android.data.error.ErrorHandler
+import com.roadpulse.android.data.error.ErrorReporter
 import com.roadpulse.android.data.error.SensorCalibrationException
 import com.roadpulse.android.data.model.AccelerometerData
 import com.roadpulse.android.data.model.GyroscopeData
 import com.roadpulse.android.data.model.SensorData
+import com.roadpulse.android.data.time.Clock
 import kotlinx.coroutines.flow.Flow
 import kotlinx.coroutines.flow.MutableStateFlow
 import kotlinx.coroutines.flow.StateFlow
@@ -19,7 +20,8 @@ import kotlin.math.*
  */
 @Singleton
 class SensorDataProcessor @Inject constructor(
-    private val errorHandler: ErrorHandler
+    private val errorReporter: ErrorReporter,
+    private val clock: Clock = Clock.SYSTEM
 ) {
     
     // Calibration offsets for accelerometer
@@ -42,7 +44,11 @@ class SensorDataProcessor @Inject constructor(
     
     // Calibration state
     private var isCalibrated = false
-    private val calibrationSamples = mutableListOf<SensorData>()
+    // Calibration samples are folded into streaming statistics instead of being stored
+    private val calibrationAccelStats = AxisStats()
+    private val calibrationGyroStats = AxisStats()
+    private var calibrationSampleCount = 0
+    private var calibrationHasMovingSample = false
     private val maxCalibrationSamples = 100
     private var lastCalibrationTime = 0L
     private var calibrationAttempts = 0
@@ -57,8 +63,16 @@ class SensorDataProcessor @Inject constructor(
     private val gyroDriftThreshold = 0.5f // rad/s for gyroscope drift
     
     // Noise filtering - moving average buffers
-    private val accelBuffer = CircularBuffer<AccelerometerData>(5)
-    private val gyroBuffer = CircularBuffer<GyroscopeData>(5)
+    // Per-axis noise filters; the factory can be swapped for ExponentialMovingAverage or BiquadLowPass
+    private val noiseFilterWindow = 5
+    private val noiseFilterWarmupSamples = 3
+    private val accelFilters = AxisFilters { MovingAverage(noiseFilterWindow) }
+    private val gyroFilters = AxisFilters { MovingAverage(noiseFilterWindow) }
+    private var accelFilteredSamples = 0
+    private var gyroFilteredSamples = 0
+    
+    // Gravity direction for orientation-independent vertical acceleration
+    private val gravityEstimator = GravityEstimator()
     
     // Motion detection parameters
     private val motionThreshold = 1.5f // m/s² for motion detection
@@ -81,6 +95,27 @@ class SensorDataProcessor @Inject constructor(
         val calibratedAccel = applyCalibratedAccelerometer(data.accelerometer)
         val calibratedGyro = applyCalibratedGyroscope(data.gyroscope)
         
+        // Track gravity and project onto it before smoothing so impulses keep their shape
+        gravityEstimator.update(
+            calibratedAccel.x, calibratedAccel.y, calibratedAccel.z,
+            calibratedGyro.x, calibratedGyro.y, calibratedGyro.z,
+            data.timestamp
+        )
+        val verticalAcceleration = gravityEstimator.verticalAcceleration(
+            calibratedAccel.x, calibratedAccel.y, calibratedAccel.z
+        )
+        val yawRate = gravityEstimator.verticalRotationRate(
+            calibratedGyro.x, calibratedGyro.y, calibratedGyro.z
+        )
+        // Horizontal part in the device frame, which InertialNavigator projects on the direction of travel
+        val gravityX = gravityEstimator.gravityX
+        val gravityY = gravityEstimator.gravityY
+        val gravityZ = gravityEstimator.gravityZ
+        val gravityNormSq = gravityX * gravityX + gravityY * gravityY + gravityZ * gravityZ
+        val verticalShare = if (gravityNormSq > 1e-6f) {
+            (calibratedAccel.x * gravityX + calibratedAccel.y * gravityY + calibratedAccel.z * gravityZ) / gravityNormSq
+        } else 1f
+        
         // Apply noise filtering
         val filteredAccel = applyNoiseFiltering(calibratedAccel)
         val filteredGyro = applyNoiseFiltering(calibratedGyro)
@@ -89,7 +124,7 @@ class SensorDataProcessor @Inject constructor(
         updateMotionState(filteredAccel, filteredGyro)
         
         // Update device orientation
-        updateDeviceOrientation(filteredAccel, filteredGyro)
+        updateDeviceOrientation(filteredGyro, data.timestamp)
         
         // Add sample for calibration if needed
         if (!isCalibrated || calibrationIssueDetected) {
@@ -103,25 +138,77 @@ class SensorDataProcessor @Inject constructor(
             location = data.location,
             motionState = _motionState.value,
             deviceOrientation = _deviceOrientation.value,
-            isCalibrated = isCalibrated
+            isCalibrated = isCalibrated,
+            verticalAcceleration = verticalAcceleration,
+            yawRate = yawRate,
+            horizontalAccelX = calibratedAccel.x - verticalShare * gravityX,
+            horizontalAccelY = calibratedAccel.y - verticalShare * gravityY,
+            horizontalAccelZ = calibratedAccel.z - verticalShare * gravityZ
         )
     }
     
+    /**
+     * Processes a burst of samples delivered together by the sensor hub FIFO.
+     * Samples are processed in order so filter and motion state carry across the batch,
+     * and each result keeps the exact timestamp of its sample.
+     */
+    fun processSensorBatch(batch: List<SensorData>): List<ProcessedSensorData> {
+        val processed = ArrayList<ProcessedSensorData>(batch.size)
+        for (data in batch) {
+            processed.add(processSensorData(data))
+        }
+        return processed
+    }
+    
+    /**
+     * Keeps the samples of a processed batch that are eligible for event detection, carrying
+     * the gravity-projected vertical acceleration over to the detector.
+     * 
+     * @param batch The samples passed to [processSensorBatch]
+     * @param processedBatch Its result, index for index
+     * @return Detection candidates, or null if no sample in the batch is eligible
+     */
+    fun selectDetectionCandidates(
+        batch: List<SensorData>,
+        processedBatch: List<ProcessedSensorData>
+    ): List<SensorData>? {
+        var candidates: ArrayList<SensorData>? = null
+        for (i in batch.indices) {
+            val processedData = processedBatch[i]
+            
+            // Skip samples while device is being handled (Requirements 8.2)
+            if (isDeviceHandling(processedData.gyroscope, processedData.timestamp)) {
+                continue
+            }
+            
+            // Skip samples while the device is handled or gravity has not settled (Requirements 8.3)
+            if (!isDeviceInVehicle(processedData.deviceOrientation)) {
+                continue
+            }
+            
+            if (candidates == null) {
+                candidates = ArrayList(batch.size - i)
+            }
+            candidates.add(batch[i].copy(verticalAcceleration = processedData.verticalAcceleration))
+        }
+        return candidates
+    }
+    
     /**
      * Attempts automatic sensor calibration with enhanced error handling
      * Requirements 8.4: Automatic sensor recalibration
      */
     fun calibrateSensors(): Boolean {
-        val currentTime = System.currentTimeMillis()
+        val currentTime = clock.currentTimeMillis()
         
         // Check if we should attempt calibration
         if (!shouldAttemptCalibration(currentTime)) {
             return false
         }
         
-        if (calibrationSamples.size < maxCalibrationSamples) {
-            errorHandler.logError(
-                SensorCalibrationException("Insufficient samples: ${calibrationSamples.size}/$maxCalibrationSamples"),
+        if (calibrationSampleCount < maxCalibrationSamples) {
+            errorReporter.logError(
+                SensorCalibrationException("Insufficient samples: $calibrationSampleCount/$maxCalibrationSamples"),
                 "Calibration attempt"
             )
             return false
@@ -130,34 +217,39 @@ class SensorDataProcessor @Inject constructor(
         try {
             // Validate calibration samples quality
             if (!validateCalibrationSamples()) {
-                errorHandler.logError(
+                errorReporter.logError(
                     SensorCalibrationException("Calibration samples quality insufficient"),
                     "Calibration validation"
                 )
-                calibrationSamples.clear()
+                clearCalibrationSamples()
                 return false
             }
             
-            // Calculate accelerometer offsets (assuming device is stationary)
-            val accelSamples = calibrationSamples.map { it.accelerometer }
-            val newAccelOffsetX = accelSamples.map { it.x }.average().toFloat()
-            val newAccelOffsetY = accelSamples.map { it.y }.average().toFloat()
-            val newAccelOffsetZ = accelSamples.map { it.z }.average().toFloat() - 9.81f // Gravity compensation
+            // Calculate accelerometer offsets (assuming device is stationary). At rest the mean is
+            // gravity in whatever direction the device is mounted, which GravityEstimator tracks,
+            // so only the magnitude error along that direction is treated as bias.
+            val meanX = calibrationAccelStats.x.mean()
+            val meanY = calibrationAccelStats.y.mean()
+            val meanZ = calibrationAccelStats.z.mean()
+            val meanMagnitude = sqrt(meanX * meanX + meanY * meanY + meanZ * meanZ)
+            val biasScale = if (meanMagnitude > 0f) 1f - GravityEstimator.STANDARD_GRAVITY / meanMagnitude else 0f
+            val newAccelOffsetX = meanX * biasScale
+            val newAccelOffsetY = meanY * biasScale
+            val newAccelOffsetZ = meanZ * biasScale
             
             // Calculate gyroscope offsets (assuming device is stationary)
-            val gyroSamples = calibrationSamples.map { it.gyroscope }
-            val newGyroOffsetX = gyroSamples.map { it.x }.average().toFloat()
-            val newGyroOffsetY = gyroSamples.map { it.y }.average().toFloat()
-            val newGyroOffsetZ = gyroSamples.map { it.z }.average().toFloat()
+            val newGyroOffsetX = calibrationGyroStats.x.mean()
+            val newGyroOffsetY = calibrationGyroStats.y.mean()
+            val newGyroOffsetZ = calibrationGyroStats.z.mean()
             
             // Validate new calibration values
             if (!validateCalibrationValues(newAccelOffsetX, newAccelOffsetY, newAccelOffsetZ,
                                          newGyroOffsetX, newGyroOffsetY, newGyroOffsetZ)) {
-                errorHandler.logError(
+                errorReporter.logError(
                     SensorCalibrationException("Calibration values out of expected range"),
                     "Calibration validation"
                 )
-                calibrationSamples.clear()
+                clearCalibrationSamples()
                 return false
             }
             
@@ -173,30 +265,28 @@ class SensorDataProcessor @Inject constructor(
             calibrationIssueDetected = false
             lastCalibrationTime = currentTime
             calibrationAttempts = 0
-            calibrationSamples.clear()
+            clearCalibrationSamples()
             
             return true
             
         } catch (e: Exception) {
             calibrationAttempts++
-            errorHandler.logError(
+            errorReporter.logError(
                 SensorCalibrationException("Calibration failed: ${e.message}", e),
                 "Calibration attempt $calibrationAttempts"
             )
-            calibrationSamples.clear()
+            clearCalibrationSamples()
             return false
         }
     }
     
     /**
-     * Determines if the device is in a vehicle orientation
+     * Determines if the device is usable for detection in its current orientation.
+     * Vertical acceleration is projected onto the estimated gravity, so any steady mount
+     * works once the estimate has settled; only active handling is excluded.
      */
-    fun isDeviceInVehicle(): Boolean {
-        return when (_deviceOrientation.value) {
-            DeviceOrientation.VEHICLE_HORIZONTAL,
-            DeviceOrientation.VEHICLE_DASHBOARD -> true
-            else -> false
-        }
+    fun isDeviceInVehicle(orientation: DeviceOrientation = _deviceOrientation.value): Boolean {
+        return orientation != DeviceOrientation.HANDLING && gravityEstimator.isSettled()
     }
     
     /**
@@ -210,9 +300,11 @@ class SensorDataProcessor @Inject constructor(
     /**
      * Checks if device is experiencing rapid orientation changes (device handling)
      * Requirements 8.2: Device handling spike suppression for 3 seconds
+     * 
+     * @param timestamp Time of the sample, so batched samples are judged at their own time
      */
-    fun isDeviceHandling(gyroData: GyroscopeData): Boolean {
-        val currentTime = System.currentTimeMillis()
+    fun isDeviceHandling(gyroData: GyroscopeData, timestamp: Long = clock.currentTimeMillis()): Boolean {
+        val currentTime = timestamp
         val isCurrentlyHandling = gyroData.magnitude() > orientationChangeThreshold
         
         if (isCurrentlyHandling) {
@@ -230,20 +322,35 @@ class SensorDataProcessor @Inject constructor(
      */
     fun addCalibrationSample(data: SensorData) {
         // Only add samples when device is stationary for better calibration
-        if (_motionState.value == MotionState.STATIONARY && calibrationSamples.size < maxCalibrationSamples) {
+        if (_motionState.value == MotionState.STATIONARY && calibrationSampleCount < maxCalibrationSamples) {
             // Check if sample quality is good enough for calibration
             if (isGoodCalibrationSample(data)) {
-                calibrationSamples.add(data)
+                val accel = data.accelerometer
+                val gyro = data.gyroscope
+                calibrationAccelStats.add(accel.x, accel.y, accel.z)
+                calibrationGyroStats.add(gyro.x, gyro.y, gyro.z)
+                calibrationSampleCount++
+                
+                if (abs(accel.magnitude() - GravityEstimator.STANDARD_GRAVITY) > motionThreshold || gyro.magnitude() > 0.1f) {
+                    calibrationHasMovingSample = true
+                }
             }
         }
     }
     
+    private fun clearCalibrationSamples() {
+        calibrationAccelStats.reset()
+        calibrationGyroStats.reset()
+        calibrationSampleCount = 0
+        calibrationHasMovingSample = false
+    }
+    
     /**
      * Checks for calibration issues and triggers recalibration if needed
      * Requirements 8.4: Sensor calibration issue detection
      */
     private fun checkCalibrationIssues(data: SensorData) {
-        val currentTime = System.currentTimeMillis()
+        val currentTime = clock.currentTimeMillis()
         
         // Only check periodically to avoid performance impact
         if (currentTime - lastCalibrationCheck < calibrationCheckIntervalMs) {
@@ -262,7 +369,7 @@ class SensorDataProcessor @Inject constructor(
         
         if (accelDrift > calibrationDriftThreshold || gyroDrift > gyroDriftThreshold) {
             calibrationIssueDetected = true
-            errorHandler.logError(
+            errorReporter.logError(
                 SensorCalibrationException("Calibration drift detected - accel: $accelDrift, gyro: $gyroDrift"),
                 "Calibration monitoring"
             )
@@ -276,7 +383,7 @@ class SensorDataProcessor @Inject constructor(
      * Attempts automatic recalibration when issues are detected
      */
     private fun attemptAutomaticRecalibration() {
-        val currentTime = System.currentTimeMillis()
+        val currentTime = clock.currentTimeMillis()
         
         // Don't attempt too frequently
         if (currentTime - lastCalibrationTime < calibrationIntervalMs) {
@@ -285,7 +392,7 @@ class SensorDataProcessor @Inject constructor(
         
         // Don't exceed maximum attempts
         if (calibrationAttempts >= maxCalibrationAttempts) {
-            errorHandler.logError(
+            errorReporter.logError(
                 SensorCalibrationException("Maximum calibration attempts exceeded"),
                 "Automatic recalibration"
             )
@@ -293,7 +400,7 @@ class SensorDataProcessor @Inject constructor(
         }
         
         // Clear existing samples and start fresh
-        calibrationSamples.clear()
+        clearCalibrationSamples()
         
         // The calibration will happen automatically as new samples are added
         // when processSensorData is called
@@ -325,18 +432,12 @@ class SensorDataProcessor @Inject constructor(
      * Validates the quality of calibration samples
      */
     private fun validateCalibrationSamples(): Boolean {
-        if (calibrationSamples.isEmpty()) {
+        if (calibrationSampleCount == 0) {
             return false
         }
         
         // Check that all samples are from stationary periods
-        val hasMovingSamples = calibrationSamples.any { sample ->
-            val accelMagnitude = sample.accelerometer.magnitude()
-            val gyroMagnitude = sample.gyroscope.magnitude()
-            accelMagnitude > motionThreshold || gyroMagnitude > 0.1f
-        }
-        
-        if (hasMovingSamples) {
+        if (calibrationHasMovingSample) {
             return false
         }
         
@@ -376,11 +477,11 @@ class SensorDataProcessor @Inject constructor(
             return false
         }
         
-        // Check that device is truly stationary
+        // Check that device is truly stationary: the accelerometer reads 1 g in any orientation
         val accelMagnitude = data.accelerometer.magnitude()
         val gyroMagnitude = data.gyroscope.magnitude()
         
-        return accelMagnitude < stationaryThreshold && gyroMagnitude < 0.05f
+        return abs(accelMagnitude - GravityEstimator.STANDARD_GRAVITY) < stationaryThreshold && gyroMagnitude < 0.05f
     }
     
     /**
@@ -406,42 +507,16 @@ class SensorDataProcessor @Inject constructor(
      * Calculates variance in accelerometer readings for calibration validation
      */
     private fun calculateAccelerometerVariance(): Float {
-        if (calibrationSamples.size < 2) return Float.MAX_VALUE
-        
-        val accelSamples = calibrationSamples.map { it.accelerometer }
-        val meanX = accelSamples.map { it.x }.average().toFloat()
-        val meanY = accelSamples.map { it.y }.average().toFloat()
-        val meanZ = accelSamples.map { it.z }.average().toFloat()
-        
-        val variance = accelSamples.map { accel ->
-            val dx = accel.x - meanX
-            val dy = accel.y - meanY
-            val dz = accel.z - meanZ
-            dx * dx + dy * dy + dz * dz
-        }.average().toFloat()
-        
-        return variance
+        if (calibrationSampleCount < 2) return Float.MAX_VALUE
+        return calibrationAccelStats.variance()
     }
     
     /**
      * Calculates variance in gyroscope readings for calibration validation
      */
     private fun calculateGyroscopeVariance(): Float {
-        if (calibrationSamples.size < 2) return Float.MAX_VALUE
-        
-        val gyroSamples = calibrationSamples.map { it.gyroscope }
-        val meanX = gyroSamples.map { it.x }.average().toFloat()
-        val meanY = gyroSamples.map { it.y }.average().toFloat()
-        val meanZ = gyroSamples.map { it.z }.average().toFloat()
-        
-        val variance = gyroSamples.map { gyro ->
-            val dx = gyro.x - meanX
-            val dy = gyro.y - meanY
-            val dz = gyro.z - meanZ
-            dx * dx + dy * dy + dz * dz
-        }.average().toFloat()
-        
-        return variance
+        if (calibrationSampleCount < 2) return Float.MAX_VALUE
+        return calibrationGyroStats.variance()
     }
     
     /**
@@ -451,7 +526,7 @@ class SensorDataProcessor @Inject constructor(
         return CalibrationStatus(
             isCalibrated = isCalibrated,
             calibrationIssueDetected = calibrationIssueDetected,
-            calibrationSampleCount = calibrationSamples.size,
+            calibrationSampleCount = calibrationSampleCount,
             calibrationAttempts = calibrationAttempts,
             lastCalibrationTime = lastCalibrationTime,
             accelOffsets = Triple(accelOffsetX, accelOffsetY, accelOffsetZ),
@@ -465,7 +540,7 @@ class SensorDataProcessor @Inject constructor(
     fun forceRecalibration() {
         calibrationIssueDetected = true
         calibrationAttempts = 0
-        calibrationSamples.clear()
+        clearCalibrationSamples()
         lastCalibrationTime = 0L
     }
     
@@ -496,35 +571,33 @@ class SensorDataProcessor @Inject constructor(
     }
     
     private fun applyNoiseFiltering(accel: AccelerometerData): AccelerometerData {
-        accelBuffer.add(accel)
+        val x = accelFilters.x.filter(accel.x)
+        val y = accelFilters.y.filter(accel.y)
+        val z = accelFilters.z.filter(accel.z)
         
-        if (accelBuffer.size() < 3) {
+        if (accelFilteredSamples < noiseFilterWarmupSamples) {
+            accelFilteredSamples++
+        }
+        if (accelFilteredSamples < noiseFilterWarmupSamples) {
             return accel // Not enough samples for filtering
         }
         
-        val samples = accelBuffer.getAll()
-        return AccelerometerData(
-            x = samples.map { it.x }.average().toFloat(),
-            y = samples.map { it.y }.average().toFloat(),
-            z = samples.map { it.z }.average().toFloat(),
-            accuracy = samples.map { it.accuracy }.maxOrNull() ?: accel.accuracy
-        )
+        return AccelerometerData(x = x, y = y, z = z, accuracy = accel.accuracy)
     }
     
     private fun applyNoiseFiltering(gyro: GyroscopeData): GyroscopeData {
-        gyroBuffer.add(gyro)
+        val x = gyroFilters.x.filter(gyro.x)
+        val y = gyroFilters.y.filter(gyro.y)
+        val z = gyroFilters.z.filter(gyro.z)
         
-        if (gyroBuffer.size() < 3) {
+        if (gyroFilteredSamples < noiseFilterWarmupSamples) {
+            gyroFilteredSamples++
+        }
+        if (gyroFilteredSamples < noiseFilterWarmupSamples) {
             return gyro // Not enough samples for filtering
         }
         
-        val samples = gyroBuffer.getAll()
-        return GyroscopeData(
-            x = samples.map { it.x }.average().toFloat(),
-            y = samples.map { it.y }.average().toFloat(),
-            z = samples.map { it.z }.average().toFloat(),
-            accuracy = samples.map { it.accuracy }.maxOrNull() ?: gyro.accuracy
-        )
+        return GyroscopeData(x = x, y = y, z = z, accuracy = gyro.accuracy)
     }
     
     private fun updateMotionState(accel: AccelerometerData, gyro: GyroscopeData) {
@@ -545,17 +618,17 @@ class SensorDataProcessor @Inject constructor(
         _motionState.value = newState
     }
     
-    private fun updateDeviceOrientation(accel: AccelerometerData, gyro: GyroscopeData) {
-        // Determine device orientation based on accelerometer readings
-        val gravityX = abs(accel.x)
-        val gravityY = abs(accel.y)
-        val gravityZ = abs(accel.z)
+    private fun updateDeviceOrientation(gyro: GyroscopeData, timestamp: Long) {
+        // Determine device orientation from the estimated gravity direction
+        val gravityX = abs(gravityEstimator.gravityX)
+        val gravityY = abs(gravityEstimator.gravityY)
+        val gravityZ = abs(gravityEstimator.gravityZ)
         
         val newOrientation = when {
             gravityZ > 8.0f && gravityX < 3.0f && gravityY < 3.0f -> DeviceOrientation.VEHICLE_HORIZONTAL
             gravityY > 8.0f && gravityX < 3.0f && gravityZ < 3.0f -> DeviceOrientation.VEHICLE_DASHBOARD
             gravityX > 8.0f -> DeviceOrientation.PORTRAIT_OR_LANDSCAPE
-            isDeviceHandling(gyro) -> DeviceOrientation.HANDLING
+            isDeviceHandling(gyro, timestamp) -> DeviceOrientation.HANDLING
             else -> DeviceOrientation.UNKNOWN
         }
         
@@ -573,7 +646,13 @@ data class ProcessedSensorData(
     val location: com.roadpulse.android.data.model.LocationData?,
     val motionState: MotionState,
     val deviceOrientation: DeviceOrientation,
-    val isCalibrated: Boolean
+    val isCalibrated: Boolean,
+    val verticalAcceleration: Float = 0f, // Along estimated gravity, gravity removed, positive up
+    val yawRate: Float = 0f, // About estimated gravity in rad/s, positive counterclockwise seen from above
+    // Acceleration perpendicular to estimated gravity, in the device frame (m/s²)
+    val horizontalAccelX: Float = 0f,
+    val horizontalAccelY: Float = 0f,
+    val horizontalAccelZ: Float = 0f
 )
 
 /**
@@ -596,24 +675,6 @@ enum class DeviceOrientation {
     HANDLING               // Device being actively handled/moved
 }
 
-/**
- * Simple circular buffer implementation for noise filtering
- */
-private class CircularBuffer<T>(private val capacity: Int) {
-    private val buffer = mutableListOf<T>()
-    
-    fun add(item: T) {
-        if (buffer.size >= capacity) {
-            buffer.removeAt(0)
-        }
-        buffer.add(item)
-    }
-    
-    fun size(): Int = buffer.size
-    
-    fun getAll(): List<T> = buffer.toList()
-}
-
 /**
  * Represents the current calibration status
  */
@@ -0,0 +1,219 @@
+package com.roadpulse.android.data.processor
+
+import kotlin.math.PI
+import kotlin.math.cos
+import kotlin.math.sin
+import kotlin.math.sqrt
+
+/**
+ * Single-channel streaming low-pass filter.
+ * Implementations update in O(1) per sample and never allocate after construction.
+ */
+interface LowPassFilter {
+    fun filter(value: Float): Float
+    fun reset()
+}
+
+/**
+ * Moving average over a fixed window, kept as a running sum over a primitive ring.
+ */
+class MovingAverage(private val window: Int) : LowPassFilter {
+
+    private val values = DoubleArray(window)
+    private var next = 0
+    private var sum = 0.0
+
+    var count = 0
+        private set
+
+    init {
+        require(window > 0) { "Window must be positive" }
+    }
+
+    override fun filter(value: Float): Float {
+        if (count == window) {
+            sum -= values[next]
+        } else {
+            count++
+        }
+        values[next] = value.toDouble()
+        sum += value
+        next = if (next + 1 == window) 0 else next + 1
+        return (sum / count).toFloat()
+    }
+
+    override fun reset() {
+        next = 0
+        sum = 0.0
+        count = 0
+    }
+}
+
+/**
+ * First order exponential moving average: y += alpha * (x - y)
+ */
+class ExponentialMovingAverage(private val alpha: Float) : LowPassFilter {
+
+    private var value = 0f
+    private var initialized = false
+
+    init {
+        require(alpha > 0f && alpha <= 1f) { "Alpha must be in (0, 1]" }
+    }
+
+    override fun filter(value: Float): Float {
+        if (!initialized) {
+            this.value = value
+            initialized = true
+        } else {
+            this.value += alpha * (value - this.value)
+        }
+        return this.value
+    }
+
+    override fun reset() {
+        value = 0f
+        initialized = false
+    }
+
+    companion object {
+        /**
+         * Creates an EMA with the time constant of an RC low-pass at the given cutoff
+         */
+        fun forCutoff(cutoffHz: Float, sampleRateHz: Float): ExponentialMovingAverage {
+            val dt = 1.0 / sampleRateHz
+            val rc = 1.0 / (2.0 * PI * cutoffHz)
+            return ExponentialMovingAverage((dt / (rc + dt)).toFloat())
+        }
+    }
+}
+
+/**
+ * Second order Butterworth-style low-pass (RBJ cookbook biquad, transposed direct form II).
+ */
+class BiquadLowPass(
+    cutoffHz: Float,
+    sampleRateHz: Float,
+    q: Float = 0.7071f
+) : LowPassFilter {
+
+    private val b0: Double
+    private val b1: Double
+    private val b2: Double
+    private val a1: Double
+    private val a2: Double
+
+    private var z1 = 0.0
+    private var z2 = 0.0
+    private var primed = false
+
+    init {
+        require(cutoffHz > 0f && cutoffHz < sampleRateHz / 2f) { "Cutoff must be below Nyquist" }
+        val w0 = 2.0 * PI * cutoffHz / sampleRateHz
+        val alpha = sin(w0) / (2.0 * q)
+        val cosW0 = cos(w0)
+        val a0 = 1.0 + alpha
+        b0 = (1.0 - cosW0) / 2.0 / a0
+        b1 = (1.0 - cosW0) / a0
+        b2 = b0
+        a1 = -2.0 * cosW0 / a0
+        a2 = (1.0 - alpha) / a0
+    }
+
+    override fun filter(value: Float): Float {
+        val x = value.toDouble()
+        if (!primed) {
+            // Start from steady state at the first input to avoid a step transient
+            z1 = x - b0 * x
+            z2 = b2 * x - a2 * x
+            primed = true
+        }
+        val y = b0 * x + z1
+        z1 = b1 * x - a1 * y + z2
+        z2 = b2 * x - a2 * y
+        return y.toFloat()
+    }
+
+    override fun reset() {
+        z1 = 0.0
+        z2 = 0.0
+        primed = false
+    }
+}
+
+/**
+ * Applies one independent low-pass filter per axis of a 3-axis sensor
+ */
+class AxisFilters(factory: () -> LowPassFilter) {
+    val x: LowPassFilter = factory()
+    val y: LowPassFilter = factory()
+    val z: LowPassFilter = factory()
+
+    fun reset() {
+        x.reset()
+        y.reset()
+        z.reset()
+    }
+}
+
+/**
+ * Streaming mean and variance using Welford's algorithm
+ */
+class RunningStats {
+
+    var count = 0L
+        private set
+
+    private var mean = 0.0
+    private var m2 = 0.0
+
+    fun add(value: Float) {
+        count++
+        val delta = value - mean
+        mean += delta / count
+        m2 += delta * (value - mean)
+    }
+
+    fun mean(): Float = mean.toFloat()
+
+    /**
+     * Population variance of the samples added so far
+     */
+    fun variance(): Float = if (count < 2) 0f else (m2 / count).toFloat()
+
+    fun standardDeviation(): Float = sqrt(variance())
+
+    fun reset() {
+        count = 0L
+        mean = 0.0
+        m2 = 0.0
+    }
+}
+
+/**
+ * Welford statistics for each axis of a 3-axis sensor
+ */
+class AxisStats {
+    val x = RunningStats()
+    val y = RunningStats()
+    val z = RunningStats()
+
+    val count: Long get() = x.count
+
+    fun add(valueX: Float, valueY: Float, valueZ: Float) {
+        x.add(valueX)
+        y.add(valueY)
+        z.add(valueZ)
+    }
+
+    /**
+     * Mean squared distance from the mean vector (sum of the per-axis variances)
+     */
+    fun variance(): Float = x.variance() + y.variance() + z.variance()
+
+    fun reset() {
+        x.reset()
+        y.reset()
+        z.reset()
+    }
+}
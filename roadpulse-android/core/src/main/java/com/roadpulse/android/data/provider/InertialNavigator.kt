@@ -0,0 +1,380 @@
+package com.roadpulse.android.data.provider
+
+import com.roadpulse.android.data.model.LocationData
+import com.roadpulse.android.data.model.SensorData
+import com.roadpulse.android.data.processor.ProcessedSensorData
+import javax.inject.Inject
+import javax.inject.Singleton
+import kotlin.math.PI
+import kotlin.math.abs
+import kotlin.math.cos
+import kotlin.math.max
+import kotlin.math.sin
+import kotlin.math.sqrt
+
+/**
+ * Dead reckoning between GPS fixes from the processed sensor stream.
+ *
+ * A four state extended Kalman filter (north, east, speed, heading) is predicted on every
+ * aligned sample: position moves along the heading at the current speed and the heading
+ * turns with the gyroscope's rotation about gravity, so curves are followed rather than
+ * extrapolated as straight lines. Each new fix in [locationHistory] corrects position, speed
+ * and, when moving fast enough for the bearing to mean something, heading.
+ *
+ * Speed follows the horizontal acceleration projected on the direction of travel, so braking
+ * and speeding up between fixes are tracked. That direction is fixed in the device frame by
+ * the mount but not known up front; it is learned from the mean horizontal acceleration
+ * between two fixes whose speeds differ on a straight stretch.
+ *
+ * Estimates are kept per sample in primitive ring arrays and served through [locationAt],
+ * falling back to [locationHistory] before the first fix and more than [maxCoastNs] after
+ * the last one. Updates do not allocate.
+ */
+@Singleton
+class InertialNavigator(
+    private val locationHistory: LocationHistory,
+    private val capacity: Int,
+    private val maxCoastNs: Long = 20_000_000_000L
+) : LocationSource {
+
+    @Inject
+    constructor(locationHistory: LocationHistory) : this(locationHistory, DEFAULT_CAPACITY)
+
+    companion object {
+        const val DEFAULT_CAPACITY = 512 // 20 seconds at 25Hz, the default coast window
+
+        // Process noise: unmodelled acceleration along the track and gyroscope yaw noise
+        private const val ACCEL_NOISE_MS2 = 0.3
+        private const val YAW_RATE_NOISE_RADS = 0.005
+
+        // Measurement noise beyond the reported horizontal accuracy
+        private const val SPEED_NOISE_MS = 0.5
+        private const val BEARING_NOISE_RAD = 3.0 * PI / 180.0
+        private const val MIN_BEARING_SPEED_MS = 3.0f // Bearing is unreliable below about 10 km/h
+
+        // Learning the direction of travel in the device frame
+        private const val MIN_LEARN_ACCEL_MS2 = 0.5 // Speed change between fixes that stands out from noise
+        private const val MAX_LEARN_YAW_RATE_RADS = 0.05 // Straight enough that turning adds little sideways
+        private const val FORWARD_BLEND = 0.3 // Weight of each new estimate once one is known
+
+        private const val MAX_LOOKUP_GAP_NS = 1_000_000_000L
+        private const val EARTH_RADIUS_M = 6_371_000.0
+
+        private const val N = 0
+        private const val E = 1
+        private const val V = 2
+        private const val H = 3
+    }
+
+    init {
+        require(capacity >= 2) { "Capacity must hold at least two estimates" }
+    }
+
+    // State in metres from the origin, m/s and radians clockwise from north
+    private val x = DoubleArray(4)
+    private val p = DoubleArray(16)
+    private val f = DoubleArray(16)
+    private val scratch = DoubleArray(16)
+    private val gain = DoubleArray(4)
+    private val row = DoubleArray(4)
+
+    private var originLatitude = 0.0
+    private var originLongitude = 0.0
+    private var isInitialized = false
+    private var lastSampleNs = 0L
+    private var lastFixNs = Long.MIN_VALUE
+    private var lastFixWallClockMs = 0L
+    private var lastFixSpeedMs = 0f
+    private var currentNs = 0L
+
+    // Unit direction of travel in the device frame, and horizontal acceleration summed since the last fix
+    private var forwardX = 0.0
+    private var forwardY = 0.0
+    private var forwardZ = 0.0
+    private var hasForwardAxis = false
+    private var accelSumX = 0.0
+    private var accelSumY = 0.0
+    private var accelSumZ = 0.0
+    private var yawRateSum = 0.0
+    private var accelSamples = 0
+
+    // Ring of per-sample estimates
+    private val times = LongArray(capacity)
+    private val wallClockMs = LongArray(capacity)
+    private val latitudes = DoubleArray(capacity)
+    private val longitudes = DoubleArray(capacity)
+    private val accuracies = FloatArray(capacity)
+    private val speeds = FloatArray(capacity)
+    private val bearings = FloatArray(capacity)
+    private var count = 0
+    private var next = 0
+
+    private val fixVisitor = LocationHistory.FixVisitor { fixNs, fixWallClockMs, latitude, longitude, accuracyM, speedMs, bearingDeg ->
+        applyFix(fixNs, fixWallClockMs, latitude, longitude, accuracyM, speedMs, bearingDeg)
+    }
+
+    /**
+     * Advances the filter over a processed batch
+     *
+     * @param batch Aligned samples in timestamp order
+     * @param processedBatch Result of processing [batch], index for index
+     */
+    @Synchronized
+    fun advance(batch: List<SensorData>, processedBatch: List<ProcessedSensorData>) {
+        for (i in batch.indices) {
+            val processed = processedBatch[i]
+            update(
+                batch[i].timestampNanos, processed.yawRate,
+                processed.horizontalAccelX, processed.horizontalAccelY, processed.horizontalAccelZ
+            )
+        }
+    }
+
+    /**
+     * Advances the filter to [timestampNanos] on the elapsed realtime clock
+     *
+     * @param yawRate Rotation about gravity in rad/s, counterclockwise seen from above
+     * @param accelX Horizontal acceleration in the device frame (m/s²), with [accelY] and [accelZ]
+     */
+    @Synchronized
+    fun update(timestampNanos: Long, yawRate: Float, accelX: Float = 0f, accelY: Float = 0f, accelZ: Float = 0f) {
+        currentNs = timestampNanos
+        if (isInitialized) {
+            val dt = (timestampNanos - lastSampleNs) / 1e9
+            if (dt <= 0.0) return
+            val alongTrack = if (hasForwardAxis) accelX * forwardX + accelY * forwardY + accelZ * forwardZ else 0.0
+            predict(dt, yawRate.toDouble(), alongTrack)
+            accelSumX += accelX
+            accelSumY += accelY
+            accelSumZ += accelZ
+            yawRateSum += abs(yawRate)
+            accelSamples++
+        }
+        lastSampleNs = timestampNanos
+
+        locationHistory.newestFix(lastFixNs, timestampNanos, fixVisitor)
+        if (isInitialized && timestampNanos - lastFixNs <= maxCoastNs) {
+            record(timestampNanos)
+        }
+    }
+
+    /**
+     * Estimated position at [elapsedRealtimeNanos], from the filter while it has a recent fix
+     * and from [locationHistory] otherwise
+     */
+    @Synchronized
+    override fun locationAt(elapsedRealtimeNanos: Long): LocationData? {
+        if (count == 0 ||
+            elapsedRealtimeNanos < times[slot(0)] ||
+            elapsedRealtimeNanos > times[slot(count - 1)] + MAX_LOOKUP_GAP_NS) {
+            return locationHistory.locationAt(elapsedRealtimeNanos)
+        }
+
+        // Last estimate at or before the timestamp
+        var low = 0
+        var high = count - 1
+        while (low < high) {
+            val mid = (low + high + 1) ushr 1
+            if (times[slot(mid)] <= elapsedRealtimeNanos) low = mid else high = mid - 1
+        }
+        val slot = slot(low)
+        return LocationData(
+            latitude = latitudes[slot],
+            longitude = longitudes[slot],
+            accuracy = accuracies[slot],
+            speed = speeds[slot],
+            bearing = bearings[slot],
+            timestamp = wallClockMs[slot]
+        )
+    }
+
+    /**
+     * Forgets the track; the next fix starts a new one
+     */
+    @Synchronized
+    fun reset() {
+        isInitialized = false
+        hasForwardAxis = false
+        clearAccelSums()
+        lastFixNs = Long.MIN_VALUE
+        count = 0
+        next = 0
+    }
+
+    private fun applyFix(
+        fixNs: Long, fixWallClockMs: Long,
+        latitude: Double, longitude: Double,
+        accuracyM: Float, speedMs: Float, bearingDeg: Float
+    ) {
+        if (isInitialized) {
+            learnForwardAxis((fixNs - lastFixNs) / 1e9, (speedMs - lastFixSpeedMs).toDouble())
+        }
+        clearAccelSums()
+        lastFixNs = fixNs
+        lastFixWallClockMs = fixWallClockMs
+        lastFixSpeedMs = speedMs
+
+        // Fixes can arrive late, batched or not; move the measurement up to the filter's time
+        val lagS = max(0L, currentNs - fixNs) / 1e9
+        if (lagS * 1e9 > maxCoastNs) return
+        val bearingRad = Math.toRadians(bearingDeg.toDouble())
+        val leadM = speedMs * lagS
+        val positionVariance = accuracyM.toDouble() * accuracyM +
+            (leadM * LocationHistory.DEAD_RECKONING_DRIFT) * (leadM * LocationHistory.DEAD_RECKONING_DRIFT)
+        val hasBearing = speedMs >= MIN_BEARING_SPEED_MS
+
+        if (!isInitialized) {
+            originLatitude = latitude
+            originLongitude = longitude
+            x[N] = leadM * cos(bearingRad)
+            x[E] = leadM * sin(bearingRad)
+            x[V] = speedMs.toDouble()
+            x[H] = bearingRad
+            p.fill(0.0)
+            p[N * 4 + N] = positionVariance
+            p[E * 4 + E] = positionVariance
+            p[V * 4 + V] = SPEED_NOISE_MS * SPEED_NOISE_MS
+            p[H * 4 + H] = if (hasBearing) BEARING_NOISE_RAD * BEARING_NOISE_RAD else PI * PI
+            isInitialized = true
+            reanchor()
+            return
+        }
+
+        val north = Math.toRadians(latitude - originLatitude) * EARTH_RADIUS_M + leadM * cos(bearingRad)
+        val east = Math.toRadians(longitude - originLongitude) * EARTH_RADIUS_M * cos(Math.toRadians(originLatitude)) +
+            leadM * sin(bearingRad)
+        correct(N, north, positionVariance)
+        correct(E, east, positionVariance)
+        correct(V, speedMs.toDouble(), SPEED_NOISE_MS * SPEED_NOISE_MS)
+        if (hasBearing) {
+            correct(H, bearingRad, BEARING_NOISE_RAD * BEARING_NOISE_RAD)
+        }
+        reanchor()
+    }
+
+    /**
+     * Folds in the direction of travel implied by the horizontal acceleration since the previous
+     * fix, if the speed changed enough on a straight stretch for it to show
+     */
+    private fun learnForwardAxis(intervalS: Double, speedChangeMs: Double) {
+        if (intervalS <= 0.0 || accelSamples == 0) return
+        val alongTrack = speedChangeMs / intervalS
+        if (abs(alongTrack) < MIN_LEARN_ACCEL_MS2 || yawRateSum / accelSamples > MAX_LEARN_YAW_RATE_RADS) return
+
+        // Mean horizontal acceleration over the interval, flipped when slowing down
+        var estimateX = accelSumX / accelSamples / alongTrack
+        var estimateY = accelSumY / accelSamples / alongTrack
+        var estimateZ = accelSumZ / accelSamples / alongTrack
+        if (hasForwardAxis) {
+            estimateX = forwardX + FORWARD_BLEND * (estimateX - forwardX)
+            estimateY = forwardY + FORWARD_BLEND * (estimateY - forwardY)
+            estimateZ = forwardZ + FORWARD_BLEND * (estimateZ - forwardZ)
+        }
+        val norm = sqrt(estimateX * estimateX + estimateY * estimateY + estimateZ * estimateZ)
+        if (norm < 1e-3) return
+        forwardX = estimateX / norm
+        forwardY = estimateY / norm
+        forwardZ = estimateZ / norm
+        hasForwardAxis = true
+    }
+
+    private fun clearAccelSums() {
+        accelSumX = 0.0
+        accelSumY = 0.0
+        accelSumZ = 0.0
+        yawRateSum = 0.0
+        accelSamples = 0
+    }
+
+    private fun predict(dt: Double, yawRate: Double, alongTrackAccel: Double) {
+        val speed = x[V]
+        val c = cos(x[H])
+        val s = sin(x[H])
+
+        // Jacobian of the motion model
+        f.fill(0.0)
+        for (i in 0 until 4) f[i * 4 + i] = 1.0
+        f[N * 4 + V] = c * dt
+        f[N * 4 + H] = -speed * s * dt
+        f[E * 4 + V] = s * dt
+        f[E * 4 + H] = speed * c * dt
+
+        x[N] += speed * c * dt
+        x[E] += speed * s * dt
+        x[H] = wrapAngle(x[H] - yawRate * dt)
+        x[V] = max(0.0, speed + alongTrackAccel * dt)
+
+        // P = F P F^T + Q
+        multiply(f, p, scratch, transposeRight = false)
+        multiply(scratch, f, p, transposeRight = true)
+        p[V * 4 + V] += ACCEL_NOISE_MS2 * ACCEL_NOISE_MS2 * dt
+        p[H * 4 + H] += YAW_RATE_NOISE_RADS * YAW_RATE_NOISE_RADS * dt
+    }
+
+    /**
+     * Scalar measurement update of state [index]
+     */
+    private fun correct(index: Int, measured: Double, variance: Double) {
+        var innovation = measured - x[index]
+        if (index == H) innovation = wrapAngle(innovation)
+        val s = p[index * 4 + index] + variance
+        if (s <= 0.0) return
+
+        for (j in 0 until 4) {
+            gain[j] = p[j * 4 + index] / s
+            row[j] = p[index * 4 + j]
+        }
+        for (j in 0 until 4) {
+            x[j] += gain[j] * innovation
+            for (k in 0 until 4) {
+                p[j * 4 + k] -= gain[j] * row[k]
+            }
+        }
+        x[H] = wrapAngle(x[H])
+        if (x[V] < 0.0) x[V] = 0.0
+    }
+
+    // Moves the origin to the current position so the local plane stays small
+    private fun reanchor() {
+        originLatitude += Math.toDegrees(x[N] / EARTH_RADIUS_M)
+        originLongitude += Math.toDegrees(x[E] / (EARTH_RADIUS_M * cos(Math.toRadians(originLatitude))))
+        x[N] = 0.0
+        x[E] = 0.0
+    }
+
+    private fun record(timestampNanos: Long) {
+        times[next] = timestampNanos
+        wallClockMs[next] = lastFixWallClockMs + (timestampNanos - lastFixNs) / 1_000_000L
+        latitudes[next] = originLatitude + Math.toDegrees(x[N] / EARTH_RADIUS_M)
+        longitudes[next] = originLongitude + Math.toDegrees(x[E] / (EARTH_RADIUS_M * cos(Math.toRadians(originLatitude))))
+        accuracies[next] = sqrt(max(p[N * 4 + N], p[E * 4 + E])).toFloat()
+        speeds[next] = x[V].toFloat()
+        val bearing = Math.toDegrees(x[H]).toFloat()
+        bearings[next] = if (bearing < 0f) bearing + 360f else bearing
+        next = (next + 1) % capacity
+        if (count < capacity) count++
+    }
+
+    // Ring slot of the i-th oldest estimate
+    private fun slot(i: Int): Int = (next - count + i + capacity) % capacity
+
+    // out = a * b, or a * b^T; out must not alias a or b
+    private fun multiply(a: DoubleArray, b: DoubleArray, out: DoubleArray, transposeRight: Boolean) {
+        for (i in 0 until 4) {
+            for (j in 0 until 4) {
+                var sum = 0.0
+                for (k in 0 until 4) {
+                    sum += a[i * 4 + k] * if (transposeRight) b[j * 4 + k] else b[k * 4 + j]
+                }
+                out[i * 4 + j] = sum
+            }
+        }
+    }
+
+    private fun wrapAngle(angle: Double): Double {
+        var wrapped = angle % (2 * PI)
+        if (wrapped > PI) wrapped -= 2 * PI
+        if (wrapped < -PI) wrapped += 2 * PI
+        return wrapped
+    }
+}
@@ -0,0 +1,198 @@
+package com.roadpulse.android.data.provider
+
+import com.roadpulse.android.data.model.LocationData
+import javax.inject.Inject
+import javax.inject.Singleton
+import kotlin.math.cos
+import kotlin.math.sin
+
+/**
+ * Recent GPS fixes keyed by the monotonic elapsed realtime clock, which sensor timestamps
+ * share, so an event can be placed where the vehicle was at its own timestamp rather than
+ * at the last fix.
+ *
+ * Between two fixes the position is interpolated. After the newest fix it is dead-reckoned
+ * from that fix's speed and bearing for up to [maxDeadReckoningNs], with the reported
+ * accuracy widened by [DEAD_RECKONING_DRIFT] of the distance travelled. Outside that the
+ * nearest fix is returned as is. Fixes are kept in primitive ring arrays; only a lookup
+ * allocates.
+ */
+@Singleton
+class LocationHistory(
+    private val capacity: Int,
+    private val maxInterpolationGapNs: Long = 120_000_000_000L,
+    private val maxDeadReckoningNs: Long = 15_000_000_000L
+) : LocationSource {
+
+    @Inject
+    constructor() : this(DEFAULT_CAPACITY)
+
+    companion object {
+        const val DEFAULT_CAPACITY = 64
+        const val DEAD_RECKONING_DRIFT = 0.05f // Accuracy lost per metre dead-reckoned
+
+        private const val EARTH_RADIUS_M = 6_371_000.0
+    }
+
+    init {
+        require(capacity >= 2) { "Capacity must hold at least two fixes" }
+    }
+
+    private val elapsedNs = LongArray(capacity)
+    private val wallClockMs = LongArray(capacity)
+    private val latitudes = DoubleArray(capacity)
+    private val longitudes = DoubleArray(capacity)
+    private val accuracies = FloatArray(capacity)
+    private val speeds = FloatArray(capacity)
+    private val bearings = FloatArray(capacity)
+
+    private var count = 0
+    private var next = 0
+
+    /**
+     * Adds a fix taken at [elapsedRealtimeNanos]. Fixes older than the newest one are ignored.
+     */
+    @Synchronized
+    fun add(elapsedRealtimeNanos: Long, location: LocationData) {
+        if (count > 0 && elapsedRealtimeNanos <= elapsedNs[slot(count - 1)]) return
+
+        elapsedNs[next] = elapsedRealtimeNanos
+        wallClockMs[next] = location.timestamp
+        latitudes[next] = location.latitude
+        longitudes[next] = location.longitude
+        accuracies[next] = location.accuracy
+        speeds[next] = location.speed
+        bearings[next] = location.bearing
+        next = (next + 1) % capacity
+        if (count < capacity) count++
+    }
+
+    /**
+     * Receives fixes without allocating
+     */
+    fun interface FixVisitor {
+        fun onFix(
+            elapsedRealtimeNanos: Long, wallClockMs: Long,
+            latitude: Double, longitude: Double,
+            accuracyM: Float, speedMs: Float, bearingDeg: Float
+        )
+    }
+
+    /**
+     * Passes the newest fix taken after [afterNanos] and no later than [untilNanos] to
+     * [visitor], if there is one
+     *
+     * @return Whether a fix was passed
+     */
+    @Synchronized
+    fun newestFix(afterNanos: Long, untilNanos: Long, visitor: FixVisitor): Boolean {
+        // Newest first; in the common case the newest fix is already known and this is one check
+        for (i in count - 1 downTo 0) {
+            val slot = slot(i)
+            val fixNs = elapsedNs[slot]
+            if (fixNs <= afterNanos) return false
+            if (fixNs <= untilNanos) {
+                visitor.onFix(
+                    fixNs, wallClockMs[slot],
+                    latitudes[slot], longitudes[slot],
+                    accuracies[slot], speeds[slot], bearings[slot]
+                )
+                return true
+            }
+        }
+        return false
+    }
+
+    /**
+     * Where the vehicle was at [elapsedRealtimeNanos], or null before the first fix
+     */
+    @Synchronized
+    override fun locationAt(elapsedRealtimeNanos: Long): LocationData? {
+        if (count == 0) return null
+
+        val newest = count - 1
+        if (elapsedRealtimeNanos >= elapsedNs[slot(newest)]) {
+            return deadReckon(slot(newest), elapsedRealtimeNanos)
+        }
+        if (elapsedRealtimeNanos <= elapsedNs[slot(0)]) {
+            return fix(slot(0))
+        }
+
+        // Last fix at or before the timestamp; the one after it exists since the newest is later
+        var low = 0
+        var high = newest
+        while (high - low > 1) {
+            val mid = (low + high) ushr 1
+            if (elapsedNs[slot(mid)] <= elapsedRealtimeNanos) low = mid else high = mid
+        }
+        val before = slot(low)
+        val after = slot(high)
+        val gapNs = elapsedNs[after] - elapsedNs[before]
+        if (gapNs > maxInterpolationGapNs) {
+            return if (elapsedRealtimeNanos - elapsedNs[before] <= elapsedNs[after] - elapsedRealtimeNanos) {
+                deadReckon(before, elapsedRealtimeNanos)
+            } else {
+                fix(after)
+            }
+        }
+
+        val t = (elapsedRealtimeNanos - elapsedNs[before]).toDouble() / gapNs
+        return LocationData(
+            latitude = latitudes[before] + (latitudes[after] - latitudes[before]) * t,
+            longitude = longitudes[before] + (longitudes[after] - longitudes[before]) * t,
+            accuracy = maxOf(accuracies[before], accuracies[after]),
+            speed = (speeds[before] + (speeds[after] - speeds[before]) * t).toFloat(),
+            bearing = interpolateBearing(bearings[before], bearings[after], t),
+            timestamp = wallClockMs[before] + ((wallClockMs[after] - wallClockMs[before]) * t).toLong()
+        )
+    }
+
+    @Synchronized
+    fun clear() {
+        count = 0
+        next = 0
+    }
+
+    val size: Int
+        @Synchronized get() = count
+
+    // Ring slot of the i-th oldest fix
+    private fun slot(i: Int): Int = (next - count + i + capacity) % capacity
+
+    private fun fix(slot: Int) = LocationData(
+        latitude = latitudes[slot],
+        longitude = longitudes[slot],
+        accuracy = accuracies[slot],
+        speed = speeds[slot],
+        bearing = bearings[slot],
+        timestamp = wallClockMs[slot]
+    )
+
+    private fun deadReckon(slot: Int, elapsedRealtimeNanos: Long): LocationData {
+        val aheadNs = elapsedRealtimeNanos - elapsedNs[slot]
+        if (aheadNs <= 0L || aheadNs > maxDeadReckoningNs || speeds[slot] <= 0f) return fix(slot)
+
+        val distanceM = speeds[slot] * (aheadNs / 1e9)
+        val bearingRad = Math.toRadians(bearings[slot].toDouble())
+        val latitude = latitudes[slot]
+        val northM = distanceM * cos(bearingRad)
+        val eastM = distanceM * sin(bearingRad)
+        return LocationData(
+            latitude = latitude + Math.toDegrees(northM / EARTH_RADIUS_M),
+            longitude = longitudes[slot] + Math.toDegrees(eastM / (EARTH_RADIUS_M * cos(Math.toRadians(latitude)))),
+            accuracy = accuracies[slot] + (distanceM * DEAD_RECKONING_DRIFT).toFloat(),
+            speed = speeds[slot],
+            bearing = bearings[slot],
+            timestamp = wallClockMs[slot] + aheadNs / 1_000_000L
+        )
+    }
+
+    // Shortest way round, so 350° to 10° passes through 0°
+    private fun interpolateBearing(from: Float, to: Float, t: Double): Float {
+        var delta = (to - from) % 360f
+        if (delta > 180f) delta -= 360f
+        if (delta < -180f) delta += 360f
+        val bearing = ((from + delta * t) % 360.0).toFloat()
+        return if (bearing < 0f) bearing + 360f else bearing
+    }
+}
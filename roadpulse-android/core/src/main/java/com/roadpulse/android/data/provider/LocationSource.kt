@@ -0,0 +1,14 @@
+package com.roadpulse.android.data.provider
+
+import com.roadpulse.android.data.model.LocationData
+
+/**
+ * Position of the vehicle at a point on the elapsed realtime clock, which sensor timestamps share
+ */
+fun interface LocationSource {
+
+    /**
+     * Where the vehicle was at [elapsedRealtimeNanos], or null if unknown
+     */
+    fun locationAt(elapsedRealtimeNanos: Long): LocationData?
+}
@@ -0,0 +1,194 @@
+package com.roadpulse.android.data.replay
+
+import com.roadpulse.android.data.classifier.EventClassifier
+import com.roadpulse.android.data.detector.EventDetector
+import com.roadpulse.android.data.error.ErrorReporter
+import com.roadpulse.android.data.model.AccelerometerData
+import com.roadpulse.android.data.model.GyroscopeData
+import com.roadpulse.android.data.model.LocationData
+import com.roadpulse.android.data.model.RoadAnomalyEvent
+import com.roadpulse.android.data.model.SensorData
+import com.roadpulse.android.data.processor.SensorDataProcessor
+import com.roadpulse.android.data.provider.InertialNavigator
+import com.roadpulse.android.data.provider.LocationHistory
+import com.roadpulse.android.data.session.SessionManager
+import com.roadpulse.android.data.time.ReplayClock
+import com.roadpulse.android.data.trace.SensorTraceReader
+import kotlinx.coroutines.CoroutineDispatcher
+import kotlinx.coroutines.Dispatchers
+import java.io.IOException
+
+/**
+ * Pushes a recorded trace through processor -> detector -> classifier as fast as the CPU
+ * allows, for regression tests and benchmarks on a plain JVM.
+ *
+ * Stages run in order on the calling thread with the same per-stage logic as the monitoring
+ * service; queues, wake locks and persistence are left out. [clock] follows the trace, so
+ * calibration intervals, handling suppression and session timeouts behave as on the road,
+ * and [locationHistory] receives the trace's fixes so [navigator] geotags events as on the road.
+ * The components keep state between samples, so an engine (and its components) replays one
+ * trace; use [create] for a fresh pipeline per run.
+ */
+class TraceReplayEngine(
+    private val processor: SensorDataProcessor,
+    private val detector: EventDetector,
+    private val classifier: EventClassifier,
+    private val sessionManager: SessionManager,
+    private val clock: ReplayClock,
+    private val locationHistory: LocationHistory,
+    private val navigator: InertialNavigator,
+    private val batchSize: Int = DEFAULT_BATCH_SIZE
+) {
+
+    companion object {
+        const val DEFAULT_BATCH_SIZE = 75 // One 3 second FIFO flush at 25Hz
+
+        /**
+         * Builds an engine around new pipeline components that all run on one [ReplayClock].
+         * The session watchdog runs on [dispatcher].
+         */
+        fun create(
+            errorReporter: ErrorReporter,
+            dispatcher: CoroutineDispatcher = Dispatchers.Default,
+            batchSize: Int = DEFAULT_BATCH_SIZE
+        ): TraceReplayEngine {
+            val clock = ReplayClock()
+            val locationHistory = LocationHistory()
+            val navigator = InertialNavigator(locationHistory)
+            return TraceReplayEngine(
+                processor = SensorDataProcessor(errorReporter, clock),
+                detector = EventDetector(navigator),
+                classifier = EventClassifier(),
+                sessionManager = SessionManager(dispatcher, clock),
+                clock = clock,
+                locationHistory = locationHistory,
+                navigator = navigator,
+                batchSize = batchSize
+            )
+        }
+    }
+
+    /**
+     * Outcome of one replay
+     */
+    data class ReplayResult(
+        val events: List<RoadAnomalyEvent>, // Classified events that passed validation
+        val detectedEvents: Int,            // Impulses reported by the detector, before validation
+        val samples: Long,
+        val traceDurationMs: Long,
+        val elapsedNanos: Long
+    ) {
+        val samplesPerSecond: Double
+            get() = if (elapsedNanos > 0) samples * 1e9 / elapsedNanos else 0.0
+
+        /**
+         * How many times faster than real time the trace was processed
+         */
+        val speedup: Double
+            get() = if (elapsedNanos > 0) traceDurationMs * 1e6 / elapsedNanos else 0.0
+    }
+
+    init {
+        require(batchSize > 0) { "Batch size must be positive" }
+    }
+
+    @Throws(IOException::class)
+    fun replay(source: TraceSource): ReplayResult {
+        val run = Run()
+        val startNs = System.nanoTime()
+        try {
+            source.read(run)
+            run.flush()
+        } finally {
+            sessionManager.endSession()
+        }
+        val elapsedNs = System.nanoTime() - startNs
+
+        val durationMs = if (run.samples > 0) run.lastTimestampMs - run.firstTimestampMs else 0L
+        return ReplayResult(run.events, run.detected, run.samples, durationMs, elapsedNs)
+    }
+
+    /**
+     * Turns trace records into sample batches and runs each batch through the stages
+     */
+    private inner class Run : SensorTraceReader.TraceVisitor {
+        val events = ArrayList<RoadAnomalyEvent>()
+        var detected = 0
+        var samples = 0L
+        var firstTimestampMs = 0L
+        var lastTimestampMs = 0L
+
+        private val batch = ArrayList<SensorData>(batchSize)
+        private var wallClockOffsetNs = 0L
+        private var location: LocationData? = null
+
+        override fun onSegmentStart(wallClockOffsetNs: Long) {
+            this.wallClockOffsetNs = wallClockOffsetNs
+        }
+
+        override fun onLocation(
+            timestampNs: Long,
+            latitude: Double, longitude: Double,
+            accuracyM: Float, speedMs: Float, bearingDeg: Float
+        ) {
+            // timestampNs is the fix's own elapsed-realtime time, as LocationProvider reports it
+            val fix = LocationData(latitude, longitude, accuracyM, speedMs, bearingDeg, wallClockMs(timestampNs), timestampNs)
+            locationHistory.add(timestampNs, fix)
+            location = fix
+        }
+
+        override fun onSample(
+            timestampNs: Long,
+            accelX: Float, accelY: Float, accelZ: Float, accelAccuracy: Int,
+            gyroX: Float, gyroY: Float, gyroZ: Float, gyroAccuracy: Int
+        ) {
+            val timestampMs = wallClockMs(timestampNs)
+            if (samples == 0L) {
+                firstTimestampMs = timestampMs
+                clock.advanceTo(timestampMs)
+                sessionManager.startSession()
+            }
+            samples++
+            lastTimestampMs = timestampMs
+
+            batch.add(
+                SensorData(
+                    timestamp = timestampMs,
+                    accelerometer = AccelerometerData(accelX, accelY, accelZ, accelAccuracy),
+                    gyroscope = GyroscopeData(gyroX, gyroY, gyroZ, gyroAccuracy),
+                    location = location,
+                    timestampNanos = timestampNs
+                )
+            )
+            if (batch.size == batchSize) flush()
+        }
+
+        fun flush() {
+            if (batch.isEmpty()) return
+            clock.advanceTo(batch[batch.size - 1].timestamp)
+
+            // Filter stage
+            sessionManager.updateActivity()
+            val processed = processor.processSensorBatch(batch)
+            navigator.advance(batch, processed)
+            val candidates = processor.selectDetectionCandidates(batch, processed)
+            batch.clear()
+            if (candidates == null) return
+
+            // Detect and classify stages
+            for (detectedEvent in detector.detectEvents(candidates)) {
+                detected++
+                if (!detector.validateEvent(detectedEvent)) continue
+
+                // Without an active session events are discarded, as in the service
+                val sessionId = sessionManager.getCurrentSessionId() ?: continue
+                val event = classifier.classifyEvent(detectedEvent, sessionId)
+                if (classifier.validateClassifiedEvent(event)) {
+                    events.add(event)
+                }
+            }
+        }
+
+        private fun wallClockMs(timestampNs: Long): Long = Math.floorDiv(timestampNs + wallClockOffsetNs, 1_000_000L)
+    }
+}
@@ -0,0 +1,108 @@
+package com.roadpulse.android.data.replay
+
+import com.roadpulse.android.data.trace.SensorTraceReader
+import java.io.BufferedReader
+import java.io.File
+import java.io.IOException
+import java.io.Reader
+
+/**
+ * A recorded sensor trace: aligned accelerometer/gyroscope samples interleaved with location
+ * fixes, in sensor clock order
+ */
+fun interface TraceSource {
+
+    /**
+     * Passes every record to [visitor]
+     */
+    @Throws(IOException::class)
+    fun read(visitor: SensorTraceReader.TraceVisitor)
+}
+
+/**
+ * Segments written by the on-device trace recorder, replayed in the given order
+ */
+class BinaryTraceSource(private val segments: List<File>) : TraceSource {
+
+    override fun read(visitor: SensorTraceReader.TraceVisitor) {
+        for (segment in segments) {
+            SensorTraceReader.read(segment, visitor)
+        }
+    }
+}
+
+/**
+ * Comma separated trace, one aligned sample per line:
+ *
+ *     timestamp_ns,accel_x,accel_y,accel_z,gyro_x,gyro_y,gyro_z[,latitude,longitude,accuracy_m,speed_ms,bearing_deg]
+ *
+ * Blank lines, lines starting with `#` and a header line are skipped. The location columns
+ * may be left empty; a fix is passed on whenever its values change. Sensor accuracy is not
+ * part of the format and replays as [DEFAULT_ACCURACY].
+ *
+ * @param wallClockOffsetNs Added to timestamp_ns to get wall clock time; 0 for epoch timestamps
+ */
+class CsvTraceSource(
+    private val open: () -> Reader,
+    private val wallClockOffsetNs: Long = 0L
+) : TraceSource {
+
+    constructor(file: File, wallClockOffsetNs: Long = 0L) : this({ file.bufferedReader() }, wallClockOffsetNs)
+
+    companion object {
+        const val DEFAULT_ACCURACY = 3 // SensorManager.SENSOR_STATUS_ACCURACY_HIGH
+        private const val SAMPLE_COLUMNS = 7
+        private const val LOCATION_COLUMNS = 12
+    }
+
+    override fun read(visitor: SensorTraceReader.TraceVisitor) {
+        visitor.onSegmentStart(wallClockOffsetNs)
+
+        var lastLatitude = Double.NaN
+        var lastLongitude = Double.NaN
+        var lastAccuracy = Float.NaN
+        var lastSpeed = Float.NaN
+        var lastBearing = Float.NaN
+
+        val reader = open().let { if (it is BufferedReader) it else BufferedReader(it) }
+        reader.use {
+            var lineNumber = 0
+            while (true) {
+                val line = reader.readLine() ?: break
+                lineNumber++
+                if (line.isBlank() || line.startsWith("#")) continue
+
+                val columns = line.split(',')
+                val timestampNs = columns[0].trim().toLongOrNull()
+                if (timestampNs == null) {
+                    if (lineNumber == 1) continue // Header
+                    throw IOException("Invalid timestamp on line $lineNumber")
+                }
+                if (columns.size < SAMPLE_COLUMNS) throw IOException("Expected $SAMPLE_COLUMNS columns on line $lineNumber")
+
+                if (columns.size >= LOCATION_COLUMNS && columns[7].isNotBlank()) {
+                    val latitude = columns[7].trim().toDouble()
+                    val longitude = columns[8].trim().toDouble()
+                    val accuracy = columns[9].trim().toFloat()
+                    val speed = columns[10].trim().toFloat()
+                    val bearing = columns[11].trim().toFloat()
+                    if (latitude != lastLatitude || longitude != lastLongitude || accuracy != lastAccuracy ||
+                        speed != lastSpeed || bearing != lastBearing) {
+                        visitor.onLocation(timestampNs, latitude, longitude, accuracy, speed, bearing)
+                        lastLatitude = latitude
+                        lastLongitude = longitude
+                        lastAccuracy = accuracy
+                        lastSpeed = speed
+                        lastBearing = bearing
+                    }
+                }
+
+                visitor.onSample(
+                    timestampNs,
+                    columns[1].trim().toFloat(), columns[2].trim().toFloat(), columns[3].trim().toFloat(), DEFAULT_ACCURACY,
+                    columns[4].trim().toFloat(), columns[5].trim().toFloat(), columns[6].trim().toFloat(), DEFAULT_ACCURACY
+                )
+            }
+        }
+    }
+}
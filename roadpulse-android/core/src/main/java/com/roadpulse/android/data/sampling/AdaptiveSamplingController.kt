@@ -0,0 +1,194 @@
+package com.roadpulse.android.data.sampling
+
+import com.roadpulse.android.data.processor.MotionState
+import kotlin.math.abs
+import kotlin.math.roundToInt
+
+/**
+ * Chooses the sensor sampling rate from how much the road currently needs to be sampled and
+ * how much the device can afford.
+ *
+ * Demand comes from motion, GPS speed and road roughness, measured as the detector's recent
+ * hit rate: rough roads get [maxRateHz], a smooth road at most half the range above
+ * [minRateHz] (17.5Hz at 120 km/h with the default 10-25Hz range), a stationary device
+ * [minRateHz]. Battery level and thermal status cap the result; charging lifts the battery cap.
+ *
+ * Every rate change re-registers the sensor listeners, so changes are held back by
+ * hysteresis: the target has to differ by more than [DEADBAND] from the current rate and
+ * stay there for [upDwellMs] before rising or [downDwellMs] before falling. Falling below a
+ * battery or thermal cap is applied at once.
+ */
+class AdaptiveSamplingController(
+    val minRateHz: Float,
+    val maxRateHz: Float,
+    private val upDwellMs: Long = 2_000L,
+    private val downDwellMs: Long = 30_000L,
+    private val batteryFloorLevel: Int = 15
+) {
+
+    companion object {
+        const val DEADBAND = 0.2f // Relative change below which the rate is left alone
+
+        // Roughness: detector hits per minute at which the road counts as fully rough
+        private const val HIT_WINDOW_MS = 2 * 60_000L
+        private const val MAX_TRACKED_HITS = 64
+        private const val ROUGH_HITS_PER_MINUTE = 4f
+
+        // A smooth road still needs some resolution at speed, since impulses get shorter
+        private const val MOTORWAY_SPEED_KMH = 120f
+        private const val MOTORWAY_DEMAND = 0.5f
+
+        // Battery level from which the full range is available when not charging
+        private const val FULL_RANGE_BATTERY_LEVEL = 50
+
+        // PowerManager.THERMAL_STATUS_* values
+        const val THERMAL_STATUS_LIGHT = 1
+        const val THERMAL_STATUS_MODERATE = 2
+        const val THERMAL_STATUS_SEVERE = 3
+    }
+
+    /**
+     * Inputs for one rate decision
+     */
+    data class Signals(
+        val motionState: MotionState,
+        val speedKmh: Float?, // Null without a GPS fix
+        val batteryLevel: Int, // %
+        val isCharging: Boolean,
+        val thermalStatus: Int // PowerManager.THERMAL_STATUS_*
+    )
+
+    init {
+        require(minRateHz > 0f && maxRateHz >= minRateHz) { "Invalid sampling rate range" }
+    }
+
+    // Ring of recent hit timestamps
+    private val hits = LongArray(MAX_TRACKED_HITS)
+    private var hitCount = 0
+    private var nextHit = 0
+
+    private var startedAtMs = Long.MIN_VALUE
+
+    @Volatile
+    var currentRateHz: Float = maxRateHz
+        private set
+
+    private var pendingDirection = 0
+    private var pendingSinceMs = 0L
+
+    /**
+     * Counts an impulse found by the detector, at its wall clock time
+     */
+    @Synchronized
+    fun recordHit(timestampMs: Long) {
+        hits[nextHit] = timestampMs
+        nextHit = (nextHit + 1) % MAX_TRACKED_HITS
+        if (hitCount < MAX_TRACKED_HITS) hitCount++
+    }
+
+    /**
+     * Detector hits per minute over the last two minutes
+     */
+    @Synchronized
+    fun hitsPerMinute(nowMs: Long): Float {
+        var recent = 0
+        for (i in 0 until hitCount) {
+            if (nowMs - hits[i] <= HIT_WINDOW_MS) recent++
+        }
+        return recent * 60_000f / HIT_WINDOW_MS
+    }
+
+    /**
+     * Rate the current signals call for, before hysteresis
+     */
+    fun targetRateHz(signals: Signals, nowMs: Long): Float {
+        val demand = if (signals.motionState == MotionState.STATIONARY) {
+            0f
+        } else if (signals.isCharging) {
+            1f // Power is free
+        } else {
+            maxOf(roughness(nowMs), speedDemand(signals.speedKmh))
+        }
+        val rate = minRateHz + (maxRateHz - minRateHz) * demand
+        return minOf(rate, capHz(signals)).roundToInt().toFloat().coerceIn(minRateHz, maxRateHz)
+    }
+
+    /**
+     * Highest rate the battery and thermal state allow
+     */
+    fun capHz(signals: Signals): Float {
+        val range = maxRateHz - minRateHz
+        val batteryCap = if (signals.isCharging || signals.batteryLevel >= FULL_RANGE_BATTERY_LEVEL) {
+            maxRateHz
+        } else {
+            val share = (signals.batteryLevel - batteryFloorLevel).toFloat() /
+                (FULL_RANGE_BATTERY_LEVEL - batteryFloorLevel)
+            minRateHz + range * share.coerceIn(0f, 1f)
+        }
+        val thermalCap = when {
+            signals.thermalStatus >= THERMAL_STATUS_SEVERE -> minRateHz
+            signals.thermalStatus >= THERMAL_STATUS_MODERATE -> minRateHz + range * 0.5f
+            signals.thermalStatus >= THERMAL_STATUS_LIGHT -> minRateHz + range * 0.75f
+            else -> maxRateHz
+        }
+        return minOf(batteryCap, thermalCap)
+    }
+
+    /**
+     * Feeds the latest signals to the controller
+     *
+     * @return The new rate in Hz if the sensors should be re-registered, null to keep the current rate
+     */
+    @Synchronized
+    fun update(signals: Signals, nowMs: Long): Float? {
+        if (startedAtMs == Long.MIN_VALUE) startedAtMs = nowMs
+        val current = currentRateHz
+        val target = targetRateHz(signals, nowMs)
+
+        // Over a battery or thermal cap: no reason to wait
+        if (current > capHz(signals) && target < current) {
+            return apply(target)
+        }
+
+        if (abs(target - current) <= current * DEADBAND) {
+            pendingDirection = 0
+            return null
+        }
+        val direction = if (target > current) 1 else -1
+        if (direction != pendingDirection) {
+            pendingDirection = direction
+            pendingSinceMs = nowMs
+        }
+        val dwellMs = if (direction > 0) upDwellMs else downDwellMs
+        return if (nowMs - pendingSinceMs >= dwellMs) apply(target) else null
+    }
+
+    /**
+     * Starts a new session at the full rate
+     */
+    @Synchronized
+    fun reset() {
+        hitCount = 0
+        nextHit = 0
+        startedAtMs = Long.MIN_VALUE
+        currentRateHz = maxRateHz
+        pendingDirection = 0
+    }
+
+    private fun apply(rateHz: Float): Float {
+        currentRateHz = rateHz
+        pendingDirection = 0
+        return rateHz
+    }
+
+    private fun roughness(nowMs: Long): Float {
+        // Until a full window has been seen, a quiet road is not evidence of a smooth one
+        if (startedAtMs == Long.MIN_VALUE || nowMs - startedAtMs < HIT_WINDOW_MS) return 1f
+        return (hitsPerMinute(nowMs) / ROUGH_HITS_PER_MINUTE).coerceIn(0f, 1f)
+    }
+
+    private fun speedDemand(speedKmh: Float?): Float {
+        if (speedKmh == null) return 0f
+        return (speedKmh / MOTORWAY_SPEED_KMH).coerceIn(0f, 1f) * MOTORWAY_DEMAND
+    }
+}
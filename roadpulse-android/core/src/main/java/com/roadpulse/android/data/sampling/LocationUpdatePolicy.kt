@@ -0,0 +1,117 @@
+package com.roadpulse.android.data.sampling
+
+import com.roadpulse.android.data.processor.MotionState
+
+/**
+ * Chooses how hard the GPS works from what the vehicle is doing.
+ *
+ * A parked device only needs a coarse fix now and then, so [Mode.PARKED] asks for low power
+ * fixes once a minute. Moving on rough road, where detections are likely, [Mode.DETECTING]
+ * asks for a fix every second so events are tagged close to where they happened. Urban
+ * driving keeps the former 5 second high accuracy request. Cruising on a smooth road at speed
+ * [Mode.CRUISING] lets the location service batch fixes and deliver them together, which keeps
+ * the application processor asleep between deliveries. A batch is held for at most
+ * [MAX_BATCH_DELAY_MS], within the window the position is dead-reckoned past the last fix,
+ * so events detected while a batch is pending are not tagged with a stale fix.
+ *
+ * Moving to a more demanding mode is applied at once so the first impulse on a rough stretch
+ * is not missed; relaxing waits [relaxDwellMs] so a short stop at a junction does not bounce
+ * the request.
+ */
+class LocationUpdatePolicy(
+    private val relaxDwellMs: Long = 30_000L
+) {
+
+    companion object {
+        const val CRUISING_SPEED_KMH = 50f
+        const val DETECTING_HITS_PER_MINUTE = 1f // Two detector hits in the last two minutes
+
+        // No longer than LocationHistory and InertialNavigator coast past the newest fix
+        const val MAX_BATCH_DELAY_MS = 15_000L
+    }
+
+    /**
+     * How closely fixes are tracked
+     */
+    enum class Accuracy {
+        HIGH,     // GPS
+        BALANCED, // Wi-Fi and cell, roughly 100m
+        LOW_POWER // Cell, roughly 10km
+    }
+
+    /**
+     * Location request for one driving situation, cheapest first
+     */
+    enum class Mode(
+        val accuracy: Accuracy,
+        val intervalMs: Long,
+        val minUpdateIntervalMs: Long,
+        val maxUpdateDelayMs: Long // Above intervalMs allows the location service to batch fixes
+    ) {
+        PARKED(Accuracy.LOW_POWER, 60_000L, 30_000L, 0L),
+        CRUISING(Accuracy.HIGH, 10_000L, 5_000L, MAX_BATCH_DELAY_MS),
+        URBAN(Accuracy.HIGH, 5_000L, 1_000L, 0L),
+        DETECTING(Accuracy.HIGH, 1_000L, 1_000L, 0L)
+    }
+
+    @Volatile
+    var currentMode: Mode = Mode.URBAN
+        private set
+
+    private var pendingMode: Mode? = null
+    private var pendingSinceMs = 0L
+
+    /**
+     * Mode the current situation calls for, before hysteresis
+     *
+     * @param speedKmh Null without a recent fix
+     * @param hitsPerMinute Recent detector hit rate, see [AdaptiveSamplingController.hitsPerMinute]
+     */
+    fun targetMode(motionState: MotionState, speedKmh: Float?, hitsPerMinute: Float): Mode {
+        return when {
+            motionState == MotionState.STATIONARY -> Mode.PARKED
+            hitsPerMinute >= DETECTING_HITS_PER_MINUTE -> Mode.DETECTING
+            speedKmh != null && speedKmh >= CRUISING_SPEED_KMH -> Mode.CRUISING
+            else -> Mode.URBAN
+        }
+    }
+
+    /**
+     * Feeds the latest situation to the policy
+     *
+     * @return The new mode if the location request should be replaced, null to keep the current one
+     */
+    @Synchronized
+    fun update(motionState: MotionState, speedKmh: Float?, hitsPerMinute: Float, nowMs: Long): Mode? {
+        val current = currentMode
+        val target = targetMode(motionState, speedKmh, hitsPerMinute)
+
+        if (target == current) {
+            pendingMode = null
+            return null
+        }
+        if (target > current) {
+            return apply(target)
+        }
+        if (target != pendingMode) {
+            pendingMode = target
+            pendingSinceMs = nowMs
+        }
+        return if (nowMs - pendingSinceMs >= relaxDwellMs) apply(target) else null
+    }
+
+    /**
+     * Starts a new session in [Mode.URBAN]
+     */
+    @Synchronized
+    fun reset() {
+        currentMode = Mode.URBAN
+        pendingMode = null
+    }
+
+    private fun apply(mode: Mode): Mode {
+        currentMode = mode
+        pendingMode = null
+        return mode
+    }
+}
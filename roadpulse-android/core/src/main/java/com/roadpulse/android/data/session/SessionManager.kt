@@ -0,0 +1,164 @@
+package com.roadpulse.android.data.session
+
+import com.roadpulse.android.data.time.Clock
+import kotlinx.coroutines.CoroutineDispatcher
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.delay
+import kotlinx.coroutines.launch
+import java.util.UUID
+import java.util.concurrent.atomic.AtomicBoolean
+import java.util.concurrent.atomic.AtomicLong
+import java.util.concurrent.atomic.AtomicReference
+
+/**
+ * Manages driving sessions for road anomaly detection.
+ * Handles session creation, timeout detection, and lifecycle management.
+ *
+ * Lock-free: activity is recorded with a single atomic write (it is called for every sensor
+ * batch), reads never block, and one long-lived watchdog clears expired sessions.
+ *
+ * The watchdog runs on [ioDispatcher]; the app provides its IO dispatcher, replay its own.
+ */
+class SessionManager(
+    private val ioDispatcher: CoroutineDispatcher,
+    private val clock: Clock = Clock.SYSTEM
+) {
+    companion object {
+        private const val SESSION_TIMEOUT_MS = 5 * 60 * 1000L // 5 minutes
+        private const val WATCHDOG_INTERVAL_MS = 30 * 1000L // Expiry is checked at this granularity
+    }
+
+    private val activeSession = AtomicReference<ActiveSession?>(null)
+    private val watchdogRunning = AtomicBoolean(false)
+    private val scope = CoroutineScope(ioDispatcher)
+
+    /**
+     * Snapshot of an active driving session
+     */
+    data class Session(
+        val id: String,
+        val startTime: Long,
+        val lastActivityTime: Long
+    )
+
+    /**
+     * Mutable session state shared between threads
+     */
+    private class ActiveSession(val id: String, val startTime: Long) {
+        val lastActivityTime = AtomicLong(startTime)
+
+        fun snapshot() = Session(id, startTime, lastActivityTime.get())
+    }
+
+    /**
+     * Start a new session or resume the current one if still active
+     * @return The current session ID
+     */
+    fun startSession(): String {
+        while (true) {
+            val now = clock.currentTimeMillis()
+            val current = activeSession.get()
+
+            // Check if current session is still valid (within timeout)
+            if (current != null && !isExpired(current, now)) {
+                // Session is still active, update activity time
+                current.lastActivityTime.set(now)
+                return current.id
+            }
+
+            // Create new session, unless another thread replaced the expired one first
+            val newSession = ActiveSession(UUID.randomUUID().toString(), now)
+            if (activeSession.compareAndSet(current, newSession)) {
+                startWatchdog()
+                return newSession.id
+            }
+        }
+    }
+
+    /**
+     * Update the last activity time for the current session
+     * This prevents session timeout while data collection is active
+     */
+    fun updateActivity() {
+        activeSession.get()?.lastActivityTime?.set(clock.currentTimeMillis())
+    }
+
+    /**
+     * Get the current active session ID, or null if no session is active
+     */
+    fun getCurrentSessionId(): String? = liveSession()?.id
+
+    /**
+     * Check if there is an active session
+     */
+    fun hasActiveSession(): Boolean = liveSession() != null
+
+    /**
+     * Manually end the current session
+     */
+    fun endSession() {
+        activeSession.set(null)
+    }
+
+    /**
+     * Get session information for the current active session
+     */
+    fun getCurrentSession(): Session? = liveSession()?.snapshot()
+
+    /**
+     * Get the duration of the current session in milliseconds
+     */
+    fun getCurrentSessionDuration(): Long? {
+        return liveSession()?.let { session ->
+            clock.currentTimeMillis() - session.startTime
+        }
+    }
+
+    /**
+     * Get the time since last activity in the current session
+     */
+    fun getTimeSinceLastActivity(): Long? {
+        return liveSession()?.let { session ->
+            clock.currentTimeMillis() - session.lastActivityTime.get()
+        }
+    }
+
+    /**
+     * Returns the current session if it has not timed out, clearing it otherwise
+     */
+    private fun liveSession(): ActiveSession? {
+        val session = activeSession.get() ?: return null
+        if (isExpired(session, clock.currentTimeMillis())) {
+            // Session has timed out; only clear it if it was not replaced meanwhile
+            activeSession.compareAndSet(session, null)
+            return null
+        }
+        return session
+    }
+
+    private fun isExpired(session: ActiveSession, now: Long): Boolean {
+        return now - session.lastActivityTime.get() >= SESSION_TIMEOUT_MS
+    }
+
+    /**
+     * Start the expiry watchdog if it is not already running.
+     * It exits once no session is active; the next startSession starts it again.
+     */
+    private fun startWatchdog() {
+        if (!watchdogRunning.compareAndSet(false, true)) return
+
+        scope.launch {
+            try {
+                while (liveSession() != null) {
+                    delay(WATCHDOG_INTERVAL_MS)
+                }
+            } finally {
+                watchdogRunning.set(false)
+            }
+            // A session started while the watchdog was exiting still needs one
+            if (activeSession.get() != null) {
+                startWatchdog()
+            }
+        }
+    }
+}
@@ -0,0 +1,314 @@
+package com.roadpulse.android.data.sync
+
+import com.roadpulse.android.data.database.CompactIds
+import com.roadpulse.android.data.model.AnomalyAggregate
+import com.roadpulse.android.data.model.RoadAnomalyEvent
+import java.io.ByteArrayOutputStream
+import kotlin.math.roundToLong
+
+/**
+ * Compact columnar binary encoding for batches of events and anomaly aggregates, used for
+ * upload and download.
+ *
+ * Layout (version 2), all integers are LEB128 varints, signed ones zigzag-encoded:
+ * - magic "RP", version byte, event count
+ * - ids: 16 raw bytes each
+ * - created_at: delta from the previous event (the first from 0), milliseconds
+ * - latitude, longitude: fixed point in 1e-7 degrees, delta from the previous event
+ * - gps_accuracy_m, speed_kmh: 0.1 units
+ * - heading_deg: presence bitmap (LSB first), then 0.01 degrees for each present value
+ * - peak_accel_ms2: 0.001 m/s²; impulse_duration_ms; severity; confidence: 0.0001
+ * - device_model, android_version, session_id: string dictionary (count, then length-prefixed
+ *   UTF-8 entries in first-seen order) followed by one index per event
+ * - aggregate count, then per aggregate column: uuids (16 raw bytes each); latitude and
+ *   longitude as deltas like the events'; hit_count; max_severity; severity_sum;
+ *   first_seen_at as a delta from the previous aggregate's; last_seen_at - first_seen_at;
+ *   heading_buckets unsigned
+ *
+ * Version 1 is the same without the aggregate section. Aggregates carry running totals, so
+ * the receiver replaces what it holds for a uuid and re-sent totals are harmless.
+ *
+ * Events sorted by time and route keep the deltas to one or two bytes. Floats are quantized
+ * to the resolutions above; local ids, synced flags and derived spatial cells are not sent.
+ * The web client decodes the same layout in roadpulse-web/src/utils/eventWireFormat.ts.
+ */
+object EventWireFormat {
+
+    const val CONTENT_TYPE = "application/vnd.roadpulse.events"
+    const val VERSION = 2
+    private const val VERSION_WITHOUT_AGGREGATES = 1
+
+    private const val MAGIC_0 = 'R'.code
+    private const val MAGIC_1 = 'P'.code
+    private const val HEADER_BYTES = 3
+
+    const val COORDINATE_SCALE = 1e7
+    const val ACCURACY_SCALE = 10.0
+    const val SPEED_SCALE = 10.0
+    const val HEADING_SCALE = 100.0
+    const val ACCEL_SCALE = 1000.0
+    const val CONFIDENCE_SCALE = 10000.0
+
+    // Worst case for the fixed columns of one event: id, six 64-bit and six 32-bit varints, bitmap bit
+    private const val MAX_FIXED_EVENT_BYTES = CompactIds.SIZE_BYTES + 6 * 10 + 6 * 5 + 1
+
+    // Worst case for one aggregate: uuid, five 64-bit and three 32-bit varints
+    const val MAX_AGGREGATE_BYTES = CompactIds.SIZE_BYTES + 5 * 10 + 3 * 5
+
+    /**
+     * A decoded batch; aggregates are empty for version 1 batches
+     */
+    class DecodedBatch(val events: List<RoadAnomalyEvent>, val aggregates: List<AnomalyAggregate>)
+
+    /**
+     * Upper bound on the bytes [event] adds to a batch, counting its strings as new dictionary entries
+     */
+    fun maxEncodedSize(event: RoadAnomalyEvent): Int {
+        return MAX_FIXED_EVENT_BYTES +
+            maxStringSize(event.deviceModel) + maxStringSize(event.androidVersion) + maxStringSize(event.sessionId)
+    }
+
+    fun encode(events: List<RoadAnomalyEvent>, aggregates: List<AnomalyAggregate> = emptyList()): ByteArray {
+        val out = WireWriter(HEADER_BYTES + events.size * 40 + aggregates.size * 32)
+        out.writeByte(MAGIC_0)
+        out.writeByte(MAGIC_1)
+        out.writeByte(VERSION)
+        out.writeUnsigned(events.size.toLong())
+
+        for (event in events) {
+            out.write(CompactIds.encode(event.id))
+        }
+        writeDeltas(out, events) { it.createdAt }
+        writeDeltas(out, events) { quantize(it.latitude, COORDINATE_SCALE) }
+        writeDeltas(out, events) { quantize(it.longitude, COORDINATE_SCALE) }
+        for (event in events) out.writeSigned(quantize(event.gpsAccuracyM.toDouble(), ACCURACY_SCALE))
+        for (event in events) out.writeSigned(quantize(event.speedKmh.toDouble(), SPEED_SCALE))
+
+        val bitmap = ByteArray((events.size + 7) / 8)
+        events.forEachIndexed { i, event ->
+            if (event.headingDeg != null) bitmap[i / 8] = (bitmap[i / 8].toInt() or (1 shl (i % 8))).toByte()
+        }
+        out.write(bitmap)
+        for (event in events) {
+            event.headingDeg?.let { out.writeSigned(quantize(it.toDouble(), HEADING_SCALE)) }
+        }
+
+        for (event in events) out.writeSigned(quantize(event.peakAccelMs2.toDouble(), ACCEL_SCALE))
+        for (event in events) out.writeSigned(event.impulseDurationMs.toLong())
+        for (event in events) out.writeSigned(event.severity.toLong())
+        for (event in events) out.writeSigned(quantize(event.confidence.toDouble(), CONFIDENCE_SCALE))
+
+        writeDictionary(out, events) { it.deviceModel }
+        writeDictionary(out, events) { it.androidVersion }
+        writeDictionary(out, events) { it.sessionId }
+
+        out.writeUnsigned(aggregates.size.toLong())
+        for (aggregate in aggregates) {
+            out.write(CompactIds.encode(aggregate.uuid))
+        }
+        writeDeltas(out, aggregates) { quantize(it.latitude, COORDINATE_SCALE) }
+        writeDeltas(out, aggregates) { quantize(it.longitude, COORDINATE_SCALE) }
+        for (aggregate in aggregates) out.writeSigned(aggregate.hitCount.toLong())
+        for (aggregate in aggregates) out.writeSigned(aggregate.maxSeverity.toLong())
+        for (aggregate in aggregates) out.writeSigned(aggregate.severitySum.toLong())
+        writeDeltas(out, aggregates) { it.firstSeenAt }
+        for (aggregate in aggregates) out.writeSigned(aggregate.lastSeenAt - aggregate.firstSeenAt)
+        for (aggregate in aggregates) out.writeUnsigned(aggregate.headingBuckets)
+        return out.toByteArray()
+    }
+
+    /**
+     * Events of a batch, ignoring its aggregates
+     *
+     * @throws IllegalArgumentException if [bytes] is not a version 1 or 2 batch or is truncated
+     */
+    fun decode(bytes: ByteArray): List<RoadAnomalyEvent> = decodeBatch(bytes).events
+
+    /**
+     * @throws IllegalArgumentException if [bytes] is not a version 1 or 2 batch or is truncated
+     */
+    fun decodeBatch(bytes: ByteArray): DecodedBatch {
+        val input = WireReader(bytes)
+        require(input.readByte() == MAGIC_0 && input.readByte() == MAGIC_1) { "Not an event batch" }
+        val version = input.readByte()
+        require(version == VERSION || version == VERSION_WITHOUT_AGGREGATES) { "Unsupported event batch version $version" }
+
+        val count = input.readUnsigned().toInt()
+        require(count >= 0 && count <= bytes.size / CompactIds.SIZE_BYTES) { "Invalid event count $count" }
+
+        val ids = Array(count) { CompactIds.decode(input.readBytes(CompactIds.SIZE_BYTES)) }
+        val createdAt = readDeltas(input, count)
+        val latitudes = readDeltas(input, count)
+        val longitudes = readDeltas(input, count)
+        val accuracies = LongArray(count) { input.readSigned() }
+        val speeds = LongArray(count) { input.readSigned() }
+
+        val bitmap = input.readBytes((count + 7) / 8)
+        val headings = arrayOfNulls<Float>(count)
+        for (i in 0 until count) {
+            if (bitmap[i / 8].toInt() and (1 shl (i % 8)) != 0) {
+                headings[i] = (input.readSigned() / HEADING_SCALE).toFloat()
+            }
+        }
+
+        val peaks = LongArray(count) { input.readSigned() }
+        val durations = LongArray(count) { input.readSigned() }
+        val severities = LongArray(count) { input.readSigned() }
+        val confidences = LongArray(count) { input.readSigned() }
+        val deviceModels = readDictionary(input, count)
+        val androidVersions = readDictionary(input, count)
+        val sessionIds = readDictionary(input, count)
+
+        val events = List(count) { i ->
+            RoadAnomalyEvent(
+                id = ids[i],
+                createdAt = createdAt[i],
+                latitude = latitudes[i] / COORDINATE_SCALE,
+                longitude = longitudes[i] / COORDINATE_SCALE,
+                gpsAccuracyM = (accuracies[i] / ACCURACY_SCALE).toFloat(),
+                speedKmh = (speeds[i] / SPEED_SCALE).toFloat(),
+                headingDeg = headings[i],
+                peakAccelMs2 = (peaks[i] / ACCEL_SCALE).toFloat(),
+                impulseDurationMs = durations[i].toInt(),
+                severity = severities[i].toInt(),
+                confidence = (confidences[i] / CONFIDENCE_SCALE).toFloat(),
+                deviceModel = deviceModels[i],
+                androidVersion = androidVersions[i],
+                sessionId = sessionIds[i]
+            )
+        }
+        val aggregates = if (version == VERSION) readAggregates(input, bytes.size) else emptyList()
+        return DecodedBatch(events, aggregates)
+    }
+
+    private fun readAggregates(input: WireReader, batchBytes: Int): List<AnomalyAggregate> {
+        val count = input.readUnsigned().toInt()
+        require(count >= 0 && count <= batchBytes / CompactIds.SIZE_BYTES) { "Invalid aggregate count $count" }
+
+        val uuids = Array(count) { CompactIds.decode(input.readBytes(CompactIds.SIZE_BYTES)) }
+        val latitudes = readDeltas(input, count)
+        val longitudes = readDeltas(input, count)
+        val hitCounts = LongArray(count) { input.readSigned() }
+        val maxSeverities = LongArray(count) { input.readSigned() }
+        val severitySums = LongArray(count) { input.readSigned() }
+        val firstSeenAt = readDeltas(input, count)
+        val spans = LongArray(count) { input.readSigned() }
+        val headingBuckets = LongArray(count) { input.readUnsigned() }
+
+        // Local ids are not sent; the position in the batch stands in for them
+        return List(count) { i ->
+            AnomalyAggregate(
+                id = i.toLong(),
+                latitude = latitudes[i] / COORDINATE_SCALE,
+                longitude = longitudes[i] / COORDINATE_SCALE,
+                hitCount = hitCounts[i].toInt(),
+                maxSeverity = maxSeverities[i].toInt(),
+                severitySum = severitySums[i].toInt(),
+                firstSeenAt = firstSeenAt[i],
+                lastSeenAt = firstSeenAt[i] + spans[i],
+                headingBuckets = headingBuckets[i],
+                uuid = uuids[i]
+            )
+        }
+    }
+
+    private fun quantize(value: Double, scale: Double): Long = (value * scale).roundToLong()
+
+    private fun maxStringSize(value: String): Int = 5 + value.length * 3 + 5 // Length, UTF-8 bytes, index
+
+    private inline fun <T> writeDeltas(out: WireWriter, items: List<T>, value: (T) -> Long) {
+        var previous = 0L
+        for (item in items) {
+            val current = value(item)
+            out.writeSigned(current - previous)
+            previous = current
+        }
+    }
+
+    private fun readDeltas(input: WireReader, count: Int): LongArray {
+        val values = LongArray(count)
+        var previous = 0L
+        for (i in 0 until count) {
+            previous += input.readSigned()
+            values[i] = previous
+        }
+        return values
+    }
+
+    private inline fun writeDictionary(out: WireWriter, events: List<RoadAnomalyEvent>, value: (RoadAnomalyEvent) -> String) {
+        val indexes = LinkedHashMap<String, Int>()
+        for (event in events) {
+            indexes.getOrPut(value(event)) { indexes.size }
+        }
+        out.writeUnsigned(indexes.size.toLong())
+        for (entry in indexes.keys) {
+            val utf8 = entry.toByteArray(Charsets.UTF_8)
+            out.writeUnsigned(utf8.size.toLong())
+            out.write(utf8)
+        }
+        for (event in events) {
+            out.writeUnsigned(indexes.getValue(value(event)).toLong())
+        }
+    }
+
+    private fun readDictionary(input: WireReader, count: Int): Array<String> {
+        val size = input.readUnsigned().toInt()
+        require(size in 0..maxOf(count, 0)) { "Invalid dictionary size $size" }
+        val entries = Array(size) {
+            val length = input.readUnsigned().toInt()
+            String(input.readBytes(length), Charsets.UTF_8)
+        }
+        return Array(count) {
+            val index = input.readUnsigned().toInt()
+            require(index in entries.indices) { "Invalid dictionary index $index" }
+            entries[index]
+        }
+    }
+
+    private class WireWriter(initialCapacity: Int) : ByteArrayOutputStream(initialCapacity) {
+
+        fun writeByte(value: Int) = write(value)
+
+        fun writeUnsigned(value: Long) {
+            var remaining = value
+            while (remaining and 0x7FL.inv() != 0L) {
+                write(((remaining and 0x7F) or 0x80).toInt())
+                remaining = remaining ushr 7
+            }
+            write(remaining.toInt())
+        }
+
+        fun writeSigned(value: Long) = writeUnsigned((value shl 1) xor (value shr 63))
+    }
+
+    private class WireReader(private val bytes: ByteArray) {
+        private var position = 0
+
+        fun readByte(): Int {
+            require(position < bytes.size) { "Truncated event batch" }
+            return bytes[position++].toInt() and 0xFF
+        }
+
+        fun readBytes(length: Int): ByteArray {
+            require(length >= 0 && position + length <= bytes.size) { "Truncated event batch" }
+            return bytes.copyOfRange(position, position + length).also { position += length }
+        }
+
+        fun readUnsigned(): Long {
+            var result = 0L
+            var shift = 0
+            while (shift < 64) {
+                val b = readByte()
+                result = result or ((b and 0x7F).toLong() shl shift)
+                if (b and 0x80 == 0) return result
+                shift += 7
+            }
+            throw IllegalArgumentException("Malformed varint")
+        }
+
+        fun readSigned(): Long {
+            val raw = readUnsigned()
+            return (raw ushr 1) xor -(raw and 1)
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package com.roadpulse.android.data.time
+
+/**
+ * Source of wall clock time in milliseconds.
+ * Injected into the processing pipeline so it can run on recorded time (trace replay, tests)
+ * instead of the system clock.
+ */
+fun interface Clock {
+
+    fun currentTimeMillis(): Long
+
+    companion object {
+        val SYSTEM: Clock = Clock { System.currentTimeMillis() }
+    }
+}
+
+/**
+ * Clock that only moves when the replayed data moves it.
+ * Time never goes backwards, so out-of-order input cannot rewind timeouts.
+ */
+class ReplayClock(startMillis: Long = 0L) : Clock {
+
+    @Volatile
+    private var now = startMillis
+
+    override fun currentTimeMillis(): Long = now
+
+    fun advanceTo(timeMillis: Long) {
+        if (timeMillis > now) now = timeMillis
+    }
+}
@@ -0,0 +1,54 @@
+package com.roadpulse.android.data.trace
+
+import java.nio.ByteOrder
+
+/**
+ * Fixed-width layout of raw sensor trace segments.
+ *
+ * A segment is a [HEADER_BYTES] header followed by [RECORD_BYTES] records, little-endian:
+ * - header: magic "RPTR", version (u16), record size (u16), sequence (i64),
+ *   sensor-to-wall-clock offset in ns (i64), record count (i32, written when the segment closes)
+ * - sample record: type 1, accel accuracy (u8), gyro accuracy (u8), pad, sensor timestamp ns (i64),
+ *   accel x/y/z, gyro x/y/z (f32)
+ * - location record: type 2, 3 pad bytes, the fix's own elapsed-realtime timestamp ns (i64),
+ *   latitude, longitude (f64), accuracy m, speed m/s, bearing deg (f32). The record is written
+ *   before the first sample that saw the fix, so its timestamp may be earlier than the sample
+ *   before it.
+ *
+ * Segment files are preallocated, so a record type of 0 marks the end of a segment that was
+ * not closed cleanly.
+ */
+object SensorTraceFormat {
+
+    const val MAGIC = 0x52545052 // "RPTR" little-endian
+    const val VERSION = 2
+    const val HEADER_BYTES = 64
+    const val RECORD_BYTES = 40
+
+    const val RECORD_END = 0
+    const val RECORD_SAMPLE = 1
+    const val RECORD_LOCATION = 2
+
+    const val FILE_PREFIX = "segment-"
+    const val FILE_SUFFIX = ".trace"
+
+    val BYTE_ORDER: ByteOrder = ByteOrder.LITTLE_ENDIAN
+
+    // Header field offsets
+    internal const val HEADER_MAGIC = 0
+    internal const val HEADER_VERSION = 4
+    internal const val HEADER_RECORD_SIZE = 6
+    internal const val HEADER_SEQUENCE = 8
+    internal const val HEADER_WALL_CLOCK_OFFSET = 16
+    internal const val HEADER_RECORD_COUNT = 24
+
+    fun fileName(sequence: Long): String = "$FILE_PREFIX%010d$FILE_SUFFIX".format(sequence)
+
+    /**
+     * @return The sequence number encoded in a segment file name, or null for other files
+     */
+    fun sequenceOf(fileName: String): Long? {
+        if (!fileName.startsWith(FILE_PREFIX) || !fileName.endsWith(FILE_SUFFIX)) return null
+        return fileName.substring(FILE_PREFIX.length, fileName.length - FILE_SUFFIX.length).toLongOrNull()
+    }
+}
@@ -0,0 +1,92 @@
+package com.roadpulse.android.data.trace
+
+import java.io.File
+import java.io.IOException
+import java.io.RandomAccessFile
+import java.nio.channels.FileChannel
+
+/**
+ * Reads segments written by [SensorTraceRecorder], in record order and without allocating
+ * per record.
+ */
+object SensorTraceReader {
+
+    /**
+     * Receives the records of a segment
+     */
+    interface TraceVisitor {
+        /**
+         * Called before the records of each segment
+         */
+        fun onSegmentStart(wallClockOffsetNs: Long) {}
+
+        fun onSample(
+            timestampNs: Long,
+            accelX: Float, accelY: Float, accelZ: Float, accelAccuracy: Int,
+            gyroX: Float, gyroY: Float, gyroZ: Float, gyroAccuracy: Int
+        )
+
+        /**
+         * [timestampNs] is the fix's own elapsed-realtime time, on the same clock as the samples
+         */
+        fun onLocation(
+            timestampNs: Long,
+            latitude: Double, longitude: Double,
+            accuracyM: Float, speedMs: Float, bearingDeg: Float
+        )
+    }
+
+    /**
+     * Visits every record in [file]
+     *
+     * @return The segment's sensor-to-wall-clock offset in nanoseconds
+     * @throws IOException if [file] is not a trace segment
+     */
+    @Throws(IOException::class)
+    fun read(file: File, visitor: TraceVisitor): Long {
+        val buffer = RandomAccessFile(file, "r").use { raf ->
+            raf.channel.map(FileChannel.MapMode.READ_ONLY, 0, raf.length())
+        }
+        buffer.order(SensorTraceFormat.BYTE_ORDER)
+
+        if (buffer.limit() < SensorTraceFormat.HEADER_BYTES ||
+            buffer.getInt(SensorTraceFormat.HEADER_MAGIC) != SensorTraceFormat.MAGIC) {
+            throw IOException("Not a sensor trace segment: $file")
+        }
+        val version = buffer.getShort(SensorTraceFormat.HEADER_VERSION).toInt()
+        val recordBytes = buffer.getShort(SensorTraceFormat.HEADER_RECORD_SIZE).toInt()
+        if (version != SensorTraceFormat.VERSION || recordBytes != SensorTraceFormat.RECORD_BYTES) {
+            throw IOException("Unsupported sensor trace version $version in $file")
+        }
+        val wallClockOffsetNs = buffer.getLong(SensorTraceFormat.HEADER_WALL_CLOCK_OFFSET)
+        visitor.onSegmentStart(wallClockOffsetNs)
+
+        // A segment that was not closed cleanly has no count; read until the first empty record
+        val stored = buffer.getInt(SensorTraceFormat.HEADER_RECORD_COUNT)
+        val capacity = (buffer.limit() - SensorTraceFormat.HEADER_BYTES) / recordBytes
+        val count = if (stored > 0) minOf(stored, capacity) else capacity
+
+        var position = SensorTraceFormat.HEADER_BYTES
+        for (i in 0 until count) {
+            when (buffer.get(position).toInt()) {
+                SensorTraceFormat.RECORD_SAMPLE -> visitor.onSample(
+                    buffer.getLong(position + 4),
+                    buffer.getFloat(position + 12), buffer.getFloat(position + 16),
+                    buffer.getFloat(position + 20), buffer.get(position + 1).toInt(),
+                    buffer.getFloat(position + 24), buffer.getFloat(position + 28),
+                    buffer.getFloat(position + 32), buffer.get(position + 2).toInt()
+                )
+                SensorTraceFormat.RECORD_LOCATION -> visitor.onLocation(
+                    buffer.getLong(position + 4),
+                    buffer.getDouble(position + 12), buffer.getDouble(position + 20),
+                    buffer.getFloat(position + 28), buffer.getFloat(position + 32),
+                    buffer.getFloat(position + 36)
+                )
+                SensorTraceFormat.RECORD_END -> break
+                else -> throw IOException("Unknown trace record type at offset $position in $file")
+            }
+            position += recordBytes
+        }
+        return wallClockOffsetNs
+    }
+}
@@ -0,0 +1,310 @@
+package com.roadpulse.android.data.trace
+
+import com.roadpulse.android.data.model.LocationData
+import java.io.File
+import java.io.IOException
+import java.io.RandomAccessFile
+import java.nio.MappedByteBuffer
+import java.nio.channels.FileChannel
+import java.nio.file.Files
+import java.nio.file.StandardCopyOption
+import java.util.concurrent.ConcurrentLinkedQueue
+
+/**
+ * Records the aligned accelerometer/gyroscope stream and location fixes into rolling
+ * memory-mapped segment files in [SensorTraceFormat], so detections can be re-examined later.
+ *
+ * Each record is written with absolute puts into the mapped segment, so recording a sample
+ * does not allocate. Disk use is bounded: at most [maxSegments] rolling segments are kept, the
+ * oldest deleted first. Segments overlapping a [pinAround] window move to `pinned/` and are
+ * kept (up to [maxPinnedSegments]) until exported.
+ *
+ * Threading contract: one writer thread calls [beginBatch], [recordSample], [recordLocation]
+ * and [close]; [pinAround] may be called from any thread.
+ */
+class SensorTraceRecorder(
+    private val directory: File,
+    private val segmentBytes: Int = DEFAULT_SEGMENT_BYTES,
+    private val maxSegments: Int = DEFAULT_MAX_SEGMENTS,
+    private val maxPinnedSegments: Int = DEFAULT_MAX_PINNED_SEGMENTS,
+    private val pinBeforeNs: Long = DEFAULT_PIN_BEFORE_NS,
+    private val pinAfterNs: Long = DEFAULT_PIN_AFTER_NS
+) {
+
+    companion object {
+        const val DEFAULT_SEGMENT_BYTES = 1024 * 1024 // ~17 minutes of aligned samples at 25Hz
+        const val DEFAULT_MAX_SEGMENTS = 8
+        const val DEFAULT_MAX_PINNED_SEGMENTS = 32
+        const val DEFAULT_PIN_BEFORE_NS = 10_000_000_000L
+        const val DEFAULT_PIN_AFTER_NS = 5_000_000_000L
+        const val TRACE_DIRECTORY = "sensor_traces" // Under the app's files directory
+        const val PINNED_DIRECTORY = "pinned"
+
+        /**
+         * Pinned segments under a recorder [directory], oldest first
+         */
+        fun pinnedSegments(directory: File): List<File> = segmentFiles(File(directory, PINNED_DIRECTORY))
+
+        private fun segmentFiles(dir: File): List<File> {
+            val files = dir.listFiles() ?: return emptyList()
+            return files
+                .mapNotNull { file -> SensorTraceFormat.sequenceOf(file.name)?.let { it to file } }
+                .sortedBy { it.first }
+                .map { it.second }
+        }
+    }
+
+    private class ClosedSegment(val file: File, val firstNs: Long, val lastNs: Long)
+
+    private val pinnedDirectory = File(directory, PINNED_DIRECTORY)
+    private val recordsPerSegment = (segmentBytes - SensorTraceFormat.HEADER_BYTES) / SensorTraceFormat.RECORD_BYTES
+
+    // Active segment
+    private var buffer: MappedByteBuffer? = null
+    private var segmentFile: File? = null
+    private var sequence = 0L
+    private var recordCount = 0
+    private var firstNs = Long.MIN_VALUE
+    private var lastNs = Long.MIN_VALUE
+    private var activePinned = false
+
+    // Segments of this recording still in the rolling directory, oldest first
+    private val closedSegments = ArrayDeque<ClosedSegment>()
+
+    // Pin windows in sensor time, queued by any thread and applied by the writer
+    private val pendingPins = ConcurrentLinkedQueue<LongArray>()
+    private var pinUntilNs = Long.MIN_VALUE
+
+    @Volatile
+    private var wallClockOffsetNs = 0L
+    private var lastLocation: LocationData? = null
+
+    @Volatile
+    var isRecording = false
+        private set
+
+    @Volatile
+    private var failure: IOException? = null
+
+    init {
+        require(recordsPerSegment > 0) { "Segment too small for a single record" }
+        require(maxSegments > 0) { "At least one rolling segment is required" }
+    }
+
+    /**
+     * Opens the first segment. Sequence numbers continue after any segments already on disk.
+     */
+    @Throws(IOException::class)
+    fun start(wallClockOffsetNs: Long) {
+        if (isRecording) return
+        this.wallClockOffsetNs = wallClockOffsetNs
+        if (!directory.isDirectory && !directory.mkdirs()) throw IOException("Cannot create $directory")
+        if (!pinnedDirectory.isDirectory && !pinnedDirectory.mkdirs()) throw IOException("Cannot create $pinnedDirectory")
+
+        sequence = (segmentSequences(directory) + segmentSequences(pinnedDirectory)).maxOrNull() ?: 0L
+        lastLocation = null
+        openSegment()
+        pruneRolling()
+        isRecording = true
+    }
+
+    /**
+     * Called by the writer before each batch: updates the wall clock mapping and applies
+     * pins requested since the previous batch
+     */
+    fun beginBatch(wallClockOffsetNs: Long) {
+        this.wallClockOffsetNs = wallClockOffsetNs
+        if (isRecording) applyPendingPins()
+    }
+
+    fun recordSample(
+        timestampNs: Long,
+        accelX: Float, accelY: Float, accelZ: Float, accelAccuracy: Int,
+        gyroX: Float, gyroY: Float, gyroZ: Float, gyroAccuracy: Int
+    ) {
+        val out = nextRecord(timestampNs) ?: return
+        val position = out.position()
+        out.put(position, SensorTraceFormat.RECORD_SAMPLE.toByte())
+        out.put(position + 1, accelAccuracy.toByte())
+        out.put(position + 2, gyroAccuracy.toByte())
+        out.putLong(position + 4, timestampNs)
+        out.putFloat(position + 12, accelX)
+        out.putFloat(position + 16, accelY)
+        out.putFloat(position + 20, accelZ)
+        out.putFloat(position + 24, gyroX)
+        out.putFloat(position + 28, gyroY)
+        out.putFloat(position + 32, gyroZ)
+        out.position(position + SensorTraceFormat.RECORD_BYTES)
+    }
+
+    /**
+     * Records [location] if it differs from the last recorded fix. The provider hands out the
+     * same instance until a new fix arrives, so this is a reference check.
+     *
+     * The record carries the fix's own elapsed-realtime timestamp, as the live pipeline feeds
+     * it to LocationHistory; [timestampNs] (the sample that first saw the fix) is used only
+     * when the fix has none.
+     */
+    fun recordLocation(timestampNs: Long, location: LocationData?) {
+        if (location == null || location === lastLocation) return
+        val out = nextRecord(timestampNs) ?: return
+        lastLocation = location
+        val fixNs = if (location.elapsedRealtimeNanos > 0) location.elapsedRealtimeNanos else timestampNs
+        val position = out.position()
+        out.put(position, SensorTraceFormat.RECORD_LOCATION.toByte())
+        out.putLong(position + 4, fixNs)
+        out.putDouble(position + 12, location.latitude)
+        out.putDouble(position + 20, location.longitude)
+        out.putFloat(position + 28, location.accuracy)
+        out.putFloat(position + 32, location.speed)
+        out.putFloat(position + 36, location.bearing)
+        out.position(position + SensorTraceFormat.RECORD_BYTES)
+    }
+
+    /**
+     * Keeps the segments covering [wallClockMs] - pinBefore .. [wallClockMs] + pinAfter,
+     * including ones not written yet
+     */
+    fun pinAround(wallClockMs: Long) {
+        val sensorNs = wallClockMs * 1_000_000 - wallClockOffsetNs
+        pendingPins.add(longArrayOf(sensorNs - pinBeforeNs, sensorNs + pinAfterNs))
+    }
+
+    /**
+     * Pinned segments, oldest first. The active segment appears once it is closed.
+     */
+    fun pinnedSegments(): List<File> = pinnedSegments(directory)
+
+    /**
+     * Returns and clears the I/O error that stopped recording, if any
+     */
+    fun takeFailure(): IOException? = failure.also { failure = null }
+
+    /**
+     * Closes the active segment, moving it to the pinned directory if it was pinned
+     */
+    fun close() {
+        if (!isRecording) return
+        applyPendingPins()
+        try {
+            closeSegment()
+        } catch (e: IOException) {
+            failure = e
+        }
+        isRecording = false
+    }
+
+    private fun nextRecord(timestampNs: Long): MappedByteBuffer? {
+        if (!isRecording) return null
+        if (recordCount == recordsPerSegment) {
+            try {
+                rotate()
+            } catch (e: IOException) {
+                // Recording is best effort; never let it break sensor ingest
+                failure = e
+                isRecording = false
+                buffer = null
+                return null
+            }
+        }
+        if (recordCount == 0) firstNs = timestampNs
+        lastNs = timestampNs
+        recordCount++
+        return buffer
+    }
+
+    private fun rotate() {
+        val previousLastNs = lastNs
+        closeSegment()
+        openSegment()
+        // A pin window reaching past the closed segment covers this one too
+        activePinned = pinUntilNs > previousLastNs
+        pruneRolling()
+    }
+
+    private fun openSegment() {
+        sequence++
+        val file = File(directory, SensorTraceFormat.fileName(sequence))
+        val mapped = RandomAccessFile(file, "rw").use { raf ->
+            raf.setLength(segmentBytes.toLong())
+            raf.channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentBytes.toLong())
+        }
+        mapped.order(SensorTraceFormat.BYTE_ORDER)
+        mapped.putInt(SensorTraceFormat.HEADER_MAGIC, SensorTraceFormat.MAGIC)
+        mapped.putShort(SensorTraceFormat.HEADER_VERSION, SensorTraceFormat.VERSION.toShort())
+        mapped.putShort(SensorTraceFormat.HEADER_RECORD_SIZE, SensorTraceFormat.RECORD_BYTES.toShort())
+        mapped.putLong(SensorTraceFormat.HEADER_SEQUENCE, sequence)
+        mapped.putLong(SensorTraceFormat.HEADER_WALL_CLOCK_OFFSET, wallClockOffsetNs)
+        mapped.putInt(SensorTraceFormat.HEADER_RECORD_COUNT, 0)
+        mapped.position(SensorTraceFormat.HEADER_BYTES)
+
+        buffer = mapped
+        segmentFile = file
+        recordCount = 0
+        firstNs = Long.MIN_VALUE
+        lastNs = Long.MIN_VALUE
+        activePinned = false
+        // Each segment repeats the current fix so it can be replayed on its own
+        lastLocation = null
+    }
+
+    private fun closeSegment() {
+        val mapped = buffer ?: return
+        val file = segmentFile ?: return
+        mapped.putInt(SensorTraceFormat.HEADER_RECORD_COUNT, recordCount)
+        mapped.force()
+        buffer = null
+        segmentFile = null
+
+        when {
+            recordCount == 0 -> file.delete()
+            activePinned -> pin(file)
+            else -> closedSegments.addLast(ClosedSegment(file, firstNs, lastNs))
+        }
+    }
+
+    private fun applyPendingPins() {
+        while (true) {
+            val window = pendingPins.poll() ?: return
+            val fromNs = window[0]
+            val toNs = window[1]
+            pinUntilNs = maxOf(pinUntilNs, toNs)
+
+            val iterator = closedSegments.iterator()
+            while (iterator.hasNext()) {
+                val segment = iterator.next()
+                if (segment.lastNs >= fromNs && segment.firstNs <= toNs) {
+                    iterator.remove()
+                    try {
+                        pin(segment.file)
+                    } catch (e: IOException) {
+                        failure = e
+                    }
+                }
+            }
+            if (recordCount == 0 || (lastNs >= fromNs && firstNs <= toNs)) activePinned = true
+        }
+    }
+
+    private fun pin(file: File) {
+        Files.move(file.toPath(), File(pinnedDirectory, file.name).toPath(), StandardCopyOption.REPLACE_EXISTING)
+        deleteOldest(segmentFiles(pinnedDirectory), maxPinnedSegments)
+    }
+
+    private fun pruneRolling() {
+        // The active segment counts towards the limit
+        val files = segmentFiles(directory)
+        deleteOldest(files, maxSegments)
+        closedSegments.removeAll { !it.file.exists() }
+    }
+
+    private fun deleteOldest(files: List<File>, keep: Int) {
+        for (i in 0 until files.size - keep) {
+            files[i].delete()
+        }
+    }
+
+    private fun segmentSequences(dir: File): List<Long> {
+        return dir.list()?.mapNotNull { SensorTraceFormat.sequenceOf(it) } ?: emptyList()
+    }
+}
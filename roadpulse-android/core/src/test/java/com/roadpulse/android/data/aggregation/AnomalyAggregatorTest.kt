@@ -0,0 +1,161 @@
+package com.roadpulse.android.data.aggregation
+
+import com.roadpulse.android.data.model.AnomalyAggregate
+import io.kotest.assertions.throwables.shouldThrow
+import io.kotest.core.spec.style.FunSpec
+import io.kotest.matchers.collections.shouldBeEmpty
+import io.kotest.matchers.collections.shouldHaveSize
+import io.kotest.matchers.doubles.plusOrMinus
+import io.kotest.matchers.floats.plusOrMinus
+import io.kotest.matchers.shouldBe
+import kotlin.math.cos
+
+class AnomalyAggregatorTest : FunSpec({
+
+    val startMs = 1_717_000_000_000L
+
+    // One metre of latitude in degrees
+    val metreLat = 1.0 / 111_194.93
+
+    test("should fold hits within the match radius into one anomaly") {
+        val aggregator = AnomalyAggregator(AnomalyAggregator.NEVER_ROLL_UP)
+        aggregator.record(52.0, 4.0, 90f, severity = 2, timestampMs = startMs)
+        aggregator.record(52.0 + 4 * metreLat, 4.0, 92f, severity = 4, timestampMs = startMs + 60_000L)
+        aggregator.record(52.0 - 4 * metreLat, 4.0, 270f, severity = 3, timestampMs = startMs + 120_000L)
+
+        aggregator.size shouldBe 1
+        val aggregate = aggregator.takeDirty().single()
+        aggregate.hitCount shouldBe 3
+        aggregate.maxSeverity shouldBe 4
+        aggregate.meanSeverity shouldBe (3f plusOrMinus 1e-6f)
+        aggregate.latitude shouldBe (52.0 plusOrMinus 1e-9)
+        aggregate.firstSeenAt shouldBe startMs
+        aggregate.lastSeenAt shouldBe startMs + 120_000L
+        aggregate.headingCount(AnomalyAggregate.headingBucket(90f)) shouldBe 2
+        aggregate.headingCount(AnomalyAggregate.headingBucket(270f)) shouldBe 1
+    }
+
+    test("should keep separate anomalies beyond the match radius") {
+        val aggregator = AnomalyAggregator(AnomalyAggregator.NEVER_ROLL_UP, matchRadiusM = 10.0)
+        aggregator.record(52.0, 4.0, null, severity = 2, timestampMs = startMs)
+        aggregator.record(52.0 + 15 * metreLat, 4.0, null, severity = 2, timestampMs = startMs)
+
+        aggregator.size shouldBe 2
+    }
+
+    test("should match nearby hits in neighbouring cells") {
+        // Offsets of up to 7m either way span more than one 10m cell in each direction
+        for (northM in -7..7) {
+            for (eastM in -7..7) {
+                val aggregator = AnomalyAggregator(AnomalyAggregator.NEVER_ROLL_UP, matchRadiusM = 10.0)
+                aggregator.record(52.0, 4.0, null, severity = 2, timestampMs = startMs)
+                aggregator.record(
+                    52.0 + northM * metreLat,
+                    4.0 + eastM * metreLat / cos(Math.toRadians(52.0)),
+                    null, severity = 2, timestampMs = startMs + 1
+                )
+
+                aggregator.size shouldBe 1
+            }
+        }
+    }
+
+    test("should roll up repeat hits once confirmed") {
+        val aggregator = AnomalyAggregator(rollupAfterHits = 3)
+        val stored = (0 until 6).map { i ->
+            aggregator.record(52.0, 4.0, 0f, severity = 2, timestampMs = startMs + i)
+        }
+
+        stored shouldBe listOf(true, true, true, false, false, false)
+        aggregator.takeDirty().single().hitCount shouldBe 6
+    }
+
+    test("should apply a changed rollup threshold from the next hit") {
+        val aggregator = AnomalyAggregator(AnomalyAggregator.NEVER_ROLL_UP)
+        repeat(3) { i -> aggregator.record(52.0, 4.0, 0f, severity = 2, timestampMs = startMs + i) shouldBe true }
+
+        aggregator.rollupAfterHits = 2
+        aggregator.record(52.0, 4.0, 0f, severity = 2, timestampMs = startMs + 3) shouldBe false
+
+        aggregator.rollupAfterHits = AnomalyAggregator.NEVER_ROLL_UP
+        aggregator.record(52.0, 4.0, 0f, severity = 2, timestampMs = startMs + 4) shouldBe true
+        shouldThrow<IllegalArgumentException> { aggregator.rollupAfterHits = -1 }
+    }
+
+    test("should keep the raw row of a hit more severe than any before it") {
+        val aggregator = AnomalyAggregator(rollupAfterHits = 1)
+        aggregator.record(52.0, 4.0, 0f, severity = 2, timestampMs = startMs) shouldBe true
+        aggregator.record(52.0, 4.0, 0f, severity = 2, timestampMs = startMs + 1) shouldBe false
+        aggregator.record(52.0, 4.0, 0f, severity = 5, timestampMs = startMs + 2) shouldBe true
+        aggregator.record(52.0, 4.0, 0f, severity = 5, timestampMs = startMs + 3) shouldBe false
+    }
+
+    test("should hand out changed anomalies once and again after a failed write") {
+        val aggregator = AnomalyAggregator(AnomalyAggregator.NEVER_ROLL_UP)
+        aggregator.record(52.0, 4.0, null, severity = 2, timestampMs = startMs)
+
+        val dirty = aggregator.takeDirty()
+        dirty shouldHaveSize 1
+        aggregator.takeDirty().shouldBeEmpty()
+
+        aggregator.restoreDirty(dirty)
+        aggregator.takeDirty() shouldBe dirty
+    }
+
+    test("should continue ids after loaded aggregates") {
+        val aggregator = AnomalyAggregator(rollupAfterHits = 2)
+        val stored = AnomalyAggregate(
+            id = 41L, latitude = 52.0, longitude = 4.0, hitCount = 5, maxSeverity = 3, severitySum = 12,
+            firstSeenAt = startMs, lastSeenAt = startMs, headingBuckets = 0L, synced = true
+        )
+        aggregator.load(listOf(stored))
+
+        // A known anomaly is already confirmed
+        aggregator.record(52.0, 4.0, null, severity = 2, timestampMs = startMs + 1) shouldBe false
+        aggregator.record(53.0, 5.0, null, severity = 2, timestampMs = startMs + 2) shouldBe true
+
+        val dirty = aggregator.takeDirty()
+        dirty.map { it.id } shouldBe listOf(41L, 42L)
+        // The changed totals keep the anomaly's uuid and are uploaded again
+        dirty[0].uuid shouldBe stored.uuid
+        dirty[0].synced shouldBe false
+        (dirty[1].uuid != stored.uuid) shouldBe true
+    }
+
+    test("should keep raw rows for new spots once full") {
+        val aggregator = AnomalyAggregator(rollupAfterHits = 1, capacity = 1)
+        aggregator.record(52.0, 4.0, null, severity = 2, timestampMs = startMs)
+        aggregator.record(53.0, 5.0, null, severity = 2, timestampMs = startMs) shouldBe true
+        aggregator.record(53.0, 5.0, null, severity = 2, timestampMs = startMs) shouldBe true
+
+        aggregator.size shouldBe 1
+    }
+
+    test("should evict anomalies last hit before the cutoff and make room for new ones") {
+        val aggregator = AnomalyAggregator(AnomalyAggregator.NEVER_ROLL_UP, capacity = 2)
+        aggregator.record(52.0, 4.0, null, severity = 2, timestampMs = startMs)
+        aggregator.record(53.0, 5.0, null, severity = 2, timestampMs = startMs + 1_000L)
+        aggregator.takeDirty()
+        // A pending change to an evicted anomaly must not write it back
+        aggregator.record(52.0, 4.0, null, severity = 2, timestampMs = startMs + 1)
+
+        aggregator.evictOlderThan(startMs + 500L) shouldBe 1
+        aggregator.size shouldBe 1
+        aggregator.takeDirty().shouldBeEmpty()
+
+        // The evicted spot starts over as a new anomaly
+        aggregator.record(52.0, 4.0, null, severity = 2, timestampMs = startMs + 2_000L)
+        aggregator.size shouldBe 2
+        aggregator.takeDirty().single().hitCount shouldBe 1
+    }
+
+    test("should saturate heading counts") {
+        var buckets = 0L
+        repeat(300) { buckets = AnomalyAggregate.addHeading(buckets, 359f) }
+        buckets = AnomalyAggregate.addHeading(buckets, 315f)
+
+        val aggregate = AnomalyAggregate(1L, 52.0, 4.0, 301, 1, 301, startMs, startMs, buckets)
+        aggregate.headingCount(0) shouldBe 255
+        aggregate.headingCount(7) shouldBe 1
+    }
+})
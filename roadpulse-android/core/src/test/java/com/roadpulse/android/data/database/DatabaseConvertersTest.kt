@@ -0,0 +1,45 @@
+package com.roadpulse.android.data.database
+
+import io.kotest.core.spec.style.FunSpec
+import io.kotest.matchers.shouldBe
+import io.kotest.matchers.shouldNotBe
+import java.util.Arrays
+import java.util.UUID
+
+class DatabaseConvertersTest : FunSpec({
+
+    val converters = CompactIdConverters()
+
+    test("should store a UUID string in 16 bytes and read it back") {
+        val id = UUID.randomUUID().toString()
+
+        val bytes = converters.idToBytes(id)
+
+        bytes.size shouldBe CompactIds.SIZE_BYTES
+        converters.bytesToId(bytes) shouldBe id
+    }
+
+    test("should keep the byte order of the UUID so keyset comparisons stay stable") {
+        val low = CompactIds.encode("00000000-0000-0000-0000-0000000000ff")
+        val high = CompactIds.encode("00000000-0000-0000-0000-000000000100")
+
+        // SQLite compares BLOBs with memcmp
+        Arrays.compareUnsigned(low, high) shouldBe -1
+    }
+
+    test("should map non-UUID ids to a stable name-based UUID") {
+        val first = CompactIds.encode("test-session")
+
+        first.contentEquals(CompactIds.encode("test-session")) shouldBe true
+        first.contentEquals(CompactIds.encode("other-session")) shouldBe false
+        CompactIds.decode(first) shouldNotBe "test-session"
+    }
+
+    test("database UUID converters should round trip") {
+        val converter = DatabaseConverters()
+        val uuid = UUID.randomUUID()
+
+        converter.toUUID(converter.fromUUID(uuid)) shouldBe uuid
+        converter.toUUID(null) shouldBe null
+    }
+})
@@ -0,0 +1,67 @@
+package com.roadpulse.android.data.database
+
+import io.kotest.core.spec.style.FunSpec
+import io.kotest.matchers.doubles.plusOrMinus
+import io.kotest.matchers.ints.shouldBeLessThanOrEqual
+import io.kotest.matchers.shouldBe
+import kotlin.random.Random
+
+class SpatialIndexTest : FunSpec({
+
+    fun covered(ranges: List<LongRange>, latitude: Double, longitude: Double): Boolean {
+        val cell = SpatialIndex.cellOf(latitude, longitude)
+        return ranges.any { cell in it }
+    }
+
+    test("covering ranges should contain every point inside the box") {
+        val random = Random(42)
+        repeat(200) {
+            val minLatitude = random.nextDouble(-80.0, 80.0)
+            val minLongitude = random.nextDouble(-170.0, 170.0)
+            val maxLatitude = minLatitude + random.nextDouble(0.0001, 2.0)
+            val maxLongitude = minLongitude + random.nextDouble(0.0001, 2.0)
+            val ranges = SpatialIndex.coveringRanges(minLatitude, minLongitude, maxLatitude, maxLongitude)
+
+            ranges.size shouldBeLessThanOrEqual 16
+            repeat(20) {
+                val latitude = random.nextDouble(minLatitude, maxLatitude)
+                val longitude = random.nextDouble(minLongitude, maxLongitude)
+                covered(ranges, latitude, longitude) shouldBe true
+            }
+        }
+    }
+
+    test("a small box should stay within a few fine cells") {
+        val ranges = SpatialIndex.coveringRanges(52.0000, 4.0000, 52.0005, 4.0005)
+        val keys = ranges.sumOf { it.last - it.first + 1 }
+
+        (keys <= 4) shouldBe true
+        covered(ranges, 52.0002, 4.0002) shouldBe true
+        covered(ranges, 52.1, 4.0002) shouldBe false
+    }
+
+    test("a box across the antimeridian should cover both sides") {
+        val ranges = SpatialIndex.coveringRanges(-17.0, 179.9, -16.9, -179.9)
+
+        covered(ranges, -16.95, 179.95) shouldBe true
+        covered(ranges, -16.95, -179.95) shouldBe true
+        covered(ranges, -16.95, 0.0) shouldBe false
+
+        val query = SpatialIndex.boundingBoxQuery(-17.0, 179.9, -16.9, -179.9)
+        query.sql.contains("(longitude >= ? OR longitude <= ?)") shouldBe true
+        query.args.size shouldBe ranges.size * 2 + 4
+    }
+
+    test("bounds around a point should contain the whole circle") {
+        val bounds = SpatialIndex.boundsAround(52.0, 4.0, 100.0)
+        val north = 52.0 + Math.toDegrees(100.0 / SpatialIndex.EARTH_RADIUS_M)
+
+        bounds[2] shouldBe (north plusOrMinus 1e-9)
+        SpatialIndex.distanceMeters(52.0, 4.0, 52.0, bounds[3]) shouldBe (100.0 plusOrMinus 1.0)
+    }
+
+    test("distance should match a known value") {
+        // One degree of latitude
+        SpatialIndex.distanceMeters(0.0, 0.0, 1.0, 0.0) shouldBe (111_195.0 plusOrMinus 1.0)
+    }
+})
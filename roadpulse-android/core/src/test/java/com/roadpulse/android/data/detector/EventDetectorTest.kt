@@ -0,0 +1,101 @@
+package com.roadpulse.android.data.detector
+
+import com.roadpulse.android.data.model.AccelerometerData
+import com.roadpulse.android.data.model.GyroscopeData
+import com.roadpulse.android.data.model.LocationData
+import com.roadpulse.android.data.model.SensorData
+import io.kotest.core.spec.style.FunSpec
+import io.kotest.matchers.collections.shouldBeEmpty
+import io.kotest.matchers.collections.shouldHaveSize
+import io.kotest.matchers.floats.plusOrMinus
+import io.kotest.matchers.shouldBe
+
+class EventDetectorTest : FunSpec({
+
+    val location = LocationData(
+        latitude = 52.0,
+        longitude = 4.0,
+        accuracy = 5f,
+        speed = 15f,
+        bearing = 0f,
+        timestamp = 0L
+    )
+
+    // 50Hz stream of vertical acceleration values on top of gravity
+    fun stream(vararg deltas: Float, gyro: Float = 0f): List<SensorData> {
+        return deltas.mapIndexed { i, delta ->
+            SensorData(
+                timestamp = 1_000L + i * 20L,
+                accelerometer = AccelerometerData(0f, 0f, 9.81f + delta, 3),
+                gyroscope = GyroscopeData(gyro, 0f, 0f, 3),
+                location = location
+            )
+        }
+    }
+
+    fun quiet(count: Int) = FloatArray(count) { 0f }
+
+    test("should emit exactly one event per impulse with its true peak and duration") {
+        val detector = EventDetector()
+
+        val events = detector.detectEvents(
+            stream(*quiet(10), 3f, 6f, 4f, 2f, 0.5f, *quiet(10))
+        )
+
+        events shouldHaveSize 1
+        val event = events.first()
+        event.peakAcceleration shouldBe (6f plusOrMinus 0.01f)
+        event.timestamp shouldBe 1_000L + 11 * 20L
+        // Opened after sample 9, closed on sample 14 (below the release threshold)
+        event.duration shouldBe 100
+        (event.impulseArea > 0.2f) shouldBe true
+    }
+
+    test("should track an impulse that spans two batches") {
+        val detector = EventDetector()
+        val samples = stream(*quiet(10), 3f, 6f, 4f, 2f, 0.5f, *quiet(5))
+
+        detector.detectEvents(samples.subList(0, 12)).shouldBeEmpty()
+        detector.detectEvents(samples.subList(12, samples.size)) shouldHaveSize 1
+    }
+
+    test("should ignore impulses while the device is handled") {
+        val detector = EventDetector()
+
+        detector.detectEvents(stream(*quiet(10), 3f, 6f, 4f, 0.5f, *quiet(5), gyro = 2.5f)).shouldBeEmpty()
+    }
+
+    test("should extract candidate features only for the completed impulse") {
+        val detector = EventDetector()
+
+        val event = detector.detectEvents(
+            stream(*quiet(10), 3f, 6f, 4f, 2f, 0.5f, *quiet(10))
+        ).single()
+
+        val features = event.features!!
+        // Steepest steps are 0 -> 3 and 3 -> 6 m/s² over 20ms
+        features.jerkPeak shouldBe (150f plusOrMinus 1f)
+        (features.dominantFrequencyHz > 0f) shouldBe true
+        features.pitchRatePeak shouldBe 0f
+    }
+
+    test("feature extractor should find the dominant frequency of a windowed tone") {
+        val window = ImpulseWindow(64)
+        repeat(50) { i ->
+            // 5Hz tone sampled at 50Hz
+            window.add(i * 20L, kotlin.math.sin(2.0 * Math.PI * 5.0 * i / 50.0).toFloat(), 0.1f, -0.3f)
+        }
+
+        val features = ImpulseFeatureExtractor.extract(window, 0L, window.sequence - 1)
+
+        features.dominantFrequencyHz shouldBe (5f plusOrMinus 0.5f)
+        features.highFrequencyEnergyRatio shouldBe (0f plusOrMinus 0.05f)
+        features.rollRatePeak shouldBe (0.3f plusOrMinus 1e-4f)
+    }
+
+    test("should not fire on a sustained offset") {
+        val detector = EventDetector()
+
+        detector.detectEvents(stream(*quiet(10), *FloatArray(60) { 5f })).shouldBeEmpty()
+    }
+})
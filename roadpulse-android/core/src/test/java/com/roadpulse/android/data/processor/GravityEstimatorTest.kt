@@ -0,0 +1,61 @@
+package com.roadpulse.android.data.processor
+
+import io.kotest.core.spec.style.FunSpec
+import io.kotest.matchers.floats.plusOrMinus
+import io.kotest.matchers.shouldBe
+import kotlin.math.cos
+import kotlin.math.sin
+
+class GravityEstimatorTest : FunSpec({
+
+    val g = GravityEstimator.STANDARD_GRAVITY
+
+    test("should recover vertical acceleration for an upright dashboard mount") {
+        val estimator = GravityEstimator()
+        var t = 0L
+        repeat(100) {
+            estimator.update(0f, g, 0f, 0f, 0f, 0f, t)
+            t += 20
+        }
+
+        estimator.isSettled() shouldBe true
+        // A 5 m/s² upward jolt shows up on the y axis for this mount
+        estimator.verticalAcceleration(0f, g + 5f, 0f) shouldBe (5f plusOrMinus 0.01f)
+        // Forward acceleration along z is not vertical
+        estimator.verticalAcceleration(0f, g, 3f) shouldBe (0f plusOrMinus 0.5f)
+    }
+
+    test("should ignore impacts when blending the accelerometer") {
+        val estimator = GravityEstimator()
+        var t = 0L
+        repeat(100) {
+            estimator.update(0f, 0f, g, 0f, 0f, 0f, t)
+            t += 20
+        }
+        repeat(3) {
+            estimator.update(4f, 0f, g + 8f, 0f, 0f, 0f, t)
+            t += 20
+        }
+
+        estimator.gravityX shouldBe (0f plusOrMinus 1e-3f)
+        estimator.gravityZ shouldBe (g plusOrMinus 1e-3f)
+    }
+
+    test("should follow a rotation using the gyroscope") {
+        val estimator = GravityEstimator(timeConstantSeconds = 1000f) // Effectively gyro only
+        val rate = 0.5f // rad/s around the x axis
+        val dtMs = 10L
+        var t = 0L
+        estimator.update(0f, 0f, g, 0f, 0f, 0f, t)
+
+        // Rotate for one second
+        repeat(100) { i ->
+            t += dtMs
+            val angle = rate * (i + 1) * dtMs / 1000f
+            estimator.update(0f, g * sin(angle), g * cos(angle), rate, 0f, 0f, t)
+        }
+
+        estimator.gravityY shouldBe (g * sin(0.5f) plusOrMinus 0.1f)
+        estimator.gravityZ shouldBe (g * cos(0.5f) plusOrMinus 0.1f)
+    }
+})
@@ -4,13 +4,16 @@ import com.roadpulse.android.data.model.AccelerometerData
 import com.roadpulse.android.data.model.GyroscopeData
 import com.roadpulse.android.data.model.LocationData
 import com.roadpulse.android.data.model.SensorData
-import com.roadpulse.android.data.error.ErrorHandler
+import com.roadpulse.android.data.error.ErrorReporter
 import io.kotest.core.spec.style.StringSpec
+import io.kotest.matchers.floats.plusOrMinus
 import io.kotest.matchers.shouldBe
 import io.kotest.property.Arb
 import io.kotest.property.arbitrary.*
 import io.kotest.property.checkAll
 import io.mockk.mockk
+import kotlin.math.cos
+import kotlin.math.sin
 
 /**
  * Property-based tests for SensorDataProcessor.
@@ -30,8 +33,8 @@ class SensorDataProcessorTest : StringSpec({
             Arb.sensorDataForMotionConsensus() // Custom generator for motion consensus scenarios
         ) { timestamp, (accelData, gyroData, expectedConsensus) ->
             
-            val mockErrorHandler = mockk<ErrorHandler>(relaxed = true)
-            val processor = SensorDataProcessor(mockErrorHandler)
+            val mockErrorReporter = mockk<ErrorReporter>(relaxed = true)
+            val processor = SensorDataProcessor(mockErrorReporter)
             
             // Create sensor data with the generated accelerometer and gyroscope data
             val sensorData = SensorData(
@@ -66,6 +69,32 @@ class SensorDataProcessorTest : StringSpec({
             }
         }
     }
+
+    "Calibration on a tilted device should only remove the magnitude error along gravity" {
+        val processor = SensorDataProcessor(mockk<ErrorReporter>(relaxed = true))
+        // Mounted 30° nose up, with the accelerometer reading 2% high
+        val tilt = Math.toRadians(30.0)
+        val scale = 1.02f
+        val gravityY = (9.81 * sin(tilt)).toFloat()
+        val gravityZ = (9.81 * cos(tilt)).toFloat()
+        repeat(100) { i ->
+            processor.addCalibrationSample(
+                SensorData(
+                    timestamp = 1000L + i,
+                    accelerometer = AccelerometerData(0f, gravityY * scale, gravityZ * scale, accuracy = 3),
+                    gyroscope = GyroscopeData(0f, 0f, 0f, accuracy = 3),
+                    location = null
+                )
+            )
+        }
+
+        processor.calibrateSensors() shouldBe true
+
+        val (offsetX, offsetY, offsetZ) = processor.getCalibrationStatus().accelOffsets
+        offsetX shouldBe (0f plusOrMinus 1e-4f)
+        offsetY shouldBe (gravityY * (scale - 1f) plusOrMinus 1e-3f)
+        offsetZ shouldBe (gravityZ * (scale - 1f) plusOrMinus 1e-3f)
+    }
 })
 
 /**
@@ -0,0 +1,57 @@
+package com.roadpulse.android.data.processor
+
+import io.kotest.core.spec.style.FunSpec
+import io.kotest.matchers.floats.plusOrMinus
+import io.kotest.matchers.shouldBe
+import io.kotest.property.Arb
+import io.kotest.property.arbitrary.float
+import io.kotest.property.arbitrary.list
+import io.kotest.property.checkAll
+import kotlin.math.sin
+
+class StreamingFiltersTest : FunSpec({
+
+    test("moving average should match the windowed mean") {
+        checkAll(Arb.list(Arb.float(-50f, 50f), 1..200)) { values ->
+            val average = MovingAverage(5)
+            values.forEachIndexed { i, value ->
+                val expected = values.subList(maxOf(0, i - 4), i + 1).average().toFloat()
+                average.filter(value) shouldBe (expected plusOrMinus 1e-3f)
+            }
+        }
+    }
+
+    test("running stats should match the two-pass mean and variance") {
+        checkAll(Arb.list(Arb.float(-20f, 20f), 2..200)) { values ->
+            val stats = RunningStats()
+            values.forEach { stats.add(it) }
+
+            val mean = values.average()
+            val variance = values.map { (it - mean) * (it - mean) }.average()
+            stats.mean() shouldBe (mean.toFloat() plusOrMinus 1e-3f)
+            stats.variance() shouldBe (variance.toFloat() plusOrMinus 1e-2f)
+        }
+    }
+
+    test("low-pass filters should pass DC and attenuate high frequencies") {
+        val filters = listOf(
+            ExponentialMovingAverage.forCutoff(cutoffHz = 2f, sampleRateHz = 100f),
+            BiquadLowPass(cutoffHz = 2f, sampleRateHz = 100f)
+        )
+
+        filters.forEach { filter ->
+            var output = 0f
+            repeat(500) { output = filter.filter(9.81f) }
+            output shouldBe (9.81f plusOrMinus 1e-3f)
+
+            filter.reset()
+            var peak = 0f
+            repeat(500) { i ->
+                // 40Hz tone sampled at 100Hz
+                val y = filter.filter(sin(2.0 * Math.PI * 40.0 * i / 100.0).toFloat())
+                if (i > 100) peak = maxOf(peak, kotlin.math.abs(y))
+            }
+            (peak < 0.2f) shouldBe true
+        }
+    }
+})
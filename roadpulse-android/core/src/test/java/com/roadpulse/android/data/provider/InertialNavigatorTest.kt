@@ -0,0 +1,142 @@
+package com.roadpulse.android.data.provider
+
+import com.roadpulse.android.data.model.LocationData
+import io.kotest.core.spec.style.FunSpec
+import io.kotest.matchers.doubles.plusOrMinus
+import io.kotest.matchers.doubles.shouldBeGreaterThan
+import io.kotest.matchers.doubles.shouldBeLessThan
+import io.kotest.matchers.floats.plusOrMinus
+import io.kotest.matchers.floats.shouldBeGreaterThan
+import io.kotest.matchers.floats.shouldBeLessThan
+import io.kotest.matchers.shouldBe
+import kotlin.math.PI
+import kotlin.math.cos
+
+class InertialNavigatorTest : FunSpec({
+
+    val startNs = 1_000_000_000_000L
+    val startMs = 1_717_000_000_000L
+    val samplePeriodNs = 20_000_000L // 50Hz
+    val earthRadiusM = 6_371_000.0
+
+    fun fix(latitude: Double, longitude: Double, speed: Float, bearing: Float, atNs: Long = startNs) =
+        LocationData(latitude, longitude, 5f, speed, bearing, startMs + (atNs - startNs) / 1_000_000L)
+
+    fun northOf(location: LocationData) = Math.toRadians(location.latitude - 52.0) * earthRadiusM
+    fun eastOf(location: LocationData) = Math.toRadians(location.longitude - 4.0) * earthRadiusM * cos(Math.toRadians(52.0))
+
+    fun InertialNavigator.drive(fromNs: Long, untilNs: Long, yawRate: Float = 0f, forwardAccel: Float = 0f) {
+        var timestampNs = fromNs
+        while (timestampNs <= untilNs) {
+            // Device lying flat with its top towards the front of the vehicle
+            update(timestampNs, yawRate, 0f, forwardAccel, 0f)
+            timestampNs += samplePeriodNs
+        }
+    }
+
+    test("should have no position before the first fix") {
+        val navigator = InertialNavigator(LocationHistory())
+        navigator.drive(startNs, startNs + 1_000_000_000L)
+
+        navigator.locationAt(startNs + 500_000_000L) shouldBe null
+    }
+
+    test("should carry the position forward between fixes") {
+        val history = LocationHistory()
+        val navigator = InertialNavigator(history)
+        history.add(startNs, fix(52.0, 4.0, speed = 20f, bearing = 0f))
+
+        navigator.drive(startNs, startNs + 2_000_000_000L)
+        val location = navigator.locationAt(startNs + 2_000_000_000L)!!
+
+        northOf(location) shouldBe (40.0 plusOrMinus 0.01)
+        eastOf(location) shouldBe (0.0 plusOrMinus 0.01)
+        location.speed shouldBe (20f plusOrMinus 1e-3f)
+        location.timestamp shouldBe startMs + 2_000L
+        location.accuracy shouldBeGreaterThan 5f
+        location.accuracy shouldBeLessThan 20f
+    }
+
+    test("should follow a curve with the gyroscope") {
+        val history = LocationHistory()
+        val navigator = InertialNavigator(history)
+        history.add(startNs, fix(52.0, 4.0, speed = 10f, bearing = 0f))
+
+        // A right turn through 90° in 10 seconds at 10 m/s has a radius of 200/π metres
+        navigator.drive(startNs, startNs + 10_000_000_000L, yawRate = (-PI / 20).toFloat())
+        val location = navigator.locationAt(startNs + 10_000_000_000L)!!
+
+        val radius = 200 / PI
+        northOf(location) shouldBe (radius plusOrMinus 1.0)
+        eastOf(location) shouldBe (radius plusOrMinus 1.0)
+        location.bearing shouldBe (90f plusOrMinus 0.5f)
+    }
+
+    test("should move towards a new fix") {
+        val history = LocationHistory()
+        val navigator = InertialNavigator(history)
+        history.add(startNs, fix(52.0, 4.0, speed = 20f, bearing = 0f))
+        navigator.drive(startNs, startNs + 980_000_000L)
+
+        // The vehicle was faster than the last fix said
+        val fixNs = startNs + 1_000_000_000L
+        history.add(fixNs, fix(52.0 + Math.toDegrees(30.0 / earthRadiusM), 4.0, speed = 30f, bearing = 0f, atNs = fixNs))
+        navigator.drive(fixNs, fixNs)
+        val location = navigator.locationAt(fixNs)!!
+
+        // Dead reckoning alone says 20m and 20 m/s
+        northOf(location) shouldBeGreaterThan 22.0
+        northOf(location) shouldBeLessThan 30.0
+        location.speed shouldBeGreaterThan 22f
+        location.speed shouldBeLessThan 30f
+        location.timestamp shouldBe startMs + 1_000L
+    }
+
+    test("should slow down between fixes when braking") {
+        fun brakingRun(accelAfterLearning: Float): LocationData {
+            val history = LocationHistory()
+            val navigator = InertialNavigator(history)
+            history.add(startNs, fix(52.0, 4.0, speed = 20f, bearing = 0f))
+
+            // Braking at 2 m/s² between two fixes shows which device axis points forward
+            navigator.drive(startNs, startNs + 2_000_000_000L, forwardAccel = -2f)
+            val fixNs = startNs + 2_000_000_000L
+            history.add(fixNs, fix(52.0 + Math.toDegrees(36.0 / earthRadiusM), 4.0, speed = 16f, bearing = 0f, atNs = fixNs))
+
+            navigator.drive(fixNs + samplePeriodNs, startNs + 4_000_000_000L, forwardAccel = accelAfterLearning)
+            return navigator.locationAt(startNs + 4_000_000_000L)!!
+        }
+
+        val braking = brakingRun(accelAfterLearning = -2f)
+        val coasting = brakingRun(accelAfterLearning = 0f)
+
+        // Two more seconds at 2 m/s² lose 4 m/s and 4 m on holding the speed
+        braking.speed shouldBe ((coasting.speed - 4f) plusOrMinus 0.1f)
+        (northOf(coasting) - northOf(braking)) shouldBe (4.0 plusOrMinus 0.2)
+    }
+
+    test("should fall back to the fixes after coasting too long") {
+        val history = LocationHistory()
+        val navigator = InertialNavigator(history, capacity = 64, maxCoastNs = 20_000_000_000L)
+        history.add(startNs, fix(52.0, 4.0, speed = 20f, bearing = 0f))
+
+        var timestampNs = startNs
+        while (timestampNs <= startNs + 22_000_000_000L) {
+            navigator.update(timestampNs, 0f)
+            timestampNs += 500_000_000L
+        }
+
+        navigator.locationAt(startNs + 22_000_000_000L) shouldBe history.locationAt(startNs + 22_000_000_000L)
+    }
+
+    test("should start a new track after a reset") {
+        val history = LocationHistory()
+        val navigator = InertialNavigator(history)
+        history.add(startNs, fix(52.0, 4.0, speed = 20f, bearing = 0f))
+        navigator.drive(startNs, startNs + 1_000_000_000L)
+
+        navigator.reset()
+
+        navigator.locationAt(startNs + 500_000_000L) shouldBe history.locationAt(startNs + 500_000_000L)
+    }
+})
@@ -0,0 +1,89 @@
+package com.roadpulse.android.data.provider
+
+import com.roadpulse.android.data.model.LocationData
+import io.kotest.core.spec.style.FunSpec
+import io.kotest.matchers.doubles.plusOrMinus
+import io.kotest.matchers.floats.plusOrMinus
+import io.kotest.matchers.shouldBe
+import io.kotest.matchers.shouldNotBe
+
+class LocationHistoryTest : FunSpec({
+
+    val startNs = 1_000_000_000_000L
+    val startMs = 1_717_000_000_000L
+    val secondNs = 1_000_000_000L
+
+    // One metre of latitude in degrees
+    val metreLat = 1.0 / 111_194.93
+
+    fun fix(latitude: Double, longitude: Double, speed: Float = 28f, bearing: Float = 0f, accuracy: Float = 5f, atS: Int = 0) =
+        LocationData(latitude, longitude, accuracy, speed, bearing, startMs + atS * 1_000L)
+
+    test("should return null before the first fix") {
+        LocationHistory().locationAt(startNs) shouldBe null
+    }
+
+    test("should interpolate between fixes") {
+        val history = LocationHistory()
+        history.add(startNs, fix(52.0, 4.0, speed = 20f, bearing = 350f, atS = 0))
+        history.add(startNs + 5 * secondNs, fix(52.001, 4.002, speed = 30f, bearing = 10f, accuracy = 8f, atS = 5))
+
+        val location = history.locationAt(startNs + 2 * secondNs)!!
+
+        location.latitude shouldBe (52.0004 plusOrMinus 1e-9)
+        location.longitude shouldBe (4.0008 plusOrMinus 1e-9)
+        location.speed shouldBe (24f plusOrMinus 1e-4f)
+        location.bearing shouldBe (358f plusOrMinus 1e-3f)
+        location.accuracy shouldBe 8f
+        location.timestamp shouldBe startMs + 2_000L
+    }
+
+    test("should dead-reckon ahead of the newest fix") {
+        val history = LocationHistory()
+        history.add(startNs, fix(52.0, 4.0, speed = 28f, bearing = 0f))
+
+        // 100 km/h due north for 5 seconds is 140m
+        val location = history.locationAt(startNs + 5 * secondNs)!!
+
+        location.latitude shouldBe (52.0 + 140 * metreLat plusOrMinus 1e-7)
+        location.longitude shouldBe (4.0 plusOrMinus 1e-9)
+        location.accuracy shouldBe (5f + 140f * LocationHistory.DEAD_RECKONING_DRIFT plusOrMinus 1e-3f)
+        location.timestamp shouldBe startMs + 5_000L
+    }
+
+    test("should return the newest fix beyond the dead reckoning horizon") {
+        val history = LocationHistory(capacity = 8, maxDeadReckoningNs = 15 * secondNs)
+        history.add(startNs, fix(52.0, 4.0))
+
+        history.locationAt(startNs + 16 * secondNs) shouldBe fix(52.0, 4.0)
+    }
+
+    test("should not interpolate across a gap in the fixes") {
+        val history = LocationHistory(capacity = 8, maxInterpolationGapNs = 60 * secondNs)
+        history.add(startNs, fix(52.0, 4.0, speed = 0f))
+        history.add(startNs + 300 * secondNs, fix(52.1, 4.1, atS = 300))
+
+        history.locationAt(startNs + 10 * secondNs) shouldBe fix(52.0, 4.0, speed = 0f)
+        history.locationAt(startNs + 290 * secondNs) shouldBe fix(52.1, 4.1, atS = 300)
+    }
+
+    test("should keep the newest fixes when the ring wraps") {
+        val history = LocationHistory(capacity = 4)
+        for (i in 0 until 10) {
+            history.add(startNs + i * secondNs, fix(52.0 + i * 0.001, 4.0, atS = i))
+        }
+
+        history.size shouldBe 4
+        history.locationAt(startNs) shouldBe fix(52.0 + 6 * 0.001, 4.0, atS = 6)
+        history.locationAt(startNs + 7 * secondNs + secondNs / 2)!!.latitude shouldBe (52.0075 plusOrMinus 1e-9)
+    }
+
+    test("should ignore fixes older than the newest") {
+        val history = LocationHistory()
+        history.add(startNs + secondNs, fix(52.0, 4.0, speed = 0f))
+        history.add(startNs, fix(53.0, 5.0, speed = 0f))
+
+        history.size shouldBe 1
+        history.locationAt(startNs + 2 * secondNs) shouldNotBe null
+    }
+})
@@ -0,0 +1,114 @@
+package com.roadpulse.android.data.replay
+
+import com.roadpulse.android.data.error.ErrorReporter
+import com.roadpulse.android.data.model.LocationData
+import com.roadpulse.android.data.trace.SensorTraceReader
+import com.roadpulse.android.data.trace.SensorTraceRecorder
+import io.kotest.core.spec.style.FunSpec
+import io.kotest.matchers.shouldBe
+import io.mockk.mockk
+import java.io.StringReader
+import java.nio.file.Files
+
+class TraceReplayEngineTest : FunSpec({
+
+    val samplePeriodNs = 40_000_000L // 25Hz
+    val startNs = 1_000_000_000L
+    val wallClockOffsetNs = 1_716_999_999_000_000_000L // startNs is 1_717_000_000_000 ms
+
+    fun wallClockMs(timestampNs: Long) = (timestampNs + wallClockOffsetNs) / 1_000_000L
+
+    fun engine() = TraceReplayEngine.create(mockk<ErrorReporter>(relaxed = true))
+
+    /**
+     * Phone lying flat in a car at 54 km/h with a good fix. Every [bumpEverySamples] samples
+     * the road adds a 6 m/s² impulse lasting 4 samples (160ms).
+     */
+    fun drive(samples: Int, bumpEverySamples: Int = Int.MAX_VALUE) = TraceSource { visitor ->
+        visitor.onSegmentStart(wallClockOffsetNs)
+        visitor.onLocation(startNs, 52.3702157, 4.8951679, 5f, 15f, 90f)
+        for (i in 0 until samples) {
+            val bump = i >= bumpEverySamples && i % bumpEverySamples < 4
+            visitor.onSample(startNs + i * samplePeriodNs, 0f, 0f, if (bump) 15.81f else 9.81f, 3, 0f, 0f, 0f, 3)
+        }
+    }
+
+    fun bumpTimes(samples: Int, bumpEverySamples: Int): List<Long> {
+        return (bumpEverySamples until samples step bumpEverySamples).map { wallClockMs(startNs + it * samplePeriodNs) }
+    }
+
+    test("should find no events on a smooth road") {
+        val result = engine().replay(drive(samples = 3_000))
+
+        result.events shouldBe emptyList()
+        result.samples shouldBe 3_000L
+        result.traceDurationMs shouldBe 2_999 * 40L
+    }
+
+    test("should find one event per impulse at the time of its peak") {
+        // 10 minutes with a bump every 30 seconds
+        val result = engine().replay(drive(samples = 15_000, bumpEverySamples = 750))
+
+        result.events.map { it.createdAt } shouldBe bumpTimes(15_000, 750)
+        result.events.forEach { event ->
+            event.impulseDurationMs shouldBe 160
+            event.latitude shouldBe 52.3702157
+        }
+        result.events.map { it.sessionId }.distinct().size shouldBe 1
+    }
+
+    test("should replay recorded binary segments like the live stream") {
+        val directory = Files.createTempDirectory("replay").toFile().apply { deleteOnExit() }
+        val recorder = SensorTraceRecorder(directory, segmentBytes = 64 + 40 * 4_000, maxSegments = 100)
+        val live = drive(samples = 15_000, bumpEverySamples = 750)
+
+        // Record what the service would write during the drive
+        recorder.start(wallClockOffsetNs)
+        live.read(object : SensorTraceReader.TraceVisitor {
+            var location: LocationData? = null
+
+            override fun onSample(
+                timestampNs: Long,
+                accelX: Float, accelY: Float, accelZ: Float, accelAccuracy: Int,
+                gyroX: Float, gyroY: Float, gyroZ: Float, gyroAccuracy: Int
+            ) {
+                recorder.recordLocation(timestampNs, location)
+                recorder.recordSample(timestampNs, accelX, accelY, accelZ, accelAccuracy, gyroX, gyroY, gyroZ, gyroAccuracy)
+            }
+
+            override fun onLocation(
+                timestampNs: Long,
+                latitude: Double, longitude: Double,
+                accuracyM: Float, speedMs: Float, bearingDeg: Float
+            ) {
+                location = LocationData(latitude, longitude, accuracyM, speedMs, bearingDeg, wallClockMs(timestampNs), timestampNs)
+            }
+        })
+        recorder.close()
+
+        val segments = directory.listFiles { file -> file.isFile }!!.sortedBy { it.name }
+        segments.size shouldBe 4
+
+        val replayed = engine().replay(BinaryTraceSource(segments))
+        val expected = engine().replay(live)
+        replayed.samples shouldBe expected.samples
+        replayed.events.map { it.createdAt } shouldBe expected.events.map { it.createdAt }
+        replayed.events.map { it.peakAccelMs2 } shouldBe expected.events.map { it.peakAccelMs2 }
+    }
+
+    test("should replay CSV traces") {
+        val csv = buildString {
+            appendLine("timestamp_ns,accel_x,accel_y,accel_z,gyro_x,gyro_y,gyro_z,latitude,longitude,accuracy_m,speed_ms,bearing_deg")
+            appendLine("# 3 seconds at 25Hz with one bump at 2 seconds")
+            for (i in 0 until 75) {
+                val z = if (i in 50..53) "15.81" else "9.81"
+                appendLine("${startNs + i * samplePeriodNs},0,0,$z,0,0,0,52.3702157,4.8951679,5,15,90")
+            }
+        }
+
+        val result = engine().replay(CsvTraceSource({ StringReader(csv) }, wallClockOffsetNs))
+
+        result.samples shouldBe 75L
+        result.events.map { it.createdAt } shouldBe listOf(wallClockMs(startNs + 50 * samplePeriodNs))
+    }
+})
@@ -0,0 +1,102 @@
+package com.roadpulse.android.data.sampling
+
+import com.roadpulse.android.data.processor.MotionState
+import io.kotest.core.spec.style.FunSpec
+import io.kotest.matchers.floats.shouldBeBetween
+import io.kotest.matchers.shouldBe
+
+class AdaptiveSamplingControllerTest : FunSpec({
+
+    val startMs = 1_717_000_000_000L
+    val afterWarmUpMs = startMs + 2 * 60_000L
+
+    fun controller() = AdaptiveSamplingController(minRateHz = 10f, maxRateHz = 25f)
+
+    fun driving(
+        speedKmh: Float? = 120f,
+        batteryLevel: Int = 80,
+        isCharging: Boolean = false,
+        thermalStatus: Int = 0,
+        motionState: MotionState = MotionState.MOVING
+    ) = AdaptiveSamplingController.Signals(motionState, speedKmh, batteryLevel, isCharging, thermalStatus)
+
+    // Runs the controller until the motorway rate has been applied
+    fun AdaptiveSamplingController.settleOnMotorway(): Long {
+        update(driving(), startMs)
+        update(driving(), afterWarmUpMs)
+        update(driving(), afterWarmUpMs + 30_000L) shouldBe 18f
+        return afterWarmUpMs + 30_000L
+    }
+
+    test("should sample at the full rate until the road has been observed") {
+        val controller = controller()
+        controller.update(driving(), startMs) shouldBe null
+        controller.targetRateHz(driving(), startMs + 60_000L) shouldBe 25f
+    }
+
+    test("a smooth motorway should run between 10 and 20Hz") {
+        val controller = controller()
+        controller.update(driving(), startMs)
+
+        controller.targetRateHz(driving(speedKmh = 120f), afterWarmUpMs).shouldBeBetween(10f, 20f, 0f)
+        controller.targetRateHz(driving(speedKmh = 90f), afterWarmUpMs).shouldBeBetween(10f, 20f, 0f)
+    }
+
+    test("a rough urban road should get the full rate") {
+        val controller = controller()
+        controller.update(driving(speedKmh = 30f), startMs)
+        for (i in 1..8) controller.recordHit(afterWarmUpMs - i * 10_000L)
+
+        controller.hitsPerMinute(afterWarmUpMs) shouldBe 4f
+        controller.targetRateHz(driving(speedKmh = 30f), afterWarmUpMs) shouldBe 25f
+    }
+
+    test("a stationary device should get the minimum rate, even when charging") {
+        val controller = controller()
+        val stationary = driving(speedKmh = 0f, isCharging = true, motionState = MotionState.STATIONARY)
+        controller.targetRateHz(stationary, startMs) shouldBe 10f
+    }
+
+    test("should lower the rate only after the target has held for the down dwell") {
+        val controller = controller()
+        controller.update(driving(), startMs) shouldBe null
+
+        controller.update(driving(), afterWarmUpMs) shouldBe null
+        controller.update(driving(), afterWarmUpMs + 29_000L) shouldBe null
+        controller.update(driving(), afterWarmUpMs + 30_000L) shouldBe 18f
+        controller.currentRateHz shouldBe 18f
+    }
+
+    test("should ignore changes inside the deadband") {
+        val controller = controller()
+        val settledMs = controller.settleOnMotorway()
+
+        // Slowing to 90 km/h asks for 16Hz, within 20% of the current 18Hz
+        controller.targetRateHz(driving(speedKmh = 90f), settledMs) shouldBe 16f
+        controller.update(driving(speedKmh = 90f), settledMs + 60_000L) shouldBe null
+        controller.update(driving(speedKmh = 90f), settledMs + 120_000L) shouldBe null
+    }
+
+    test("should raise the rate quickly when the road gets rough") {
+        val controller = controller()
+        val settledMs = controller.settleOnMotorway()
+        for (i in 0 until 8) controller.recordHit(settledMs + i * 1_000L)
+
+        controller.update(driving(), settledMs + 8_000L) shouldBe null
+        controller.update(driving(), settledMs + 10_000L) shouldBe 25f
+    }
+
+    test("should drop below a thermal cap at once") {
+        val controller = controller()
+        controller.update(driving(), startMs)
+
+        controller.update(driving(thermalStatus = AdaptiveSamplingController.THERMAL_STATUS_SEVERE), startMs + 5_000L) shouldBe 10f
+    }
+
+    test("low battery should cap the rate unless charging") {
+        val controller = controller()
+        controller.capHz(driving(batteryLevel = 15)) shouldBe 10f
+        controller.capHz(driving(batteryLevel = 32)) shouldBe 10f + 15f * (17f / 35f)
+        controller.capHz(driving(batteryLevel = 15, isCharging = true)) shouldBe 25f
+    }
+})
@@ -0,0 +1,63 @@
+package com.roadpulse.android.data.sampling
+
+import com.roadpulse.android.data.processor.MotionState
+import com.roadpulse.android.data.sampling.LocationUpdatePolicy.Mode
+import io.kotest.core.spec.style.FunSpec
+import io.kotest.matchers.shouldBe
+
+class LocationUpdatePolicyTest : FunSpec({
+
+    val startMs = 1_717_000_000_000L
+
+    test("should pick the mode from motion, speed and detector hits") {
+        val policy = LocationUpdatePolicy()
+
+        policy.targetMode(MotionState.STATIONARY, speedKmh = null, hitsPerMinute = 3f) shouldBe Mode.PARKED
+        policy.targetMode(MotionState.MOVING, speedKmh = 30f, hitsPerMinute = 2f) shouldBe Mode.DETECTING
+        policy.targetMode(MotionState.MOVING, speedKmh = 110f, hitsPerMinute = 0.5f) shouldBe Mode.CRUISING
+        policy.targetMode(MotionState.MOVING, speedKmh = 30f, hitsPerMinute = 0f) shouldBe Mode.URBAN
+        policy.targetMode(MotionState.MOVING, speedKmh = null, hitsPerMinute = 0f) shouldBe Mode.URBAN
+    }
+
+    test("should only batch fixes while cruising") {
+        Mode.values().filter { it.maxUpdateDelayMs > it.intervalMs } shouldBe listOf(Mode.CRUISING)
+    }
+
+    test("should not hold a batch longer than the position can be dead-reckoned") {
+        Mode.values().all { it.maxUpdateDelayMs <= 15_000L } shouldBe true // LocationHistory dead-reckons 15 seconds
+    }
+
+    test("should raise the mode at once") {
+        val policy = LocationUpdatePolicy()
+
+        policy.update(MotionState.MOVING, speedKmh = 30f, hitsPerMinute = 1.5f, nowMs = startMs) shouldBe Mode.DETECTING
+        policy.currentMode shouldBe Mode.DETECTING
+    }
+
+    test("should wait before relaxing the mode") {
+        val policy = LocationUpdatePolicy(relaxDwellMs = 30_000L)
+
+        policy.update(MotionState.MOVING, speedKmh = 110f, hitsPerMinute = 0f, nowMs = startMs) shouldBe null
+        policy.update(MotionState.MOVING, speedKmh = 110f, hitsPerMinute = 0f, nowMs = startMs + 29_000L) shouldBe null
+        policy.update(MotionState.MOVING, speedKmh = 110f, hitsPerMinute = 0f, nowMs = startMs + 30_000L) shouldBe Mode.CRUISING
+    }
+
+    test("should not relax after a short stop") {
+        val policy = LocationUpdatePolicy(relaxDwellMs = 30_000L)
+
+        policy.update(MotionState.STATIONARY, speedKmh = 0f, hitsPerMinute = 0f, nowMs = startMs) shouldBe null
+        policy.update(MotionState.STATIONARY, speedKmh = 0f, hitsPerMinute = 0f, nowMs = startMs + 20_000L) shouldBe null
+        policy.update(MotionState.MOVING, speedKmh = 20f, hitsPerMinute = 0f, nowMs = startMs + 25_000L) shouldBe null
+        policy.update(MotionState.STATIONARY, speedKmh = 0f, hitsPerMinute = 0f, nowMs = startMs + 40_000L) shouldBe null
+        policy.currentMode shouldBe Mode.URBAN
+    }
+
+    test("should start a new session in urban mode") {
+        val policy = LocationUpdatePolicy()
+        policy.update(MotionState.MOVING, speedKmh = 30f, hitsPerMinute = 2f, nowMs = startMs)
+
+        policy.reset()
+
+        policy.currentMode shouldBe Mode.URBAN
+    }
+})
@@ -1,5 +1,6 @@
 package com.roadpulse.android.data.session
 
+import com.roadpulse.android.data.time.ReplayClock
 import io.kotest.core.spec.style.FunSpec
 import io.kotest.matchers.shouldBe
 import io.kotest.matchers.shouldNotBe
@@ -90,4 +91,17 @@ class SessionManagerTest : FunSpec({
         sessionManager.getTimeSinceLastActivity().shouldBeNull()
         sessionManager.hasActiveSession() shouldBe false
     }
-})
\ No newline at end of file
+    
+    test("should expire sessions on the injected clock") {
+        val clock = ReplayClock(startMillis = 1_000_000L)
+        val sessionManager = SessionManager(testDispatcher, clock)
+        
+        val sessionId = sessionManager.startSession()
+        clock.advanceTo(1_000_000L + 4 * 60 * 1000L)
+        sessionManager.getCurrentSessionId() shouldBe sessionId
+        sessionManager.getTimeSinceLastActivity() shouldBe 4 * 60 * 1000L
+        
+        clock.advanceTo(1_000_000L + 5 * 60 * 1000L)
+        sessionManager.hasActiveSession() shouldBe false
+    }
+})
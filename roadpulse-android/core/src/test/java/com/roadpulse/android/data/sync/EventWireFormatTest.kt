@@ -0,0 +1,226 @@
+package com.roadpulse.android.data.sync
+
+import com.roadpulse.android.data.model.AnomalyAggregate
+import com.roadpulse.android.data.model.RoadAnomalyEvent
+import io.kotest.assertions.throwables.shouldThrow
+import io.kotest.core.spec.style.FunSpec
+import io.kotest.matchers.doubles.plusOrMinus
+import io.kotest.matchers.floats.plusOrMinus
+import io.kotest.matchers.shouldBe
+import kotlinx.serialization.json.buildJsonObject
+import kotlinx.serialization.json.put
+import java.io.ByteArrayOutputStream
+import java.util.UUID
+import java.util.zip.GZIPOutputStream
+import kotlin.random.Random
+
+class EventWireFormatTest : FunSpec({
+
+    fun event(
+        id: String,
+        createdAt: Long,
+        latitude: Double,
+        longitude: Double,
+        headingDeg: Float? = 90f,
+        deviceModel: String = "Pixel 8",
+        sessionId: String = "7d1e4c1a-2b3c-4d5e-8f90-a1b2c3d4e5f6"
+    ) = RoadAnomalyEvent(
+        id = id,
+        createdAt = createdAt,
+        latitude = latitude,
+        longitude = longitude,
+        gpsAccuracyM = 4.8f,
+        speedKmh = 42.3f,
+        headingDeg = headingDeg,
+        peakAccelMs2 = 6.125f,
+        impulseDurationMs = 120,
+        severity = 3,
+        confidence = 0.8125f,
+        deviceModel = deviceModel,
+        androidVersion = "14",
+        sessionId = sessionId
+    )
+
+    fun aggregate(uuid: String, latitude: Double, longitude: Double, firstSeenAt: Long, lastSeenAt: Long) = AnomalyAggregate(
+        id = 0L,
+        latitude = latitude,
+        longitude = longitude,
+        hitCount = 5,
+        maxSeverity = 4,
+        severitySum = 15,
+        firstSeenAt = firstSeenAt,
+        lastSeenAt = lastSeenAt,
+        headingBuckets = AnomalyAggregate.addHeading(0L, 90f),
+        uuid = uuid
+    )
+
+    // A drive: events seconds apart along a road, as produced by one session
+    fun drive(count: Int, random: Random = Random(7)): List<RoadAnomalyEvent> {
+        var time = 1_717_000_000_000L
+        var latitude = 52.370216
+        var longitude = 4.895168
+        return List(count) {
+            time += random.nextLong(500, 20_000)
+            latitude += random.nextDouble(-0.002, 0.002)
+            longitude += random.nextDouble(-0.002, 0.002)
+            RoadAnomalyEvent(
+                id = UUID(random.nextLong(), random.nextLong()).toString(),
+                createdAt = time,
+                latitude = latitude,
+                longitude = longitude,
+                gpsAccuracyM = random.nextDouble(3.0, 15.0).toFloat(),
+                speedKmh = random.nextDouble(20.0, 90.0).toFloat(),
+                headingDeg = if (random.nextInt(10) == 0) null else random.nextDouble(0.0, 360.0).toFloat(),
+                peakAccelMs2 = random.nextDouble(2.0, 12.0).toFloat(),
+                impulseDurationMs = random.nextInt(40, 400),
+                severity = random.nextInt(1, 6),
+                confidence = random.nextDouble(0.3, 1.0).toFloat(),
+                deviceModel = "Pixel 8",
+                androidVersion = "14",
+                sessionId = "7d1e4c1a-2b3c-4d5e-8f90-a1b2c3d4e5f6"
+            )
+        }
+    }
+
+    // The per-event JSON the sync upload used before the binary format
+    fun json(events: List<RoadAnomalyEvent>): ByteArray {
+        return events.joinToString(",", "[", "]") { event ->
+            buildJsonObject {
+                put("id", event.id)
+                put("created_at", event.createdAt)
+                put("latitude", event.latitude)
+                put("longitude", event.longitude)
+                put("gps_accuracy_m", event.gpsAccuracyM)
+                put("speed_kmh", event.speedKmh)
+                put("heading_deg", event.headingDeg)
+                put("peak_accel_ms2", event.peakAccelMs2)
+                put("impulse_duration_ms", event.impulseDurationMs)
+                put("severity", event.severity)
+                put("confidence", event.confidence)
+                put("device_model", event.deviceModel)
+                put("android_version", event.androidVersion)
+                put("session_id", event.sessionId)
+            }.toString()
+        }.toByteArray(Charsets.UTF_8)
+    }
+
+    fun gzip(bytes: ByteArray): ByteArray {
+        val out = ByteArrayOutputStream()
+        GZIPOutputStream(out).use { it.write(bytes) }
+        return out.toByteArray()
+    }
+
+    test("should round-trip events within the quantization resolution") {
+        val events = listOf(
+            event("00000000-0000-0000-0000-000000000001", 1_717_000_000_000L, 52.3702157, 4.8951679),
+            event("00000000-0000-0000-0000-000000000002", 1_717_000_004_250L, -33.8688197, 179.9999999, headingDeg = null),
+            event("00000000-0000-0000-0000-000000000003", 1_716_999_999_000L, 89.9, -180.0, deviceModel = "Galaxy Ü")
+        )
+
+        val decoded = EventWireFormat.decode(EventWireFormat.encode(events))
+
+        decoded.size shouldBe 3
+        decoded.zip(events).forEach { (actual, expected) ->
+            actual.id shouldBe expected.id
+            actual.createdAt shouldBe expected.createdAt
+            actual.latitude shouldBe (expected.latitude plusOrMinus 1e-7)
+            actual.longitude shouldBe (expected.longitude plusOrMinus 1e-7)
+            actual.gpsAccuracyM shouldBe (expected.gpsAccuracyM plusOrMinus 0.05f)
+            actual.speedKmh shouldBe (expected.speedKmh plusOrMinus 0.05f)
+            actual.peakAccelMs2 shouldBe (expected.peakAccelMs2 plusOrMinus 5e-4f)
+            actual.confidence shouldBe (expected.confidence plusOrMinus 5e-5f)
+            actual.impulseDurationMs shouldBe expected.impulseDurationMs
+            actual.severity shouldBe expected.severity
+            actual.deviceModel shouldBe expected.deviceModel
+            actual.androidVersion shouldBe expected.androidVersion
+            actual.sessionId shouldBe expected.sessionId
+        }
+        decoded[0].headingDeg shouldBe 90f
+        decoded[1].headingDeg shouldBe null
+    }
+
+    test("should round-trip aggregates after the events") {
+        val events = listOf(event("00000000-0000-0000-0000-000000000001", 1_717_000_000_000L, 52.3702157, 4.8951679))
+        val aggregates = listOf(
+            aggregate("00000000-0000-0000-0000-000000000010", 52.3702557, 4.8951179, 1_716_000_000_000L, 1_717_000_004_250L),
+            aggregate("00000000-0000-0000-0000-000000000011", -33.8688197, 179.9999999, 1_715_000_000_000L, 1_715_000_000_000L)
+                .copy(hitCount = 300, headingBuckets = -1L)
+        )
+
+        val decoded = EventWireFormat.decodeBatch(EventWireFormat.encode(events, aggregates))
+
+        decoded.events.map { it.id } shouldBe events.map { it.id }
+        decoded.aggregates.size shouldBe 2
+        decoded.aggregates.zip(aggregates).forEach { (actual, expected) ->
+            actual.uuid shouldBe expected.uuid
+            actual.latitude shouldBe (expected.latitude plusOrMinus 1e-7)
+            actual.longitude shouldBe (expected.longitude plusOrMinus 1e-7)
+            actual.hitCount shouldBe expected.hitCount
+            actual.maxSeverity shouldBe expected.maxSeverity
+            actual.severitySum shouldBe expected.severitySum
+            actual.firstSeenAt shouldBe expected.firstSeenAt
+            actual.lastSeenAt shouldBe expected.lastSeenAt
+            actual.headingBuckets shouldBe expected.headingBuckets
+        }
+    }
+
+    test("should decode version 1 batches without aggregates") {
+        val encoded = EventWireFormat.encode(drive(3))
+        // Version 1 is the same layout without the trailing aggregate count
+        val version1 = encoded.copyOf(encoded.size - 1).also { it[2] = 1 }
+
+        val decoded = EventWireFormat.decodeBatch(version1)
+
+        decoded.events.map { it.id } shouldBe drive(3).map { it.id }
+        decoded.aggregates shouldBe emptyList()
+    }
+
+    test("should match the fixture shared with the web decoder") {
+        val events = listOf(
+            event("00000000-0000-0000-0000-000000000001", 1_717_000_000_000L, 52.3702157, 4.8951679),
+            event("00000000-0000-0000-0000-000000000002", 1_717_000_004_250L, 52.3702957, 4.8950679, headingDeg = null)
+        )
+        val aggregates = listOf(
+            aggregate("00000000-0000-0000-0000-000000000003", 52.3702557, 4.8951179, 1_716_000_000_000L, 1_717_000_004_250L)
+        )
+
+        EventWireFormat.encode(events, aggregates).toHex() shouldBe SHARED_FIXTURE_HEX
+    }
+
+    test("should reject foreign and truncated input") {
+        val encoded = EventWireFormat.encode(drive(3))
+
+        shouldThrow<IllegalArgumentException> { EventWireFormat.decode("[]".toByteArray()) }
+        shouldThrow<IllegalArgumentException> { EventWireFormat.decode(encoded.copyOf(encoded.size - 1)) }
+        shouldThrow<IllegalArgumentException> { EventWireFormat.decode(encoded.copyOf().also { it[2] = 3 }) }
+    }
+
+    test("binary batches should be a fraction of gzip JSON") {
+        for (count in listOf(1, 50, 500)) {
+            val events = drive(count)
+            val binary = EventWireFormat.encode(events)
+            val json = json(events)
+            val binaryGzip = gzip(binary).size
+            val jsonGzip = gzip(json).size
+
+            EventWireFormat.decode(binary).map { it.id } shouldBe events.map { it.id }
+            if (count >= 50) {
+                // Random ids are 16 of the ~40 bytes per event and do not compress
+                (binary.size * 8 < json.size) shouldBe true
+                (binaryGzip * 2 < jsonGzip) shouldBe true
+            }
+        }
+    }
+}) {
+    companion object {
+        // Also decoded by roadpulse-web/src/utils/eventWireFormat.test.ts
+        const val SHARED_FIXTURE_HEX = "5250020200000000000000000000000000000001000000000000000000000000" +
+            "0000000280c8e6d2f863b4429abeb8f303c00cfec5d72ecf0f6060ce06ce0601" +
+            "d08c01da5fda5ff001f0010606fa7efa7e0107506978656c2038000001023134" +
+            "0000012437643165346331612d326233632d346435652d386639302d61316232" +
+            "633364346535663600000100000000000000000000000000000003bac4b8f303" +
+            "96bed72e0a081e80a09099f163b4ead6b907808004"
+    }
+}
+
+private fun ByteArray.toHex(): String = joinToString("") { "%02x".format(it) }
@@ -0,0 +1,169 @@
+package com.roadpulse.android.data.trace
+
+import com.roadpulse.android.data.model.LocationData
+import io.kotest.assertions.throwables.shouldThrow
+import io.kotest.core.spec.style.FunSpec
+import io.kotest.matchers.shouldBe
+import java.io.File
+import java.io.IOException
+import java.nio.file.Files
+
+class SensorTraceRecorderTest : FunSpec({
+
+    // Collects records as readable strings
+    class Collector : SensorTraceReader.TraceVisitor {
+        val samples = mutableListOf<Long>()
+        val records = mutableListOf<String>()
+
+        override fun onSample(
+            timestampNs: Long,
+            accelX: Float, accelY: Float, accelZ: Float, accelAccuracy: Int,
+            gyroX: Float, gyroY: Float, gyroZ: Float, gyroAccuracy: Int
+        ) {
+            samples.add(timestampNs)
+            records.add("S $timestampNs $accelX $accelY $accelZ $accelAccuracy $gyroX $gyroY $gyroZ $gyroAccuracy")
+        }
+
+        override fun onLocation(
+            timestampNs: Long,
+            latitude: Double, longitude: Double,
+            accuracyM: Float, speedMs: Float, bearingDeg: Float
+        ) {
+            records.add("L $timestampNs $latitude $longitude $accuracyM $speedMs $bearingDeg")
+        }
+    }
+
+    fun tempDirectory(): File = Files.createTempDirectory("traces").toFile().apply { deleteOnExit() }
+
+    // Header plus room for four records
+    val smallSegment = SensorTraceFormat.HEADER_BYTES + 4 * SensorTraceFormat.RECORD_BYTES
+
+    fun SensorTraceRecorder.sample(timestampNs: Long) {
+        recordSample(timestampNs, 0.1f, 0.2f, 9.8f, 3, 0.01f, 0.02f, 0.03f, 2)
+    }
+
+    fun rollingSegments(directory: File): List<File> {
+        return directory.listFiles { file -> file.isFile }!!.sortedBy { it.name }
+    }
+
+    test("should round-trip samples and location fixes") {
+        val directory = tempDirectory()
+        val recorder = SensorTraceRecorder(directory)
+        val location = LocationData(52.3702157, 4.8951679, 4.5f, 12.5f, 270f, 1_717_000_000_000L)
+
+        recorder.start(wallClockOffsetNs = 42L)
+        recorder.recordLocation(1_000L, location)
+        recorder.sample(1_000L)
+        recorder.recordLocation(2_000L, location) // Same fix, not recorded again
+        recorder.recordSample(2_000L, -1.5f, 0f, 10.25f, 1, 0f, -0.5f, 0f, 0)
+        recorder.close()
+
+        val segments = rollingSegments(directory)
+        segments.size shouldBe 1
+        val collector = Collector()
+        SensorTraceReader.read(segments[0], collector) shouldBe 42L
+        collector.records shouldBe listOf(
+            "L 1000 52.3702157 4.8951679 4.5 12.5 270.0",
+            "S 1000 0.1 0.2 9.8 3 0.01 0.02 0.03 2",
+            "S 2000 -1.5 0.0 10.25 1 0.0 -0.5 0.0 0"
+        )
+    }
+
+    test("should record a fix at its own elapsed-realtime time") {
+        val directory = tempDirectory()
+        val recorder = SensorTraceRecorder(directory)
+        // The fix was taken at 700ns but first seen with the sample at 1000ns
+        val location = LocationData(52.3702157, 4.8951679, 4.5f, 12.5f, 270f, 1_717_000_000_000L, 700L)
+
+        recorder.start(wallClockOffsetNs = 0L)
+        recorder.recordLocation(1_000L, location)
+        recorder.sample(1_000L)
+        recorder.close()
+
+        val collector = Collector()
+        SensorTraceReader.read(rollingSegments(directory).single(), collector)
+        collector.records.first() shouldBe "L 700 52.3702157 4.8951679 4.5 12.5 270.0"
+    }
+
+    test("should read a segment that was not closed up to its last record") {
+        val directory = tempDirectory()
+        val recorder = SensorTraceRecorder(directory)
+
+        recorder.start(wallClockOffsetNs = 0L)
+        recorder.sample(1L)
+        recorder.sample(2L)
+
+        val collector = Collector()
+        SensorTraceReader.read(rollingSegments(directory).single(), collector)
+        collector.samples shouldBe listOf(1L, 2L)
+        recorder.close()
+    }
+
+    test("should keep at most maxSegments rolling segments") {
+        val directory = tempDirectory()
+        val recorder = SensorTraceRecorder(directory, segmentBytes = smallSegment, maxSegments = 3)
+
+        recorder.start(wallClockOffsetNs = 0L)
+        for (i in 1..40) recorder.sample(i.toLong())
+        recorder.close()
+
+        val segments = rollingSegments(directory)
+        segments.size shouldBe 3
+        segments.forEach { it.length() shouldBe smallSegment.toLong() }
+
+        // The newest 12 samples survive
+        val collector = Collector()
+        segments.forEach { SensorTraceReader.read(it, collector) }
+        collector.samples shouldBe (29L..40L).toList()
+    }
+
+    test("should pin the segments around a detected event, including ones not yet written") {
+        val directory = tempDirectory()
+        val recorder = SensorTraceRecorder(
+            directory,
+            segmentBytes = smallSegment,
+            maxSegments = 2,
+            pinBeforeNs = 3_000_000L,
+            pinAfterNs = 3_000_000L
+        )
+
+        // Sensor clock equals wall clock, one sample per millisecond
+        recorder.start(wallClockOffsetNs = 0L)
+        for (ms in 1..8) recorder.sample(ms * 1_000_000L)
+
+        // Event at 7ms: window 4..10ms covers segment 1 (1-4ms), 2 (5-8ms) and 3 (9-12ms)
+        recorder.pinAround(7L)
+        recorder.beginBatch(wallClockOffsetNs = 0L)
+        for (ms in 9..24) recorder.sample(ms * 1_000_000L)
+        recorder.close()
+
+        val pinned = recorder.pinnedSegments()
+        pinned.map { it.name } shouldBe listOf(1L, 2L, 3L).map { SensorTraceFormat.fileName(it) }
+        val collector = Collector()
+        pinned.forEach { SensorTraceReader.read(it, collector) }
+        collector.samples shouldBe (1L..12L).map { it * 1_000_000L }
+
+        // Rolling segments stay bounded independently of the pinned ones
+        rollingSegments(directory).map { it.name } shouldBe listOf(5L, 6L).map { SensorTraceFormat.fileName(it) }
+        SensorTraceRecorder.pinnedSegments(directory) shouldBe pinned
+    }
+
+    test("should continue sequence numbers across recordings") {
+        val directory = tempDirectory()
+
+        repeat(2) {
+            val recorder = SensorTraceRecorder(directory)
+            recorder.start(wallClockOffsetNs = 0L)
+            recorder.sample(1L)
+            recorder.close()
+        }
+
+        rollingSegments(directory).map { it.name } shouldBe listOf(1L, 2L).map { SensorTraceFormat.fileName(it) }
+    }
+
+    test("should reject files that are not trace segments") {
+        val file = File(tempDirectory(), "other.trace").apply { writeBytes(ByteArray(128)) }
+
+        shouldThrow<IOException> { SensorTraceReader.read(file, Collector()) }
+    }
+})
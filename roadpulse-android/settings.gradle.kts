@@ -14,4 +14,6 @@ dependencyResolutionManagement {
 }
 
 rootProject.name = "RoadPulse"
-include(":app")
\ No newline at end of file
+include(":app")
+include(":core")
+include(":benchmarks")
\ No newline at end of file
@@ -17,6 +17,19 @@ export interface RoadAnomalyEvent {
   sessionId: string;
 }
 
+// Running totals for one anomaly hit on repeated passes, uploaded by the Android app
+export interface AnomalyAggregate {
+  id: string; // Stable across uploads; later totals replace earlier ones
+  latitude: number; // Mean of the hits
+  longitude: number;
+  hitCount: number;
+  maxSeverity: number;
+  severitySum: number;
+  firstSeenAt: Date;
+  lastSeenAt: Date;
+  headingCounts: number[]; // Hits per 45° bucket clockwise from north, saturating at 255
+}
+
 export interface ClusterData {
   id: string;
   latitude: number;
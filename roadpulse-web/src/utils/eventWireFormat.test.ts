@@ -0,0 +1,91 @@
+/**
+ * Event Wire Format Tests
+ * Decodes the fixture produced by the Android encoder (EventWireFormatTest.SHARED_FIXTURE_HEX)
+ */
+
+import { describe, it, expect } from 'vitest';
+import { decodeBatch, decodeEventBatch, EventWireFormatError } from './eventWireFormat';
+
+const SHARED_FIXTURE_HEX =
+  '5250020200000000000000000000000000000001000000000000000000000000' +
+  '0000000280c8e6d2f863b4429abeb8f303c00cfec5d72ecf0f6060ce06ce0601' +
+  'd08c01da5fda5ff001f0010606fa7efa7e0107506978656c2038000001023134' +
+  '0000012437643165346331612d326233632d346435652d386639302d61316232' +
+  '633364346535663600000100000000000000000000000000000003bac4b8f303' +
+  '96bed72e0a081e80a09099f163b4ead6b907808004';
+
+function fromHex(hex: string): Uint8Array {
+  const bytes = new Uint8Array(hex.length / 2);
+  for (let i = 0; i < bytes.length; i++) {
+    bytes[i] = parseInt(hex.substr(i * 2, 2), 16);
+  }
+  return bytes;
+}
+
+describe('decodeEventBatch', () => {
+  it('should decode the fixture shared with the Android encoder', () => {
+    const events = decodeEventBatch(fromHex(SHARED_FIXTURE_HEX));
+
+    expect(events).toHaveLength(2);
+    expect(events[0]).toEqual({
+      id: '00000000-0000-0000-0000-000000000001',
+      createdAt: new Date(1_717_000_000_000),
+      latitude: 52.3702157,
+      longitude: 4.8951679,
+      gpsAccuracyM: 4.8,
+      speedKmh: 42.3,
+      headingDeg: 90,
+      peakAccelMs2: 6.125,
+      impulseDurationMs: 120,
+      severity: 3,
+      confidence: 0.8125,
+      deviceModel: 'Pixel 8',
+      androidVersion: '14',
+      sessionId: '7d1e4c1a-2b3c-4d5e-8f90-a1b2c3d4e5f6'
+    });
+    expect(events[1].id).toBe('00000000-0000-0000-0000-000000000002');
+    expect(events[1].createdAt.getTime()).toBe(1_717_000_004_250);
+    expect(events[1].latitude).toBeCloseTo(52.3702957, 7);
+    expect(events[1].longitude).toBeCloseTo(4.8950679, 7);
+    expect(events[1].headingDeg).toBeUndefined();
+    expect(events[1].sessionId).toBe(events[0].sessionId);
+  });
+
+  it('should decode the aggregates of the shared fixture', () => {
+    const { aggregates } = decodeBatch(fromHex(SHARED_FIXTURE_HEX));
+
+    expect(aggregates).toEqual([
+      {
+        id: '00000000-0000-0000-0000-000000000003',
+        latitude: 52.3702557,
+        longitude: 4.8951179,
+        hitCount: 5,
+        maxSeverity: 4,
+        severitySum: 15,
+        firstSeenAt: new Date(1_716_000_000_000),
+        lastSeenAt: new Date(1_717_000_004_250),
+        headingCounts: [0, 0, 1, 0, 0, 0, 0, 0]
+      }
+    ]);
+  });
+
+  it('should decode an empty batch from an ArrayBuffer', () => {
+    const bytes = new Uint8Array([0x52, 0x50, 0x02, 0x00, 0x00, 0x00, 0x00, 0x00]);
+    expect(decodeBatch(bytes.buffer)).toEqual({ events: [], aggregates: [] });
+  });
+
+  it('should decode a version 1 batch without aggregates', () => {
+    const bytes = new Uint8Array([0x52, 0x50, 0x01, 0x00, 0x00, 0x00, 0x00]);
+    expect(decodeBatch(bytes)).toEqual({ events: [], aggregates: [] });
+  });
+
+  it('should reject foreign, unsupported and truncated input', () => {
+    const fixture = fromHex(SHARED_FIXTURE_HEX);
+    const newer = fixture.slice();
+    newer[2] = 3;
+
+    expect(() => decodeEventBatch(new TextEncoder().encode('[]'))).toThrow(EventWireFormatError);
+    expect(() => decodeEventBatch(newer)).toThrow('Unsupported event batch version 3');
+    expect(() => decodeEventBatch(fixture.subarray(0, fixture.length - 1))).toThrow(EventWireFormatError);
+  });
+});
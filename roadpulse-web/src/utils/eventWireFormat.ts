@@ -0,0 +1,262 @@
+/**
+ * Decoder for the compact binary event batch format produced by the Android app
+ * (com.roadpulse.android.data.sync.EventWireFormat). See that file for the layout;
+ * both sides are checked against the same fixture bytes. Version 2 adds a section of
+ * anomaly aggregates after the events; version 1 batches are still accepted.
+ */
+
+import { AnomalyAggregate, RoadAnomalyEvent } from '../types';
+
+export const EVENT_WIRE_CONTENT_TYPE = 'application/vnd.roadpulse.events';
+export const EVENT_WIRE_VERSION = 2;
+const VERSION_WITHOUT_AGGREGATES = 1;
+
+const MAGIC_0 = 0x52; // 'R'
+const MAGIC_1 = 0x50; // 'P'
+const ID_BYTES = 16;
+
+const COORDINATE_SCALE = 1e7;
+const ACCURACY_SCALE = 10;
+const SPEED_SCALE = 10;
+const HEADING_SCALE = 100;
+const ACCEL_SCALE = 1000;
+const CONFIDENCE_SCALE = 10000;
+const HEADING_BUCKETS = 8;
+
+export class EventWireFormatError extends Error {
+  constructor(message: string) {
+    super(message);
+    this.name = 'EventWireFormatError';
+  }
+}
+
+class WireReader {
+  private position = 0;
+
+  constructor(private readonly bytes: Uint8Array) {}
+
+  readByte(): number {
+    if (this.position >= this.bytes.length) {
+      throw new EventWireFormatError('Truncated event batch');
+    }
+    return this.bytes[this.position++];
+  }
+
+  readBytes(length: number): Uint8Array {
+    if (length < 0 || this.position + length > this.bytes.length) {
+      throw new EventWireFormatError('Truncated event batch');
+    }
+    const slice = this.bytes.subarray(this.position, this.position + length);
+    this.position += length;
+    return slice;
+  }
+
+  /**
+   * LEB128 varint. Arithmetic instead of bit operators, which truncate to 32 bits;
+   * exact for values up to 2^53, which covers millisecond timestamps.
+   */
+  readUnsigned(): number {
+    let result = 0;
+    let scale = 1;
+    for (let shift = 0; shift < 64; shift += 7) {
+      const b = this.readByte();
+      result += (b & 0x7f) * scale;
+      if ((b & 0x80) === 0) return result;
+      scale *= 128;
+    }
+    throw new EventWireFormatError('Malformed varint');
+  }
+
+  /**
+   * LEB128 varint of up to 64 bits, for bit-packed values
+   */
+  readUnsignedBigInt(): bigint {
+    let result = 0n;
+    for (let shift = 0n; shift < 64n; shift += 7n) {
+      const b = this.readByte();
+      result |= BigInt(b & 0x7f) << shift;
+      if ((b & 0x80) === 0) return BigInt.asUintN(64, result);
+    }
+    throw new EventWireFormatError('Malformed varint');
+  }
+
+  readSigned(): number {
+    const raw = this.readUnsigned();
+    return raw % 2 === 0 ? raw / 2 : -(raw + 1) / 2;
+  }
+}
+
+const HEX = Array.from({ length: 256 }, (_, i) => i.toString(16).padStart(2, '0'));
+
+function formatUuid(bytes: Uint8Array): string {
+  let hex = '';
+  for (let i = 0; i < bytes.length; i++) {
+    hex += HEX[bytes[i]];
+  }
+  return `${hex.slice(0, 8)}-${hex.slice(8, 12)}-${hex.slice(12, 16)}-${hex.slice(16, 20)}-${hex.slice(20)}`;
+}
+
+function readDeltas(input: WireReader, count: number): number[] {
+  const values = new Array<number>(count);
+  let previous = 0;
+  for (let i = 0; i < count; i++) {
+    previous += input.readSigned();
+    values[i] = previous;
+  }
+  return values;
+}
+
+function readColumn(input: WireReader, count: number, scale = 1): number[] {
+  const values = new Array<number>(count);
+  for (let i = 0; i < count; i++) {
+    values[i] = input.readSigned() / scale;
+  }
+  return values;
+}
+
+function readDictionary(input: WireReader, count: number, decoder: TextDecoder): string[] {
+  const size = input.readUnsigned();
+  if (size > count) {
+    throw new EventWireFormatError(`Invalid dictionary size ${size}`);
+  }
+  const entries = new Array<string>(size);
+  for (let i = 0; i < size; i++) {
+    entries[i] = decoder.decode(input.readBytes(input.readUnsigned()));
+  }
+  const values = new Array<string>(count);
+  for (let i = 0; i < count; i++) {
+    const index = input.readUnsigned();
+    if (index >= size) {
+      throw new EventWireFormatError(`Invalid dictionary index ${index}`);
+    }
+    values[i] = entries[index];
+  }
+  return values;
+}
+
+function readAggregates(input: WireReader, batchBytes: number): AnomalyAggregate[] {
+  const count = input.readUnsigned();
+  if (count > batchBytes / ID_BYTES) {
+    throw new EventWireFormatError(`Invalid aggregate count ${count}`);
+  }
+
+  const ids = new Array<string>(count);
+  for (let i = 0; i < count; i++) {
+    ids[i] = formatUuid(input.readBytes(ID_BYTES));
+  }
+  const latitudes = readDeltas(input, count);
+  const longitudes = readDeltas(input, count);
+  const hitCounts = readColumn(input, count);
+  const maxSeverities = readColumn(input, count);
+  const severitySums = readColumn(input, count);
+  const firstSeenAt = readDeltas(input, count);
+  const spans = readColumn(input, count);
+
+  const aggregates = new Array<AnomalyAggregate>(count);
+  for (let i = 0; i < count; i++) {
+    // Saturating 8-bit count per heading bucket, bucket 0 in the low byte
+    const buckets = input.readUnsignedBigInt();
+    const headingCounts = new Array<number>(HEADING_BUCKETS);
+    for (let bucket = 0; bucket < HEADING_BUCKETS; bucket++) {
+      headingCounts[bucket] = Number((buckets >> BigInt(bucket * 8)) & 0xffn);
+    }
+    aggregates[i] = {
+      id: ids[i],
+      latitude: latitudes[i] / COORDINATE_SCALE,
+      longitude: longitudes[i] / COORDINATE_SCALE,
+      hitCount: hitCounts[i],
+      maxSeverity: maxSeverities[i],
+      severitySum: severitySums[i],
+      firstSeenAt: new Date(firstSeenAt[i]),
+      lastSeenAt: new Date(firstSeenAt[i] + spans[i]),
+      headingCounts
+    };
+  }
+  return aggregates;
+}
+
+/**
+ * Decode the events of a version 1 or 2 batch, ignoring its aggregates
+ * @throws EventWireFormatError if the bytes are not a batch or are truncated
+ */
+export function decodeEventBatch(buffer: ArrayBuffer | Uint8Array): RoadAnomalyEvent[] {
+  return decodeBatch(buffer).events;
+}
+
+/**
+ * Decode a version 1 or 2 batch; version 1 batches have no aggregates
+ * @throws EventWireFormatError if the bytes are not a batch or are truncated
+ */
+export function decodeBatch(buffer: ArrayBuffer | Uint8Array): {
+  events: RoadAnomalyEvent[];
+  aggregates: AnomalyAggregate[];
+} {
+  const bytes = buffer instanceof Uint8Array ? buffer : new Uint8Array(buffer);
+  const input = new WireReader(bytes);
+
+  if (input.readByte() !== MAGIC_0 || input.readByte() !== MAGIC_1) {
+    throw new EventWireFormatError('Not an event batch');
+  }
+  const version = input.readByte();
+  if (version !== EVENT_WIRE_VERSION && version !== VERSION_WITHOUT_AGGREGATES) {
+    throw new EventWireFormatError(`Unsupported event batch version ${version}`);
+  }
+
+  const count = input.readUnsigned();
+  if (count > bytes.length / ID_BYTES) {
+    throw new EventWireFormatError(`Invalid event count ${count}`);
+  }
+
+  const ids = new Array<string>(count);
+  for (let i = 0; i < count; i++) {
+    ids[i] = formatUuid(input.readBytes(ID_BYTES));
+  }
+  const createdAt = readDeltas(input, count);
+  const latitudes = readDeltas(input, count);
+  const longitudes = readDeltas(input, count);
+  const accuracies = readColumn(input, count, ACCURACY_SCALE);
+  const speeds = readColumn(input, count, SPEED_SCALE);
+
+  const bitmap = input.readBytes((count + 7) >> 3);
+  const headings = new Array<number | undefined>(count);
+  for (let i = 0; i < count; i++) {
+    if (bitmap[i >> 3] & (1 << (i & 7))) {
+      headings[i] = input.readSigned() / HEADING_SCALE;
+    }
+  }
+
+  const peaks = readColumn(input, count, ACCEL_SCALE);
+  const durations = readColumn(input, count);
+  const severities = readColumn(input, count);
+  const confidences = readColumn(input, count, CONFIDENCE_SCALE);
+
+  const decoder = new TextDecoder();
+  const deviceModels = readDictionary(input, count, decoder);
+  const androidVersions = readDictionary(input, count, decoder);
+  const sessionIds = readDictionary(input, count, decoder);
+
+  const events = new Array<RoadAnomalyEvent>(count);
+  for (let i = 0; i < count; i++) {
+    const event: RoadAnomalyEvent = {
+      id: ids[i],
+      createdAt: new Date(createdAt[i]),
+      latitude: latitudes[i] / COORDINATE_SCALE,
+      longitude: longitudes[i] / COORDINATE_SCALE,
+      gpsAccuracyM: accuracies[i],
+      speedKmh: speeds[i],
+      peakAccelMs2: peaks[i],
+      impulseDurationMs: durations[i],
+      severity: severities[i] as RoadAnomalyEvent['severity'],
+      confidence: confidences[i],
+      deviceModel: deviceModels[i],
+      androidVersion: androidVersions[i],
+      sessionId: sessionIds[i]
+    };
+    if (headings[i] !== undefined) {
+      event.headingDeg = headings[i];
+    }
+    events[i] = event;
+  }
+  const aggregates = version === EVENT_WIRE_VERSION ? readAggregates(input, bytes.length) : [];
+  return { events, aggregates };
+}